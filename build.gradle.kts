@@ -26,10 +26,17 @@ dependencies {
 
 java {
     toolchain {
-        languageVersion = JavaLanguageVersion.of(17)
+        languageVersion = JavaLanguageVersion.of(21)
     }
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+tasks.register<JavaExec>("benchmark") {
+    group = "verification"
+    description = "Runs a benchmark main class from the test source set, selected with -PbenchmarkClass."
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass.set(providers.gradleProperty("benchmarkClass").orElse("com.neverless.benchmark.GroupCommitBenchmark"))
+}
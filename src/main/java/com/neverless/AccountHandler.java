@@ -1,26 +1,54 @@
 package com.neverless;
 
+import com.neverless.model.Account;
 import com.neverless.service.AccountService;
+import com.neverless.service.ClusterRing;
 import org.rapidoid.http.Req;
 import org.rapidoid.http.Resp;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Map;
 
 public class AccountHandler {
     private final AccountService accountService;
+    private final ClusterRing cluster;
 
     public AccountHandler(AccountService accountService) {
+        this(accountService, null);
+    }
+
+    /**
+     * @param cluster - optional; accounts held by other nodes are answered with 421 and the node to ask
+     */
+    public AccountHandler(AccountService accountService, ClusterRing cluster) {
         this.accountService = accountService;
+        this.cluster = cluster;
     }
 
     public Map<String, Object> handleBalanceRequest(Req req, Resp resp) {
         String accountId = req.param("accountId");
+        String asOf = req.param("asOf", null);
         Map<String, Object> response = new HashMap<>();
+        if (misdirected(accountId, response, resp)) {
+            return response;
+        }
+        long asOfMillis;
+        try {
+            asOfMillis = asOf == null ? 0 : parseTime(asOf);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            response.put("status", "FAILURE");
+            response.put("message", "asOf must be epoch millis or an ISO-8601 instant");
+            resp.code(400);
+            return response;
+        }
         try {
-            double balance = accountService.getAccountBalance(accountId).doubleValue();
+            BigDecimal balance = asOf == null ? accountService.getAccountBalance(accountId) : accountService.getAccountBalance(accountId, asOfMillis);
             response.put("status", "SUCCESS");
-            response.put("balance", balance);
+            response.put("balance", balance.doubleValue());
+            response.put("currency", accountService.getAccountCurrency(accountId));
             resp.code(200);
         } catch (IllegalArgumentException e) {
             response.put("status", "FAILURE");
@@ -30,14 +58,34 @@ public class AccountHandler {
         return response;
     }
 
+    private boolean misdirected(String accountId, Map<String, Object> response, Resp resp) {
+        if (cluster == null || cluster.isLocal(accountId)) {
+            return false;
+        }
+        ClusterRing.Node owner = cluster.ownerOf(accountId);
+        response.put("status", "FAILURE");
+        response.put("message", "Account is held by node " + owner.id() + " at " + owner.address());
+        response.put("node", owner.address());
+        resp.code(421);
+        return true;
+    }
+
+    private static long parseTime(String value) {
+        return value.chars().allMatch(Character::isDigit) ? Long.parseLong(value) : Instant.parse(value).toEpochMilli();
+    }
+
     public Map<String, Object> handleAccountCreationRequest(Req req, Resp resp) {
         String accountId = req.posted("accountId");
         String userId = req.posted("userId");
         double initialBalance = Double.parseDouble(req.posted("initialBalance"));
+        String currency = req.posted("currency", null);
 
         Map<String, Object> response = new HashMap<>();
+        if (misdirected(accountId, response, resp)) {
+            return response;
+        }
         try {
-            accountService.createAccount(accountId, userId, initialBalance);
+            accountService.createAccount(accountId, userId, initialBalance, currency == null ? Account.DEFAULT_CURRENCY : currency);
             response.put("status", "SUCCESS");
             response.put("message", "Account created successfully");
             resp.code(200);
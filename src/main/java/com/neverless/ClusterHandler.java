@@ -0,0 +1,94 @@
+package com.neverless;
+
+import com.neverless.service.ClusterSignature;
+import com.neverless.service.ClusterTransport;
+import com.neverless.service.HttpClusterTransport;
+import com.neverless.service.TransferService;
+import org.rapidoid.http.Req;
+import org.rapidoid.http.Resp;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Receives the messages other nodes send for cross-node transfers, see {@link HttpClusterTransport}. Only messages
+ * signed with the cluster secret are acted on. Replies are written when the transfer worker has decided, without
+ * holding a request thread.
+ */
+public class ClusterHandler {
+    private final TransferService transferService;
+    private final ClusterSignature signature;
+
+    public ClusterHandler(TransferService transferService, ClusterSignature signature) {
+        this.transferService = transferService;
+        this.signature = signature;
+    }
+
+    // The signature covers the fields as sent, so it is checked on them before anything is parsed: an unsigned
+    // message is answered 401 whatever it holds, and only a signed one that does not parse is answered 400.
+    public Object handleCreditRequest(Req req, Resp resp) {
+        String transferId = req.posted("transferId", null);
+        String fromAccountId = req.posted("fromAccountId", null);
+        String toAccountId = req.posted("toAccountId", null);
+        String amount = req.posted("amount", null);
+        String currency = req.posted("currency", null);
+        String reservedAtMillis = req.posted("reservedAtMillis", null);
+        if (transferId == null || fromAccountId == null || toAccountId == null || amount == null || currency == null || reservedAtMillis == null) {
+            return badRequest(resp, "transferId, fromAccountId, toAccountId, amount, currency and reservedAtMillis are required");
+        }
+        if (!ClusterSignature.matches(HttpClusterTransport.signCredit(signature, transferId, fromAccountId, toAccountId, amount, currency, reservedAtMillis),
+                req.header(ClusterSignature.HEADER, null))) {
+            return unauthorized(resp);
+        }
+        ClusterTransport.Credit credit;
+        try {
+            credit = new ClusterTransport.Credit(transferId, fromAccountId, toAccountId, new BigDecimal(amount), currency, Long.parseLong(reservedAtMillis));
+        } catch (NumberFormatException e) {
+            return badRequest(resp, "Malformed amount or reservedAtMillis");
+        }
+        return reply(req, resp, transferService.creditCrossNodeTransfer(credit));
+    }
+
+    public Object handleAbortRequest(Req req, Resp resp) {
+        String transferId = req.posted("transferId", null);
+        String reservedAtMillis = req.posted("reservedAtMillis", null);
+        if (transferId == null || reservedAtMillis == null) {
+            return badRequest(resp, "transferId and reservedAtMillis are required");
+        }
+        if (!ClusterSignature.matches(HttpClusterTransport.signAbort(signature, transferId, reservedAtMillis), req.header(ClusterSignature.HEADER, null))) {
+            return unauthorized(resp);
+        }
+        long reservedAt;
+        try {
+            reservedAt = Long.parseLong(reservedAtMillis);
+        } catch (NumberFormatException e) {
+            return badRequest(resp, "Malformed reservedAtMillis");
+        }
+        return reply(req, resp, transferService.abortCrossNodeTransfer(transferId, reservedAt));
+    }
+
+    private static Object badRequest(Resp resp, String message) {
+        resp.code(400);
+        return message;
+    }
+
+    private static Object unauthorized(Resp resp) {
+        resp.code(401);
+        return "Invalid cluster signature";
+    }
+
+    private static Object reply(Req req, Resp resp, CompletableFuture<ClusterTransport.Reply> reply) {
+        req.async();
+        reply.whenComplete((result, error) -> {
+            if (error == null) {
+                resp.code(200);
+                resp.result(HttpClusterTransport.format(result));
+            } else {
+                resp.code(500);
+                resp.result(String.valueOf(error.getMessage()));
+            }
+            req.done();
+        });
+        return req;
+    }
+}
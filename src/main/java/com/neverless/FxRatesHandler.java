@@ -0,0 +1,38 @@
+package com.neverless;
+
+import com.neverless.service.FxRates;
+import org.rapidoid.http.Req;
+import org.rapidoid.http.Resp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class FxRatesHandler {
+    private final FxRates fxRates;
+
+    public FxRatesHandler(FxRates fxRates) {
+        this.fxRates = fxRates;
+    }
+
+    /**
+     * Replaces the whole rate table, e.g. {@code base=USD&rates=EUR:0.92,GBP:0.79}.
+     */
+    public Map<String, Object> handleRatesUpdateRequest(Req req, Resp resp) {
+        String base = req.posted("base", fxRates.getBaseCurrency());
+        String rates = req.posted("rates", "");
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            fxRates.update(base, FxRates.parseRates(rates));
+            response.put("status", "SUCCESS");
+            response.put("base", fxRates.getBaseCurrency());
+            response.put("currencies", fxRates.getCurrencies());
+            resp.code(200);
+        } catch (IllegalArgumentException e) {
+            response.put("status", "FAILURE");
+            response.put("message", e.getMessage());
+            resp.code(400);
+        }
+        return response;
+    }
+}
@@ -1,26 +1,279 @@
 package com.neverless;
 
+import com.neverless.service.AccountImporter;
 import com.neverless.service.AccountService;
+import com.neverless.service.AdmissionControl;
+import com.neverless.service.BalanceHistory;
+import com.neverless.service.ClusterRing;
+import com.neverless.service.ClusterSignature;
+import com.neverless.service.ExecutionMode;
+import com.neverless.service.FxRates;
+import com.neverless.service.GroupCommit;
+import com.neverless.service.HttpClusterTransport;
+import com.neverless.service.IdempotencyCache;
+import com.neverless.service.Lane;
+import com.neverless.service.MoneyTransferTask;
+import com.neverless.service.LedgerReconciler;
+import com.neverless.service.NettingWindow;
+import com.neverless.service.RateLimiter;
+import com.neverless.service.Settings;
 import com.neverless.service.TransferQueue;
+import com.neverless.service.TransferScheduler;
 import com.neverless.service.TransferService;
+import com.neverless.service.WithdrawalPoller;
 import com.neverless.service.WithdrawalServiceStub;
+import com.neverless.model.Account;
+import com.neverless.model.QueuedTransfer;
+import com.neverless.store.AccountStore;
+import com.neverless.store.FileAccountStore;
+import com.neverless.store.FileTransactionStore;
 import com.neverless.store.InMemoryAccountStore;
 import com.neverless.store.InMemoryTransactionStore;
+import com.neverless.store.QueuedTransferFile;
+import com.neverless.store.ScheduleFile;
+import com.neverless.store.TrafficRecorder;
+import com.neverless.store.TransactionArchive;
+import com.neverless.store.TransactionStore;
+import com.neverless.store.TransferEventLog;
+import org.agrona.concurrent.EpochNanoClock;
+import org.agrona.concurrent.SystemEpochClock;
+import org.agrona.concurrent.SystemEpochNanoClock;
+import org.rapidoid.http.ReqRespHandler;
 import org.rapidoid.setup.On;
+import org.rapidoid.setup.Setup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Main {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Main.class);
+
     private final TransferHandler transferHandler;
     private final AccountHandler accountHandler;
+    private final ScheduledTransferHandler scheduledTransferHandler;
+    private final ReconciliationHandler reconciliationHandler;
+    private final FxRatesHandler fxRatesHandler;
+    private final ClusterHandler clusterHandler;
+    private final ClusterRing cluster;
+    private final int clusterPortOffset;
+    private final ExecutorService requestExecutor;
+    private final TrafficRecorder trafficRecorder;
+    private final Settings settings;
+    private final SettingsHandler settingsHandler;
+    private final int adminPort;
+    private final String adminToken;
+    private final ReadinessHandler readinessHandler = new ReadinessHandler();
 
     public Main() {
-        var transferQueue = new TransferQueue(1024); // future improvement : configurable
-        var accountStore = new InMemoryAccountStore();
-        var transactionStore = new InMemoryTransactionStore();
+        this.settings = Settings.load();
+        var executionMode = settings.booleanSetting("server.virtual-threads", false).get() ? ExecutionMode.VIRTUAL : ExecutionMode.PLATFORM;
+        TransactionStore transactionStore;
+        AccountStore accountStore;
+        GroupCommit groupCommit = null;
+        FileTransactionStore journal = null;
+        String journalPath = settings.stringSetting("journal.path", null).get();
+        String accountsPath = settings.stringSetting("accounts.path", null).get();
+        String archivePath = settings.stringSetting("transactions.archive-path", null).get();
+        int hotWindow = settings.intSetting("transactions.hot-window", 1 << 20).get();
+        var archive = archivePath == null ? null : new TransactionArchive(Path.of(archivePath), settings.intSetting("transactions.archive-cache-segments", TransactionArchive.defaultCachedSegments()).get());
+        if (journalPath != null) {
+            journal = new FileTransactionStore(Path.of(journalPath), archive, hotWindow);
+            transactionStore = journal;
+            groupCommit = new GroupCommit(transactionStore,
+                    settings.intSetting("journal.group-commit.max-batch", 256).get(),
+                    TimeUnit.MICROSECONDS.toNanos(settings.longSetting("journal.group-commit.budget-micros", 200).get()));
+            // balances can only be persisted behind the journal that explains them
+            accountStore = accountsPath == null ? new InMemoryAccountStore() : new FileAccountStore(Path.of(accountsPath), journal,
+                    TimeUnit.MILLISECONDS.toNanos(settings.longSetting("accounts.flush-interval-millis", 100).get()));
+        } else {
+            transactionStore = archive == null ? new InMemoryTransactionStore() : new InMemoryTransactionStore(archive, hotWindow);
+            accountStore = new InMemoryAccountStore();
+        }
+        String importPath = settings.stringSetting("accounts.import-path", null).get();
+        if (importPath != null) {
+            var report = new AccountImporter(accountStore).importFile(Path.of(importPath));
+            LOGGER.info("Imported {} accounts from {} in {} ms, {} duplicates {}, {} malformed",
+                    report.imported(), importPath, TimeUnit.NANOSECONDS.toMillis(report.elapsedNanos()),
+                    report.duplicates(), report.duplicateIds(), report.malformed());
+        }
+        var queueCapacity = settings.intSetting("queue.capacity", 1024);
+        var maxExpectedWait = settings.longSetting("queue.max-expected-wait-millis", 2000);
+        var admissionControl = new AdmissionControl(queueCapacity.get(), TimeUnit.MILLISECONDS.toNanos(maxExpectedWait.get()));
+        var lanes = new EnumMap<Lane, Lane.Settings>(Lane.class);
+        var laneCapacities = new EnumMap<Lane, Settings.Setting<Integer>>(Lane.class);
+        var laneWeights = new EnumMap<Lane, Settings.Setting<Integer>>(Lane.class);
+        for (Lane lane : Lane.values()) {
+            String prefix = "queue." + lane.name().toLowerCase() + ".";
+            // the admin lane's worker actions are never shed, so it only has a weight
+            if (lane != Lane.ADMIN) {
+                laneCapacities.put(lane, settings.intSetting(prefix + "capacity", queueCapacity.get()));
+            }
+            laneWeights.put(lane, settings.intSetting(prefix + "weight", lane.defaultWeight()));
+            int capacity = lane == Lane.ADMIN ? queueCapacity.get() : laneCapacities.get(lane).get();
+            lanes.put(lane, new Lane.Settings(capacity, laneWeights.get(lane).get()));
+        }
+        var transferQueue = new TransferQueue(lanes, groupCommit, admissionControl);
+        queueCapacity.live(admissionControl::setMaxQueueDepth);
+        maxExpectedWait.live(millis -> admissionControl.setMaxExpectedWaitNanos(TimeUnit.MILLISECONDS.toNanos(millis)));
+        for (Lane lane : Lane.values()) {
+            if (laneCapacities.containsKey(lane)) {
+                laneCapacities.get(lane).live(capacity -> transferQueue.resize(lane, capacity));
+            }
+            laneWeights.get(lane).live(weight -> transferQueue.setWeight(lane, weight));
+        }
         var withdrawalService = new WithdrawalServiceStub(); // Assume a stub implementation
-        var transferService = new TransferService(accountStore, transactionStore, transferQueue, withdrawalService);
-        var accountService = new AccountService(accountStore);
-        this.transferHandler = new TransferHandler(transferService);
-        this.accountHandler = new AccountHandler(accountService);
+        var idempotencyCache = new IdempotencyCache(100_000, TimeUnit.MINUTES.toNanos(10));
+        var pollInterval = settings.longSetting("withdrawal.poll-interval-millis", 500);
+        var withdrawalBatch = settings.intSetting("withdrawal.max-batch", 10_000);
+        var withdrawalPoller = new WithdrawalPoller(withdrawalService, TimeUnit.MILLISECONDS.toNanos(pollInterval.get()),
+                TimeUnit.MILLISECONDS.toNanos(1), withdrawalBatch.get());
+        pollInterval.live(millis -> withdrawalPoller.setPollIntervalNanos(TimeUnit.MILLISECONDS.toNanos(millis)));
+        withdrawalBatch.live(withdrawalPoller::setMaxBatchSize);
+        String nettingPairs = settings.stringSetting("netting.pairs", null).get();
+        var nettingWindow = nettingPairs == null ? null : new NettingWindow(NettingWindow.parsePairs(nettingPairs),
+                TimeUnit.MILLISECONDS.toNanos(settings.longSetting("netting.window-millis", 10).get()));
+        String eventsPath = settings.stringSetting("events.path", null).get();
+        var eventLog = eventsPath == null ? null : new TransferEventLog(Path.of(eventsPath), settings.intSetting("events.buffer-bytes", 1 << 20).get());
+        var fxRates = new FxRates(settings.stringSetting("fx.base", Account.DEFAULT_CURRENCY).get(), FxRates.parseRates(settings.stringSetting("fx.rates", "").get()));
+        String clusterNodes = settings.stringSetting("cluster.nodes", null).get();
+        this.cluster = clusterNodes == null ? null : new ClusterRing(ClusterRing.parseNodes(clusterNodes), settings.stringSetting("cluster.node-id", null).get());
+        String clusterSecret = settings.stringSetting("cluster.secret", null).secret().get();
+        if (cluster != null && clusterSecret == null) {
+            throw new IllegalArgumentException("cluster.secret must be set for a cluster");
+        }
+        var clusterSignature = cluster == null ? null : new ClusterSignature(clusterSecret);
+        this.clusterPortOffset = settings.intSetting("cluster.port-offset", 1_000).get();
+        var clusterTransport = cluster == null ? null : new HttpClusterTransport(
+                Duration.ofMillis(settings.longSetting("cluster.request-timeout-millis", 1_000).get()), clusterSignature, clusterPortOffset);
+        var defaultTimeout = settings.longSetting("request.default-timeout-millis", 5_000);
+        var transferService = TransferService.builder(accountStore, transactionStore, transferQueue, withdrawalPoller)
+                .idempotencyCache(idempotencyCache)
+                .nettingWindow(nettingWindow)
+                .defaultTimeoutNanos(TimeUnit.MILLISECONDS.toNanos(defaultTimeout.get()))
+                .eventLog(eventLog)
+                .fxRates(fxRates)
+                .cluster(cluster, clusterTransport)
+                .rateLimiters(rateLimiter("ratelimit.account."), rateLimiter("ratelimit.user."))
+                .build();
+        defaultTimeout.live(millis -> transferService.setDefaultTimeoutNanos(TimeUnit.MILLISECONDS.toNanos(millis)));
+        // only a persistent account store's balances include what the journal held before this run
+        var balanceHistory = new BalanceHistory(accountStore, transactionStore, accountStore instanceof FileAccountStore ? journal : null,
+                settings.intSetting("balance-history.checkpoint-every", 64).get(),
+                settings.intSetting("balance-history.retained-checkpoints", BalanceHistory.DEFAULT_RETAINED_CHECKPOINTS).get(),
+                TimeUnit.MILLISECONDS.toNanos(settings.longSetting("balance-history.index-interval-millis", 100).get()));
+        var accountService = new AccountService(accountStore, balanceHistory);
+        var maxTimeout = settings.longSetting("request.max-timeout-millis", TransferHandler.DEFAULT_MAX_TIMEOUT_MILLIS);
+        this.transferHandler = new TransferHandler(transferService, maxTimeout.get());
+        maxTimeout.live(transferHandler::setMaxTimeoutMillis);
+        this.accountHandler = new AccountHandler(accountService, cluster);
+        var releasePerSecond = settings.intSetting("scheduler.release-per-second", 1_000);
+        var releaseBurst = settings.intSetting("scheduler.release-burst", 100);
+        String schedulesPath = settings.stringSetting("scheduler.path", null).get();
+        var scheduleFile = schedulesPath == null ? null : new ScheduleFile(Path.of(schedulesPath));
+        var transferScheduler = new TransferScheduler(transferService, SystemEpochClock.INSTANCE, releasePerSecond.get(), releaseBurst.get(), scheduleFile);
+        releasePerSecond.live(perSecond -> transferScheduler.setReleaseRate(perSecond, releaseBurst.get()));
+        releaseBurst.live(burst -> transferScheduler.setReleaseRate(releasePerSecond.get(), burst));
+        this.scheduledTransferHandler = new ScheduledTransferHandler(transferScheduler);
+        this.reconciliationHandler = new ReconciliationHandler(new LedgerReconciler(accountStore, transactionStore, transferQueue));
+        this.fxRatesHandler = new FxRatesHandler(fxRates);
+        this.adminPort = settings.intSetting("admin.port", 8090).get();
+        this.adminToken = settings.stringSetting("admin.token", null).secret().get();
+        this.clusterHandler = cluster == null ? null : new ClusterHandler(transferService, clusterSignature);
+        this.settingsHandler = new SettingsHandler(settings);
+        String trafficPath = settings.stringSetting("traffic.record-path", null).get();
+        this.trafficRecorder = trafficPath == null ? null : new TrafficRecorder(Path.of(trafficPath), settings.intSetting("traffic.buffer-bytes", 1 << 22).get());
+        // rapidoid's own worker pool handles requests in platform mode
+        this.requestExecutor = executionMode == ExecutionMode.VIRTUAL ? executionMode.newExecutor("request", 0) : null;
+
+        String queuedPath = settings.stringSetting("shutdown.queue-path", null).get();
+        var drainTimeout = settings.longSetting("shutdown.drain-timeout-millis", 10_000).readOnUse();
+        // set once shutdown starts, after which the queued file is only ever replaced by the one shutdown saves
+        var stopping = new AtomicBoolean();
+        if (queuedPath != null) {
+            var queued = QueuedTransferFile.load(Path.of(queuedPath));
+            // the file stays until the resumed transfers finish, so a crash before then resumes them again, from the
+            // journal position it was saved at
+            transferService.resume(queued, QueuedTransferFile.loadJournalPosition(Path.of(queuedPath))).thenRun(() -> {
+                synchronized (stopping) {
+                    if (!stopping.get()) {
+                        QueuedTransferFile.delete(Path.of(queuedPath));
+                    }
+                }
+            });
+            if (!queued.isEmpty()) {
+                LOGGER.info("Resumed {} transfers queued at the last shutdown", queued.size());
+            }
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized (stopping) {
+                stopping.set(true);
+            }
+            // in order: nothing new reaches the queue, the queue empties, and only then the stores it writes to close
+            transferScheduler.shutdown();
+            if (scheduleFile != null) {
+                scheduleFile.close();
+            }
+            // the deadline bounds the whole stop; without a path to save to, what is left is answered as refused
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(drainTimeout.get());
+            long deadlineNanos = System.nanoTime() + timeoutNanos;
+            var left = transferQueue.drain(timeoutNanos, queuedPath != null);
+            var open = transferService.shutdown(deadlineNanos);
+            if (queuedPath != null) {
+                var queued = new ArrayList<QueuedTransfer>();
+                left.stream().map(MoneyTransferTask::toQueuedTransfer).filter(Objects::nonNull).forEach(queued::add);
+                queued.addAll(open);
+                long journalPosition = transactionStore instanceof FileTransactionStore fileTransactionStore ? fileTransactionStore.getPosition() : 0;
+                QueuedTransferFile.save(Path.of(queuedPath), queued, journalPosition);
+                LOGGER.info("Saved {} transfers still queued, withdrawing or reserved at shutdown to {}", queued.size(), queuedPath);
+            } else if (!open.isEmpty()) {
+                LOGGER.warn("{} withdrawals and cross-node transfers still running at shutdown keep their funds reserved: {}", open.size(),
+                        open.stream().map(QueuedTransfer::taskId).toList());
+            }
+            balanceHistory.shutdown();
+            if (accountStore instanceof FileAccountStore fileAccountStore) {
+                fileAccountStore.close();
+            }
+            if (transactionStore instanceof FileTransactionStore fileTransactionStore) {
+                fileTransactionStore.close();
+            }
+            if (eventLog != null) {
+                eventLog.close();
+            }
+            if (trafficRecorder != null) {
+                trafficRecorder.close();
+            }
+            if (archive != null) {
+                archive.close();
+            }
+        }, "shutdown"));
+    }
+
+    // off unless given a rate at startup; once on, its rate and burst are live
+    private RateLimiter rateLimiter(String prefix) {
+        var perSecond = settings.intSetting(prefix + "per-second", 0);
+        var burst = settings.intSetting(prefix + "burst", 20);
+        int expectedKeys = settings.intSetting(prefix + "expected-keys", 1 << 16).get();
+        if (perSecond.get() <= 0) {
+            return null;
+        }
+        var limiter = new RateLimiter(perSecond.get(), burst.get(), expectedKeys);
+        perSecond.live(rate -> limiter.setRate(rate, burst.get()));
+        burst.live(size -> limiter.setRate(perSecond.get(), size));
+        return limiter;
     }
 
     public static void main(String[] args) {
@@ -28,18 +281,117 @@ public class Main {
     }
 
     private void start() {
+        if (cluster != null) {
+            On.port(cluster.getLocalNode().port());
+            // peers only, on a listener of its own so the public port never serves cluster messages
+            Setup internal = Setup.create("cluster").port(HttpClusterTransport.clusterPort(cluster.getLocalNode(), clusterPortOffset));
+            internal.post("/cluster/credit").plain(clusterHandler::handleCreditRequest);
+            internal.post("/cluster/abort").plain(clusterHandler::handleAbortRequest);
+        }
+        On.get("/ready").json(readinessHandler::handleReadyRequest);
         setupTransferEndpoints();
         setupAccountEndpoints();
+        setupAdminEndpoints();
+        int warmupIterations = settings.intSetting("warmup.iterations", 0).get();
+        if (warmupIterations > 0) {
+            // through the request executor like live traffic, but never recorded as traffic
+            new Warmup(warmupIterations, this::onExecutor).run();
+        }
+        readinessHandler.markReady();
     }
 
     private void setupTransferEndpoints() {
-        On.post("/transfer").json(transferHandler::handleTransferRequest);
-        On.post("/external-transfer").json(transferHandler::handleExternalTransferRequest);
-        On.get("/transfer-progress").json(transferHandler::handleProgressRequest);
+        On.post("/transfer").json(dispatch(transferHandler::handleTransferRequest));
+        On.post("/external-transfer").json(dispatch(transferHandler::handleExternalTransferRequest));
+        On.get("/transfer-progress").json(dispatch(transferHandler::handleProgressRequest));
+        // push endpoints never block a thread, so they skip dispatch
+        On.get("/transfer-progress/wait").json(transferHandler::handleProgressWaitRequest);
+        On.get("/transfer-progress/stream").serve(transferHandler::handleProgressStreamRequest);
+        On.post("/scheduled-transfer").json(dispatch(scheduledTransferHandler::handleScheduleRequest));
+        On.get("/scheduled-transfer").json(dispatch(scheduledTransferHandler::handleStatusRequest));
+        On.delete("/scheduled-transfer").json(dispatch(scheduledTransferHandler::handleCancelRequest));
     }
 
     private void setupAccountEndpoints() {
-        On.post("/create-account").json(accountHandler::handleAccountCreationRequest);
-        On.get("/balance").json(accountHandler::handleBalanceRequest);
+        On.post("/create-account").json(dispatch(accountHandler::handleAccountCreationRequest));
+        On.get("/balance").json(dispatch(accountHandler::handleBalanceRequest));
+    }
+
+    // operators only: a listener of its own, every request carrying the admin token, and never recorded as traffic
+    private void setupAdminEndpoints() {
+        if (adminToken == null) {
+            LOGGER.warn("admin.token is not set, so the admin endpoints are off");
+            return;
+        }
+        Setup admin = Setup.create("management").port(adminPort);
+        admin.post("/fx-rates").json(authorized(fxRatesHandler::handleRatesUpdateRequest));
+        // a full pass loads the worker and the common pool, and every pass moves the reconciled baselines
+        admin.post("/reconciliation").json(authorized(onExecutor(reconciliationHandler::handleReconciliationRequest)));
+        admin.get("/admin/settings").json(authorized(settingsHandler::handleListRequest));
+        admin.post("/admin/settings").json(authorized(settingsHandler::handleUpdateRequest));
+    }
+
+    private ReqRespHandler authorized(ReqRespHandler handler) {
+        byte[] expected = ("Bearer " + adminToken).getBytes(StandardCharsets.UTF_8);
+        return (req, resp) -> {
+            String given = req.header("Authorization", null);
+            // constant time, so the time taken gives away nothing about the token
+            if (given == null || !MessageDigest.isEqual(expected, given.getBytes(StandardCharsets.UTF_8))) {
+                resp.code(401);
+                return Map.of("status", "FAILURE", "message", "Unauthorized");
+            }
+            return handler.execute(req, resp);
+        };
+    }
+
+    private ReqRespHandler dispatch(ReqRespHandler target) {
+        return onExecutor(trafficRecorder == null ? target : recorded(target));
+    }
+
+    private ReqRespHandler onExecutor(ReqRespHandler handler) {
+        if (requestExecutor == null) {
+            return handler;
+        }
+        return (req, resp) -> {
+            req.async();
+            requestExecutor.execute(() -> {
+                try {
+                    resp.result(handler.execute(req, resp));
+                } catch (Exception e) {
+                    resp.code(500);
+                    resp.result(Map.of("status", "FAILURE", "message", String.valueOf(e.getMessage())));
+                } finally {
+                    req.done();
+                }
+            });
+            return req;
+        };
+    }
+
+    private ReqRespHandler recorded(ReqRespHandler handler) {
+        EpochNanoClock clock = new SystemEpochNanoClock();
+        return (req, resp) -> {
+            long startEpochNanos = clock.nanoTime();
+            long start = System.nanoTime();
+            Object result = handler.execute(req, resp);
+            long latencyNanos = System.nanoTime() - start;
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (String name : List.of(TransferHandler.IDEMPOTENCY_KEY_HEADER, TransferHandler.REQUEST_TIMEOUT_HEADER)) {
+                String value = req.header(name, null);
+                if (value != null) {
+                    headers.put(name, value);
+                }
+            }
+            trafficRecorder.record(startEpochNanos, latencyNanos, resp.code(), req.verb(), req.path(), req.query(), formBody(req.posted()), headers);
+            return result;
+        };
+    }
+
+    private static String formBody(Map<String, Object> posted) {
+        StringBuilder body = new StringBuilder();
+        posted.forEach((name, value) -> body.append(body.isEmpty() ? "" : "&")
+                .append(URLEncoder.encode(name, StandardCharsets.UTF_8)).append('=')
+                .append(URLEncoder.encode(String.valueOf(value), StandardCharsets.UTF_8)));
+        return body.toString();
     }
 }
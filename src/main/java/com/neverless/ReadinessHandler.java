@@ -0,0 +1,28 @@
+package com.neverless;
+
+import org.rapidoid.http.Req;
+import org.rapidoid.http.Resp;
+
+import java.util.Map;
+
+public class ReadinessHandler {
+    private volatile boolean ready;
+
+    /**
+     * Answers 503 {@code WARMING_UP} until {@link #markReady()}, then 200 {@code READY}, so a load balancer only sends
+     * traffic once warm-up has finished.
+     */
+    public Map<String, Object> handleReadyRequest(Req req, Resp resp) {
+        boolean isReady = ready;
+        resp.code(isReady ? 200 : 503);
+        return Map.of("status", isReady ? "READY" : "WARMING_UP");
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+}
@@ -0,0 +1,47 @@
+package com.neverless;
+
+import com.neverless.model.TransferResult;
+import com.neverless.service.LedgerReconciler;
+import org.rapidoid.http.Req;
+import org.rapidoid.http.Resp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class ReconciliationHandler {
+    private final LedgerReconciler ledgerReconciler;
+
+    public ReconciliationHandler(LedgerReconciler ledgerReconciler) {
+        this.ledgerReconciler = ledgerReconciler;
+    }
+
+    public Map<String, Object> handleReconciliationRequest(Req req, Resp resp) {
+        boolean all = "true".equals(req.posted("all", null));
+        LedgerReconciler.Report report = all ? ledgerReconciler.reconcileAll() : ledgerReconciler.reconcile();
+
+        List<Map<String, Object>> discrepancies = new ArrayList<>();
+        for (LedgerReconciler.Discrepancy discrepancy : report.discrepancies()) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("accountId", discrepancy.accountId());
+            entry.put("expected", discrepancy.expected());
+            entry.put("actual", discrepancy.actual());
+            discrepancies.add(entry);
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", report.discrepancyCount() == 0 ? TransferResult.Status.SUCCESS.name() : TransferResult.Status.FAILURE.name());
+        response.put("fromPosition", report.fromPosition());
+        response.put("toPosition", report.toPosition());
+        response.put("accountsExamined", report.accountsExamined());
+        response.put("expectedTotal", report.expectedTotal());
+        response.put("actualTotal", report.actualTotal());
+        response.put("externalOutflow", report.externalOutflow());
+        response.put("discrepancyCount", report.discrepancyCount());
+        response.put("discrepancies", discrepancies);
+        response.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(report.elapsedNanos()));
+        resp.code(200);
+        return response;
+    }
+}
@@ -0,0 +1,85 @@
+package com.neverless;
+
+import com.neverless.model.Amount;
+import com.neverless.model.TransferResult;
+import com.neverless.service.TransferScheduler;
+import org.rapidoid.http.Req;
+import org.rapidoid.http.Resp;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ScheduledTransferHandler {
+    private final TransferScheduler transferScheduler;
+
+    public ScheduledTransferHandler(TransferScheduler transferScheduler) {
+        this.transferScheduler = transferScheduler;
+    }
+
+    public Map<String, Object> handleScheduleRequest(Req req, Resp resp) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            String fromAccountId = req.posted("fromAccountId");
+            String toAccountId = req.posted("toAccountId");
+            String amountStr = req.posted("amount");
+            String executeAtStr = req.posted("executeAt");
+            String intervalStr = req.posted("intervalMillis", "0");
+            BigDecimal amountValue = new BigDecimal(amountStr);
+            long executeAt = Long.parseLong(executeAtStr);
+            long intervalMillis = Long.parseLong(intervalStr);
+            if (amountValue.signum() <= 0) {
+                throw new IllegalArgumentException("Amount must be positive");
+            }
+            String scheduleId = transferScheduler.schedule(fromAccountId, toAccountId, new Amount(amountValue), executeAt, intervalMillis);
+            response.put("status", TransferResult.Status.ACCEPTED.name());
+            response.put("scheduleId", scheduleId);
+            resp.code(202);
+        } catch (IllegalArgumentException e) {
+            response.put("status", TransferResult.Status.FAILURE.name());
+            response.put("message", e.getMessage());
+            resp.code(400);
+        }
+        return response;
+    }
+
+    public Map<String, Object> handleCancelRequest(Req req, Resp resp) {
+        String scheduleId = req.param("scheduleId");
+        Map<String, Object> response = new HashMap<>();
+        if (transferScheduler.cancel(scheduleId)) {
+            response.put("status", TransferResult.Status.SUCCESS.name());
+            resp.code(200);
+        } else {
+            response.put("status", TransferResult.Status.FAILURE.name());
+            response.put("message", "Unknown schedule");
+            resp.code(404);
+        }
+        return response;
+    }
+
+    public Map<String, Object> handleStatusRequest(Req req, Resp resp) {
+        String scheduleId = req.param("scheduleId");
+        TransferScheduler.Schedule schedule = transferScheduler.getSchedule(scheduleId);
+        Map<String, Object> response = new HashMap<>();
+        if (schedule == null) {
+            response.put("status", TransferResult.Status.FAILURE.name());
+            response.put("message", "Unknown schedule");
+            resp.code(404);
+            return response;
+        }
+        response.put("scheduleId", schedule.getId());
+        response.put("fromAccountId", schedule.getFromAccountId());
+        response.put("toAccountId", schedule.getToAccountId());
+        response.put("amount", schedule.getAmount().getValue());
+        response.put("intervalMillis", schedule.getIntervalMillis());
+        response.put("nextRunAt", schedule.getNextRunAtMillis());
+        response.put("runs", schedule.getRuns());
+        TransferResult lastResult = schedule.getLastResult();
+        if (lastResult != null) {
+            response.put("lastStatus", lastResult.getStatus().name());
+            response.put("lastTaskId", lastResult.getTaskId());
+        }
+        resp.code(200);
+        return response;
+    }
+}
@@ -0,0 +1,60 @@
+package com.neverless;
+
+import com.neverless.service.Settings;
+import org.rapidoid.http.Req;
+import org.rapidoid.http.Resp;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SettingsHandler {
+    private static final String REDACTED = "********";
+
+    private final Settings settings;
+
+    public SettingsHandler(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Lists every setting with its current value, apart from secret ones, and whether it can be changed without a
+     * restart.
+     */
+    public Map<String, Object> handleListRequest(Req req, Resp resp) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        settings.getSettings().forEach((name, setting) -> {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("value", setting.isSecret() && setting.get() != null ? REDACTED : setting.get());
+            entry.put("live", setting.isLive());
+            values.put(name, entry);
+        });
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "SUCCESS");
+        response.put("settings", values);
+        resp.code(200);
+        return response;
+    }
+
+    /**
+     * Changes a live setting, e.g. {@code name=queue.internal.capacity&value=4096}.
+     */
+    public Map<String, Object> handleUpdateRequest(Req req, Resp resp) {
+        String name = req.posted("name", "");
+        String value = req.posted("value", "");
+
+        Map<String, Object> response = new HashMap<>();
+        try {
+            settings.update(name, value);
+            response.put("status", "SUCCESS");
+            response.put("name", name);
+            response.put("value", settings.getSettings().get(name).get());
+            resp.code(200);
+        } catch (IllegalArgumentException e) {
+            response.put("status", "FAILURE");
+            response.put("message", e.getMessage());
+            resp.code(400);
+        }
+        return response;
+    }
+}
@@ -3,19 +3,61 @@ package com.neverless;
 import com.neverless.model.Amount;
 import com.neverless.model.TransferProgress;
 import com.neverless.model.TransferResult;
+import com.neverless.model.TransferStatus;
+import com.neverless.service.ProgressListener;
 import com.neverless.service.TransferService;
+import org.rapidoid.data.JSON;
+import org.rapidoid.http.MediaType;
 import org.rapidoid.http.Req;
 import org.rapidoid.http.Resp;
+import org.rapidoid.http.impl.ReqImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class TransferHandler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferHandler.class);
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String REQUEST_TIMEOUT_HEADER = "Request-Timeout";
+    private static final long DEFAULT_WAIT_MILLIS = 30_000;
+    private static final long MAX_WAIT_MILLIS = 60_000;
+    static final long DEFAULT_MAX_TIMEOUT_MILLIS = 60_000;
+    private static final MediaType EVENT_STREAM = MediaType.create("text/event-stream");
+    private static final long STREAM_HEARTBEAT_MILLIS = 15_000;
+    private static final long MAX_STREAM_MILLIS = 10 * 60_000;
+    private static final byte[] HEARTBEAT = ": heartbeat\n\n".getBytes(StandardCharsets.UTF_8);
+
     private final TransferService transferService;
+    private final ScheduledExecutorService streamTimer;
+    private volatile long maxTimeoutMillis;
 
     public TransferHandler(TransferService transferService) {
+        this(transferService, DEFAULT_MAX_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param maxTimeoutMillis - longest {@value #REQUEST_TIMEOUT_HEADER} honoured; longer ones are cut to it
+     */
+    public TransferHandler(TransferService transferService, long maxTimeoutMillis) {
         this.transferService = transferService;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+        this.streamTimer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("progress-stream-timer").daemon().factory());
+    }
+
+    public void setMaxTimeoutMillis(long maxTimeoutMillis) {
+        if (maxTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Maximum timeout must be positive");
+        }
+        this.maxTimeoutMillis = maxTimeoutMillis;
     }
 
     public Map<String, Object> handleTransferRequest(Req req, Resp resp) {
@@ -23,14 +65,28 @@ public class TransferHandler {
         String toAccountId = req.posted("toAccountId");
         String amountStr = req.posted("amount");
         BigDecimal amountValue = new BigDecimal(amountStr);
-        Amount amount = new Amount(amountValue);
+        Amount amount = new Amount(amountValue, req.posted("currency", null));
 
-        TransferResult result = transferService.transfer(fromAccountId, toAccountId, amount);
+        String idempotencyKey = req.header(IDEMPOTENCY_KEY_HEADER, null);
+        String timeoutMillis = req.header(REQUEST_TIMEOUT_HEADER, null);
+        long timeoutNanos = timeoutMillis == null ? 0 : timeoutNanos(timeoutMillis);
+        if (timeoutNanos < 0) {
+            return invalidTimeout(timeoutMillis, resp);
+        }
+        TransferResult result;
+        if (timeoutMillis != null) {
+            result = transferService.transfer(fromAccountId, toAccountId, amount, idempotencyKey, timeoutNanos);
+        } else if (idempotencyKey == null) {
+            result = transferService.transfer(fromAccountId, toAccountId, amount);
+        } else {
+            result = transferService.transfer(fromAccountId, toAccountId, amount, idempotencyKey);
+        }
 
         Map<String, Object> response = new HashMap<>();
         response.put("status", result.getStatus().name());
         response.put("message", result.getMessage());
         response.put("taskId", result.getTaskId());
+        applyRetryHint(result, response, resp);
         resp.code(getResponseCode(result));
 
         return response;
@@ -41,14 +97,32 @@ public class TransferHandler {
         String externalAddress = req.posted("externalAddress");
         String amountStr = req.posted("amount");
         BigDecimal amountValue = new BigDecimal(amountStr);
-        Amount amount = new Amount(amountValue);
+        Amount amount = new Amount(amountValue, req.posted("currency", null));
 
-        TransferResult result = transferService.externalTransfer(fromAccountId, externalAddress, amount);
+        String idempotencyKey = req.header(IDEMPOTENCY_KEY_HEADER, null);
+        String timeoutMillis = req.header(REQUEST_TIMEOUT_HEADER, null);
+        long timeoutNanos = timeoutMillis == null ? 0 : timeoutNanos(timeoutMillis);
+        if (timeoutNanos < 0) {
+            return invalidTimeout(timeoutMillis, resp);
+        }
+        TransferResult result;
+        if ("true".equals(req.posted("async", null))) {
+            result = timeoutMillis == null
+                    ? transferService.submitExternalTransfer(fromAccountId, externalAddress, amount)
+                    : transferService.submitExternalTransfer(fromAccountId, externalAddress, amount, timeoutNanos);
+        } else if (timeoutMillis != null) {
+            result = transferService.externalTransfer(fromAccountId, externalAddress, amount, idempotencyKey, timeoutNanos);
+        } else if (idempotencyKey == null) {
+            result = transferService.externalTransfer(fromAccountId, externalAddress, amount);
+        } else {
+            result = transferService.externalTransfer(fromAccountId, externalAddress, amount, idempotencyKey);
+        }
 
         Map<String, Object> response = new HashMap<>();
         response.put("status", result.getStatus().name());
         response.put("message", result.getMessage());
         response.put("taskId", result.getTaskId());
+        applyRetryHint(result, response, resp);
         resp.code(getResponseCode(result));
 
         return response;
@@ -66,17 +140,206 @@ public class TransferHandler {
         return response;
     }
 
+    /**
+     * Long-poll: answers as soon as the transfer's status differs from {@code lastStatus}, or with the unchanged
+     * status once {@code timeoutMillis} has passed.
+     */
+    public Object handleProgressWaitRequest(Req req, Resp resp) {
+        String transferId = req.param("transferId");
+        String lastStatus = req.param("lastStatus", null);
+        long timeoutMillis = Math.min(MAX_WAIT_MILLIS, Long.parseLong(req.param("timeoutMillis", String.valueOf(DEFAULT_WAIT_MILLIS))));
+
+        CompletableFuture<TransferStatus> change = new CompletableFuture<>();
+        ProgressListener listener = (id, status) -> {
+            if (!status.name().equals(lastStatus)) {
+                change.complete(status);
+            }
+        };
+        TransferStatus current = transferService.subscribeToProgress(transferId, listener).getStatus();
+        if (!current.name().equals(lastStatus) || current.isFinal() || current == TransferStatus.UNKNOWN) {
+            transferService.unsubscribeFromProgress(transferId, listener);
+            resp.code(200);
+            return progressResponse(transferId, current);
+        }
+
+        req.async();
+        change.completeOnTimeout(current, timeoutMillis, TimeUnit.MILLISECONDS).whenCompleteAsync((status, error) -> {
+            transferService.unsubscribeFromProgress(transferId, listener);
+            resp.code(200);
+            resp.result(progressResponse(transferId, status));
+            req.done();
+        });
+        return req;
+    }
+
+    /**
+     * Server-Sent Events: pushes every status the transfer moves through and ends the stream at its final status.
+     * A heartbeat comment is sent every {@value #STREAM_HEARTBEAT_MILLIS} ms, which is also when a client that went
+     * away is noticed and unsubscribed, and no stream outlives {@value #MAX_STREAM_MILLIS} ms; a client still waiting
+     * then reconnects.
+     */
+    public Object handleProgressStreamRequest(Req req, Resp resp) {
+        String transferId = req.param("transferId");
+        req.async();
+        resp.code(200);
+        resp.contentType(EVENT_STREAM);
+        resp.header("Cache-Control", "no-cache");
+
+        ProgressStream stream = new ProgressStream(req, resp, transferId);
+        TransferStatus current = transferService.subscribeToProgress(transferId, stream).getStatus();
+        streamTimer.execute(() -> stream.open(current));
+        return req;
+    }
+
+    private static Map<String, Object> progressResponse(String transferId, TransferStatus status) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("transferId", transferId);
+        response.put("status", status.name());
+        return response;
+    }
+
+    // cut to the maximum, so a huge value can neither saturate the conversion nor overflow the deadline; -1 if invalid
+    private long timeoutNanos(String timeoutMillis) {
+        long millis;
+        try {
+            millis = Long.parseLong(timeoutMillis.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return TimeUnit.MILLISECONDS.toNanos(Math.min(maxTimeoutMillis, Math.max(0, millis)));
+    }
+
+    private static Map<String, Object> invalidTimeout(String timeoutMillis, Resp resp) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", TransferResult.Status.FAILURE.name());
+        response.put("message", REQUEST_TIMEOUT_HEADER + " must be a whole number of milliseconds: " + timeoutMillis);
+        resp.code(400);
+        return response;
+    }
+
+    private void applyRetryHint(TransferResult result, Map<String, Object> response, Resp resp) {
+        if (result.getErrorCode() == TransferResult.ErrorCode.OVERLOADED || result.getErrorCode() == TransferResult.ErrorCode.RATE_LIMITED
+                || result.getErrorCode() == TransferResult.ErrorCode.SHUTTING_DOWN) {
+            long retryAfterMillis = result.getRetryAfterMillis();
+            response.put("retryAfterMillis", retryAfterMillis);
+            resp.header("Retry-After", String.valueOf(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryAfterMillis + 999))));
+        }
+    }
+
     private int getResponseCode(TransferResult result) {
         if (result.getStatus() == TransferResult.Status.SUCCESS) {
             return 200; // OK
+        } else if (result.getStatus() == TransferResult.Status.ACCEPTED) {
+            return 202; // Accepted
         } else if (result.getErrorCode() == TransferResult.ErrorCode.TIMEOUT) {
             return 408; // Request Timeout
         } else if (result.getErrorCode() == TransferResult.ErrorCode.INSUFFICIENT_FUNDS) {
             return 400; // Bad Request
+        } else if (result.getErrorCode() == TransferResult.ErrorCode.INVALID_CURRENCY) {
+            return 400; // Bad Request
         } else if (result.getErrorCode() == TransferResult.ErrorCode.INVALID_ACCOUNT) {
             return 404; // Not Found
+        } else if (result.getErrorCode() == TransferResult.ErrorCode.IDEMPOTENCY_KEY_REUSED) {
+            return 422; // Unprocessable Entity
+        } else if (result.getErrorCode() == TransferResult.ErrorCode.OVERLOADED) {
+            return 429; // Too Many Requests
+        } else if (result.getErrorCode() == TransferResult.ErrorCode.RATE_LIMITED) {
+            return 429; // Too Many Requests
+        } else if (result.getErrorCode() == TransferResult.ErrorCode.DEADLINE_EXCEEDED) {
+            return 504; // Gateway Timeout
+        } else if (result.getErrorCode() == TransferResult.ErrorCode.WRONG_NODE) {
+            return 421; // Misdirected Request
+        } else if (result.getErrorCode() == TransferResult.ErrorCode.SHUTTING_DOWN) {
+            return 503; // Service Unavailable
         } else {
             return 500; // Internal Server Error
         }
     }
+
+    // every write, heartbeat and close runs on the stream timer's single thread, so the worker only queues the event
+    // and never waits on a slow client, and events keep their order without locking
+    private final class ProgressStream implements ProgressListener {
+        private final Req req;
+        private final Resp resp;
+        private final String transferId;
+        private TransferStatus lastSent;
+        private boolean closed;
+        private ScheduledFuture<?> heartbeat;
+        private ScheduledFuture<?> expiry;
+
+        private ProgressStream(Req req, Resp resp, String transferId) {
+            this.req = req;
+            this.resp = resp;
+            this.transferId = transferId;
+        }
+
+        @Override
+        public void onStatus(String transferId, TransferStatus status) {
+            streamTimer.execute(() -> write(status));
+        }
+
+        private void open(TransferStatus current) {
+            write(current);
+            if (current == TransferStatus.UNKNOWN) {
+                close();
+            } else if (!closed) {
+                heartbeat = streamTimer.scheduleAtFixedRate(this::heartbeat, STREAM_HEARTBEAT_MILLIS, STREAM_HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                expiry = streamTimer.schedule(this::close, MAX_STREAM_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        // the initial status and worker updates may race, so repeats are dropped
+        private void write(TransferStatus status) {
+            if (closed || status == lastSent) {
+                return;
+            }
+            lastSent = status;
+            String event = "event: status\ndata: " + JSON.stringify(progressResponse(transferId, status)) + "\n\n";
+            if (send(event.getBytes(StandardCharsets.UTF_8)) && status.isFinal()) {
+                close();
+            }
+        }
+
+        private void heartbeat() {
+            if (!closed) {
+                send(HEARTBEAT);
+            }
+        }
+
+        private boolean send(byte[] chunk) {
+            if (connectionClosed()) {
+                close();
+                return false;
+            }
+            try {
+                resp.chunk(chunk);
+                return true;
+            } catch (RuntimeException e) {
+                LOGGER.debug("Progress stream for {} lost its client", transferId, e);
+                close();
+                return false;
+            }
+        }
+
+        private boolean connectionClosed() {
+            return req instanceof ReqImpl impl && impl.channel().isClosed();
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            transferService.unsubscribeFromProgress(transferId, this);
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+            }
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            if (!connectionClosed()) {
+                req.done();
+            }
+        }
+    }
 }
@@ -0,0 +1,251 @@
+package com.neverless;
+
+import com.neverless.model.Account;
+import com.neverless.service.AccountService;
+import com.neverless.service.AdmissionControl;
+import com.neverless.service.BalanceHistory;
+import com.neverless.service.FxRates;
+import com.neverless.service.GroupCommit;
+import com.neverless.service.IdempotencyCache;
+import com.neverless.service.Lane;
+import com.neverless.service.NettingWindow;
+import com.neverless.service.RateLimiter;
+import com.neverless.service.TransferQueue;
+import com.neverless.service.TransferService;
+import com.neverless.service.WithdrawalPoller;
+import com.neverless.service.WithdrawalServiceStub;
+import com.neverless.store.FileAccountStore;
+import com.neverless.store.FileTransactionStore;
+import com.neverless.store.TransferEventLog;
+import org.rapidoid.data.JSON;
+import org.rapidoid.http.ReqRespHandler;
+import org.rapidoid.setup.Setup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Sends synthetic requests over loopback HTTP to the real handlers, wired to the same production components the
+ * server uses: the journal with group commit, file-backed balances, lanes with admission control, netting, FX
+ * conversion, rate limiting, the event log and balance history. Requests go through the server's own dispatch, so the
+ * request executor is warmed too. By the time live traffic arrives the JIT has compiled these paths. All of it runs
+ * against scratch files in a temporary directory and a listener bound to 127.0.0.1 only, and is thrown away
+ * afterwards, so the server's own state is never touched.
+ */
+final class Warmup {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Warmup.class);
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // enough concurrent clients for group commit to batch and for lanes to queue
+    private static final int CLIENTS = 8;
+    private static final String NETTED_FROM = "warmup-net-a";
+    private static final String NETTED_TO = "warmup-net-b";
+    private static final String CONVERTED_TO = "warmup-eur";
+
+    private final int iterations;
+    private final UnaryOperator<ReqRespHandler> dispatch;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger serverErrors = new AtomicInteger();
+
+    /**
+     * @param dispatch - how the server wraps its blocking handlers, so warm-up runs them the same way
+     */
+    Warmup(int iterations, UnaryOperator<ReqRespHandler> dispatch) {
+        this.iterations = iterations;
+        this.dispatch = dispatch;
+    }
+
+    Report run() {
+        long start = System.nanoTime();
+        Path directory = createDirectory();
+        var journal = new FileTransactionStore(directory.resolve("journal"));
+        var accountStore = new FileAccountStore(directory.resolve("accounts"), journal, TimeUnit.MILLISECONDS.toNanos(100));
+        var groupCommit = new GroupCommit(journal, 256, TimeUnit.MICROSECONDS.toNanos(200));
+        var lanes = new EnumMap<Lane, Lane.Settings>(Lane.class);
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new Lane.Settings(1024, lane.defaultWeight()));
+        }
+        var transferQueue = new TransferQueue(lanes, groupCommit, new AdmissionControl(1024, TimeUnit.SECONDS.toNanos(2)));
+        var withdrawalPoller = new WithdrawalPoller(new WithdrawalServiceStub(0, 2),
+                TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MICROSECONDS.toNanos(100), 1024);
+        var eventLog = new TransferEventLog(directory.resolve("events"), 1 << 16);
+        // limits high enough never to refuse, so every transfer still runs the check
+        var transferService = TransferService.builder(accountStore, journal, transferQueue, withdrawalPoller)
+                .idempotencyCache(new IdempotencyCache(iterations + 1, TimeUnit.MINUTES.toNanos(1)))
+                .nettingWindow(new NettingWindow(List.<String[]>of(new String[]{NETTED_FROM, NETTED_TO}), TimeUnit.MILLISECONDS.toNanos(10)))
+                .eventLog(eventLog)
+                .fxRates(new FxRates(Account.DEFAULT_CURRENCY, Map.of("EUR", new BigDecimal("0.9"))))
+                .rateLimiters(new RateLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, 1 << 10), new RateLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, 1 << 10))
+                .build();
+        var balanceHistory = new BalanceHistory(accountStore, journal, 64, TimeUnit.MILLISECONDS.toNanos(100));
+        var transferHandler = new TransferHandler(transferService);
+        var accountHandler = new AccountHandler(new AccountService(accountStore, balanceHistory));
+        Setup listener = Setup.create("warmup").address("127.0.0.1").port(freePort());
+        listener.post("/transfer").json(dispatch.apply(transferHandler::handleTransferRequest));
+        listener.post("/external-transfer").json(dispatch.apply(transferHandler::handleExternalTransferRequest));
+        listener.get("/transfer-progress").json(dispatch.apply(transferHandler::handleProgressRequest));
+        listener.post("/create-account").json(dispatch.apply(accountHandler::handleAccountCreationRequest));
+        listener.get("/balance").json(dispatch.apply(accountHandler::handleBalanceRequest));
+        String base = "http://127.0.0.1:" + listener.port();
+        long syncs;
+        try {
+            createAccount(base, NETTED_FROM, Account.DEFAULT_CURRENCY);
+            createAccount(base, NETTED_TO, Account.DEFAULT_CURRENCY);
+            createAccount(base, CONVERTED_TO, "EUR");
+            try (ExecutorService clients = Executors.newFixedThreadPool(CLIENTS, Thread.ofPlatform().name("warmup-client-", 0).daemon().factory())) {
+                for (int client = 0; client < CLIENTS; client++) {
+                    int first = client;
+                    clients.execute(() -> {
+                        for (int i = first; i < iterations; i += CLIENTS) {
+                            iteration(base, i);
+                        }
+                    });
+                }
+            }
+            // in the same order as a server shutdown, so warm-up leaves nothing running
+            transferQueue.drain(DRAIN_TIMEOUT_NANOS, false);
+            transferService.shutdown(System.nanoTime() + DRAIN_TIMEOUT_NANOS);
+        } finally {
+            listener.halt();
+            client.close();
+            withdrawalPoller.shutdown();
+            transferQueue.shutdown();
+            syncs = groupCommit.getSyncCount();
+            balanceHistory.shutdown();
+            accountStore.close();
+            journal.close();
+            eventLog.close();
+            deleteDirectory(directory);
+        }
+        var report = new Report(requests.get(), serverErrors.get(), syncs);
+        LOGGER.info("Warm-up of {} iterations finished in {} ms: {} requests, {} server errors, {} group commits", iterations,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), report.requests(), report.serverErrors(), report.groupCommits());
+        return report;
+    }
+
+    private void iteration(String base, int i) {
+        String from = "warmup-from-" + i;
+        String to = "warmup-to-" + i;
+        createAccount(base, from, Account.DEFAULT_CURRENCY);
+        createAccount(base, to, Account.DEFAULT_CURRENCY);
+        // success, insufficient funds and invalid account
+        post(base, "/transfer", Map.of("fromAccountId", from, "toAccountId", to, "amount", "10"), null);
+        post(base, "/transfer", Map.of("fromAccountId", from, "toAccountId", to, "amount", "1000000"), null);
+        post(base, "/transfer", Map.of("fromAccountId", from, "toAccountId", "warmup-missing", "amount", "1"), null);
+        // first attempt and replay of an idempotent retry
+        Map<String, String> retry = Map.of("fromAccountId", from, "toAccountId", to, "amount", "1");
+        post(base, "/transfer", retry, "warmup-" + i);
+        post(base, "/transfer", retry, "warmup-" + i);
+        // netted both ways, and converted into another currency
+        post(base, "/transfer", Map.of("fromAccountId", NETTED_FROM, "toAccountId", NETTED_TO, "amount", "1"), null);
+        post(base, "/transfer", Map.of("fromAccountId", NETTED_TO, "toAccountId", NETTED_FROM, "amount", "1"), null);
+        post(base, "/transfer", Map.of("fromAccountId", from, "toAccountId", CONVERTED_TO, "amount", "1"), null);
+        // the stub completes or fails withdrawals at random, covering both the settle and rollback paths
+        Map<String, Object> accepted = post(base, "/external-transfer", Map.of("fromAccountId", from,
+                "externalAddress", "warmup-address", "amount", "5", "async", "true"), null);
+        get(base, "/transfer-progress?transferId=" + encode(String.valueOf(accepted.get("taskId"))));
+        get(base, "/balance?accountId=" + encode(from));
+        get(base, "/balance?accountId=" + encode(from) + "&asOf=" + System.currentTimeMillis());
+    }
+
+    private void createAccount(String base, String accountId, String currency) {
+        post(base, "/create-account", Map.of("accountId", accountId, "userId", "warmup", "initialBalance", "1000", "currency", currency), null);
+    }
+
+    private Map<String, Object> post(String base, String path, Map<String, String> form, String idempotencyKey) {
+        StringBuilder body = new StringBuilder();
+        form.forEach((name, value) -> body.append(body.isEmpty() ? "" : "&")
+                .append(encode(name)).append('=').append(encode(value)));
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()));
+        if (idempotencyKey != null) {
+            request.header(TransferHandler.IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+        }
+        return send(request.build());
+    }
+
+    private Map<String, Object> get(String base, String pathAndQuery) {
+        return send(HttpRequest.newBuilder(URI.create(base + pathAndQuery)).GET().build());
+    }
+
+    private Map<String, Object> send(HttpRequest request) {
+        requests.incrementAndGet();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() >= 500) {
+                if (serverErrors.getAndIncrement() == 0) {
+                    LOGGER.warn("Warm-up request {} answered {}: {}", request.uri().getPath(), response.statusCode(), response.body());
+                }
+            }
+            return JSON.parseMap(response.body());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during warm-up", e);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path createDirectory() {
+        try {
+            return Files.createTempDirectory("warmup");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete warm-up directory {}", directory, e);
+        }
+    }
+
+    /**
+     * @param requests     - requests sent
+     * @param serverErrors - of those, answered with a 5xx
+     * @param groupCommits - journal syncs group commit made
+     */
+    record Report(int requests, int serverErrors, long groupCommits) {
+    }
+}
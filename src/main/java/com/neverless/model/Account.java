@@ -2,15 +2,50 @@ package com.neverless.model;
 
 import java.math.BigDecimal;
 
+/**
+ * Balance changes are made by the transfer worker on a working balance and published as an immutable, versioned
+ * snapshot once the enclosing update commits. Readers on any thread only ever see committed snapshots, so a debit
+ * that is rolled back within the same update is never visible, and reads neither lock nor retry.
+ * <p>
+ * With a single writer, a heavily credited account has no contention to spread, so its balance is not striped.
+ */
 public final class Account {
+    public static final String DEFAULT_CURRENCY = "USD";
+
     private final String accountId;
     private final String userId;
+    private final String currency;
+    private final BigDecimal openingBalance;
+    private final long createdAt;
     private Amount balance;
+    private volatile Snapshot committed;
+    private int openUpdates;
+    private volatile BigDecimal reconciledBalance;
 
     public Account(String accountId, String userId, double initialBalance) {
+        this(accountId, userId, new BigDecimal(initialBalance));
+    }
+
+    public Account(String accountId, String userId, BigDecimal initialBalance) {
+        this(accountId, userId, initialBalance, DEFAULT_CURRENCY);
+    }
+
+    public Account(String accountId, String userId, double initialBalance, String currency) {
+        this(accountId, userId, new BigDecimal(initialBalance), currency);
+    }
+
+    /**
+     * @param currency - ISO 4217 code the balance is kept in
+     */
+    public Account(String accountId, String userId, BigDecimal initialBalance, String currency) {
         this.accountId = accountId;
         this.userId = userId;
-        this.balance = new Amount(new BigDecimal(initialBalance));
+        this.currency = currency;
+        this.openingBalance = initialBalance;
+        this.createdAt = System.currentTimeMillis();
+        this.balance = new Amount(initialBalance);
+        this.committed = new Snapshot(balance, 0);
+        this.reconciledBalance = initialBalance;
     }
 
     public String getAccountId() {
@@ -21,11 +56,78 @@ public final class Account {
         return userId;
     }
 
+    public String getCurrency() {
+        return currency;
+    }
+
+    public BigDecimal getOpeningBalance() {
+        return openingBalance;
+    }
+
+    /**
+     * Epoch millis at which the account was created, or loaded from its store.
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
     public BigDecimal getBalance() {
+        return committed.balance().getValue();
+    }
+
+    public long getVersion() {
+        return committed.version();
+    }
+
+    /**
+     * The balance confirmed by the last reconciliation that examined this account, or the opening balance.
+     */
+    public BigDecimal getReconciledBalance() {
+        return reconciledBalance;
+    }
+
+    public void setReconciledBalance(BigDecimal reconciledBalance) {
+        this.reconciledBalance = reconciledBalance;
+    }
+
+    // Writer side, transfer worker only.
+
+    public BigDecimal getWorkingBalance() {
         return balance.getValue();
     }
 
     public void setBalance(BigDecimal balance) {
         this.balance = new Amount(balance);
+        if (openUpdates == 0) {
+            publish();
+        }
+    }
+
+    public void credit(BigDecimal amount) {
+        setBalance(balance.getValue().add(amount));
+    }
+
+    public void debit(BigDecimal amount) {
+        this.balance = new Amount(balance.getValue().subtract(amount));
+        if (openUpdates == 0) {
+            publish();
+        }
+    }
+
+    public void beginUpdate() {
+        openUpdates++;
+    }
+
+    public void commitUpdate() {
+        if (--openUpdates == 0) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        committed = new Snapshot(balance, committed.version() + 1);
+    }
+
+    private record Snapshot(Amount balance, long version) {
     }
 }
@@ -4,12 +4,25 @@ import java.math.BigDecimal;
 
 public class Amount {
     private final BigDecimal value;
+    private final String currency;
 
     public Amount(BigDecimal value) {
+        this(value, null);
+    }
+
+    /**
+     * @param currency - ISO 4217 code; null means the currency of the account the amount is taken from
+     */
+    public Amount(BigDecimal value, String currency) {
         this.value = value;
+        this.currency = currency;
     }
 
     public BigDecimal getValue() {
         return value;
     }
+
+    public String getCurrency() {
+        return currency;
+    }
 }
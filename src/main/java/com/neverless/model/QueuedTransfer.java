@@ -0,0 +1,16 @@
+package com.neverless.model;
+
+/**
+ * A transfer that was still queued when the server stopped, or a withdrawal or cross-node reservation still running
+ * then, as much of it as is needed to queue it again, or settle it again, on restart.
+ *
+ * @param type - INTERNAL, EXTERNAL or CROSS_NODE, WITHDRAWAL for a withdrawal already debited and requested, or
+ *             RESERVATION for a cross-node transfer already debited and sent to the destination's node
+ * @param toAccountId - the external address for an external transfer or a withdrawal
+ * @param reservedAtMillis - when a RESERVATION was debited, as sent to the destination's node; 0 for the other types
+ */
+public record QueuedTransfer(String type, String taskId, String fromAccountId, String toAccountId, Amount amount, long reservedAtMillis) {
+    public QueuedTransfer(String type, String taskId, String fromAccountId, String toAccountId, Amount amount) {
+        this(type, taskId, fromAccountId, toAccountId, amount, 0);
+    }
+}
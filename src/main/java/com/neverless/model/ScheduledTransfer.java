@@ -0,0 +1,11 @@
+package com.neverless.model;
+
+/**
+ * What a scheduled transfer or standing order needs to carry on after a restart.
+ *
+ * @param intervalMillis - 0 for a one-off transfer, otherwise the period of a standing order
+ * @param runs - how many times it was released so far
+ */
+public record ScheduledTransfer(String id, String fromAccountId, String toAccountId, Amount amount, long intervalMillis,
+                                long nextRunAtMillis, int runs) {
+}
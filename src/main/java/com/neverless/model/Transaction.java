@@ -1,11 +1,52 @@
 package com.neverless.model;
 
+import java.math.BigDecimal;
+
+/**
+ * @param timestamp - epoch millis at which the transaction was logged
+ * @param creditedAmount - what the destination received when it keeps a different currency, otherwise null
+ */
 public record Transaction(String transactionId,
                           String fromAccountId,
                           String toAccountId,
                           Amount amount,
                           String status,
-                          String previousTransactionId) {
+                          String previousTransactionId,
+                          long timestamp,
+                          Amount creditedAmount) {
 
-}
+    public Transaction(String transactionId, String fromAccountId, String toAccountId, Amount amount, String status, String previousTransactionId) {
+        this(transactionId, fromAccountId, toAccountId, amount, status, previousTransactionId, System.currentTimeMillis());
+    }
+
+    public Transaction(String transactionId, String fromAccountId, String toAccountId, Amount amount, String status, String previousTransactionId, long timestamp) {
+        this(transactionId, fromAccountId, toAccountId, amount, status, previousTransactionId, timestamp, null);
+    }
 
+    public Amount amountCredited() {
+        return creditedAmount == null ? amount : creditedAmount;
+    }
+
+    /**
+     * What this transaction did to the balance of the given account. Only completed transfers, netting settlements and
+     * rollbacks of external transfers move balances; attempts, failures and netted transfers do not.
+     */
+    public BigDecimal effectOn(String accountId) {
+        BigDecimal value = amount.getValue();
+        return switch (status) {
+            case "SUCCESS", "SETTLED" -> {
+                BigDecimal effect = accountId.equals(toAccountId) ? amountCredited().getValue() : BigDecimal.ZERO;
+                yield accountId.equals(fromAccountId) ? effect.subtract(value) : effect;
+            }
+            case "ROLLED_BACK" -> accountId.equals(fromAccountId) ? value : BigDecimal.ZERO;
+            default -> BigDecimal.ZERO;
+        };
+    }
+
+    public boolean movesBalances() {
+        return switch (status) {
+            case "SUCCESS", "SETTLED", "ROLLED_BACK" -> true;
+            default -> false;
+        };
+    }
+}
@@ -2,7 +2,7 @@ package com.neverless.model;
 
 public final class TransferProgress {
     private final String transferId;
-    private TransferStatus status;
+    private volatile TransferStatus status;
 
     public TransferProgress(String transferId, TransferStatus status) {
         this.transferId = transferId;
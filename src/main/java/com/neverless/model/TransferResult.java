@@ -3,7 +3,8 @@ package com.neverless.model;
 public class TransferResult {
     public enum Status {
         SUCCESS,
-        FAILURE
+        FAILURE,
+        ACCEPTED
     }
 
     public enum ErrorCode {
@@ -11,6 +12,15 @@ public class TransferResult {
         INVALID_ACCOUNT,
         TIMEOUT,
         EXTERNAL_TRANSFER_FAILED,
+        IDEMPOTENCY_KEY_REUSED,
+        OVERLOADED,
+        DEADLINE_EXCEEDED,
+        INVALID_CURRENCY,
+        WRONG_NODE,
+        RATE_LIMITED,
+        JOURNAL_SYNC_FAILED,
+        SHUTTING_DOWN,
+        OUTCOME_UNKNOWN,
         UNKNOWN
     }
 
@@ -18,20 +28,41 @@ public class TransferResult {
     private final String message;
     private final String taskId;
     private final ErrorCode errorCode;
+    private final long retryAfterMillis;
 
-    private TransferResult(Status status, String message, String taskId, ErrorCode errorCode) {
+    private TransferResult(Status status, String message, String taskId, ErrorCode errorCode, long retryAfterMillis) {
         this.status = status;
         this.message = message;
         this.taskId = taskId;
         this.errorCode = errorCode;
+        this.retryAfterMillis = retryAfterMillis;
     }
 
     public static TransferResult success(String taskId) {
-        return new TransferResult(Status.SUCCESS, "Transfer successful", taskId, null);
+        return new TransferResult(Status.SUCCESS, "Transfer successful", taskId, null, 0);
+    }
+
+    public static TransferResult accepted(String taskId) {
+        return new TransferResult(Status.ACCEPTED, "Transfer accepted", taskId, null, 0);
     }
 
     public static TransferResult failure(String message, String taskId, ErrorCode errorCode) {
-        return new TransferResult(Status.FAILURE, message, taskId, errorCode);
+        return new TransferResult(Status.FAILURE, message, taskId, errorCode, 0);
+    }
+
+    public static TransferResult rateLimited(String message, long retryAfterMillis) {
+        return new TransferResult(Status.FAILURE, message, null, ErrorCode.RATE_LIMITED, retryAfterMillis);
+    }
+
+    public static TransferResult overloaded(String message, String taskId, long retryAfterMillis) {
+        return new TransferResult(Status.FAILURE, message, taskId, ErrorCode.OVERLOADED, retryAfterMillis);
+    }
+
+    /**
+     * Not run because the server is stopping; safe to retry, against another node or once it is back.
+     */
+    public static TransferResult shuttingDown(String taskId, long retryAfterMillis) {
+        return new TransferResult(Status.FAILURE, "Server is shutting down", taskId, ErrorCode.SHUTTING_DOWN, retryAfterMillis);
     }
 
     public Status getStatus() {
@@ -49,4 +80,8 @@ public class TransferResult {
     public ErrorCode getErrorCode() {
         return errorCode;
     }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
 }
@@ -5,5 +5,9 @@ public enum TransferStatus {
     PROCESSING,
     COMPLETED,
     FAILED,
-    UNKNOWN
+    UNKNOWN;
+
+    public boolean isFinal() {
+        return this == COMPLETED || this == FAILED;
+    }
 }
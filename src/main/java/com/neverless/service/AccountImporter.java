@@ -0,0 +1,296 @@
+package com.neverless.service;
+
+import com.neverless.model.Account;
+import com.neverless.store.AccountStore;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bulk-loads accounts from a local file, typically before the server starts taking traffic. The file is cut into
+ * line (or record) aligned chunks which are memory mapped and parsed in parallel, the accounts going into the store
+ * in batches with {@link AccountStore#createAccountsIfAbsent}, so a durable store pays for one write per batch. Ids that already exist, in the store or earlier in the
+ * file, are counted as duplicates and never overwrite the account that got there first.
+ * <p>
+ * CSV files hold one {@code accountId,userId,initialBalance} per line, with an optional header line starting with
+ * {@code accountId}. Binary files start with the magic {@code MMA1} followed by records of a u16 length-prefixed
+ * UTF-8 account id, a u16 length-prefixed UTF-8 user id and the balance as a big-endian i64 unscaled value and i32
+ * scale. Balances are read exactly, never through a binary floating point value.
+ */
+public final class AccountImporter {
+    static final byte[] BINARY_MAGIC = {'M', 'M', 'A', '1'};
+    private static final int DEFAULT_CHUNK_SIZE = 16 << 20;
+    private static final int MAX_REPORTED_DUPLICATES = 100;
+    private static final int BALANCE_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int BATCH_SIZE = 4096;
+
+    private final AccountStore accountStore;
+    private final int chunkSize;
+
+    public AccountImporter(AccountStore accountStore) {
+        this(accountStore, DEFAULT_CHUNK_SIZE);
+    }
+
+    public AccountImporter(AccountStore accountStore, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.accountStore = accountStore;
+        this.chunkSize = chunkSize;
+    }
+
+    public ImportReport importFile(Path path) {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            boolean binary = isBinary(channel, size);
+            List<Range> chunks = binary ? binaryChunks(path, size) : csvChunks(channel, size);
+            Chunk total = chunks.parallelStream()
+                    .map(range -> parse(channel, range, binary))
+                    .reduce(new Chunk(), Chunk::merge);
+            return new ImportReport(total.imported, total.duplicates, List.copyOf(total.duplicateIds), total.malformed,
+                    System.nanoTime() - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isBinary(FileChannel channel, long size) throws IOException {
+        if (size < BINARY_MAGIC.length) {
+            return false;
+        }
+        ByteBuffer magic = ByteBuffer.allocate(BINARY_MAGIC.length);
+        while (magic.hasRemaining() && channel.read(magic, magic.position()) >= 0) {
+            // keep reading until the magic is in
+        }
+        return Arrays.equals(magic.array(), BINARY_MAGIC);
+    }
+
+    private List<Range> csvChunks(FileChannel channel, long size) throws IOException {
+        List<Range> chunks = new ArrayList<>();
+        long start = 0;
+        if (startsWith(channel, "accountId")) {
+            start = nextLine(channel, 0, size);
+        }
+        while (start < size) {
+            long end = start + chunkSize >= size ? size : nextLine(channel, start + chunkSize, size);
+            chunks.add(new Range(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static boolean startsWith(FileChannel channel, String prefix) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(prefix.length());
+        channel.read(buffer, 0);
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).equals(prefix);
+    }
+
+    // offset just past the first newline at or after from, or size if there is none
+    private static long nextLine(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // records are variable length, so boundaries come from one sequential pass over the length prefixes
+    private List<Range> binaryChunks(Path path, long size) throws IOException {
+        List<Range> chunks = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            in.skipNBytes(BINARY_MAGIC.length);
+            long chunkStart = BINARY_MAGIC.length;
+            long position = chunkStart;
+            while (position < size) {
+                int accountIdLength = in.readUnsignedShort();
+                in.skipNBytes(accountIdLength);
+                int userIdLength = in.readUnsignedShort();
+                in.skipNBytes(userIdLength + BALANCE_BYTES);
+                position += 2 + accountIdLength + 2 + userIdLength + BALANCE_BYTES;
+                if (position - chunkStart >= chunkSize) {
+                    chunks.add(new Range(chunkStart, position));
+                    chunkStart = position;
+                }
+            }
+            if (position > chunkStart) {
+                chunks.add(new Range(chunkStart, position));
+            }
+        } catch (EOFException e) {
+            throw new IllegalArgumentException("Truncated account file: " + path, e);
+        }
+        return chunks;
+    }
+
+    private Chunk parse(FileChannel channel, Range range, boolean binary) {
+        try {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range.start(), range.end() - range.start());
+            return binary ? parseBinary(buffer) : parseCsv(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Chunk parseCsv(ByteBuffer buffer) {
+        Chunk chunk = new Chunk();
+        byte[] line = new byte[128];
+        int length = 0;
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                csvLine(chunk, line, length);
+                length = 0;
+            } else {
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+        }
+        csvLine(chunk, line, length);
+        createPending(chunk);
+        return chunk;
+    }
+
+    private void csvLine(Chunk chunk, byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        if (length == 0) {
+            return;
+        }
+        int firstComma = indexOf(line, 0, length);
+        int secondComma = firstComma < 0 ? -1 : indexOf(line, firstComma + 1, length);
+        if (firstComma <= 0 || secondComma < 0) {
+            chunk.malformed++;
+            return;
+        }
+        BigDecimal initialBalance;
+        try {
+            initialBalance = new BigDecimal(new String(line, secondComma + 1, length - secondComma - 1, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            chunk.malformed++;
+            return;
+        }
+        create(chunk,
+                new String(line, 0, firstComma, StandardCharsets.UTF_8),
+                new String(line, firstComma + 1, secondComma - firstComma - 1, StandardCharsets.UTF_8),
+                initialBalance);
+    }
+
+    private static int indexOf(byte[] line, int from, int length) {
+        for (int i = from; i < length; i++) {
+            if (line[i] == ',') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Chunk parseBinary(ByteBuffer buffer) {
+        Chunk chunk = new Chunk();
+        byte[] scratch = new byte[128];
+        while (buffer.hasRemaining()) {
+            int accountIdLength = buffer.getShort() & 0xFFFF;
+            scratch = ensureCapacity(scratch, accountIdLength);
+            buffer.get(scratch, 0, accountIdLength);
+            String accountId = new String(scratch, 0, accountIdLength, StandardCharsets.UTF_8);
+            int userIdLength = buffer.getShort() & 0xFFFF;
+            scratch = ensureCapacity(scratch, userIdLength);
+            buffer.get(scratch, 0, userIdLength);
+            String userId = new String(scratch, 0, userIdLength, StandardCharsets.UTF_8);
+            BigDecimal initialBalance = BigDecimal.valueOf(buffer.getLong(), buffer.getInt());
+            if (accountId.isEmpty()) {
+                chunk.malformed++;
+            } else {
+                create(chunk, accountId, userId, initialBalance);
+            }
+        }
+        createPending(chunk);
+        return chunk;
+    }
+
+    private static byte[] ensureCapacity(byte[] buffer, int length) {
+        return buffer.length >= length ? buffer : new byte[Math.max(length, buffer.length * 2)];
+    }
+
+    private void create(Chunk chunk, String accountId, String userId, BigDecimal initialBalance) {
+        chunk.pending.add(new Account(accountId, userId, initialBalance, Account.DEFAULT_CURRENCY));
+        if (chunk.pending.size() == BATCH_SIZE) {
+            createPending(chunk);
+        }
+    }
+
+    private void createPending(Chunk chunk) {
+        if (chunk.pending.isEmpty()) {
+            return;
+        }
+        List<Account> taken = accountStore.createAccountsIfAbsent(chunk.pending);
+        chunk.imported += chunk.pending.size() - taken.size();
+        chunk.duplicates += taken.size();
+        for (Account account : taken) {
+            if (chunk.duplicateIds.size() == MAX_REPORTED_DUPLICATES) {
+                break;
+            }
+            chunk.duplicateIds.add(account.getAccountId());
+        }
+        chunk.pending.clear();
+    }
+
+    /**
+     * @param duplicateIds the first duplicate ids found, at most {@value #MAX_REPORTED_DUPLICATES} of them
+     */
+    public record ImportReport(long imported, long duplicates, List<String> duplicateIds, long malformed, long elapsedNanos) {
+    }
+
+    private record Range(long start, long end) {
+    }
+
+    private static final class Chunk {
+        private long imported;
+        private long duplicates;
+        private long malformed;
+        private final List<String> duplicateIds = new ArrayList<>();
+        // parsed and not created yet
+        private final List<Account> pending = new ArrayList<>();
+
+        private Chunk merge(Chunk other) {
+            Chunk merged = new Chunk();
+            merged.imported = imported + other.imported;
+            merged.duplicates = duplicates + other.duplicates;
+            merged.malformed = malformed + other.malformed;
+            merged.duplicateIds.addAll(duplicateIds);
+            for (String id : other.duplicateIds) {
+                if (merged.duplicateIds.size() == MAX_REPORTED_DUPLICATES) {
+                    break;
+                }
+                merged.duplicateIds.add(id);
+            }
+            return merged;
+        }
+    }
+}
@@ -4,25 +4,62 @@ import com.neverless.model.Account;
 import com.neverless.store.AccountStore;
 
 import java.math.BigDecimal;
+import java.util.Currency;
 
 public final class AccountService {
     private final AccountStore accountStore;
+    private final BalanceHistory balanceHistory;
 
     public AccountService(AccountStore accountStore) {
+        this(accountStore, null);
+    }
+
+    /**
+     * @param balanceHistory - optional; needed for point-in-time balances
+     */
+    public AccountService(AccountStore accountStore, BalanceHistory balanceHistory) {
         this.accountStore = accountStore;
+        this.balanceHistory = balanceHistory;
     }
 
     public void createAccount(String accountId, String userId, double initialBalance) {
-        if (accountStore.getAccount(accountId) != null) {
+        createAccount(accountId, userId, initialBalance, Account.DEFAULT_CURRENCY);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the id is taken or the currency is not an ISO 4217 code
+     */
+    public void createAccount(String accountId, String userId, double initialBalance, String currency) {
+        try {
+            Currency.getInstance(currency);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown currency " + currency);
+        }
+        if (!accountStore.createAccountIfAbsent(accountId, userId, initialBalance, currency)) {
             throw new IllegalArgumentException("Account already exists");
         }
-        accountStore.createAccount(accountId, userId, initialBalance);
     }
+
     public BigDecimal getAccountBalance(String accountId) {
+        return getAccount(accountId).getBalance();
+    }
+
+    public String getAccountCurrency(String accountId) {
+        return getAccount(accountId).getCurrency();
+    }
+
+    public BigDecimal getAccountBalance(String accountId, long asOfMillis) {
+        if (balanceHistory == null) {
+            throw new IllegalStateException("Balance history is not enabled");
+        }
+        return balanceHistory.getBalanceAt(accountId, asOfMillis);
+    }
+
+    private Account getAccount(String accountId) {
         Account account = accountStore.getAccount(accountId);
         if (account == null) {
             throw new IllegalArgumentException("Invalid account ID");
         }
-        return account.getBalance();
+        return account;
     }
 }
@@ -0,0 +1,53 @@
+package com.neverless.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether the transfer queue can take another task. A task is shed when the queue is deeper than
+ * {@code maxQueueDepth} or when the wait it would face, estimated from the average service time, exceeds
+ * {@code maxExpectedWaitNanos}. Rejections carry a hint for when to retry.
+ */
+public final class AdmissionControl {
+    private static final long MIN_RETRY_AFTER_MILLIS = 100;
+
+    private volatile int maxQueueDepth;
+    private volatile long maxExpectedWaitNanos;
+    private volatile long averageServiceNanos;
+
+    public AdmissionControl(int maxQueueDepth, long maxExpectedWaitNanos) {
+        this.maxQueueDepth = maxQueueDepth;
+        this.maxExpectedWaitNanos = maxExpectedWaitNanos;
+    }
+
+    public void setMaxQueueDepth(int maxQueueDepth) {
+        if (maxQueueDepth <= 0) {
+            throw new IllegalArgumentException("Queue depth limit must be positive");
+        }
+        this.maxQueueDepth = maxQueueDepth;
+    }
+
+    public void setMaxExpectedWaitNanos(long maxExpectedWaitNanos) {
+        if (maxExpectedWaitNanos < 0) {
+            throw new IllegalArgumentException("Expected wait limit must not be negative");
+        }
+        this.maxExpectedWaitNanos = maxExpectedWaitNanos;
+    }
+
+    public boolean admits(int queueDepth) {
+        return queueDepth < maxQueueDepth && expectedWaitNanos(queueDepth) <= maxExpectedWaitNanos;
+    }
+
+    public long retryAfterMillis(int queueDepth) {
+        return Math.max(MIN_RETRY_AFTER_MILLIS, TimeUnit.NANOSECONDS.toMillis(expectedWaitNanos(queueDepth)));
+    }
+
+    public long expectedWaitNanos(int queueDepth) {
+        return queueDepth * averageServiceNanos;
+    }
+
+    // called by the single worker thread only
+    void recordServiceTime(long nanos) {
+        long average = averageServiceNanos;
+        averageServiceNanos = average == 0 ? nanos : average + ((nanos - average) >> 3);
+    }
+}
@@ -0,0 +1,271 @@
+package com.neverless.service;
+
+import com.neverless.model.Account;
+import com.neverless.model.Transaction;
+import com.neverless.store.AccountStore;
+import com.neverless.store.FileTransactionStore;
+import com.neverless.store.TransactionStore;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Answers what an account's balance was at a given time without scanning the whole transaction log. An indexer
+ * follows the log and keeps, per account, the positions of the transactions that moved its balance, plus a checkpoint
+ * of the balance after every {@code checkpointEvery} of them. A query starts from the nearest checkpoint at or before
+ * the requested time and only replays the account's transactions logged since then.
+ * <p>
+ * Each account keeps at most {@code 2 * retainedCheckpoints} checkpoints; past that, the older half is dropped with
+ * the positions before it, so the index stays bounded and history starts at the oldest checkpoint left.
+ * <p>
+ * Given the journal its account store was recovered from, history before this run is rebuilt from the journal's
+ * records, which are then read back from the file rather than the transaction store. Otherwise history starts when
+ * the account was created, or loaded from its store after a restart.
+ */
+public final class BalanceHistory {
+    public static final int DEFAULT_RETAINED_CHECKPOINTS = 1024;
+
+    private final AccountStore accountStore;
+    private final TransactionStore transactionStore;
+    private final FileTransactionStore journal;
+    private final int checkpointEvery;
+    private final int retainedCheckpoints;
+    private final Map<String, AccountHistory> histories;
+    private final Thread indexerThread;
+    private volatile boolean running = true;
+    private long indexed;
+
+    public BalanceHistory(AccountStore accountStore, TransactionStore transactionStore, int checkpointEvery) {
+        this(accountStore, transactionStore, checkpointEvery, 0);
+    }
+
+    /**
+     * @param indexIntervalNanos - how often the log is indexed in the background; 0 to only index when queried
+     */
+    public BalanceHistory(AccountStore accountStore, TransactionStore transactionStore, int checkpointEvery, long indexIntervalNanos) {
+        this(accountStore, transactionStore, null, checkpointEvery, DEFAULT_RETAINED_CHECKPOINTS, indexIntervalNanos);
+    }
+
+    /**
+     * @param journal - optional; the journal whose records from before this run the account store's balances include
+     * @param retainedCheckpoints - checkpoints per account that are always kept, with the positions after them
+     */
+    public BalanceHistory(AccountStore accountStore, TransactionStore transactionStore, FileTransactionStore journal,
+                          int checkpointEvery, int retainedCheckpoints, long indexIntervalNanos) {
+        if (checkpointEvery <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        if (retainedCheckpoints <= 0) {
+            throw new IllegalArgumentException("Retained checkpoints must be positive");
+        }
+        this.accountStore = accountStore;
+        this.transactionStore = transactionStore;
+        this.journal = journal;
+        this.checkpointEvery = checkpointEvery;
+        this.retainedCheckpoints = retainedCheckpoints;
+        this.histories = new HashMap<>();
+        if (journal != null) {
+            rebuild();
+        }
+        if (indexIntervalNanos > 0) {
+            this.indexerThread = new Thread(() -> {
+                while (running) {
+                    LockSupport.parkNanos(indexIntervalNanos);
+                    catchUp();
+                }
+            }, "balance-history-indexer");
+            indexerThread.setDaemon(true);
+            indexerThread.start();
+        } else {
+            this.indexerThread = null;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the account does not exist, or its history does not go back to
+     *                                  {@code asOfMillis}
+     */
+    public synchronized BigDecimal getBalanceAt(String accountId, long asOfMillis) {
+        Account account = accountStore.getAccount(accountId);
+        if (account == null) {
+            throw new IllegalArgumentException("Invalid account ID");
+        }
+        catchUp();
+        AccountHistory history = histories.get(accountId);
+        long start = history == null ? account.getCreatedAt() : history.start;
+        if (asOfMillis < start) {
+            throw new IllegalArgumentException("No balance history before " + Instant.ofEpochMilli(start));
+        }
+        return history == null ? account.getOpeningBalance() : history.balanceAt(asOfMillis);
+    }
+
+    public synchronized long getIndexedPosition() {
+        return indexed;
+    }
+
+    public void shutdown() {
+        running = false;
+        if (indexerThread != null) {
+            LockSupport.unpark(indexerThread);
+            try {
+                indexerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    synchronized void catchUp() {
+        long count = transactionStore.getTransactionCount();
+        for (long position = indexed; position < count; position++) {
+            Transaction transaction = transactionStore.getTransaction(position);
+            if (transaction.movesBalances()) {
+                index(transaction.fromAccountId(), position, transaction);
+                if (!transaction.toAccountId().equals(transaction.fromAccountId())) {
+                    index(transaction.toAccountId(), position, transaction);
+                }
+            }
+        }
+        indexed = count;
+    }
+
+    // the store's balances already include these records, so each account is rebuilt forward from zero and then
+    // shifted to end at the balance it was loaded with; journal offsets are kept as negative positions
+    private void rebuild() {
+        journal.replay(0, journal.getOpenedPosition(), (transaction, offset) -> {
+            if (transaction.movesBalances()) {
+                recover(transaction.fromAccountId(), -offset - 1, transaction);
+                if (!transaction.toAccountId().equals(transaction.fromAccountId())) {
+                    recover(transaction.toAccountId(), -offset - 1, transaction);
+                }
+            }
+        });
+        for (AccountHistory history : histories.values()) {
+            history.shift(accountStore.getAccount(history.accountId).getOpeningBalance().subtract(history.balance));
+        }
+    }
+
+    private void recover(String accountId, long position, Transaction transaction) {
+        AccountHistory history = histories.get(accountId);
+        if (history == null) {
+            if (accountStore.getAccount(accountId) == null) {
+                return; // an external address, or an account this store no longer has
+            }
+            history = new AccountHistory(accountId, BigDecimal.ZERO, transaction.timestamp());
+            histories.put(accountId, history);
+        }
+        history.add(position, transaction);
+    }
+
+    private void index(String accountId, long position, Transaction transaction) {
+        AccountHistory history = histories.get(accountId);
+        if (history == null) {
+            Account account = accountStore.getAccount(accountId);
+            if (account == null) {
+                return; // an external address
+            }
+            history = new AccountHistory(accountId, account.getOpeningBalance(), account.getCreatedAt());
+            histories.put(accountId, history);
+        }
+        history.add(position, transaction);
+    }
+
+    private Transaction transactionAt(long position) {
+        return position < 0 ? journal.read(-position - 1) : transactionStore.getTransaction(position);
+    }
+
+    private final class AccountHistory {
+        private final String accountId;
+        private BigDecimal openingBalance;
+        private BigDecimal balance;
+        private long start;
+        private long[] positions = new long[4];
+        private int size;
+        private long[] checkpointTimes = new long[1];
+        private BigDecimal[] checkpointBalances = new BigDecimal[1];
+        private int checkpoints;
+
+        private AccountHistory(String accountId, BigDecimal openingBalance, long start) {
+            this.accountId = accountId;
+            this.openingBalance = openingBalance;
+            this.balance = openingBalance;
+            this.start = start;
+        }
+
+        private void add(long position, Transaction transaction) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+            balance = balance.add(transaction.effectOn(accountId));
+            if (size % checkpointEvery == 0) {
+                if (checkpoints == checkpointTimes.length) {
+                    checkpointTimes = Arrays.copyOf(checkpointTimes, checkpoints * 2);
+                    checkpointBalances = Arrays.copyOf(checkpointBalances, checkpoints * 2);
+                }
+                checkpointTimes[checkpoints] = transaction.timestamp();
+                checkpointBalances[checkpoints] = balance;
+                checkpoints++;
+                if (checkpoints == 2 * retainedCheckpoints) {
+                    dropOldest(retainedCheckpoints);
+                }
+            }
+        }
+
+        // balances are only asked for from the oldest checkpoint left, so the opening balance goes with the rest
+        private void dropOldest(int dropped) {
+            int droppedPositions = dropped * checkpointEvery;
+            System.arraycopy(positions, droppedPositions, positions, 0, size - droppedPositions);
+            size -= droppedPositions;
+            System.arraycopy(checkpointTimes, dropped, checkpointTimes, 0, checkpoints - dropped);
+            System.arraycopy(checkpointBalances, dropped, checkpointBalances, 0, checkpoints - dropped);
+            Arrays.fill(checkpointBalances, checkpoints - dropped, checkpoints, null);
+            checkpoints -= dropped;
+            openingBalance = null;
+            start = Math.max(start, checkpointTimes[0]);
+        }
+
+        private void shift(BigDecimal delta) {
+            if (openingBalance != null) {
+                openingBalance = openingBalance.add(delta);
+            }
+            balance = balance.add(delta);
+            for (int i = 0; i < checkpoints; i++) {
+                checkpointBalances[i] = checkpointBalances[i].add(delta);
+            }
+        }
+
+        private BigDecimal balanceAt(long asOfMillis) {
+            int checkpoint = lastCheckpointAtOrBefore(asOfMillis);
+            BigDecimal result = checkpoint < 0 ? openingBalance : checkpointBalances[checkpoint];
+            for (int i = (checkpoint + 1) * checkpointEvery; i < size; i++) {
+                Transaction transaction = transactionAt(positions[i]);
+                if (transaction.timestamp() > asOfMillis) {
+                    break;
+                }
+                result = result.add(transaction.effectOn(accountId));
+            }
+            return result;
+        }
+
+        private int lastCheckpointAtOrBefore(long asOfMillis) {
+            int low = 0;
+            int high = checkpoints - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (checkpointTimes[middle] <= asOfMillis) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.neverless.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Spreads accounts across the nodes of a cluster by consistent hashing. Each node is placed on a 64-bit ring at many
+ * points, and an account belongs to the node at the first point at or after the account's own hash, so adding a
+ * node only moves the accounts that now fall to it. Every node is configured with the same member list and therefore
+ * agrees on every owner without talking to the others.
+ */
+public final class ClusterRing {
+    private static final int DEFAULT_POINTS_PER_NODE = 128;
+
+    private final List<Node> nodes;
+    private final Node localNode;
+    private final TreeMap<Long, Node> ring;
+
+    public ClusterRing(List<Node> nodes, String localNodeId) {
+        this(nodes, localNodeId, DEFAULT_POINTS_PER_NODE);
+    }
+
+    public ClusterRing(List<Node> nodes, String localNodeId, int pointsPerNode) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A cluster needs at least one node");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.ring = new TreeMap<>();
+        Node local = null;
+        for (Node node : nodes) {
+            for (int i = 0; i < pointsPerNode; i++) {
+                ring.put(hash(node.id() + '#' + i), node);
+            }
+            if (node.id().equals(localNodeId)) {
+                local = node;
+            }
+        }
+        if (local == null) {
+            throw new IllegalArgumentException("Local node " + localNodeId + " is not a cluster member");
+        }
+        this.localNode = local;
+    }
+
+    public Node ownerOf(String accountId) {
+        Map.Entry<Long, Node> point = ring.ceilingEntry(hash(accountId));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    public boolean isLocal(String accountId) {
+        return ownerOf(accountId) == localNode;
+    }
+
+    public Node getLocalNode() {
+        return localNode;
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Parses {@code n1=localhost:8081,n2=localhost:8082}.
+     */
+    public static List<Node> parseNodes(String spec) {
+        List<Node> nodes = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+                throw new IllegalArgumentException("Expected nodeId=host:port, got " + entry);
+            }
+            nodes.add(new Node(parts[0].trim(), parts[1].trim()));
+        }
+        return nodes;
+    }
+
+    // FNV-1a over the characters, then a finalizer to spread nearby ids across the ring; stable across JVMs
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @param address - {@code host:port} its HTTP server listens on
+     */
+    public record Node(String id, String address) {
+
+        public int port() {
+            return Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.neverless.service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Signs cluster messages with the secret the nodes share, so a node only acts on messages one of its peers sent. The
+ * signature covers every field the receiver acts on, so none can be changed in transit. A replayed message does no
+ * harm: both cluster messages are idempotent per transfer id, and one replayed after the destination forgot the
+ * transfer's outcome is answered {@link ClusterTransport.Outcome#UNKNOWN}.
+ */
+public final class ClusterSignature {
+    public static final String HEADER = "X-Cluster-Signature";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+
+    public ClusterSignature(String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("Cluster secret must not be blank");
+        }
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    public String sign(String... fields) {
+        Mac mac;
+        try {
+            // a Mac is not thread-safe, and requests are signed and checked on many threads
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign with " + ALGORITHM, e);
+        }
+        for (String field : fields) {
+            // length-prefixed, so no two field lists sign the same bytes
+            byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+            mac.update(bytes);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal());
+    }
+
+    /**
+     * Compares in constant time, so the time taken gives away nothing about the expected signature.
+     *
+     * @param given - the signature a message came with, null if none
+     */
+    public static boolean matches(String expected, String given) {
+        return given != null && MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII), given.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,65 @@
+package com.neverless.service;
+
+import com.neverless.model.TransferResult;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Carries the two messages of a cross-node transfer from the node holding the source account, which has already
+ * reserved the funds, to the node owning the destination. Both are idempotent per transfer id, so either may be
+ * retried, and whichever of them reaches the destination first decides the transfer's outcome. The destination keeps a
+ * bounded number of outcomes; a message for a transfer it may have forgotten is answered {@link Outcome#UNKNOWN}.
+ */
+public interface ClusterTransport {
+
+    /**
+     * Asks the destination node to credit the transfer, unless it was aborted.
+     */
+    CompletableFuture<Reply> credit(ClusterRing.Node node, Credit credit);
+
+    /**
+     * Asks the destination node to never credit the transfer. The reply says whether it already had.
+     *
+     * @param reservedAtMillis - when the source reserved the funds, as in the {@link Credit}
+     */
+    CompletableFuture<Reply> abort(ClusterRing.Node node, String transferId, long reservedAtMillis);
+
+    /**
+     * @param currency - currency of the amount, the source account's
+     * @param reservedAtMillis - wall-clock time the source reserved the funds at, which tells the destination whether
+     *                         it may have forgotten the transfer's outcome
+     */
+    record Credit(String transferId, String fromAccountId, String toAccountId, BigDecimal amount, String currency, long reservedAtMillis) {
+    }
+
+    /**
+     * @param errorCode - why a credit was rejected, otherwise null
+     */
+    record Reply(Outcome outcome, TransferResult.ErrorCode errorCode, String message) {
+
+        public static Reply committed() {
+            return new Reply(Outcome.COMMITTED, null, "Transfer successful");
+        }
+
+        public static Reply rejected(TransferResult.ErrorCode errorCode, String message) {
+            return new Reply(Outcome.REJECTED, errorCode, message);
+        }
+
+        public static Reply aborted() {
+            return new Reply(Outcome.ABORTED, null, "Transfer aborted");
+        }
+
+        public static Reply unknown() {
+            return new Reply(Outcome.UNKNOWN, null, "Transfer outcome no longer known");
+        }
+    }
+
+    enum Outcome {
+        COMMITTED,
+        REJECTED,
+        ABORTED,
+        // the message may be older than the outcomes the destination still keeps, so it neither acted nor can tell
+        UNKNOWN
+    }
+}
@@ -0,0 +1,72 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.QueuedTransfer;
+import com.neverless.model.TransferProgress;
+import com.neverless.model.TransferResult;
+import com.neverless.model.TransferStatus;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A transfer to an account held by another node of the cluster, see {@link TransferService#executeCrossNodeTransfer}.
+ */
+public final class CrossNodeTransferTask implements MoneyTransferTask {
+    private final String id;
+    private final String fromAccountId;
+    private final String toAccountId;
+    private final Amount amount;
+    private final TransferService transferService;
+    private final TransferProgress progress;
+    private final long deadlineNanos;
+
+    public CrossNodeTransferTask(String fromAccountId, String toAccountId, Amount amount, TransferService transferService, long deadlineNanos) {
+        this(UUID.randomUUID().toString(), fromAccountId, toAccountId, amount, transferService, deadlineNanos);
+    }
+
+    /**
+     * @param id - the id of a transfer resumed after a restart, so its progress can still be followed by it
+     */
+    public CrossNodeTransferTask(String id, String fromAccountId, String toAccountId, Amount amount, TransferService transferService, long deadlineNanos) {
+        this.id = id;
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+        this.transferService = transferService;
+        this.progress = new TransferProgress(id, TransferStatus.INITIATED);
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public TransferProgress getProgress() {
+        return progress;
+    }
+
+    @Override
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    @Override
+    public QueuedTransfer toQueuedTransfer() {
+        return new QueuedTransfer("CROSS_NODE", id, fromAccountId, toAccountId, amount);
+    }
+
+    @Override
+    public TransferResult call() {
+        return execute().join();
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> execute() {
+        transferService.updateProgress(id, TransferStatus.PROCESSING);
+        return transferService.executeCrossNodeTransfer(id, fromAccountId, toAccountId, amount, deadlineNanos).thenApply(result -> {
+            transferService.updateProgress(id, result.getStatus() == TransferResult.Status.SUCCESS ? TransferStatus.COMPLETED : TransferStatus.FAILED);
+            return result;
+        });
+    }
+}
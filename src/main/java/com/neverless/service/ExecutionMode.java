@@ -0,0 +1,21 @@
+package com.neverless.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * How blocking work off the transfer worker, such as request handling, is run. {@code PLATFORM} uses a fixed pool,
+ * so the number of concurrent waits is capped by its size; {@code VIRTUAL} gives every task its own virtual thread,
+ * so a blocked wait only costs a parked continuation.
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    public ExecutorService newExecutor(String name, int platformThreads) {
+        if (this == VIRTUAL) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        }
+        return Executors.newFixedThreadPool(platformThreads, Thread.ofPlatform().name(name + "-", 0).daemon().factory());
+    }
+}
@@ -1,11 +1,13 @@
 package com.neverless.service;
 
 import com.neverless.model.Amount;
+import com.neverless.model.QueuedTransfer;
 import com.neverless.model.TransferProgress;
 import com.neverless.model.TransferResult;
 import com.neverless.model.TransferStatus;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public final class ExternalTransferTask implements MoneyTransferTask {
     private final String id;
@@ -14,14 +16,23 @@ public final class ExternalTransferTask implements MoneyTransferTask {
     private final Amount amount;
     private final TransferService transferService;
     private final TransferProgress progress;
+    private final long deadlineNanos;
 
-    public ExternalTransferTask(String fromAccountId, String externalAddress, Amount amount, TransferService transferService) {
-        this.id = UUID.randomUUID().toString();
+    public ExternalTransferTask(String fromAccountId, String externalAddress, Amount amount, TransferService transferService, long deadlineNanos) {
+        this(UUID.randomUUID().toString(), fromAccountId, externalAddress, amount, transferService, deadlineNanos);
+    }
+
+    /**
+     * @param id - the id of a transfer resumed after a restart, so its progress can still be followed by it
+     */
+    public ExternalTransferTask(String id, String fromAccountId, String externalAddress, Amount amount, TransferService transferService, long deadlineNanos) {
+        this.id = id;
         this.fromAccountId = fromAccountId;
         this.externalAddress = externalAddress;
         this.amount = amount;
         this.transferService = transferService;
         this.progress = new TransferProgress(id, TransferStatus.INITIATED);
+        this.deadlineNanos = deadlineNanos;
     }
 
     public String getId() {
@@ -32,11 +43,35 @@ public final class ExternalTransferTask implements MoneyTransferTask {
         return progress;
     }
 
+    @Override
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    @Override
+    public QueuedTransfer toQueuedTransfer() {
+        return new QueuedTransfer("EXTERNAL", id, fromAccountId, externalAddress, amount);
+    }
+
+    @Override
+    public Lane lane() {
+        return Lane.EXTERNAL;
+    }
+
     @Override
     public TransferResult call() {
+        return execute().join();
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> execute() {
         transferService.updateProgress(id, TransferStatus.PROCESSING);
-        TransferResult result = transferService.executeExternalTransfer(id, fromAccountId, externalAddress, amount);
-        transferService.updateProgress(id, result.getStatus() == TransferResult.Status.SUCCESS ? TransferStatus.COMPLETED : TransferStatus.FAILED);
-        return result;
+        return transferService.executeExternalTransfer(id, fromAccountId, externalAddress, amount, deadlineNanos).thenApply(result -> {
+            // ACCEPTED: the deadline passed with the withdrawal still running, and its outcome is published later
+            if (result.getStatus() != TransferResult.Status.ACCEPTED) {
+                transferService.updateProgress(id, result.getStatus() == TransferResult.Status.SUCCESS ? TransferStatus.COMPLETED : TransferStatus.FAILED);
+            }
+            return result;
+        });
     }
 }
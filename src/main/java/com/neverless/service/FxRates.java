@@ -0,0 +1,190 @@
+package com.neverless.service;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exchange rates held as a precomputed cross table of fixed-point multipliers, so converting an amount on the transfer
+ * worker is a long multiply and a divide by a power of ten rather than a {@link BigDecimal} division.
+ * <p>
+ * Rates are given against a base currency. {@link #update} builds the whole table off the hot path and publishes it
+ * with a single volatile write, so a conversion always uses one consistent set of rates.
+ */
+public final class FxRates {
+    /**
+     * Decimal places kept in a cross rate.
+     */
+    static final int RATE_SCALE = 9;
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private volatile Table table;
+
+    /**
+     * @param rates - units of each currency per unit of the base currency
+     */
+    public FxRates(String baseCurrency, Map<String, BigDecimal> rates) {
+        update(baseCurrency, rates);
+    }
+
+    /**
+     * Replaces every rate at once; conversions in flight finish on the previous table.
+     *
+     * @throws IllegalArgumentException for an unknown currency code, or a rate that is not positive
+     */
+    public void update(String baseCurrency, Map<String, BigDecimal> rates) {
+        table = Table.build(baseCurrency, rates);
+    }
+
+    public String getBaseCurrency() {
+        return table.currencies[0];
+    }
+
+    public List<String> getCurrencies() {
+        return List.of(table.currencies);
+    }
+
+    /**
+     * Converts to {@code toCurrency}, rounded half-even to its minor unit.
+     *
+     * @throws IllegalArgumentException if there is no rate for either currency
+     */
+    public BigDecimal convert(BigDecimal amount, String fromCurrency, String toCurrency) {
+        if (fromCurrency.equals(toCurrency)) {
+            return amount;
+        }
+        Table current = table;
+        int pair = current.pair(fromCurrency, toCurrency);
+        if (pair < 0) {
+            throw new IllegalArgumentException("No exchange rate from " + fromCurrency + " to " + toCurrency);
+        }
+        int digits = current.fractionDigits[pair];
+        int shift = RATE_SCALE + amount.scale() - digits;
+        if (shift >= 0 && shift < POWERS_OF_TEN.length) {
+            try {
+                // the unscaled value as a long, without going through BigInteger
+                long value = amount.scaleByPowerOfTen(amount.scale()).longValueExact();
+                if (Math.abs(value) <= current.maxUnscaled[pair]) {
+                    return BigDecimal.valueOf(divideHalfEven(value * current.multipliers[pair], POWERS_OF_TEN[shift]), digits);
+                }
+            } catch (ArithmeticException e) {
+                // more than 18 digits, converted below
+            }
+        }
+        // too large for a long; same fixed-point rate, so the result is identical
+        return amount.multiply(BigDecimal.valueOf(current.multipliers[pair], RATE_SCALE)).setScale(digits, RoundingMode.HALF_EVEN);
+    }
+
+    /**
+     * Parses {@code EUR:0.92,GBP:0.79}.
+     */
+    public static Map<String, BigDecimal> parseRates(String spec) {
+        Map<String, BigDecimal> rates = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected CURRENCY:rate, got " + entry);
+            }
+            rates.put(parts[0].trim(), new BigDecimal(parts[1].trim()));
+        }
+        return rates;
+    }
+
+    private static long divideHalfEven(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long twiceRemainder = Math.abs(dividend - quotient * divisor) * 2;
+        if (twiceRemainder > divisor || (twiceRemainder == divisor && (quotient & 1) != 0)) {
+            quotient += Long.signum(dividend);
+        }
+        return quotient;
+    }
+
+    // multipliers[from * n + to] is the from -> to rate scaled by 10^RATE_SCALE and fractionDigits[from * n + to] the
+    // minor unit of the target; a currency's index is looked up by its
+    // three letters directly rather than by hashing the code
+    private record Table(String[] currencies, short[] indexes, long[] multipliers, long[] maxUnscaled, int[] fractionDigits) {
+        private static final int LETTERS = 26;
+
+        private static Table build(String baseCurrency, Map<String, BigDecimal> rates) {
+            List<String> currencies = new ArrayList<>();
+            List<BigDecimal> perBase = new ArrayList<>();
+            currencies.add(baseCurrency);
+            perBase.add(BigDecimal.ONE);
+            for (Map.Entry<String, BigDecimal> rate : rates.entrySet()) {
+                if (rate.getValue().signum() <= 0) {
+                    throw new IllegalArgumentException("Rate for " + rate.getKey() + " must be positive");
+                }
+                if (!rate.getKey().equals(baseCurrency)) {
+                    currencies.add(rate.getKey());
+                    perBase.add(rate.getValue());
+                }
+            }
+            int n = currencies.size();
+            short[] indexes = new short[LETTERS * LETTERS * LETTERS];
+            int[] minorUnits = new int[n];
+            for (int i = 0; i < n; i++) {
+                minorUnits[i] = Math.max(0, Currency.getInstance(currencies.get(i)).getDefaultFractionDigits());
+                indexes[slot(currencies.get(i))] = (short) (i + 1);
+            }
+            int[] fractionDigits = new int[n * n];
+            long[] multipliers = new long[n * n];
+            long[] maxUnscaled = new long[n * n];
+            for (int from = 0; from < n; from++) {
+                for (int to = 0; to < n; to++) {
+                    BigDecimal cross = perBase.get(to).divide(perBase.get(from), MathContext.DECIMAL128);
+                    long multiplier = cross.setScale(RATE_SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+                    if (multiplier <= 0) {
+                        throw new IllegalArgumentException("Rate from " + currencies.get(from) + " to " + currencies.get(to) + " is too small");
+                    }
+                    multipliers[from * n + to] = multiplier;
+                    maxUnscaled[from * n + to] = Long.MAX_VALUE / multiplier;
+                    fractionDigits[from * n + to] = minorUnits[to];
+                }
+            }
+            return new Table(currencies.toArray(new String[0]), indexes, multipliers, maxUnscaled, fractionDigits);
+        }
+
+        // -1 when either currency has no rate
+        private int pair(String fromCurrency, String toCurrency) {
+            int from = index(fromCurrency);
+            int to = index(toCurrency);
+            return from < 0 || to < 0 ? -1 : from * currencies.length + to;
+        }
+
+        private int index(String currency) {
+            int slot = slot(currency);
+            return slot < 0 ? -1 : indexes[slot] - 1;
+        }
+
+        // ISO 4217 codes are three upper case letters, which Currency.getInstance has checked for every entry
+        private static int slot(String currency) {
+            if (currency.length() != 3) {
+                return -1;
+            }
+            int slot = 0;
+            for (int i = 0; i < 3; i++) {
+                int letter = currency.charAt(i) - 'A';
+                if (letter < 0 || letter >= LETTERS) {
+                    return -1;
+                }
+                slot = slot * LETTERS + letter;
+            }
+            return slot;
+        }
+    }
+}
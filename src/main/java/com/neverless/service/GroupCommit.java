@@ -0,0 +1,109 @@
+package com.neverless.service;
+
+import com.neverless.model.TransferResult;
+import com.neverless.store.TransactionStore;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.ManyToOneConcurrentArrayQueue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sits between the transfer worker and the journal. Results are held back until a single sync covers them,
+ * which happens once either {@code maxBatchSize} results are pending or the oldest has waited {@code latencyBudgetNanos}.
+ * <p>
+ * A failed sync does not undo the balance changes behind the batch, so its successful transfers are answered with
+ * {@link TransferResult.ErrorCode#JOURNAL_SYNC_FAILED}: applied, but not known to be durable.
+ */
+public final class GroupCommit {
+    private final TransactionStore transactionStore;
+    private final int maxBatchSize;
+    private final long latencyBudgetNanos;
+    private final ManyToOneConcurrentArrayQueue<PendingCommit> pending;
+    private final PendingCommit[] batch;
+    private final Thread flusherThread;
+    private final AtomicBoolean running;
+    private int batchSize;
+    private volatile long syncCount;
+
+    public GroupCommit(TransactionStore transactionStore, int maxBatchSize, long latencyBudgetNanos) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.transactionStore = transactionStore;
+        this.maxBatchSize = maxBatchSize;
+        this.latencyBudgetNanos = latencyBudgetNanos;
+        this.pending = new ManyToOneConcurrentArrayQueue<>(Math.max(1024, maxBatchSize * 4));
+        this.batch = new PendingCommit[maxBatchSize];
+        this.running = new AtomicBoolean(true);
+        this.flusherThread = new Thread(this::runFlusher, "group-commit");
+        this.flusherThread.setDaemon(true);
+        this.flusherThread.start();
+    }
+
+    public void commit(TransferResult result, CompletableFuture<TransferResult> completion) {
+        PendingCommit commit = new PendingCommit(result, completion, System.nanoTime());
+        while (!pending.offer(commit)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    public void shutdown() {
+        running.set(false);
+        try {
+            flusherThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runFlusher() {
+        IdleStrategy idleStrategy = new BackoffIdleStrategy();
+        while (running.get() || batchSize > 0 || !pending.isEmpty()) {
+            int drained = pending.drain(this::addToBatch, maxBatchSize - batchSize);
+            if (batchSize > 0 && (batchSize == maxBatchSize || budgetExhausted() || !running.get())) {
+                flush();
+                drained++;
+            }
+            idleStrategy.idle(drained);
+        }
+    }
+
+    private void addToBatch(PendingCommit commit) {
+        batch[batchSize++] = commit;
+    }
+
+    private boolean budgetExhausted() {
+        return System.nanoTime() - batch[0].enqueuedNanos() >= latencyBudgetNanos;
+    }
+
+    private void flush() {
+        RuntimeException failure = null;
+        try {
+            transactionStore.sync();
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        syncCount++;
+        for (int i = 0; i < batchSize; i++) {
+            PendingCommit commit = batch[i];
+            batch[i] = null;
+            if (failure == null || commit.result().getStatus() == TransferResult.Status.FAILURE) {
+                // a failed transfer changed no balance, so its answer stands either way
+                commit.completion().complete(commit.result());
+            } else {
+                commit.completion().complete(TransferResult.failure("Transfer applied, but journal sync failed: " + failure.getMessage(),
+                        commit.result().getTaskId(), TransferResult.ErrorCode.JOURNAL_SYNC_FAILED));
+            }
+        }
+        batchSize = 0;
+    }
+
+    private record PendingCommit(TransferResult result, CompletableFuture<TransferResult> completion, long enqueuedNanos) {
+    }
+}
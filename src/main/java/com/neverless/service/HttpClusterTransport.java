@@ -0,0 +1,110 @@
+package com.neverless.service;
+
+import com.neverless.model.TransferResult;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends cluster messages to the other nodes' {@code /cluster/*} endpoints as signed form posts and reads the one-line
+ * reply {@code OUTCOME|ERROR_CODE|message}. The endpoints listen on each node's port plus the cluster port offset, apart
+ * from the public API. Requests are asynchronous, so the transfer worker never waits on the network.
+ */
+public final class HttpClusterTransport implements ClusterTransport {
+    private static final char SEPARATOR = '|';
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final ClusterSignature signature;
+    private final int portOffset;
+
+    public HttpClusterTransport(Duration requestTimeout, ClusterSignature signature, int portOffset) {
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(requestTimeout).build();
+        this.requestTimeout = requestTimeout;
+        this.signature = signature;
+        this.portOffset = portOffset;
+    }
+
+    @Override
+    public CompletableFuture<Reply> credit(ClusterRing.Node node, Credit credit) {
+        return post(node, "/cluster/credit", "transferId=" + encode(credit.transferId())
+                + "&fromAccountId=" + encode(credit.fromAccountId())
+                + "&toAccountId=" + encode(credit.toAccountId())
+                + "&amount=" + credit.amount().toPlainString()
+                + "&currency=" + encode(credit.currency())
+                + "&reservedAtMillis=" + credit.reservedAtMillis(), signCredit(signature, credit));
+    }
+
+    @Override
+    public CompletableFuture<Reply> abort(ClusterRing.Node node, String transferId, long reservedAtMillis) {
+        return post(node, "/cluster/abort", "transferId=" + encode(transferId) + "&reservedAtMillis=" + reservedAtMillis,
+                signAbort(signature, transferId, reservedAtMillis));
+    }
+
+    public static String signCredit(ClusterSignature signature, Credit credit) {
+        return signCredit(signature, credit.transferId(), credit.fromAccountId(), credit.toAccountId(),
+                credit.amount().toPlainString(), credit.currency(), String.valueOf(credit.reservedAtMillis()));
+    }
+
+    /**
+     * Signs the fields as they are sent, so a receiver can check a message before parsing any of it.
+     */
+    public static String signCredit(ClusterSignature signature, String transferId, String fromAccountId, String toAccountId,
+                                    String amount, String currency, String reservedAtMillis) {
+        return signature.sign("credit", transferId, fromAccountId, toAccountId, amount, currency, reservedAtMillis);
+    }
+
+    public static String signAbort(ClusterSignature signature, String transferId, long reservedAtMillis) {
+        return signAbort(signature, transferId, String.valueOf(reservedAtMillis));
+    }
+
+    public static String signAbort(ClusterSignature signature, String transferId, String reservedAtMillis) {
+        return signature.sign("abort", transferId, reservedAtMillis);
+    }
+
+    /**
+     * Where a node's cluster endpoints listen: its own port plus the offset, on the same host.
+     */
+    public static int clusterPort(ClusterRing.Node node, int portOffset) {
+        return node.port() + portOffset;
+    }
+
+    public static String format(Reply reply) {
+        return reply.outcome().name() + SEPARATOR + reply.errorCode() + SEPARATOR + reply.message();
+    }
+
+    static Reply parse(String line) {
+        String[] fields = line.trim().split("\\|", 3);
+        if (fields.length != 3) {
+            throw new IllegalStateException("Malformed cluster reply: " + line);
+        }
+        TransferResult.ErrorCode errorCode = "null".equals(fields[1]) ? null : TransferResult.ErrorCode.valueOf(fields[1]);
+        return new Reply(Outcome.valueOf(fields[0]), errorCode, fields[2]);
+    }
+
+    private CompletableFuture<Reply> post(ClusterRing.Node node, String path, String form, String signed) {
+        String host = node.address().substring(0, node.address().lastIndexOf(':'));
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + host + ":" + clusterPort(node, portOffset) + path))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header(ClusterSignature.HEADER, signed)
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Node " + node.id() + " answered " + response.statusCode());
+            }
+            return parse(response.body());
+        });
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
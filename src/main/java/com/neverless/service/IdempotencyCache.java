@@ -0,0 +1,107 @@
+package com.neverless.service;
+
+import com.neverless.model.TransferResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of requests carrying an idempotency key so that retries are answered without queueing
+ * another task. Entries expire after {@code ttlNanos}; once {@code capacity} keys have been recorded the oldest
+ * is evicted, so memory stays bounded under retry storms.
+ */
+public final class IdempotencyCache {
+    private final ConcurrentHashMap<String, Entry> entries;
+    private final AtomicReferenceArray<Entry> insertionOrder;
+    private final AtomicLong insertions;
+    private final int capacity;
+    private final long ttlNanos;
+
+    public IdempotencyCache(int capacity, long ttlNanos) {
+        this.entries = new ConcurrentHashMap<>(capacity);
+        this.insertionOrder = new AtomicReferenceArray<>(capacity);
+        this.insertions = new AtomicLong();
+        this.capacity = capacity;
+        this.ttlNanos = ttlNanos;
+    }
+
+    public TransferResult execute(String key, String fingerprint, Supplier<CompletableFuture<TransferResult>> submission) {
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry == null || entry.isExpired(now)) {
+            Entry fresh = new Entry(key, fingerprint, now + ttlNanos);
+            entry = entries.compute(key, (k, existing) -> existing == null || existing.isExpired(now) ? fresh : existing);
+            if (entry == fresh) {
+                recordInsertion(fresh);
+                submission.get().whenComplete((result, error) -> complete(fresh, result, error));
+            }
+        }
+
+        if (!entry.fingerprint.equals(fingerprint)) {
+            return TransferResult.failure("Idempotency key already used for a different request", null,
+                    TransferResult.ErrorCode.IDEMPOTENCY_KEY_REUSED);
+        }
+        try {
+            return entry.result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Thread.currentThread().interrupt();
+            return TransferResult.failure("Task execution interrupted", null, TransferResult.ErrorCode.UNKNOWN);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void complete(Entry entry, TransferResult result, Throwable error) {
+        if (error != null || !wasApplied(result)) {
+            // nothing was applied, so a retry must be allowed to run again
+            entries.remove(entry.key, entry);
+        }
+        if (error != null) {
+            entry.result.completeExceptionally(error);
+        } else {
+            entry.result.complete(result);
+        }
+    }
+
+    // JOURNAL_SYNC_FAILED is applied, and OUTCOME_UNKNOWN may be; both stay cached, so a retry cannot apply the
+    // transfer a second time
+    private static boolean wasApplied(TransferResult result) {
+        return result.getErrorCode() != TransferResult.ErrorCode.UNKNOWN
+                && result.getErrorCode() != TransferResult.ErrorCode.OVERLOADED
+                && result.getErrorCode() != TransferResult.ErrorCode.RATE_LIMITED
+                && result.getErrorCode() != TransferResult.ErrorCode.SHUTTING_DOWN
+                && result.getErrorCode() != TransferResult.ErrorCode.DEADLINE_EXCEEDED;
+    }
+
+    private void recordInsertion(Entry entry) {
+        int slot = (int) (insertions.getAndIncrement() % capacity);
+        Entry evicted = insertionOrder.getAndSet(slot, entry);
+        if (evicted != null) {
+            entries.remove(evicted.key, evicted);
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final String fingerprint;
+        private final long expiresAtNanos;
+        private final CompletableFuture<TransferResult> result;
+
+        private Entry(String key, String fingerprint, long expiresAtNanos) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.expiresAtNanos = expiresAtNanos;
+            this.result = new CompletableFuture<>();
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
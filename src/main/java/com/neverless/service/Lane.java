@@ -0,0 +1,41 @@
+package com.neverless.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Class of work a {@link TransferQueue} keeps in its own bounded lane. Lanes are served in declaration order, each
+ * taking up to its weight in tasks per scheduling round. {@link #ADMIN} holds the queue's own worker actions, such as
+ * rollbacks and resizes; they are never shed, so its capacity is unused.
+ */
+public enum Lane {
+    ADMIN(4),
+    INTERNAL(8),
+    EXTERNAL(2);
+
+    private final int defaultWeight;
+
+    Lane(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    public int defaultWeight() {
+        return defaultWeight;
+    }
+
+    public static Map<Lane, Settings> defaults(int capacity) {
+        Map<Lane, Settings> lanes = new EnumMap<>(Lane.class);
+        for (Lane lane : values()) {
+            lanes.put(lane, new Settings(capacity, lane.defaultWeight));
+        }
+        return lanes;
+    }
+
+    public record Settings(int capacity, int weight) {
+        public Settings {
+            if (capacity <= 0 || weight <= 0) {
+                throw new IllegalArgumentException("Lane capacity and weight must be positive");
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.neverless.service;
+
+import com.neverless.model.Account;
+import com.neverless.model.Transaction;
+import com.neverless.store.AccountStore;
+import com.neverless.store.TransactionStore;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Checks every balance against the transaction log while transfers keep running.
+ * <p>
+ * A run cuts the log on the transfer worker, between two tasks, so every change logged before the cut is published
+ * and nothing after it has happened yet. Off the worker it then sums with fork-join what each account gained or lost
+ * in the log since the previous checkpoint, and compares the account's reconciled balance plus that movement with its
+ * balance. Balances keep moving during the scan, so the accounts touched after the cut are read again on the worker
+ * at the end and their later movements subtracted, which gives their exact balance at the cut.
+ * <p>
+ * {@link #reconcile()} only examines accounts with activity since the last checkpoint; {@link #reconcileAll()}
+ * examines every account. A discrepancy is reported once: the actual balance becomes the account's new baseline.
+ */
+public final class LedgerReconciler {
+    private static final int LOG_SPLIT_THRESHOLD = 16_384;
+    private static final int ACCOUNT_SPLIT_THRESHOLD = 16_384;
+    private static final int MAX_REPORTED_DISCREPANCIES = 100;
+
+    private final AccountStore accountStore;
+    private final TransactionStore transactionStore;
+    private final TransferQueue transferQueue;
+    private final ForkJoinPool pool;
+    private long checkpoint;
+    private BigDecimal externalOutflow = BigDecimal.ZERO;
+
+    public LedgerReconciler(AccountStore accountStore, TransactionStore transactionStore, TransferQueue transferQueue) {
+        this(accountStore, transactionStore, transferQueue, ForkJoinPool.commonPool());
+    }
+
+    public LedgerReconciler(AccountStore accountStore, TransactionStore transactionStore, TransferQueue transferQueue, ForkJoinPool pool) {
+        this.accountStore = accountStore;
+        this.transactionStore = transactionStore;
+        this.transferQueue = transferQueue;
+        this.pool = pool;
+    }
+
+    public synchronized Report reconcile() {
+        return run(false);
+    }
+
+    public synchronized Report reconcileAll() {
+        return run(true);
+    }
+
+    public synchronized long getCheckpoint() {
+        return checkpoint;
+    }
+
+    private Report run(boolean all) {
+        long start = System.nanoTime();
+        long from = checkpoint;
+        long cut = onWorker(transactionStore::getTransactionCount);
+        Movements movements = pool.invoke(new LogScan(from, cut));
+
+        Collection<Account> accounts = all ? accountStore.getAllAccounts() : movements.accounts();
+        Scan scan = pool.invoke(new AccountScan(accounts.spliterator(), movements.deltas));
+
+        // most of the activity since the cut is summed here; only the tail logged meanwhile is left for the worker
+        long scanned = transactionStore.getTransactionCount();
+        Movements late = pool.invoke(new LogScan(cut, scanned));
+        Map<String, BigDecimal> balancesAtCut = onWorker(() -> {
+            for (Transaction transaction : transactionStore.getTransactions(scanned, transactionStore.getTransactionCount())) {
+                late.add(transaction);
+            }
+            Map<String, BigDecimal> balances = new HashMap<>();
+            for (Map.Entry<String, BigDecimal> delta : late.deltas.entrySet()) {
+                Account account = accountStore.getAccount(delta.getKey());
+                if (account != null) {
+                    balances.put(delta.getKey(), account.getWorkingBalance().subtract(delta.getValue()));
+                }
+            }
+            return balances;
+        });
+
+        Map<String, Discrepancy> discrepancies = scan.mismatches;
+        for (Map.Entry<String, BigDecimal> entry : balancesAtCut.entrySet()) {
+            String accountId = entry.getKey();
+            if (!all && !movements.deltas.containsKey(accountId)) {
+                continue; // no activity before the cut, so the next run examines it
+            }
+            Discrepancy mismatch = discrepancies.remove(accountId);
+            Account account = accountStore.getAccount(accountId);
+            BigDecimal expected = mismatch != null ? mismatch.expected() : account.getReconciledBalance();
+            if (expected.compareTo(entry.getValue()) == 0) {
+                account.setReconciledBalance(expected);
+            } else {
+                discrepancies.put(accountId, new Discrepancy(accountId, expected, entry.getValue()));
+            }
+        }
+
+        BigDecimal actualTotal = scan.expectedTotal;
+        List<Discrepancy> reported = new ArrayList<>();
+        for (Discrepancy discrepancy : discrepancies.values()) {
+            accountStore.getAccount(discrepancy.accountId()).setReconciledBalance(discrepancy.actual());
+            actualTotal = actualTotal.add(discrepancy.actual().subtract(discrepancy.expected()));
+            if (reported.size() < MAX_REPORTED_DISCREPANCIES) {
+                reported.add(discrepancy);
+            }
+        }
+        checkpoint = cut;
+        externalOutflow = externalOutflow.add(movements.outflow);
+        return new Report(from, cut, scan.examined, scan.expectedTotal, actualTotal, externalOutflow,
+                discrepancies.size(), reported, System.nanoTime() - start);
+    }
+
+    private <T> T onWorker(Supplier<T> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        transferQueue.executeOnWorker(() -> {
+            try {
+                result.complete(action.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.join();
+    }
+
+    /**
+     * @param expectedTotal - sum of the examined accounts' expected balances at the cut
+     * @param externalOutflow - net amount withdrawn to external addresses up to the cut, across all runs
+     * @param discrepancies - at most the first 100
+     */
+    public record Report(long fromPosition,
+                         long toPosition,
+                         long accountsExamined,
+                         BigDecimal expectedTotal,
+                         BigDecimal actualTotal,
+                         BigDecimal externalOutflow,
+                         int discrepancyCount,
+                         List<Discrepancy> discrepancies,
+                         long elapsedNanos) {
+    }
+
+    public record Discrepancy(String accountId, BigDecimal expected, BigDecimal actual) {
+    }
+
+    // What each account gained or lost over a stretch of the log, and what left for external addresses.
+    private final class Movements {
+        private final Map<String, BigDecimal> deltas = new HashMap<>();
+        private BigDecimal outflow = BigDecimal.ZERO;
+
+        private void add(Transaction transaction) {
+            if (!transaction.movesBalances()) {
+                return;
+            }
+            String fromAccountId = transaction.fromAccountId();
+            String toAccountId = transaction.toAccountId();
+            BigDecimal fromEffect = transaction.effectOn(fromAccountId);
+            move(fromAccountId, fromEffect);
+            if (accountStore.getAccount(toAccountId) == null) {
+                outflow = outflow.subtract(fromEffect); // an external address
+            } else if (!toAccountId.equals(fromAccountId)) {
+                move(toAccountId, transaction.effectOn(toAccountId));
+            }
+        }
+
+        private void move(String accountId, BigDecimal amount) {
+            deltas.merge(accountId, amount, BigDecimal::add);
+        }
+
+        private Movements merge(Movements other) {
+            Movements larger = deltas.size() >= other.deltas.size() ? this : other;
+            Movements smaller = larger == this ? other : this;
+            smaller.deltas.forEach(larger::move);
+            larger.outflow = larger.outflow.add(smaller.outflow);
+            return larger;
+        }
+
+        private List<Account> accounts() {
+            List<Account> accounts = new ArrayList<>(deltas.size());
+            for (String accountId : deltas.keySet()) {
+                Account account = accountStore.getAccount(accountId);
+                if (account != null) {
+                    accounts.add(account);
+                }
+            }
+            return accounts;
+        }
+    }
+
+    // fork/join tasks are Serializable, but these never leave the pool that runs them
+    @SuppressWarnings("serial")
+    private final class LogScan extends RecursiveTask<Movements> {
+        private final long from;
+        private final long to;
+
+        private LogScan(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Movements compute() {
+            if (to - from <= LOG_SPLIT_THRESHOLD) {
+                Movements movements = new Movements();
+                for (Transaction transaction : transactionStore.getTransactions(from, to)) {
+                    movements.add(transaction);
+                }
+                return movements;
+            }
+            long middle = (from + to) >>> 1;
+            LogScan left = new LogScan(from, middle);
+            left.fork();
+            Movements right = new LogScan(middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class AccountScan extends RecursiveTask<Scan> {
+        private final Spliterator<Account> accounts;
+        private final Map<String, BigDecimal> deltas;
+
+        private AccountScan(Spliterator<Account> accounts, Map<String, BigDecimal> deltas) {
+            this.accounts = accounts;
+            this.deltas = deltas;
+        }
+
+        @Override
+        protected Scan compute() {
+            List<AccountScan> forks = new ArrayList<>();
+            Spliterator<Account> split;
+            while (accounts.estimateSize() > ACCOUNT_SPLIT_THRESHOLD && (split = accounts.trySplit()) != null) {
+                AccountScan fork = new AccountScan(split, deltas);
+                fork.fork();
+                forks.add(fork);
+            }
+            Scan scan = new Scan();
+            accounts.forEachRemaining(account -> scan.examine(account, deltas.get(account.getAccountId())));
+            for (AccountScan fork : forks) {
+                scan.merge(fork.join());
+            }
+            return scan;
+        }
+    }
+
+    private static final class Scan {
+        private final Map<String, Discrepancy> mismatches = new HashMap<>();
+        private long examined;
+        private BigDecimal expectedTotal = BigDecimal.ZERO;
+
+        // a mismatch may only be movement after the cut; the worker settles that for the accounts it touched
+        private void examine(Account account, BigDecimal delta) {
+            BigDecimal reconciled = account.getReconciledBalance();
+            BigDecimal expected = delta == null ? reconciled : reconciled.add(delta);
+            examined++;
+            expectedTotal = expectedTotal.add(expected);
+            if (expected.compareTo(account.getBalance()) != 0) {
+                mismatches.put(account.getAccountId(), new Discrepancy(account.getAccountId(), expected, account.getBalance()));
+            } else if (delta != null) {
+                account.setReconciledBalance(expected);
+            }
+        }
+
+        private void merge(Scan other) {
+            mismatches.putAll(other.mismatches);
+            examined += other.examined;
+            expectedTotal = expectedTotal.add(other.expectedTotal);
+        }
+    }
+}
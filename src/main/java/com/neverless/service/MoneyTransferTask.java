@@ -1,11 +1,41 @@
 package com.neverless.service;
 
+import com.neverless.model.QueuedTransfer;
 import com.neverless.model.TransferProgress;
 import com.neverless.model.TransferResult;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 public interface MoneyTransferTask extends Callable<TransferResult> {
+    long NO_DEADLINE = Long.MAX_VALUE;
+
     String getId();
     TransferProgress getProgress();
+
+    default Lane lane() {
+        return Lane.INTERNAL;
+    }
+
+    /**
+     * {@link System#nanoTime()} after which nobody waits for the result any more, or {@link #NO_DEADLINE}.
+     */
+    default long getDeadlineNanos() {
+        return NO_DEADLINE;
+    }
+
+    /**
+     * What is needed to queue the task again after a restart, or null for a task that cannot be resumed.
+     */
+    default QueuedTransfer toQueuedTransfer() {
+        return null;
+    }
+
+    /**
+     * Runs the task on the transfer worker. Tasks waiting on an external system return a future completed off the
+     * worker, so the worker is free to take the next task in the meantime.
+     */
+    default CompletableFuture<TransferResult> execute() throws Exception {
+        return CompletableFuture.completedFuture(call());
+    }
 }
@@ -0,0 +1,154 @@
+package com.neverless.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Accumulates the net movement between configured account pairs so that many small transfers between them settle
+ * to balances as one debit and one credit per window. Positions are only touched by the transfer worker; the
+ * scheduler thread merely asks the worker to settle.
+ */
+public final class NettingWindow {
+    private final Map<String, Position> positions;
+    private final Map<String, List<Position>> byAccount;
+    private final long windowNanos;
+    private volatile boolean running = true;
+    private Thread schedulerThread;
+
+    /**
+     * @param pairs - account pairs to net, in either direction, each given as {@code {accountA, accountB}}
+     */
+    public NettingWindow(Collection<String[]> pairs, long windowNanos) {
+        this.positions = new HashMap<>();
+        this.byAccount = new HashMap<>();
+        this.windowNanos = windowNanos;
+        for (String[] pair : pairs) {
+            if (pair.length != 2 || pair[0].equals(pair[1])) {
+                throw new IllegalArgumentException("A netting pair needs two distinct accounts");
+            }
+            Position position = new Position(pair[0], pair[1]);
+            positions.put(key(pair[0], pair[1]), position);
+            byAccount.computeIfAbsent(pair[0], id -> new ArrayList<>()).add(position);
+            byAccount.computeIfAbsent(pair[1], id -> new ArrayList<>()).add(position);
+        }
+    }
+
+    /**
+     * Parses {@code accountA:accountB,accountC:accountD}.
+     */
+    public static List<String[]> parsePairs(String spec) {
+        List<String[]> pairs = new ArrayList<>();
+        for (String pair : spec.split(",")) {
+            if (!pair.isBlank()) {
+                pairs.add(pair.trim().split(":"));
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Starts asking for a settlement every window. The action is expected to hand the work to the transfer worker.
+     */
+    public void start(Runnable settleAction) {
+        schedulerThread = new Thread(() -> {
+            while (running) {
+                LockSupport.parkNanos(windowNanos);
+                if (running) {
+                    settleAction.run();
+                }
+            }
+        }, "netting");
+        schedulerThread.setDaemon(true);
+        schedulerThread.start();
+    }
+
+    public void shutdown() {
+        running = false;
+        if (schedulerThread != null) {
+            LockSupport.unpark(schedulerThread);
+        }
+    }
+
+    public boolean covers(String fromAccountId, String toAccountId) {
+        return positions.containsKey(key(fromAccountId, toAccountId));
+    }
+
+    /**
+     * Net amount the account is owed (positive) or owes (negative) across its unsettled positions.
+     */
+    public BigDecimal pending(String accountId) {
+        List<Position> accountPositions = byAccount.get(accountId);
+        if (accountPositions == null) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal pending = BigDecimal.ZERO;
+        for (Position position : accountPositions) {
+            pending = accountId.equals(position.first) ? pending.subtract(position.net) : pending.add(position.net);
+        }
+        return pending;
+    }
+
+    public void add(String fromAccountId, String toAccountId, BigDecimal amount) {
+        Position position = positions.get(key(fromAccountId, toAccountId));
+        position.net = fromAccountId.equals(position.first) ? position.net.add(amount) : position.net.subtract(amount);
+        position.transfers++;
+    }
+
+    public void settleAll(Consumer<Settlement> settler) {
+        for (Position position : positions.values()) {
+            settle(position, settler);
+        }
+    }
+
+    public void settleInvolving(String accountId, Consumer<Settlement> settler) {
+        List<Position> accountPositions = byAccount.get(accountId);
+        if (accountPositions != null) {
+            for (Position position : accountPositions) {
+                settle(position, settler);
+            }
+        }
+    }
+
+    private static void settle(Position position, Consumer<Settlement> settler) {
+        if (position.transfers == 0) {
+            return;
+        }
+        int sign = position.net.signum();
+        if (sign != 0) {
+            settler.accept(sign > 0
+                    ? new Settlement(position.first, position.second, position.net, position.transfers)
+                    : new Settlement(position.second, position.first, position.net.negate(), position.transfers));
+        }
+        position.net = BigDecimal.ZERO;
+        position.transfers = 0;
+    }
+
+    private static String key(String a, String b) {
+        return a.compareTo(b) <= 0 ? a + '|' + b : b + '|' + a;
+    }
+
+    /**
+     * Net amount to move from {@code fromAccountId} to {@code toAccountId} for {@code transfers} netted transfers.
+     */
+    public record Settlement(String fromAccountId, String toAccountId, BigDecimal amount, int transfers) {
+    }
+
+    private static final class Position {
+        private final String first;
+        private final String second;
+        // positive when first owes second
+        private BigDecimal net = BigDecimal.ZERO;
+        private int transfers;
+
+        private Position(String first, String second) {
+            this.first = first;
+            this.second = second;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.neverless.service;
+
+import com.neverless.model.TransferStatus;
+
+/**
+ * Notified of every status a transfer moves through. Called on the thread recording the status, usually the
+ * transfer worker, so implementations must not block.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    void onStatus(String transferId, TransferStatus status);
+}
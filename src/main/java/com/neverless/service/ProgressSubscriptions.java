@@ -0,0 +1,62 @@
+package com.neverless.service;
+
+import com.neverless.model.TransferStatus;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Listeners per transfer id, held as a small copy-on-write array. Publishing to a transfer nobody watches costs a
+ * single map lookup, and a transfer's entry is dropped as soon as it reaches a final status.
+ */
+public final class ProgressSubscriptions {
+    private static final ProgressListener[] NONE = new ProgressListener[0];
+
+    private final ConcurrentHashMap<String, ProgressListener[]> listeners = new ConcurrentHashMap<>();
+
+    public void subscribe(String transferId, ProgressListener listener) {
+        listeners.merge(transferId, new ProgressListener[]{listener}, ProgressSubscriptions::append);
+    }
+
+    public void unsubscribe(String transferId, ProgressListener listener) {
+        listeners.computeIfPresent(transferId, (id, current) -> {
+            ProgressListener[] remaining = without(current, listener);
+            return remaining.length == 0 ? null : remaining;
+        });
+    }
+
+    public void publish(String transferId, TransferStatus status) {
+        ProgressListener[] current = status.isFinal() ? listeners.remove(transferId) : listeners.get(transferId);
+        if (current == null) {
+            return;
+        }
+        for (ProgressListener listener : current) {
+            listener.onStatus(transferId, status);
+        }
+    }
+
+    public int size() {
+        return listeners.size();
+    }
+
+    private static ProgressListener[] append(ProgressListener[] current, ProgressListener[] added) {
+        ProgressListener[] combined = Arrays.copyOf(current, current.length + added.length);
+        System.arraycopy(added, 0, combined, current.length, added.length);
+        return combined;
+    }
+
+    private static ProgressListener[] without(ProgressListener[] current, ProgressListener listener) {
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                if (current.length == 1) {
+                    return NONE;
+                }
+                ProgressListener[] remaining = new ProgressListener[current.length - 1];
+                System.arraycopy(current, 0, remaining, 0, i);
+                System.arraycopy(current, i + 1, remaining, i, current.length - i - 1);
+                return remaining;
+            }
+        }
+        return current;
+    }
+}
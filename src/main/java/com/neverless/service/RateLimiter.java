@@ -0,0 +1,152 @@
+package com.neverless.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Token bucket per key (an account or user id) that allocates nothing per request. Each bucket is a single
+ * {@code long}, the time its next token is due (the generic cell rate algorithm): a request is allowed while that
+ * time is at most {@code burst - 1} intervals ahead of now, and pushes it one interval further. Refill is therefore
+ * computed lazily from the clock, and a bucket never needs a timer or a sweep.
+ * <p>
+ * Keys are kept in an open-addressing table of parallel arrays. Looking up a known key and taking a token are
+ * lock-free; only the first request for a key takes a lock to insert it. Keys are never removed, so callers only key
+ * it on bounded sets, such as existing accounts and their users.
+ */
+public final class RateLimiter {
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(String[].class);
+    private static final VarHandle DUE = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // due time of a key that has never been used; earlier than any clock reading
+    private static final long IDLE = Long.MIN_VALUE;
+
+    private volatile Rate rate;
+    private volatile Table table;
+    private int size;
+
+    /**
+     * @param perSecond - sustained requests per second for each key
+     * @param burst - requests a key may make at once after being idle
+     * @param expectedKeys - sizes the table; it grows past this, but growing briefly forgets recent usage
+     */
+    public RateLimiter(int perSecond, int burst, int expectedKeys) {
+        this.rate = Rate.of(perSecond, burst);
+        this.table = new Table(Integer.highestOneBit(Math.max(16, expectedKeys * 2 - 1)) << 1);
+    }
+
+    /**
+     * Takes a token for the key if one is available.
+     *
+     * @return 0 if the request is allowed, otherwise how long until the key's next token, in nanoseconds
+     */
+    public long tryAcquire(String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    long tryAcquire(String key, long now) {
+        Rate current = rate;
+        Table slots = table;
+        int index = slots.indexOf(key);
+        if (index < 0) {
+            insert(key);
+            slots = table;
+            index = slots.indexOf(key); // in every table from now on
+        }
+        while (true) {
+            long due = (long) DUE.getVolatile(slots.due, index);
+            long next = Math.max(due, now);
+            long waitNanos = next - current.toleranceNanos - now;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (DUE.compareAndSet(slots.due, index, due, next + current.intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    public void setRate(int perSecond, int burst) {
+        rate = Rate.of(perSecond, burst);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized void insert(String key) {
+        Table current = table;
+        if (current.indexOf(key) >= 0) {
+            return;
+        }
+        if ((size + 1) * 2 > current.keys.length) {
+            current = grow(current);
+        }
+        current.put(key, IDLE);
+        size++;
+    }
+
+    // requests that take a token from the old table while it is copied are not carried over
+    private Table grow(Table old) {
+        Table grown = new Table(old.keys.length * 2);
+        for (int i = 0; i < old.keys.length; i++) {
+            String key = old.keys[i];
+            if (key != null) {
+                grown.put(key, (long) DUE.getVolatile(old.due, i));
+            }
+        }
+        table = grown;
+        return grown;
+    }
+
+    private record Rate(long intervalNanos, long toleranceNanos) {
+
+        private static Rate of(int perSecond, int burst) {
+            if (perSecond <= 0 || burst <= 0) {
+                throw new IllegalArgumentException("Rate and burst must be positive");
+            }
+            long intervalNanos = NANOS_PER_SECOND / perSecond;
+            return new Rate(intervalNanos, intervalNanos * (burst - 1));
+        }
+    }
+
+    private static final class Table {
+        private final String[] keys;
+        private final long[] due;
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new String[capacity];
+            this.due = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private int indexOf(String key) {
+            for (int index = spread(key.hashCode()) & mask; ; index = (index + 1) & mask) {
+                String candidate = (String) KEYS.getAcquire(keys, index);
+                if (candidate == null) {
+                    return -1;
+                }
+                if (candidate.equals(key)) {
+                    return index;
+                }
+            }
+        }
+
+        // under the limiter's lock; the key is published after its bucket
+        private void put(String key, long dueNanos) {
+            int index = spread(key.hashCode()) & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            DUE.setVolatile(due, index, dueNanos);
+            KEYS.setRelease(keys, index, key);
+        }
+
+        // String.hashCode differs little between similar ids, so its bits are mixed before masking
+        private static int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85EBCA6B;
+            return hash ^ (hash >>> 13);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.neverless.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Typed registry of the server's settings. A setting's value comes from, in increasing priority, its default, the
+ * properties file named by {@code settings.path}, an environment variable ({@code queue.internal.capacity} is read
+ * from {@code MOVEMONEY_QUEUE_INTERNAL_CAPACITY}) and a system property of the same name.
+ * <p>
+ * Settings are restart-only unless {@link Setting#live} gives them a way to apply a new value, in which case
+ * {@link #update} changes them while the server runs.
+ */
+public final class Settings {
+    public static final String PATH_PROPERTY = "settings.path";
+    private static final String ENVIRONMENT_PREFIX = "MOVEMONEY_";
+
+    private final Map<String, String> file;
+    private final Map<String, String> environment;
+    private final Map<String, String> properties;
+    private final Map<String, Setting<?>> settings = new LinkedHashMap<>();
+
+    public Settings(Map<String, String> file, Map<String, String> environment, Map<String, String> properties) {
+        this.file = file;
+        this.environment = environment;
+        this.properties = properties;
+    }
+
+    /**
+     * Reads the file named by {@code settings.path}, if set, the process environment and the system properties.
+     */
+    public static Settings load() {
+        Map<String, String> properties = asMap(System.getProperties());
+        String path = properties.get(PATH_PROPERTY);
+        return new Settings(path == null ? Map.of() : readFile(Path.of(path)), System.getenv(), properties);
+    }
+
+    public Setting<Integer> intSetting(String name, int defaultValue) {
+        return register(name, Integer::valueOf, defaultValue);
+    }
+
+    public Setting<Long> longSetting(String name, long defaultValue) {
+        return register(name, Long::valueOf, defaultValue);
+    }
+
+    public Setting<Boolean> booleanSetting(String name, boolean defaultValue) {
+        return register(name, Settings::parseBoolean, defaultValue);
+    }
+
+    /**
+     * @param defaultValue - may be null for a setting that is off unless given
+     */
+    public Setting<String> stringSetting(String name, String defaultValue) {
+        return register(name, Function.identity(), defaultValue);
+    }
+
+    /**
+     * Parses and applies a new value for a live setting.
+     *
+     * @throws IllegalArgumentException if the setting is unknown, restart-only, or the value is invalid
+     */
+    public synchronized void update(String name, String value) {
+        Setting<?> setting = settings.get(name);
+        if (setting == null) {
+            throw new IllegalArgumentException("Unknown setting " + name);
+        }
+        if (!setting.isLive()) {
+            throw new IllegalArgumentException("Setting " + name + " only changes on restart");
+        }
+        setting.apply(value);
+    }
+
+    public synchronized Map<String, Setting<?>> getSettings() {
+        return new LinkedHashMap<>(settings);
+    }
+
+    private synchronized <T> Setting<T> register(String name, Function<String, T> parser, T defaultValue) {
+        if (settings.containsKey(name)) {
+            throw new IllegalArgumentException("Setting " + name + " is already registered");
+        }
+        String configured = properties.get(name);
+        if (configured == null) {
+            configured = environment.get(ENVIRONMENT_PREFIX + name.toUpperCase(Locale.ROOT).replace('.', '_').replace('-', '_'));
+        }
+        if (configured == null) {
+            configured = file.get(name);
+        }
+        Setting<T> setting = new Setting<>(name, parser, configured == null ? defaultValue : parse(name, parser, configured));
+        settings.put(name, setting);
+        return setting;
+    }
+
+    private static <T> T parse(String name, Function<String, T> parser, String value) {
+        try {
+            return parser.apply(value.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+        }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException(value);
+        }
+        return Boolean.valueOf(value);
+    }
+
+    private static Map<String, String> readFile(Path path) {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read settings " + path, e);
+        }
+        return asMap(properties);
+    }
+
+    private static Map<String, String> asMap(Properties properties) {
+        Map<String, String> map = new HashMap<>();
+        properties.stringPropertyNames().forEach(name -> map.put(name, properties.getProperty(name)));
+        return map;
+    }
+
+    public static final class Setting<T> {
+        private final String name;
+        private final Function<String, T> parser;
+        private volatile T value;
+        private volatile Consumer<T> applier;
+        private volatile boolean secret;
+
+        private Setting(String name, Function<String, T> parser, T value) {
+            this.name = name;
+            this.parser = parser;
+            this.value = value;
+        }
+
+        public T get() {
+            return value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Makes the setting changeable at runtime. The applier hands a new value to the components using it and
+         * throws {@link IllegalArgumentException} to refuse it, in which case the old value stays.
+         */
+        public Setting<T> live(Consumer<T> applier) {
+            this.applier = applier;
+            return this;
+        }
+
+        /**
+         * Makes the setting changeable at runtime for a component that reads it each time it uses it, so a new value
+         * needs no applier.
+         */
+        public Setting<T> readOnUse() {
+            return live(value -> {
+            });
+        }
+
+        public boolean isLive() {
+            return applier != null;
+        }
+
+        /**
+         * Marks the setting as a credential, whose value is never listed.
+         */
+        public Setting<T> secret() {
+            this.secret = true;
+            return this;
+        }
+
+        public boolean isSecret() {
+            return secret;
+        }
+
+        private void apply(String newValue) {
+            T parsed = parse(name, parser, newValue);
+            applier.accept(parsed);
+            value = parsed;
+        }
+    }
+}
@@ -4,55 +4,178 @@ import com.neverless.model.TransferProgress;
 import com.neverless.model.TransferResult;
 import com.neverless.model.TransferStatus;
 import org.agrona.concurrent.ManyToOneConcurrentArrayQueue;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Runs transfers on a single worker thread. Each {@link Lane} has its own bounded queue and the worker serves them in
+ * weighted rounds, so a task waits at most {@code ceil(position / weight)} rounds of at most the sum of all weights in
+ * tasks, however deep the other lanes are. A burst of external transfers can therefore not hold back internal ones.
+ * The {@link Lane#ADMIN} lane carries the actions handed to {@link #executeOnWorker} rather than transfers.
+ * <p>
+ * A lane is resized by swapping in a new queue: new tasks go to it at once, while the worker first drains the old one,
+ * so tasks keep their order and none are lost.
+ * <p>
+ * The queue does not stop by itself when the JVM exits: its owner calls {@link #drain} or {@link #shutdown}, in order
+ * with the stores the transfers write to.
+ */
 public final class TransferQueue {
-    private final ManyToOneConcurrentArrayQueue<FutureTask<TransferResult>> taskQueue;
+    private static final long SHUTDOWN_RETRY_AFTER_MILLIS = 1_000;
+
+    private final LaneQueue[] lanes;
+    private final ManyToOneConcurrentLinkedQueue<Runnable> workerActions;
     private final Thread workerThread;
     private final AtomicBoolean running;
     private final Map<String, TransferProgress> progressMap;
+    private final ProgressSubscriptions subscriptions;
+    private final GroupCommit groupCommit;
+    private final AdmissionControl admissionControl;
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // submitters between their running check and their offer, which a drain waits out before taking the leftovers
+    private final AtomicInteger submitting = new AtomicInteger();
+    private volatile long drainDeadlineNanos = MoneyTransferTask.NO_DEADLINE;
+    private volatile boolean workerStopped;
 
     public TransferQueue(int capacity) {
-        this.taskQueue = new ManyToOneConcurrentArrayQueue<>(capacity);
+        this(capacity, null);
+    }
+
+    public TransferQueue(int capacity, GroupCommit groupCommit) {
+        this(capacity, groupCommit, new AdmissionControl(capacity, Long.MAX_VALUE));
+    }
+
+    public TransferQueue(int capacity, GroupCommit groupCommit, AdmissionControl admissionControl) {
+        this(Lane.defaults(capacity), groupCommit, admissionControl);
+    }
+
+    public TransferQueue(Map<Lane, Lane.Settings> laneSettings, GroupCommit groupCommit, AdmissionControl admissionControl) {
+        this.lanes = new LaneQueue[Lane.values().length];
+        for (Lane lane : Lane.values()) {
+            Lane.Settings settings = laneSettings.get(lane);
+            if (settings == null) {
+                throw new IllegalArgumentException("No settings for lane " + lane);
+            }
+            lanes[lane.ordinal()] = new LaneQueue(settings.capacity(), settings.weight());
+        }
+        this.workerActions = new ManyToOneConcurrentLinkedQueue<>();
         this.running = new AtomicBoolean(true);
         this.progressMap = new ConcurrentHashMap<>();
+        this.subscriptions = new ProgressSubscriptions();
+        this.groupCommit = groupCommit;
+        this.admissionControl = admissionControl;
 
         this.workerThread = new Thread(() -> {
-            while (running.get() || !taskQueue.isEmpty()) {
+            while (running.get() || (getQueueDepth() > 0 && !drainExpired()) || !workerActions.isEmpty()) {
                 try {
-                    FutureTask<TransferResult> task = taskQueue.poll();
-                    if (task != null) {
-                        task.run();
-                    }
+                    runRound();
                 } catch (Exception e) {
                     Thread.currentThread().interrupt();
                 }
             }
+            // an action offered after the last check above is run here, or by its submitter once it sees the flag
+            synchronized (workerActions) {
+                workerStopped = true;
+                runWorkerActions();
+            }
         });
 
-        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
         this.workerThread.start();
     }
 
     public TransferResult submitTask(MoneyTransferTask task) {
+        try {
+            return submitAsync(task).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Thread.currentThread().interrupt();
+            return TransferResult.failure("Task execution interrupted", task.getId(), TransferResult.ErrorCode.UNKNOWN);
+        }
+    }
+
+    public CompletableFuture<TransferResult> submitAsync(MoneyTransferTask task) {
+        submitting.incrementAndGet();
+        try {
+            return offer(task);
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    private CompletableFuture<TransferResult> offer(MoneyTransferTask task) {
+        requireTransferLane(task.lane());
         String taskId = task.getId();
         if (running.get()) {
-            FutureTask<TransferResult> futureTask = new FutureTask<>(task);
+            // admission looks at the task's own lane, which is what bounds its wait
+            LaneQueue lane = lanes[task.lane().ordinal()];
+            int depth = lane.size();
+            if (!admissionControl.admits(depth)) {
+                return CompletableFuture.completedFuture(rejected(taskId, depth));
+            }
+            long deadlineNanos = task.getDeadlineNanos();
+            if (deadlineNanos != MoneyTransferTask.NO_DEADLINE
+                    && admissionControl.expectedWaitNanos(depth) > deadlineNanos - System.nanoTime()) {
+                // it would expire in the queue anyway
+                expired.incrementAndGet();
+                return CompletableFuture.completedFuture(deadlineExceeded(taskId));
+            }
+            CompletableFuture<TransferResult> result = new CompletableFuture<>();
             progressMap.put(taskId, task.getProgress());
-            taskQueue.offer(futureTask);
-            try {
-                return futureTask.get();
-            } catch (InterruptedException | ExecutionException e) {
-                Thread.currentThread().interrupt();
-                return TransferResult.failure("Task execution interrupted", taskId, TransferResult.ErrorCode.UNKNOWN);
+            if (!lane.offer(new PendingTransfer(task, result))) {
+                progressMap.remove(taskId);
+                return CompletableFuture.completedFuture(rejected(taskId, lane.queue.capacity()));
+            }
+            return result;
+        }
+        return CompletableFuture.completedFuture(TransferResult.shuttingDown(taskId, SHUTDOWN_RETRY_AFTER_MILLIS));
+    }
+
+    /**
+     * Queues a transfer resumed after a restart. It skips admission control, which would shed it, and waits for room
+     * in its lane instead; only meant for startup, before requests are served.
+     */
+    public CompletableFuture<TransferResult> requeue(MoneyTransferTask task) {
+        requireTransferLane(task.lane());
+        CompletableFuture<TransferResult> result = new CompletableFuture<>();
+        progressMap.put(task.getId(), task.getProgress());
+        LaneQueue lane = lanes[task.lane().ordinal()];
+        while (!lane.offer(new PendingTransfer(task, result))) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return result;
+    }
+
+    /**
+     * Runs an action on the worker thread, in the {@link Lane#ADMIN} lane, so that state it changes keeps a single
+     * writer. Used to compensate transfers whose outcome is only known after they left the worker. Actions are never
+     * shed, but like transfers only get their lane's weight per round, so a burst of them cannot stall the other lanes.
+     */
+    public void executeOnWorker(Runnable action) {
+        workerActions.offer(action);
+        if (workerStopped) {
+            // the worker has run its last actions, so nobody else will run this one
+            synchronized (workerActions) {
+                runWorkerActions();
             }
         }
-        return TransferResult.failure("Queue is not running", taskId, TransferResult.ErrorCode.UNKNOWN);
+    }
+
+    /**
+     * Makes a transfer running outside the queue, such as a withdrawal resumed after a restart, followable by its id.
+     */
+    public void trackProgress(TransferProgress progress) {
+        progressMap.put(progress.getTransferId(), progress);
     }
 
     public TransferProgress getTransferProgress(String transferId) {
@@ -63,7 +186,123 @@ public final class TransferQueue {
         TransferProgress progress = progressMap.get(transferId);
         if (progress != null) {
             progress.setStatus(status);
+            subscriptions.publish(transferId, status);
+        }
+    }
+
+    /**
+     * Registers a listener for the transfer's future status changes and returns its current progress. A transfer that
+     * is already final or unknown will not change again, so the listener is not kept.
+     */
+    public TransferProgress subscribe(String transferId, ProgressListener listener) {
+        subscriptions.subscribe(transferId, listener);
+        TransferProgress progress = getTransferProgress(transferId);
+        if (progress.getStatus().isFinal() || progress.getStatus() == TransferStatus.UNKNOWN) {
+            subscriptions.unsubscribe(transferId, listener);
+        }
+        return progress;
+    }
+
+    public void unsubscribe(String transferId, ProgressListener listener) {
+        subscriptions.unsubscribe(transferId, listener);
+    }
+
+    public int getQueueDepth() {
+        int depth = 0;
+        for (LaneQueue lane : lanes) {
+            depth += lane.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Transfers dropped unexecuted because their deadline passed, at admission or while queued.
+     */
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     * For {@link Lane#ADMIN}, the worker actions waiting to run.
+     */
+    public int getQueueDepth(Lane lane) {
+        return lane == Lane.ADMIN ? workerActions.size() : lanes[lane.ordinal()].size();
+    }
+
+    public int getCapacity(Lane lane) {
+        requireTransferLane(lane);
+        return lanes[lane.ordinal()].queue.capacity();
+    }
+
+    /**
+     * Swaps the lane's queue for one of the new capacity. Tasks already queued stay queued and run first.
+     *
+     * @throws IllegalArgumentException for {@link Lane#ADMIN}, whose actions are never shed and so have no capacity
+     */
+    public void resize(Lane lane, int capacity) {
+        requireTransferLane(lane);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Lane capacity must be positive");
         }
+        LaneQueue laneQueue = lanes[lane.ordinal()];
+        // the swap runs on the worker, the only thread that polls
+        executeOnWorker(() -> laneQueue.swap(new ManyToOneConcurrentArrayQueue<>(capacity)));
+    }
+
+    public void setWeight(Lane lane, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Lane weight must be positive");
+        }
+        lanes[lane.ordinal()].weight = weight;
+    }
+
+    /**
+     * Stops taking transfers, which are then answered {@link TransferResult.ErrorCode#SHUTTING_DOWN}, and lets the
+     * worker run the queued ones until the timeout. It then waits, within the same timeout, for started transfers
+     * completing off the worker. Transfers still queued at the deadline are not run and are returned. With
+     * {@code resumable} they are answered as {@link TransferResult.Status#ACCEPTED}, for the caller to persist and
+     * {@link #requeue} on the next start; otherwise as {@code SHUTTING_DOWN}, so their callers can safely retry.
+     *
+     * @param timeoutNanos - {@link MoneyTransferTask#NO_DEADLINE} to run every queued transfer however long it takes
+     */
+    public List<MoneyTransferTask> drain(long timeoutNanos, boolean resumable) {
+        long deadlineNanos = timeoutNanos == MoneyTransferTask.NO_DEADLINE ? timeoutNanos : System.nanoTime() + timeoutNanos;
+        drainDeadlineNanos = deadlineNanos;
+        running.set(false);
+        try {
+            workerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // a submitter that saw the queue running may still be offering; any later one sees it stopped
+        while (submitting.get() > 0) {
+            Thread.onSpinWait();
+        }
+        // the worker has exited, so this thread is now the lanes' only consumer
+        List<MoneyTransferTask> left = new ArrayList<>();
+        for (LaneQueue lane : lanes) {
+            for (PendingTransfer transfer = lane.poll(); transfer != null; transfer = lane.poll()) {
+                String taskId = transfer.task().getId();
+                left.add(transfer.task());
+                if (resumable) {
+                    transfer.result().complete(TransferResult.accepted(taskId));
+                } else {
+                    updateProgress(taskId, TransferStatus.FAILED);
+                    transfer.result().complete(TransferResult.shuttingDown(taskId, SHUTDOWN_RETRY_AFTER_MILLIS));
+                }
+            }
+        }
+        while (inFlight.get() > 0 && (deadlineNanos == MoneyTransferTask.NO_DEADLINE || System.nanoTime() - deadlineNanos < 0)) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        if (groupCommit != null) {
+            groupCommit.shutdown();
+        }
+        return left;
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
     }
 
     public void shutdown() {
@@ -74,5 +313,160 @@ public final class TransferQueue {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        if (groupCommit != null) {
+            groupCommit.shutdown();
+        }
+    }
+
+    private TransferResult rejected(String taskId, int depth) {
+        return TransferResult.overloaded("Transfer queue is overloaded", taskId, admissionControl.retryAfterMillis(depth));
+    }
+
+    private static TransferResult deadlineExceeded(String taskId) {
+        return TransferResult.failure("Deadline exceeded before the transfer started", taskId, TransferResult.ErrorCode.DEADLINE_EXCEEDED);
+    }
+
+    private static void requireTransferLane(Lane lane) {
+        if (lane == Lane.ADMIN) {
+            throw new IllegalArgumentException("The admin lane only carries worker actions");
+        }
+    }
+
+    private void runWorkerActions() {
+        runWorkerActions(Integer.MAX_VALUE);
+    }
+
+    private void runWorkerActions(int limit) {
+        Runnable action;
+        for (int i = 0; i < limit && (action = workerActions.poll()) != null; i++) {
+            action.run();
+        }
+    }
+
+    private boolean drainExpired() {
+        long deadlineNanos = drainDeadlineNanos;
+        return deadlineNanos != MoneyTransferTask.NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    private void runRound() {
+        // actions run past a drain's deadline too: they settle transfers that already ran
+        runWorkerActions(lanes[Lane.ADMIN.ordinal()].weight);
+        for (LaneQueue lane : lanes) {
+            if (lane == lanes[Lane.ADMIN.ordinal()]) {
+                continue;
+            }
+            for (int i = 0; i < lane.weight; i++) {
+                if (drainExpired()) {
+                    return;
+                }
+                PendingTransfer transfer = lane.poll();
+                if (transfer == null) {
+                    break;
+                }
+                execute(transfer);
+            }
+        }
+    }
+
+    private void execute(PendingTransfer transfer) {
+        long deadlineNanos = transfer.task().getDeadlineNanos();
+        if (deadlineNanos != MoneyTransferTask.NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0) {
+            // the caller has given up, so the worker does not spend anything on it
+            expired.incrementAndGet();
+            updateProgress(transfer.task().getId(), TransferStatus.FAILED);
+            transfer.result().complete(deadlineExceeded(transfer.task().getId()));
+            return;
+        }
+        CompletableFuture<TransferResult> execution;
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        try {
+            execution = transfer.task().execute();
+        } catch (Exception e) {
+            inFlight.decrementAndGet();
+            transfer.result().completeExceptionally(e);
+            return;
+        } finally {
+            admissionControl.recordServiceTime(System.nanoTime() - start);
+        }
+        execution.whenComplete((result, error) -> {
+            if (error != null) {
+                transfer.result().completeExceptionally(error);
+            } else if (groupCommit != null) {
+                // the task's journal records are already appended, so the next group sync covers them
+                groupCommit.commit(result, transfer.result());
+            } else {
+                transfer.result().complete(result);
+            }
+            // only once handed to the group commit, which a drain shuts down when nothing is in flight
+            inFlight.decrementAndGet();
+        });
+    }
+
+    private static final class LaneQueue {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static final ManyToOneConcurrentArrayQueue<PendingTransfer>[] NONE = new ManyToOneConcurrentArrayQueue[0];
+
+        private final AtomicInteger offering = new AtomicInteger();
+        private volatile ManyToOneConcurrentArrayQueue<PendingTransfer> queue;
+        // queues replaced by resizes and not yet drained, oldest first; only the worker replaces the array
+        private volatile ManyToOneConcurrentArrayQueue<PendingTransfer>[] draining = NONE;
+        private volatile int weight;
+
+        private LaneQueue(int capacity, int weight) {
+            this.queue = new ManyToOneConcurrentArrayQueue<>(capacity);
+            this.weight = weight;
+        }
+
+        private boolean offer(PendingTransfer transfer) {
+            offering.incrementAndGet();
+            try {
+                return queue.offer(transfer);
+            } finally {
+                offering.decrementAndGet();
+            }
+        }
+
+        // worker only
+        private PendingTransfer poll() {
+            ManyToOneConcurrentArrayQueue<PendingTransfer>[] old = draining;
+            if (old.length > 0) {
+                PendingTransfer transfer = old[0].poll();
+                if (transfer != null) {
+                    return transfer;
+                }
+                // A producer that read the old queue before the swap is still counted in offering, and one that
+                // starts after this check reads the new queue. So once nobody is offering, an old queue that is
+                // still empty stays empty.
+                if (offering.get() == 0) {
+                    transfer = old[0].poll();
+                    if (transfer != null) {
+                        return transfer;
+                    }
+                    draining = Arrays.copyOfRange(old, 1, old.length);
+                    return poll();
+                }
+            }
+            return queue.poll();
+        }
+
+        // worker only
+        private void swap(ManyToOneConcurrentArrayQueue<PendingTransfer> resized) {
+            ManyToOneConcurrentArrayQueue<PendingTransfer>[] old = Arrays.copyOf(draining, draining.length + 1);
+            old[old.length - 1] = queue;
+            draining = old;
+            queue = resized;
+        }
+
+        private int size() {
+            int size = queue.size();
+            for (ManyToOneConcurrentArrayQueue<PendingTransfer> old : draining) {
+                size += old.size();
+            }
+            return size;
+        }
+    }
+
+    private record PendingTransfer(MoneyTransferTask task, CompletableFuture<TransferResult> result) {
     }
 }
@@ -0,0 +1,370 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.ScheduledTransfer;
+import com.neverless.model.TransferResult;
+import com.neverless.store.ScheduleFile;
+import org.agrona.DeadlineTimerWheel;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.EpochClock;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds one-off and recurring transfers on a {@link DeadlineTimerWheel} until they are due. The wheel, the timer map
+ * and the release queue are only touched by the scheduler thread; other threads hand it commands through a queue.
+ * <p>
+ * Due transfers are not submitted all at once: they wait in a release queue drained at {@code releasePerSecond} with
+ * a burst of at most {@code releaseBurst}, so thousands of transfers due at midnight reach the {@link TransferQueue}
+ * as a ramp. A release refused before it ran is not a run: one the queue sheds, or refuses while shutting down, stays
+ * at the head of the release queue and is retried, and one refused by a rate limit is armed again for when the limit
+ * allows it.
+ * <p>
+ * A standing order is released once however late it is, then moves on to its first slot after the release, so runs
+ * missed while the server was down, or held back behind a long ramp, are skipped rather than paid back to back.
+ * <p>
+ * With a {@link ScheduleFile}, schedules outlive a restart: each is saved when it is created, removed when cancelled,
+ * and its next run is recorded before a run is submitted, so a crash in between skips that run rather than paying it
+ * twice.
+ */
+public final class TransferScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferScheduler.class);
+    private static final long TICK_RESOLUTION_MILLIS = 8;
+    private static final int TICKS_PER_WHEEL = 1024;
+    private static final int EXPIRY_LIMIT = 10_000;
+
+    private final TransferService transferService;
+    private final EpochClock clock;
+    private final ScheduleFile file;
+    private double releasePerMilli;
+    private double releaseBurst;
+    private final DeadlineTimerWheel wheel;
+    private final Long2ObjectHashMap<Schedule> timers;
+    private final ArrayDeque<Schedule> due;
+    private final Map<String, Schedule> schedules;
+    private final ManyToOneConcurrentLinkedQueue<Runnable> commands;
+    private final AtomicLong released = new AtomicLong();
+    private final Thread schedulerThread;
+    private volatile boolean running = true;
+    private double allowance;
+    private long lastRefillMillis;
+    private RuntimeException recordFailure;
+
+    public TransferScheduler(TransferService transferService, EpochClock clock, int releasePerSecond, int releaseBurst) {
+        this(transferService, clock, releasePerSecond, releaseBurst, null);
+    }
+
+    /**
+     * @param file - optional; where schedules are kept across restarts, and the schedules it holds are armed again
+     */
+    public TransferScheduler(TransferService transferService, EpochClock clock, int releasePerSecond, int releaseBurst, ScheduleFile file) {
+        if (releasePerSecond <= 0 || releaseBurst <= 0) {
+            throw new IllegalArgumentException("Release rate and burst must be positive");
+        }
+        this.transferService = transferService;
+        this.clock = clock;
+        this.file = file;
+        this.releasePerMilli = releasePerSecond / 1000.0;
+        this.releaseBurst = releaseBurst;
+        this.lastRefillMillis = clock.time();
+        this.allowance = releaseBurst;
+        this.wheel = new DeadlineTimerWheel(TimeUnit.MILLISECONDS, lastRefillMillis, TICK_RESOLUTION_MILLIS, TICKS_PER_WHEEL);
+        this.timers = new Long2ObjectHashMap<>();
+        this.due = new ArrayDeque<>();
+        this.schedules = new ConcurrentHashMap<>();
+        this.commands = new ManyToOneConcurrentLinkedQueue<>();
+        if (file != null) {
+            for (ScheduledTransfer saved : file.getSchedules()) {
+                Schedule schedule = new Schedule(saved.id(), saved.fromAccountId(), saved.toAccountId(), saved.amount(),
+                        saved.intervalMillis(), saved.nextRunAtMillis());
+                schedule.runs = saved.runs();
+                schedules.put(schedule.id, schedule);
+                commands.offer(() -> arm(schedule));
+            }
+        }
+        this.schedulerThread = new Thread(this::run, "transfer-scheduler");
+        schedulerThread.setDaemon(true);
+        schedulerThread.start();
+    }
+
+    /**
+     * @param intervalMillis - 0 for a one-off transfer, otherwise the period of a standing order
+     * @return the schedule id
+     */
+    public String schedule(String fromAccountId, String toAccountId, Amount amount, long executeAtMillis, long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Interval must not be negative");
+        }
+        Schedule schedule = new Schedule(UUID.randomUUID().toString(), fromAccountId, toAccountId, amount, intervalMillis, executeAtMillis);
+        if (file != null) {
+            file.save(schedule.saved(0, executeAtMillis));
+        }
+        schedules.put(schedule.id, schedule);
+        commands.offer(() -> arm(schedule));
+        return schedule.id;
+    }
+
+    public boolean cancel(String scheduleId) {
+        Schedule schedule = schedules.remove(scheduleId);
+        if (schedule == null) {
+            return false;
+        }
+        // the scheduler thread records runs under the same lock, so it cannot save the schedule again after this
+        synchronized (schedule) {
+            schedule.cancelled = true;
+            if (file != null) {
+                file.remove(scheduleId);
+            }
+        }
+        commands.offer(() -> {
+            if (timers.remove(schedule.timerId) != null) {
+                wheel.cancelTimer(schedule.timerId);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Changes the release rate; schedules already due are released at the new rate.
+     */
+    public void setReleaseRate(int releasePerSecond, int releaseBurst) {
+        if (releasePerSecond <= 0 || releaseBurst <= 0) {
+            throw new IllegalArgumentException("Release rate and burst must be positive");
+        }
+        commands.offer(() -> {
+            this.releasePerMilli = releasePerSecond / 1000.0;
+            this.releaseBurst = releaseBurst;
+            this.allowance = Math.min(allowance, releaseBurst);
+        });
+    }
+
+    public Schedule getSchedule(String scheduleId) {
+        return schedules.get(scheduleId);
+    }
+
+    public int getScheduledCount() {
+        return schedules.size();
+    }
+
+    public long getReleasedCount() {
+        return released.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            schedulerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        IdleStrategy idleStrategy = new BackoffIdleStrategy(10, 10, TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(1));
+        while (running) {
+            int work = 0;
+            Runnable command;
+            while ((command = commands.poll()) != null) {
+                command.run();
+                work++;
+            }
+            long now = clock.time();
+            work += wheel.poll(now, this::onDue, EXPIRY_LIMIT);
+            work += release(now);
+            idleStrategy.idle(work);
+        }
+    }
+
+    private void arm(Schedule schedule) {
+        arm(schedule, schedule.nextRunAtMillis);
+    }
+
+    private void arm(Schedule schedule, long atMillis) {
+        if (schedule.cancelled) {
+            return;
+        }
+        schedule.timerId = wheel.scheduleTimer(atMillis);
+        timers.put(schedule.timerId, schedule);
+    }
+
+    private boolean onDue(TimeUnit timeUnit, long now, long timerId) {
+        Schedule schedule = timers.remove(timerId);
+        if (schedule != null && !schedule.cancelled) {
+            due.addLast(schedule);
+        }
+        return true;
+    }
+
+    private int release(long now) {
+        allowance = Math.min(releaseBurst, allowance + (now - lastRefillMillis) * releasePerMilli);
+        lastRefillMillis = now;
+        int count = 0;
+        while (allowance >= 1 && !due.isEmpty()) {
+            Schedule schedule = due.peekFirst();
+            if (schedule.cancelled) {
+                due.pollFirst();
+                continue;
+            }
+            long nextRunAtMillis = nextSlot(schedule, now);
+            if (!record(schedule, 1, nextRunAtMillis)) {
+                // not submitted unless its next run is on disk; retried once the allowance refills
+                allowance = 0;
+                break;
+            }
+            CompletableFuture<TransferResult> result = submit(schedule);
+            TransferResult.ErrorCode refused = result.isDone() ? result.join().getErrorCode() : null;
+            if (refused == TransferResult.ErrorCode.OVERLOADED || refused == TransferResult.ErrorCode.SHUTTING_DOWN) {
+                // keep it first in line and let the queue drain before the next attempt
+                record(schedule, 0, schedule.nextRunAtMillis);
+                allowance = 0;
+                break;
+            }
+            if (refused == TransferResult.ErrorCode.RATE_LIMITED) {
+                // only its own account is limited, so the rest of the line goes on while it waits
+                record(schedule, 0, schedule.nextRunAtMillis);
+                due.pollFirst();
+                arm(schedule, now + Math.max(1, result.join().getRetryAfterMillis()));
+                continue;
+            }
+            due.pollFirst();
+            allowance--;
+            count++;
+            released.incrementAndGet();
+            schedule.runs++;
+            result.thenAccept(outcome -> schedule.lastResult = outcome);
+            if (schedule.intervalMillis > 0) {
+                schedule.nextRunAtMillis = nextRunAtMillis;
+                arm(schedule);
+            } else {
+                schedules.remove(schedule.id, schedule);
+            }
+        }
+        return count;
+    }
+
+    // the first slot of a standing order after now; slots missed since its due run are skipped
+    private static long nextSlot(Schedule schedule, long now) {
+        if (schedule.intervalMillis == 0) {
+            return schedule.nextRunAtMillis;
+        }
+        long next = schedule.nextRunAtMillis + schedule.intervalMillis;
+        if (next <= now) {
+            next += ((now - next) / schedule.intervalMillis + 1) * schedule.intervalMillis;
+        }
+        return next;
+    }
+
+    // a transfer service failure is this run's result; the thread must survive it to release everything else
+    private CompletableFuture<TransferResult> submit(Schedule schedule) {
+        try {
+            return transferService.submitTransfer(schedule.fromAccountId, schedule.toAccountId, schedule.amount);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to submit scheduled transfer {}", schedule.id, e);
+            return CompletableFuture.completedFuture(TransferResult.failure("Unable to submit transfer", null, TransferResult.ErrorCode.UNKNOWN));
+        }
+    }
+
+    /**
+     * Saves the schedule as it will be after {@code runs} more runs, next due at {@code nextRunAtMillis}, or removes it
+     * if that was its last.
+     *
+     * @return false if the file could not be written
+     */
+    private boolean record(Schedule schedule, int runs, long nextRunAtMillis) {
+        if (file == null) {
+            return true;
+        }
+        synchronized (schedule) {
+            if (schedule.cancelled) {
+                return true;
+            }
+            try {
+                if (runs > 0 && schedule.intervalMillis == 0) {
+                    file.remove(schedule.id);
+                } else {
+                    file.save(schedule.saved(runs, nextRunAtMillis));
+                }
+                recordFailure = null;
+                return true;
+            } catch (RuntimeException e) {
+                if (recordFailure == null) {
+                    LOGGER.error("Unable to record the next run of scheduled transfer {}, holding releases back", schedule.id, e);
+                }
+                recordFailure = e;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A scheduled transfer and the outcome of its latest run, readable from any thread.
+     */
+    public static final class Schedule {
+        private final String id;
+        private final String fromAccountId;
+        private final String toAccountId;
+        private final Amount amount;
+        private final long intervalMillis;
+        private volatile long nextRunAtMillis;
+        private volatile int runs;
+        private volatile TransferResult lastResult;
+        private volatile boolean cancelled;
+        private long timerId;
+
+        private Schedule(String id, String fromAccountId, String toAccountId, Amount amount, long intervalMillis, long nextRunAtMillis) {
+            this.id = id;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amount = amount;
+            this.intervalMillis = intervalMillis;
+            this.nextRunAtMillis = nextRunAtMillis;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getFromAccountId() {
+            return fromAccountId;
+        }
+
+        public String getToAccountId() {
+            return toAccountId;
+        }
+
+        public Amount getAmount() {
+            return amount;
+        }
+
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public long getNextRunAtMillis() {
+            return nextRunAtMillis;
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public TransferResult getLastResult() {
+            return lastResult;
+        }
+
+        private ScheduledTransfer saved(int moreRuns, long nextRunAtMillis) {
+            return new ScheduledTransfer(id, fromAccountId, toAccountId, amount, intervalMillis, nextRunAtMillis, runs + moreRuns);
+        }
+    }
+}
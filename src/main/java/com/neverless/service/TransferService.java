@@ -2,47 +2,409 @@ package com.neverless.service;
 
 import com.neverless.model.*;
 import com.neverless.store.AccountStore;
+import com.neverless.store.FileTransactionStore;
 import com.neverless.store.TransactionStore;
+import com.neverless.store.TransferEventLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 public class TransferService {
     private static final Logger LOGGER = LoggerFactory.getLogger(TransferService.class);
+    private static final long WITHDRAWAL_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long WITHDRAWAL_REQUEST_LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int WITHDRAWAL_MAX_BATCH_SIZE = 10_000;
+    private static final long DEFAULT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int CLUSTER_OUTCOMES_RETAINED = 100_000;
+    private static final long CLUSTER_CLOCK_SKEW_MILLIS = 1_000;
+    private static final long CLUSTER_ABORT_MAX_BACKOFF_MILLIS = 1_000;
     private final AccountStore accountStore;
-    private final TransferQueue transferQueue;
     private final TransactionStore transactionStore;
-    private final WithdrawalService withdrawalService;
-    private final ScheduledExecutorService scheduler;
+    private final TransferQueue transferQueue;
+    private final IdempotencyCache idempotencyCache;
+    private final WithdrawalPoller withdrawalPoller;
+    private final NettingWindow nettingWindow;
+    private volatile long defaultTimeoutNanos;
+    private final TransferEventLog eventLog;
+    private final FxRates fxRates;
+    private final ClusterRing cluster;
+    private final ClusterTransport clusterTransport;
+    private final RateLimiter accountRateLimiter;
+    private final RateLimiter userRateLimiter;
+    // withdrawals requested and not settled yet, by task id; their funds are reserved
+    private final Map<String, QueuedTransfer> openWithdrawals = new ConcurrentHashMap<>();
+    // cross-node transfers debited here and not yet committed or rolled back, by task id
+    private final Map<String, QueuedTransfer> openReservations = new ConcurrentHashMap<>();
+    private volatile boolean stopped;
+    // outcome of the latest cross-node transfers credited or aborted here, by transfer id; worker only
+    private final Map<String, ClusterOutcome> clusterOutcomes = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ClusterOutcome> eldest) {
+            if (size() <= CLUSTER_OUTCOMES_RETAINED) {
+                return false;
+            }
+            clusterOutcomesForgottenUpToMillis = Math.max(clusterOutcomesForgottenUpToMillis, eldest.getValue().decidedAtMillis());
+            return true;
+        }
+    };
+    // latest decision time of a forgotten outcome, 0 while none is; worker only
+    private long clusterOutcomesForgottenUpToMillis;
 
     public TransferService(AccountStore accountStore, TransactionStore transactionStore, TransferQueue transferQueue, WithdrawalService withdrawalService) {
-        this.accountStore = accountStore;
-        this.transferQueue = transferQueue;
-        this.transactionStore = transactionStore;
-        this.withdrawalService = withdrawalService;
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        this(accountStore, transactionStore, transferQueue, withdrawalService, new IdempotencyCache(100_000, TimeUnit.MINUTES.toNanos(10)));
+    }
+
+    public TransferService(AccountStore accountStore, TransactionStore transactionStore, TransferQueue transferQueue, WithdrawalService withdrawalService, IdempotencyCache idempotencyCache) {
+        this(accountStore, transactionStore, transferQueue, idempotencyCache, new WithdrawalPoller(withdrawalService,
+                WITHDRAWAL_POLL_INTERVAL_NANOS, WITHDRAWAL_REQUEST_LINGER_NANOS, WITHDRAWAL_MAX_BATCH_SIZE));
+    }
+
+    public TransferService(AccountStore accountStore, TransactionStore transactionStore, TransferQueue transferQueue, IdempotencyCache idempotencyCache, WithdrawalPoller withdrawalPoller) {
+        this(builder(accountStore, transactionStore, transferQueue, withdrawalPoller).idempotencyCache(idempotencyCache));
+    }
+
+    private TransferService(Builder builder) {
+        this.accountStore = builder.accountStore;
+        this.transactionStore = builder.transactionStore;
+        this.transferQueue = builder.transferQueue;
+        this.idempotencyCache = builder.idempotencyCache;
+        this.withdrawalPoller = builder.withdrawalPoller;
+        this.nettingWindow = builder.nettingWindow;
+        this.defaultTimeoutNanos = builder.defaultTimeoutNanos;
+        this.eventLog = builder.eventLog;
+        this.fxRates = builder.fxRates;
+        this.cluster = builder.cluster;
+        this.clusterTransport = builder.clusterTransport;
+        this.accountRateLimiter = builder.accountRateLimiter;
+        this.userRateLimiter = builder.userRateLimiter;
+        if (cluster != null && transactionStore instanceof FileTransactionStore journal) {
+            recoverClusterOutcomes(journal);
+        }
+        if (nettingWindow != null) {
+            nettingWindow.start(() -> transferQueue.executeOnWorker(this::settleNetting));
+        }
+    }
+
+    // Credits and rejections decided here are journaled, so a message about one of them after a restart gets the answer
+    // it got before rather than being decided again: an abort for a credit that landed would otherwise be answered
+    // ABORTED and the source would refund funds the destination kept. Aborts are not journaled; the credit they race
+    // was sent to the process that answered them, so it cannot arrive after a restart.
+    private void recoverClusterOutcomes(FileTransactionStore journal) {
+        journal.replay(0, journal.getOpenedPosition(), (transaction, position) -> {
+            if (cluster.isLocal(transaction.fromAccountId())) {
+                return; // reserved here, so decided by another node
+            }
+            switch (transaction.status()) {
+                case "SUCCESS" -> clusterOutcomes.put(transaction.transactionId(),
+                        new ClusterOutcome(ClusterTransport.Reply.committed(), transaction.timestamp()));
+                case "FAILURE" -> clusterOutcomes.put(transaction.transactionId(), new ClusterOutcome(
+                        ClusterTransport.Reply.rejected(TransferResult.ErrorCode.UNKNOWN, "Transfer rejected"), transaction.timestamp()));
+                default -> {
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts a service with the collaborators every transfer needs. The optional ones default to off.
+     */
+    public static Builder builder(AccountStore accountStore, TransactionStore transactionStore, TransferQueue transferQueue, WithdrawalPoller withdrawalPoller) {
+        return new Builder(accountStore, transactionStore, transferQueue, withdrawalPoller);
     }
 
     public TransferResult transfer(String fromAccountId, String toAccountId, Amount amount) {
-        TransferTask task = new TransferTask(fromAccountId, toAccountId, amount, this);
-        return transferQueue.submitTask(task);
+        return transfer(fromAccountId, toAccountId, amount, null, defaultTimeoutNanos);
+    }
+
+    public TransferResult transfer(String fromAccountId, String toAccountId, Amount amount, String idempotencyKey) {
+        return transfer(fromAccountId, toAccountId, amount, idempotencyKey, defaultTimeoutNanos);
+    }
+
+    /**
+     * @param idempotencyKey - optional
+     * @param timeoutNanos - how long the caller waits; a transfer that has not started by then is dropped unexecuted
+     */
+    public TransferResult transfer(String fromAccountId, String toAccountId, Amount amount, String idempotencyKey, long timeoutNanos) {
+        TransferResult misdirected = misdirected(fromAccountId);
+        if (misdirected != null) {
+            return misdirected;
+        }
+        long deadlineNanos = System.nanoTime() + timeoutNanos;
+        if (idempotencyKey == null) {
+            TransferResult limited = rateLimited(fromAccountId);
+            return limited != null ? limited : transferQueue.submitTask(newTransferTask(fromAccountId, toAccountId, amount, deadlineNanos));
+        }
+        // a retry of a request already answered gets that answer, so it is looked up before the rate limit
+        String fingerprint = fingerprint("INTERNAL", fromAccountId, toAccountId, amount);
+        return idempotencyCache.execute(idempotencyKey, fingerprint,
+                () -> submitUnlessRateLimited(fromAccountId, newTransferTask(fromAccountId, toAccountId, amount, deadlineNanos)));
+    }
+
+    /**
+     * Queues an internal transfer without waiting for it. Overload shows up as an already completed result.
+     */
+    public CompletableFuture<TransferResult> submitTransfer(String fromAccountId, String toAccountId, Amount amount) {
+        TransferResult misdirected = misdirected(fromAccountId);
+        if (misdirected != null) {
+            return CompletableFuture.completedFuture(misdirected);
+        }
+        return submitUnlessRateLimited(fromAccountId, newTransferTask(fromAccountId, toAccountId, amount, System.nanoTime() + defaultTimeoutNanos));
     }
 
     public TransferResult externalTransfer(String fromAccountId, String externalAddress, Amount amount) {
-        ExternalTransferTask task = new ExternalTransferTask(fromAccountId, externalAddress, amount, this);
-        return transferQueue.submitTask(task);
+        return externalTransfer(fromAccountId, externalAddress, amount, null, defaultTimeoutNanos);
+    }
+
+    public TransferResult externalTransfer(String fromAccountId, String externalAddress, Amount amount, String idempotencyKey) {
+        return externalTransfer(fromAccountId, externalAddress, amount, idempotencyKey, defaultTimeoutNanos);
+    }
+
+    /**
+     * @param idempotencyKey - optional
+     * @param timeoutNanos - bounds both the time the transfer may wait in the queue and the wait for the withdrawal
+     */
+    public TransferResult externalTransfer(String fromAccountId, String externalAddress, Amount amount, String idempotencyKey, long timeoutNanos) {
+        TransferResult misdirected = misdirected(fromAccountId);
+        if (misdirected != null) {
+            return misdirected;
+        }
+        long deadlineNanos = System.nanoTime() + timeoutNanos;
+        if (idempotencyKey == null) {
+            TransferResult limited = rateLimited(fromAccountId);
+            return limited != null ? limited : transferQueue.submitTask(new ExternalTransferTask(fromAccountId, externalAddress, amount, this, deadlineNanos));
+        }
+        String fingerprint = fingerprint("EXTERNAL", fromAccountId, externalAddress, amount);
+        return idempotencyCache.execute(idempotencyKey, fingerprint,
+                () -> submitUnlessRateLimited(fromAccountId, new ExternalTransferTask(fromAccountId, externalAddress, amount, this, deadlineNanos)));
+    }
+
+    public TransferResult submitExternalTransfer(String fromAccountId, String externalAddress, Amount amount) {
+        return submitExternalTransfer(fromAccountId, externalAddress, amount, defaultTimeoutNanos);
+    }
+
+    /**
+     * Queues an external transfer without waiting for the withdrawal. Its progress can then be followed by task id.
+     */
+    public TransferResult submitExternalTransfer(String fromAccountId, String externalAddress, Amount amount, long timeoutNanos) {
+        TransferResult misdirected = misdirected(fromAccountId);
+        if (misdirected != null) {
+            return misdirected;
+        }
+        ExternalTransferTask task = new ExternalTransferTask(fromAccountId, externalAddress, amount, this, System.nanoTime() + timeoutNanos);
+        CompletableFuture<TransferResult> result = submitUnlessRateLimited(fromAccountId, task);
+        return result.isDone() ? result.join() : TransferResult.accepted(task.getId());
+    }
+
+    /**
+     * Queues transfers left over by the last shutdown again, under their original ids, without a deadline since no
+     * caller is waiting on them, and goes back to settling the withdrawals and cross-node reservations that were still
+     * running. Their outcome is journaled like any other transfer's.
+     * <p>
+     * With a file journal, what it held at start from {@code journalPosition} on decides how far each transfer got, so
+     * the same transfers can be resumed again on the start after a crash: one that finished is skipped, and one that got as far as its debit
+     * is resumed as the withdrawal or reservation it became rather than run again.
+     *
+     * @param journalPosition - the journal's position when the transfers were saved
+     * @return completes once every resumed transfer has its outcome
+     * @throws IllegalArgumentException for a transfer of an unknown type, before any is queued
+     */
+    public CompletableFuture<Void> resume(List<QueuedTransfer> transfers, long journalPosition) {
+        Map<String, Transaction> journaled = transactionStore instanceof FileTransactionStore journal
+                ? latestRecords(journal, transfers, journalPosition) : Map.of();
+        List<MoneyTransferTask> tasks = new ArrayList<>(transfers.size());
+        List<QueuedTransfer> withdrawals = new ArrayList<>();
+        List<QueuedTransfer> reservations = new ArrayList<>();
+        for (QueuedTransfer transfer : transfers) {
+            QueuedTransfer left = leftToDo(transfer, journaled.get(transfer.taskId()));
+            if (left == null) {
+                continue;
+            }
+            switch (left.type()) {
+                // the cluster may have changed since, so whether the destination is local is decided again
+                case "INTERNAL", "CROSS_NODE" -> tasks.add(newTransferTask(left.taskId(), left.fromAccountId(), left.toAccountId(), left.amount(), MoneyTransferTask.NO_DEADLINE));
+                case "EXTERNAL" -> tasks.add(new ExternalTransferTask(left.taskId(), left.fromAccountId(), left.toAccountId(), left.amount(), this, MoneyTransferTask.NO_DEADLINE));
+                case "WITHDRAWAL" -> withdrawals.add(knownSource(left));
+                case "RESERVATION" -> {
+                    if (cluster == null) {
+                        throw new IllegalArgumentException("Reservation " + left.taskId() + " needs the cluster to be configured");
+                    }
+                    reservations.add(knownSource(left));
+                }
+                default -> throw new IllegalArgumentException("Unknown transfer type " + left.type());
+            }
+        }
+        List<CompletableFuture<?>> resumed = new ArrayList<>();
+        for (QueuedTransfer withdrawal : withdrawals) {
+            resumed.add(resumeWithdrawal(withdrawal));
+        }
+        for (QueuedTransfer reservation : reservations) {
+            resumed.add(resumeReservation(reservation));
+        }
+        for (MoneyTransferTask task : tasks) {
+            resumed.add(transferQueue.requeue(task));
+        }
+        return CompletableFuture.allOf(resumed.toArray(CompletableFuture[]::new));
+    }
+
+    // the latest record of each transfer journaled since it was saved
+    private static Map<String, Transaction> latestRecords(FileTransactionStore journal, List<QueuedTransfer> transfers, long journalPosition) {
+        Map<String, Transaction> latest = new HashMap<>();
+        for (QueuedTransfer transfer : transfers) {
+            latest.put(transfer.taskId(), null);
+        }
+        journal.replay(journalPosition, journal.getOpenedPosition(), (transaction, position) -> {
+            if (latest.containsKey(transaction.transactionId())) {
+                latest.put(transaction.transactionId(), transaction);
+            }
+        });
+        latest.values().removeIf(Objects::isNull);
+        return latest;
+    }
+
+    // What is left of a saved transfer given its latest journaled record, null when it finished. A transfer only
+    // started (PROCESSING) changed no balance, since its debit and its outcome are journaled together.
+    private static QueuedTransfer leftToDo(QueuedTransfer transfer, Transaction latest) {
+        if (latest == null || latest.status().equals("PROCESSING")) {
+            return transfer;
+        }
+        return switch (latest.status()) {
+            case "SUCCESS" -> switch (transfer.type()) {
+                case "EXTERNAL" -> new QueuedTransfer("WITHDRAWAL", transfer.taskId(), transfer.fromAccountId(), transfer.toAccountId(), transfer.amount());
+                case "CROSS_NODE" -> new QueuedTransfer("RESERVATION", transfer.taskId(), transfer.fromAccountId(), transfer.toAccountId(),
+                        transfer.amount(), latest.timestamp());
+                case "WITHDRAWAL", "RESERVATION" -> transfer;
+                default -> null;
+            };
+            default -> null; // FAILURE, NETTED or ROLLED_BACK
+        };
+    }
+
+    private QueuedTransfer knownSource(QueuedTransfer transfer) {
+        if (accountStore.getAccount(transfer.fromAccountId()) == null) {
+            throw new IllegalArgumentException("Unknown account " + transfer.fromAccountId() + " for " + transfer.type().toLowerCase() + " " + transfer.taskId());
+        }
+        return transfer;
+    }
+
+    // the debit was journaled before the shutdown, so only the withdrawal's final state is left to settle
+    private CompletableFuture<TransferResult> resumeWithdrawal(QueuedTransfer transfer) {
+        String taskId = transfer.taskId();
+        transferQueue.trackProgress(new TransferProgress(taskId, TransferStatus.PROCESSING));
+        openWithdrawals.put(taskId, transfer);
+        CompletableFuture<WithdrawalService.WithdrawalState> withdrawal = withdrawalPoller.track(withdrawalId(taskId),
+                new WithdrawalService.Address(transfer.toAccountId()), transfer.amount());
+        return waitForWithdrawalCompletion(taskId, accountStore.getAccount(transfer.fromAccountId()), transfer.toAccountId(), transfer.amount(),
+                withdrawal, MoneyTransferTask.NO_DEADLINE).whenComplete((result, error) -> {
+            if (result != null) {
+                updateProgress(taskId, result.getStatus() == TransferResult.Status.SUCCESS ? TransferStatus.COMPLETED : TransferStatus.FAILED);
+            }
+        });
+    }
+
+    // The debit was journaled before the shutdown and the credit may or may not have landed, so the destination is
+    // asked to abort it: it answers with the credit's outcome if it was decided, and the funds are settled on that.
+    private CompletableFuture<TransferResult> resumeReservation(QueuedTransfer transfer) {
+        String taskId = transfer.taskId();
+        transferQueue.trackProgress(new TransferProgress(taskId, TransferStatus.PROCESSING));
+        openReservations.put(taskId, transfer);
+        ClusterRing.Node owner = cluster.ownerOf(transfer.toAccountId());
+        return settleReservation(owner, taskId, accountStore.getAccount(transfer.fromAccountId()), transfer.toAccountId(), transfer.amount(),
+                abortCrossNodeCredit(owner, taskId, transfer.reservedAtMillis(), 0)).whenComplete((result, error) -> {
+            if (result != null) {
+                updateProgress(taskId, result.getStatus() == TransferResult.Status.SUCCESS ? TransferStatus.COMPLETED : TransferStatus.FAILED);
+            }
+        });
+    }
+
+    private MoneyTransferTask newTransferTask(String fromAccountId, String toAccountId, Amount amount, long deadlineNanos) {
+        return newTransferTask(UUID.randomUUID().toString(), fromAccountId, toAccountId, amount, deadlineNanos);
+    }
+
+    private MoneyTransferTask newTransferTask(String id, String fromAccountId, String toAccountId, Amount amount, long deadlineNanos) {
+        if (cluster == null || cluster.isLocal(toAccountId)) {
+            return new TransferTask(id, fromAccountId, toAccountId, amount, this, deadlineNanos);
+        }
+        return new CrossNodeTransferTask(id, fromAccountId, toAccountId, amount, this, deadlineNanos);
+    }
+
+    private CompletableFuture<TransferResult> submitUnlessRateLimited(String fromAccountId, MoneyTransferTask task) {
+        TransferResult limited = rateLimited(fromAccountId);
+        return limited != null ? CompletableFuture.completedFuture(limited) : transferQueue.submitAsync(task);
+    }
+
+    // Checked before a task is queued, so a refused request takes no queue slot and no worker time. Only existing
+    // accounts are limited: the limiters never forget a key, so made-up ids must not reach them. A transfer from an
+    // unknown account fails on the worker anyway.
+    private TransferResult rateLimited(String fromAccountId) {
+        if (accountRateLimiter == null && userRateLimiter == null) {
+            return null;
+        }
+        Account account = accountStore.getAccount(fromAccountId);
+        if (account == null) {
+            return null;
+        }
+        long waitNanos = accountRateLimiter == null ? 0 : accountRateLimiter.tryAcquire(account.getAccountId());
+        if (waitNanos == 0 && userRateLimiter != null) {
+            waitNanos = userRateLimiter.tryAcquire(account.getUserId());
+        }
+        if (waitNanos > 0) {
+            return TransferResult.rateLimited("Too many transfers from this account", TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1);
+        }
+        return null;
+    }
+
+    // A node only holds its own accounts, so a transfer from anyone else's is answered with where to send it instead.
+    private TransferResult misdirected(String fromAccountId) {
+        if (cluster == null || cluster.isLocal(fromAccountId)) {
+            return null;
+        }
+        ClusterRing.Node owner = cluster.ownerOf(fromAccountId);
+        return TransferResult.failure("Account is held by node " + owner.id() + " at " + owner.address(), null, TransferResult.ErrorCode.WRONG_NODE);
+    }
+
+    /**
+     * Applies to transfers submitted from now on.
+     */
+    public void setDefaultTimeoutNanos(long defaultTimeoutNanos) {
+        if (defaultTimeoutNanos <= 0) {
+            throw new IllegalArgumentException("Default timeout must be positive");
+        }
+        this.defaultTimeoutNanos = defaultTimeoutNanos;
     }
 
     public TransferProgress getTransferProgress(String transferId) {
         return transferQueue.getTransferProgress(transferId);
     }
 
+    public TransferProgress subscribeToProgress(String transferId, ProgressListener listener) {
+        return transferQueue.subscribe(transferId, listener);
+    }
+
+    public void unsubscribeFromProgress(String transferId, ProgressListener listener) {
+        transferQueue.unsubscribe(transferId, listener);
+    }
+
     public TransferResult executeTransfer(String taskId, String fromAccountId, String toAccountId, Amount amount) {
-        Transaction transaction = new Transaction(taskId, fromAccountId, toAccountId, amount, "PROCESSING", null);
-        transactionStore.logTransaction(transaction);
+        if (nettingWindow != null) {
+            if (nettingWindow.covers(fromAccountId, toAccountId) && sameCurrency(fromAccountId, toAccountId)) {
+                return executeNettedTransfer(taskId, fromAccountId, toAccountId, amount);
+            }
+            settlePending(fromAccountId);
+            settlePending(toAccountId);
+        }
+        logTransaction(taskId, fromAccountId, toAccountId, amount, "PROCESSING", "Transfer started", "INTERNAL");
 
         Account fromAccount = accountStore.getAccount(fromAccountId);
         Account toAccount = accountStore.getAccount(toAccountId);
@@ -53,123 +415,454 @@ public class TransferService {
             return TransferResult.failure(message, taskId, TransferResult.ErrorCode.INVALID_ACCOUNT);
         }
 
-        if (fromAccount.getBalance().compareTo(amount.getValue()) < 0) {
+        Amount credited;
+        try {
+            credited = creditedAmount(amount, fromAccount, toAccount);
+        } catch (IllegalArgumentException e) {
+            logTransaction(taskId, fromAccountId, toAccountId, amount, "FAILURE", e.getMessage(), "INTERNAL");
+            return TransferResult.failure(e.getMessage(), taskId, TransferResult.ErrorCode.INVALID_CURRENCY);
+        }
+
+        if (fromAccount.getWorkingBalance().compareTo(amount.getValue()) < 0) {
             String message = "Insufficient funds";
             logTransaction(taskId, fromAccountId, toAccountId, amount, "FAILURE", message, "INTERNAL");
             return TransferResult.failure(message, taskId, TransferResult.ErrorCode.INSUFFICIENT_FUNDS);
         }
 
+        // both sides become visible to readers together, and a rolled back debit never does
+        fromAccount.beginUpdate();
+        toAccount.beginUpdate();
         try {
             debit(fromAccount, amount);
-            credit(toAccount, amount);
+            credit(toAccount, credited);
             accountStore.updateAccount(fromAccount);
             accountStore.updateAccount(toAccount);
-            logTransaction(taskId, fromAccountId, toAccountId, amount, "SUCCESS", "Transfer successful", "INTERNAL");
+            if (credited == amount) {
+                logTransaction(taskId, fromAccountId, toAccountId, amount, "SUCCESS", "Transfer successful", "INTERNAL");
+            } else {
+                logConversion(taskId, fromAccountId, toAccountId, new Amount(amount.getValue(), fromAccount.getCurrency()), credited, "Transfer successful", "INTERNAL");
+            }
             return TransferResult.success(taskId);
         } catch (Exception e) {
-            rollback(fromAccount, toAccount, amount);
+            rollback(fromAccount, amount, toAccount, credited);
             String message = "Transfer failed: " + e.getMessage();
             logTransaction(taskId, fromAccountId, toAccountId, amount, "FAILURE", message, "INTERNAL");
             return TransferResult.failure(message, taskId, TransferResult.ErrorCode.UNKNOWN);
+        } finally {
+            toAccount.commitUpdate();
+            fromAccount.commitUpdate();
         }
     }
 
-    public TransferResult executeExternalTransfer(String taskId, String fromAccountId, String externalAddress, Amount amount) {
-        Transaction transaction = new Transaction(taskId, fromAccountId, externalAddress, amount, "PROCESSING", null);
-        transactionStore.logTransaction(transaction);
+    public CompletableFuture<TransferResult> executeExternalTransfer(String taskId, String fromAccountId, String externalAddress, Amount amount) {
+        return executeExternalTransfer(taskId, fromAccountId, externalAddress, amount, System.nanoTime() + defaultTimeoutNanos);
+    }
+
+    public CompletableFuture<TransferResult> executeExternalTransfer(String taskId, String fromAccountId, String externalAddress, Amount amount, long deadlineNanos) {
+        if (nettingWindow != null) {
+            settlePending(fromAccountId);
+        }
+        logTransaction(taskId, fromAccountId, externalAddress, amount, "PROCESSING", "Transfer started", "EXTERNAL");
 
         Account fromAccount = accountStore.getAccount(fromAccountId);
 
         if (fromAccount == null) {
             String message = "Invalid account ID";
             logTransaction(taskId, fromAccountId, externalAddress, amount, "FAILURE", message, "EXTERNAL");
-            return TransferResult.failure(message, taskId, TransferResult.ErrorCode.INVALID_ACCOUNT);
+            return CompletableFuture.completedFuture(TransferResult.failure(message, taskId, TransferResult.ErrorCode.INVALID_ACCOUNT));
+        }
+
+        if (!inCurrencyOf(amount, fromAccount)) {
+            String message = currencyMismatch(fromAccount);
+            logTransaction(taskId, fromAccountId, externalAddress, amount, "FAILURE", message, "EXTERNAL");
+            return CompletableFuture.completedFuture(TransferResult.failure(message, taskId, TransferResult.ErrorCode.INVALID_CURRENCY));
         }
 
-        if (fromAccount.getBalance().compareTo(amount.getValue()) < 0) {
+        if (fromAccount.getWorkingBalance().compareTo(amount.getValue()) < 0) {
             String message = "Insufficient funds";
             logTransaction(taskId, fromAccountId, externalAddress, amount, "FAILURE", message, "EXTERNAL");
-            return TransferResult.failure(message, taskId, TransferResult.ErrorCode.INSUFFICIENT_FUNDS);
+            return CompletableFuture.completedFuture(TransferResult.failure(message, taskId, TransferResult.ErrorCode.INSUFFICIENT_FUNDS));
         }
 
+        fromAccount.beginUpdate();
         try {
             debit(fromAccount, amount);
             accountStore.updateAccount(fromAccount);
             logTransaction(taskId, fromAccountId, externalAddress, amount, "SUCCESS", "Transfer successful", "EXTERNAL");
 
             // Initiate withdrawal
-            WithdrawalService.WithdrawalId withdrawalId = new WithdrawalService.WithdrawalId(UUID.randomUUID());
-            withdrawalService.requestWithdrawal(withdrawalId, new WithdrawalService.Address(externalAddress), amount);
+            openWithdrawals.put(taskId, new QueuedTransfer("WITHDRAWAL", taskId, fromAccountId, externalAddress, amount));
+            CompletableFuture<WithdrawalService.WithdrawalState> withdrawal =
+                    withdrawalPoller.submit(withdrawalId(taskId), new WithdrawalService.Address(externalAddress), amount);
 
-            return waitForWithdrawalCompletion(taskId, fromAccount, externalAddress, amount, withdrawalId);
+            return waitForWithdrawalCompletion(taskId, fromAccount, externalAddress, amount, withdrawal, deadlineNanos);
         } catch (Exception e) {
-            rollback(fromAccount, null, amount);
+            openWithdrawals.remove(taskId);
+            rollback(fromAccount, amount, null, null);
             String message = "Transfer failed: " + e.getMessage();
             logTransaction(taskId, fromAccountId, externalAddress, amount, "FAILURE", message, "EXTERNAL");
-            return TransferResult.failure(message, taskId, TransferResult.ErrorCode.UNKNOWN);
+            return CompletableFuture.completedFuture(TransferResult.failure(message, taskId, TransferResult.ErrorCode.UNKNOWN));
+        } finally {
+            fromAccount.commitUpdate();
+        }
+    }
+
+    // No thread waits: the poller completes the withdrawal. The deadline only ends the caller's wait. A withdrawal still
+    // running then may yet pay out, so the funds stay reserved and are settled or rolled back on its final state alone.
+    private CompletableFuture<TransferResult> waitForWithdrawalCompletion(String taskId, Account fromAccount, String externalAddress, Amount amount, CompletableFuture<WithdrawalService.WithdrawalState> withdrawal, long deadlineNanos) {
+        CompletableFuture<TransferResult> settled = withdrawal.handle((state, error) -> {
+            if (error == null && state == WithdrawalService.WithdrawalState.COMPLETED) {
+                return CompletableFuture.completedFuture(TransferResult.success(taskId));
+            }
+            TransferResult failure;
+            if (error == null) {
+                failure = TransferResult.failure("External transfer failed", taskId, TransferResult.ErrorCode.EXTERNAL_TRANSFER_FAILED);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                failure = TransferResult.failure("External transfer failed: " + cause.getMessage(), taskId, TransferResult.ErrorCode.UNKNOWN);
+            }
+            return compensate(fromAccount, externalAddress, amount, failure, "EXTERNAL");
+        }).thenCompose(result -> result).whenComplete((result, error) -> openWithdrawals.remove(taskId));
+        if (deadlineNanos == MoneyTransferTask.NO_DEADLINE) {
+            return settled;
         }
+        CompletableFuture<TransferResult> answer = new CompletableFuture<>();
+        settled.thenAccept(result -> {
+            if (!answer.complete(result)) {
+                // the caller was told the transfer is still running, so only its progress shows the outcome
+                updateProgress(taskId, result.getStatus() == TransferResult.Status.SUCCESS ? TransferStatus.COMPLETED : TransferStatus.FAILED);
+            }
+        });
+        return answer.completeOnTimeout(TransferResult.accepted(taskId), Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    // Derived from the task, so a withdrawal resumed after a restart is polled under the id it was requested with.
+    private static WithdrawalService.WithdrawalId withdrawalId(String taskId) {
+        return new WithdrawalService.WithdrawalId(UUID.nameUUIDFromBytes(("withdrawal:" + taskId).getBytes(StandardCharsets.UTF_8)));
     }
 
-    private TransferResult waitForWithdrawalCompletion(String taskId, Account fromAccount, String externalAddress, Amount amount, WithdrawalService.WithdrawalId withdrawalId) {
+    // Balances are only ever written by the transfer worker, so the rollback is handed back to it.
+    private CompletableFuture<TransferResult> compensate(Account fromAccount, String toAccountId, Amount amount, TransferResult failure, String type) {
         CompletableFuture<TransferResult> future = new CompletableFuture<>();
+        transferQueue.executeOnWorker(() -> {
+            rollback(fromAccount, amount, null, null);
+            logTransaction(failure.getTaskId(), fromAccount.getAccountId(), toAccountId, amount, "ROLLED_BACK", failure.getMessage(), type);
+            future.complete(failure);
+        });
+        return future;
+    }
 
-        scheduler.schedule(() -> {
-            try {
-                while (true) {
-                    WithdrawalService.WithdrawalState state = withdrawalService.getRequestState(withdrawalId);
-                    if (state == WithdrawalService.WithdrawalState.COMPLETED) {
-                        future.complete(TransferResult.success(taskId));
-                        break;
-                    } else if (state == WithdrawalService.WithdrawalState.FAILED) {
-                        rollback(fromAccount, null, amount);
-                        future.complete(TransferResult.failure("External transfer failed", taskId, TransferResult.ErrorCode.EXTERNAL_TRANSFER_FAILED));
-                        break;
-                    }
-                    Thread.sleep(500);
-                }
-            } catch (Exception e) {
-                rollback(fromAccount, null, amount);
-                future.complete(TransferResult.failure("External transfer failed: " + e.getMessage(), taskId, TransferResult.ErrorCode.UNKNOWN));
+    /**
+     * Runs on the node holding the source account: reserves the funds by debiting them, then asks the destination's
+     * node to credit them. A rejected credit is rolled back. A credit that gets no answer is aborted instead, and only
+     * rolled back once the destination confirms it never credited it; until then the funds stay reserved.
+     */
+    public CompletableFuture<TransferResult> executeCrossNodeTransfer(String taskId, String fromAccountId, String toAccountId, Amount amount, long deadlineNanos) {
+        if (nettingWindow != null) {
+            settlePending(fromAccountId);
+        }
+        logTransaction(taskId, fromAccountId, toAccountId, amount, "PROCESSING", "Transfer started", "CLUSTER");
+
+        Account fromAccount = accountStore.getAccount(fromAccountId);
+        TransferResult failure = null;
+        if (fromAccount == null) {
+            failure = TransferResult.failure("Invalid account ID", taskId, TransferResult.ErrorCode.INVALID_ACCOUNT);
+        } else if (!inCurrencyOf(amount, fromAccount)) {
+            failure = TransferResult.failure(currencyMismatch(fromAccount), taskId, TransferResult.ErrorCode.INVALID_CURRENCY);
+        } else if (fromAccount.getWorkingBalance().compareTo(amount.getValue()) < 0) {
+            failure = TransferResult.failure("Insufficient funds", taskId, TransferResult.ErrorCode.INSUFFICIENT_FUNDS);
+        }
+        if (failure != null) {
+            logTransaction(taskId, fromAccountId, toAccountId, amount, "FAILURE", failure.getMessage(), "CLUSTER");
+            return CompletableFuture.completedFuture(failure);
+        }
+
+        ClusterRing.Node owner = cluster.ownerOf(toAccountId);
+        fromAccount.beginUpdate();
+        try {
+            debit(fromAccount, amount);
+            accountStore.updateAccount(fromAccount);
+            logTransaction(taskId, fromAccountId, toAccountId, amount, "SUCCESS", "Reserved for node " + owner.id(), "CLUSTER");
+        } finally {
+            fromAccount.commitUpdate();
+        }
+
+        long remainingNanos = deadlineNanos == MoneyTransferTask.NO_DEADLINE ? defaultTimeoutNanos : Math.max(0, deadlineNanos - System.nanoTime());
+        long reservedAtMillis = System.currentTimeMillis();
+        openReservations.put(taskId, new QueuedTransfer("RESERVATION", taskId, fromAccountId, toAccountId, amount, reservedAtMillis));
+        ClusterTransport.Credit credit = new ClusterTransport.Credit(taskId, fromAccountId, toAccountId, amount.getValue(), fromAccount.getCurrency(), reservedAtMillis);
+        return settleReservation(owner, taskId, fromAccount, toAccountId, amount, clusterTransport.credit(owner, credit)
+                .orTimeout(remainingNanos, TimeUnit.NANOSECONDS)
+                .exceptionallyCompose(error -> abortCrossNodeCredit(owner, taskId, reservedAtMillis, 0)));
+    }
+
+    private CompletableFuture<TransferResult> settleReservation(ClusterRing.Node owner, String taskId, Account fromAccount, String toAccountId, Amount amount, CompletableFuture<ClusterTransport.Reply> reply) {
+        return reply.thenCompose(answer -> switch (answer.outcome()) {
+            case COMMITTED -> {
+                openReservations.remove(taskId);
+                yield CompletableFuture.completedFuture(TransferResult.success(taskId));
             }
-        }, 0, TimeUnit.SECONDS);
+            case REJECTED -> rollBackReservation(fromAccount, toAccountId, amount, TransferResult.failure(answer.message(), taskId, answer.errorCode()));
+            case ABORTED -> rollBackReservation(fromAccount, toAccountId, amount, TransferResult.failure("Transfer timed out", taskId, TransferResult.ErrorCode.TIMEOUT));
+            case UNKNOWN -> {
+                // the credit may have landed before the destination forgot it, so only reconciliation can tell
+                LOGGER.error("Node {} no longer knows the outcome of transfer {}; {} stays reserved on {}",
+                        owner.id(), taskId, amount.getValue().toPlainString(), fromAccount.getAccountId());
+                openReservations.remove(taskId);
+                yield CompletableFuture.completedFuture(TransferResult.failure("Transfer outcome unknown, funds stay reserved",
+                        taskId, TransferResult.ErrorCode.OUTCOME_UNKNOWN));
+            }
+        });
+    }
+
+    // Like compensate(), but once the service has stopped the reservation is left alone: shutdown() handed it back to
+    // be resumed, which asks the destination again and gets the same answer, and the stores may already be closed.
+    private CompletableFuture<TransferResult> rollBackReservation(Account fromAccount, String toAccountId, Amount amount, TransferResult failure) {
+        CompletableFuture<TransferResult> future = new CompletableFuture<>();
+        transferQueue.executeOnWorker(() -> {
+            if (stopped) {
+                future.completeExceptionally(new IllegalStateException("Stopped before transfer " + failure.getTaskId() + " was rolled back"));
+                return;
+            }
+            rollback(fromAccount, amount, null, null);
+            logTransaction(failure.getTaskId(), fromAccount.getAccountId(), toAccountId, amount, "ROLLED_BACK", failure.getMessage(), "CLUSTER");
+            openReservations.remove(failure.getTaskId());
+            future.complete(failure);
+        });
+        return future;
+    }
 
+    // retried with backoff for as long as it takes: the credit may have landed, so giving up could lose or create money
+    private CompletableFuture<ClusterTransport.Reply> abortCrossNodeCredit(ClusterRing.Node owner, String taskId, long reservedAtMillis, int attempt) {
+        return clusterTransport.abort(owner, taskId, reservedAtMillis).exceptionallyCompose(error -> {
+            if (stopped) {
+                return CompletableFuture.failedFuture(error);
+            }
+            long backoffMillis = Math.min(CLUSTER_ABORT_MAX_BACKOFF_MILLIS, 10L << Math.min(attempt, 10));
+            return CompletableFuture.supplyAsync(() -> attempt + 1, CompletableFuture.delayedExecutor(backoffMillis, TimeUnit.MILLISECONDS))
+                    .thenCompose(next -> abortCrossNodeCredit(owner, taskId, reservedAtMillis, next));
+        });
+    }
+
+    /**
+     * Runs on the node holding the destination account. Credits a transfer another node has reserved funds for, at
+     * most once per transfer id; a repeated request gets the first answer.
+     */
+    public CompletableFuture<ClusterTransport.Reply> creditCrossNodeTransfer(ClusterTransport.Credit credit) {
+        return onWorker(() -> decideCrossNodeTransfer(credit.transferId(), credit.reservedAtMillis(), () -> applyCrossNodeCredit(credit)));
+    }
+
+    /**
+     * Makes sure a transfer is never credited here. Answers with the outcome if it already was decided.
+     */
+    public CompletableFuture<ClusterTransport.Reply> abortCrossNodeTransfer(String transferId, long reservedAtMillis) {
+        return onWorker(() -> decideCrossNodeTransfer(transferId, reservedAtMillis, ClusterTransport.Reply::aborted));
+    }
+
+    // A transfer reserved before the last forgotten outcome was decided, give or take the nodes' clock skew, may be that
+    // one: deciding it again could credit it twice or abort a credit that landed, so it is answered UNKNOWN instead.
+    private ClusterTransport.Reply decideCrossNodeTransfer(String transferId, long reservedAtMillis, Supplier<ClusterTransport.Reply> decision) {
+        ClusterOutcome known = clusterOutcomes.get(transferId);
+        if (known != null) {
+            return known.reply();
+        }
+        if (clusterOutcomesForgottenUpToMillis != 0 && reservedAtMillis <= clusterOutcomesForgottenUpToMillis + CLUSTER_CLOCK_SKEW_MILLIS) {
+            return ClusterTransport.Reply.unknown();
+        }
+        ClusterTransport.Reply reply = decision.get();
+        clusterOutcomes.put(transferId, new ClusterOutcome(reply, System.currentTimeMillis()));
+        return reply;
+    }
+
+    private ClusterTransport.Reply applyCrossNodeCredit(ClusterTransport.Credit credit) {
+        String toAccountId = credit.toAccountId();
+        Amount amount = new Amount(credit.amount(), credit.currency());
+        Account toAccount = cluster != null && !cluster.isLocal(toAccountId) ? null : accountStore.getAccount(toAccountId);
+        if (toAccount == null) {
+            logTransaction(credit.transferId(), credit.fromAccountId(), toAccountId, amount, "FAILURE", "Invalid account ID", "CLUSTER");
+            return ClusterTransport.Reply.rejected(TransferResult.ErrorCode.INVALID_ACCOUNT, "Invalid account ID");
+        }
+        Amount credited;
         try {
-            return future.get(1, TimeUnit.SECONDS); // future improvement
-        } catch (TimeoutException e) {
-            rollback(fromAccount, null, amount);
-            return TransferResult.failure("Transfer timed out", taskId, TransferResult.ErrorCode.TIMEOUT);
-        } catch (Exception e) {
-            rollback(fromAccount, null, amount);
-            return TransferResult.failure("External transfer failed: " + e.getMessage(), taskId, TransferResult.ErrorCode.UNKNOWN);
+            credited = convert(amount, credit.currency(), toAccount);
+        } catch (IllegalArgumentException e) {
+            logTransaction(credit.transferId(), credit.fromAccountId(), toAccountId, amount, "FAILURE", e.getMessage(), "CLUSTER");
+            return ClusterTransport.Reply.rejected(TransferResult.ErrorCode.INVALID_CURRENCY, e.getMessage());
         }
+        if (nettingWindow != null) {
+            settlePending(toAccountId);
+        }
+        toAccount.beginUpdate();
+        try {
+            credit(toAccount, credited);
+            accountStore.updateAccount(toAccount);
+            if (credited == amount) {
+                logTransaction(credit.transferId(), credit.fromAccountId(), toAccountId, amount, "SUCCESS", "Transfer successful", "CLUSTER");
+            } else {
+                logConversion(credit.transferId(), credit.fromAccountId(), toAccountId, amount, credited, "Transfer successful", "CLUSTER");
+            }
+        } finally {
+            toAccount.commitUpdate();
+        }
+        return ClusterTransport.Reply.committed();
+    }
+
+    private <T> CompletableFuture<T> onWorker(Callable<T> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        transferQueue.executeOnWorker(() -> {
+            try {
+                result.complete(action.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
     }
 
     public void updateProgress(String transferId, TransferStatus status) {
         transferQueue.updateProgress(transferId, status);
     }
 
+    // Journals the transfer on its own but leaves the balances to the next settlement of the pair. Funds are checked
+    // against the balance plus everything still pending on the account, so a netted transfer can never overdraw it.
+    private TransferResult executeNettedTransfer(String taskId, String fromAccountId, String toAccountId, Amount amount) {
+        Account fromAccount = accountStore.getAccount(fromAccountId);
+        if (fromAccount == null || accountStore.getAccount(toAccountId) == null) {
+            String message = "Invalid account ID";
+            logTransaction(taskId, fromAccountId, toAccountId, amount, "FAILURE", message, "INTERNAL");
+            return TransferResult.failure(message, taskId, TransferResult.ErrorCode.INVALID_ACCOUNT);
+        }
+        if (!inCurrencyOf(amount, fromAccount)) {
+            String message = currencyMismatch(fromAccount);
+            logTransaction(taskId, fromAccountId, toAccountId, amount, "FAILURE", message, "INTERNAL");
+            return TransferResult.failure(message, taskId, TransferResult.ErrorCode.INVALID_CURRENCY);
+        }
+        BigDecimal available = fromAccount.getWorkingBalance().add(nettingWindow.pending(fromAccountId));
+        if (available.compareTo(amount.getValue()) < 0) {
+            String message = "Insufficient funds";
+            logTransaction(taskId, fromAccountId, toAccountId, amount, "FAILURE", message, "INTERNAL");
+            return TransferResult.failure(message, taskId, TransferResult.ErrorCode.INSUFFICIENT_FUNDS);
+        }
+        logTransaction(taskId, fromAccountId, toAccountId, amount, "NETTED", "Transfer netted", "INTERNAL");
+        nettingWindow.add(fromAccountId, toAccountId, amount.getValue());
+        return TransferResult.success(taskId);
+    }
+
+    /**
+     * Called once the transfer queue has drained. Waits until the deadline for withdrawals and cross-node transfers
+     * still running, then stops polling and settling them, and stops netting and settles what is still netted, so
+     * balances include every netted transfer before they are persisted.
+     *
+     * @param deadlineNanos - {@link System#nanoTime()} to stop waiting at, or {@link MoneyTransferTask#NO_DEADLINE}
+     * @return withdrawals and cross-node reservations still running, whose funds stay reserved, for the caller to
+     * persist and {@link #resume}
+     */
+    public List<QueuedTransfer> shutdown(long deadlineNanos) {
+        while ((!openWithdrawals.isEmpty() || !openReservations.isEmpty())
+                && (deadlineNanos == MoneyTransferTask.NO_DEADLINE || System.nanoTime() - deadlineNanos < 0)) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        // on the worker, so a reservation rolled back there is either rolled back and dropped, or left for resume
+        CompletableFuture<Void> stopping = new CompletableFuture<>();
+        transferQueue.executeOnWorker(() -> {
+            stopped = true;
+            stopping.complete(null);
+        });
+        stopping.join();
+        withdrawalPoller.shutdown();
+        if (nettingWindow != null) {
+            nettingWindow.shutdown();
+            transferQueue.executeOnWorker(this::settleNetting);
+        }
+        List<QueuedTransfer> open = new ArrayList<>(openWithdrawals.values());
+        open.addAll(openReservations.values());
+        return open;
+    }
+
+    // Worker only, like every other balance change.
+    void settleNetting() {
+        nettingWindow.settleAll(this::settle);
+    }
+
+    // Anything else touching a netted account first settles it, so its balance checks see the netted movements.
+    private void settlePending(String accountId) {
+        nettingWindow.settleInvolving(accountId, this::settle);
+    }
+
+    private void settle(NettingWindow.Settlement settlement) {
+        Account fromAccount = accountStore.getAccount(settlement.fromAccountId());
+        Account toAccount = accountStore.getAccount(settlement.toAccountId());
+        Amount amount = new Amount(settlement.amount());
+        fromAccount.beginUpdate();
+        toAccount.beginUpdate();
+        try {
+            debit(fromAccount, amount);
+            credit(toAccount, amount);
+            accountStore.updateAccount(fromAccount);
+            accountStore.updateAccount(toAccount);
+            logTransaction(UUID.randomUUID().toString(), settlement.fromAccountId(), settlement.toAccountId(), amount,
+                    "SETTLED", "Settled " + settlement.transfers() + " netted transfers", "NETTING");
+        } finally {
+            toAccount.commitUpdate();
+            fromAccount.commitUpdate();
+        }
+    }
+
     private void credit(Account account, Amount amount) {
-        BigDecimal newBalance = account.getBalance().add(amount.getValue());
-        account.setBalance(newBalance);
+        account.credit(amount.getValue());
     }
 
     private void debit(Account account, Amount amount) {
-        BigDecimal newBalance = account.getBalance().subtract(amount.getValue());
-        account.setBalance(newBalance);
+        account.debit(amount.getValue());
     }
 
-    private void rollback(Account fromAccount, Account toAccount, Amount amount) {
+    private void rollback(Account fromAccount, Amount debited, Account toAccount, Amount credited) {
         if (fromAccount != null) {
-            fromAccount.setBalance(fromAccount.getBalance().add(amount.getValue()));
+            fromAccount.credit(debited.getValue());
             accountStore.updateAccount(fromAccount);
         }
 
         if (toAccount != null) {
-            toAccount.setBalance(toAccount.getBalance().subtract(amount.getValue()));
+            toAccount.debit(credited.getValue());
             accountStore.updateAccount(toAccount);
         }
     }
 
+    // The amount is taken from the source account, so it has to be in that account's currency; the destination is
+    // credited the converted value. Returns the amount itself when no conversion is needed.
+    private Amount creditedAmount(Amount amount, Account fromAccount, Account toAccount) {
+        if (!inCurrencyOf(amount, fromAccount)) {
+            throw new IllegalArgumentException(currencyMismatch(fromAccount));
+        }
+        return convert(amount, fromAccount.getCurrency(), toAccount);
+    }
+
+    private Amount convert(Amount amount, String fromCurrency, Account toAccount) {
+        String toCurrency = toAccount.getCurrency();
+        if (fromCurrency.equals(toCurrency)) {
+            return amount;
+        }
+        if (fxRates == null) {
+            throw new IllegalArgumentException("No exchange rate from " + fromCurrency + " to " + toCurrency);
+        }
+        return new Amount(fxRates.convert(amount.getValue(), fromCurrency, toCurrency), toCurrency);
+    }
+
+    private static boolean inCurrencyOf(Amount amount, Account account) {
+        return amount.getCurrency() == null || amount.getCurrency().equals(account.getCurrency());
+    }
+
+    private static String currencyMismatch(Account account) {
+        return "Amount must be in the source account's currency " + account.getCurrency();
+    }
+
+    // netting settles one amount on both sides, so it only applies within a currency
+    private boolean sameCurrency(String fromAccountId, String toAccountId) {
+        Account fromAccount = accountStore.getAccount(fromAccountId);
+        Account toAccount = accountStore.getAccount(toAccountId);
+        return fromAccount == null || toAccount == null || fromAccount.getCurrency().equals(toAccount.getCurrency());
+    }
+
     public double getAccountBalance(String accountId) {
         Account account = accountStore.getAccount(accountId);
         if (account == null) {
@@ -178,10 +871,112 @@ public class TransferService {
         return account.getBalance().doubleValue();
     }
 
+    private static String fingerprint(String type, String from, String to, Amount amount) {
+        String value = amount.getValue().stripTrailingZeros().toPlainString();
+        return type + '|' + from + '|' + to + '|' + (amount.getCurrency() == null ? value : value + ' ' + amount.getCurrency());
+    }
+
+    private void logConversion(String taskId, String fromAccountId, String toAccountId, Amount debited, Amount credited, String message, String type) {
+        transactionStore.logTransaction(new Transaction(taskId, fromAccountId, toAccountId, debited, "SUCCESS", null,
+                System.currentTimeMillis(), credited));
+        appendEvent(taskId, fromAccountId, toAccountId, debited, "SUCCESS", message, type);
+    }
+
     private void logTransaction(String taskId, String fromAccountId, String toAccountId, Amount amount, String status, String message, String type) {
-        Transaction transaction = new Transaction(taskId, fromAccountId, toAccountId, amount, status, null);
-        transactionStore.logTransaction(transaction);
-        LOGGER.debug(String.format("Transaction log: %s | Status: %s | From: %s | To: %s | Amount: %.2f%n",
-                message, status, fromAccountId, toAccountId, amount.getValue()));
+        transactionStore.logTransaction(new Transaction(taskId, fromAccountId, toAccountId, amount, status, null));
+        appendEvent(taskId, fromAccountId, toAccountId, amount, status, message, type);
+    }
+
+    private void appendEvent(String taskId, String fromAccountId, String toAccountId, Amount amount, String status, String message, String type) {
+        if (eventLog != null) {
+            eventLog.append(status, taskId, fromAccountId, toAccountId, amount.getValue(), type, message);
+        } else if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Transaction log: {} | Status: {} | From: {} | To: {} | Amount: {}",
+                    message, status, fromAccountId, toAccountId, amount.getValue().toPlainString());
+        }
+    }
+
+    private record ClusterOutcome(ClusterTransport.Reply reply, long decidedAtMillis) {
+    }
+
+    public static final class Builder {
+        private final AccountStore accountStore;
+        private final TransactionStore transactionStore;
+        private final TransferQueue transferQueue;
+        private final WithdrawalPoller withdrawalPoller;
+        private IdempotencyCache idempotencyCache = new IdempotencyCache(100_000, TimeUnit.MINUTES.toNanos(10));
+        private NettingWindow nettingWindow;
+        private long defaultTimeoutNanos = DEFAULT_TIMEOUT_NANOS;
+        private TransferEventLog eventLog;
+        private FxRates fxRates;
+        private ClusterRing cluster;
+        private ClusterTransport clusterTransport;
+        private RateLimiter accountRateLimiter;
+        private RateLimiter userRateLimiter;
+
+        private Builder(AccountStore accountStore, TransactionStore transactionStore, TransferQueue transferQueue, WithdrawalPoller withdrawalPoller) {
+            this.accountStore = accountStore;
+            this.transactionStore = transactionStore;
+            this.transferQueue = transferQueue;
+            this.withdrawalPoller = withdrawalPoller;
+        }
+
+        public Builder idempotencyCache(IdempotencyCache idempotencyCache) {
+            this.idempotencyCache = idempotencyCache;
+            return this;
+        }
+
+        public Builder nettingWindow(NettingWindow nettingWindow) {
+            this.nettingWindow = nettingWindow;
+            return this;
+        }
+
+        /**
+         * @param defaultTimeoutNanos - deadline given to transfers whose caller did not set one
+         */
+        public Builder defaultTimeoutNanos(long defaultTimeoutNanos) {
+            this.defaultTimeoutNanos = defaultTimeoutNanos;
+            return this;
+        }
+
+        /**
+         * @param eventLog - without it state changes go to the debug log
+         */
+        public Builder eventLog(TransferEventLog eventLog) {
+            this.eventLog = eventLog;
+            return this;
+        }
+
+        /**
+         * @param fxRates - without it transfers between accounts in different currencies fail
+         */
+        public Builder fxRates(FxRates fxRates) {
+            this.fxRates = fxRates;
+            return this;
+        }
+
+        /**
+         * @param cluster - this node then only holds the accounts the ring gives it
+         * @param clusterTransport - reaches the other nodes
+         */
+        public Builder cluster(ClusterRing cluster, ClusterTransport clusterTransport) {
+            this.cluster = cluster;
+            this.clusterTransport = clusterTransport;
+            return this;
+        }
+
+        /**
+         * @param accountRateLimiter - limits transfers out of each account, or null
+         * @param userRateLimiter - limits transfers out of all of a user's accounts together, or null
+         */
+        public Builder rateLimiters(RateLimiter accountRateLimiter, RateLimiter userRateLimiter) {
+            this.accountRateLimiter = accountRateLimiter;
+            this.userRateLimiter = userRateLimiter;
+            return this;
+        }
+
+        public TransferService build() {
+            return new TransferService(this);
+        }
     }
 }
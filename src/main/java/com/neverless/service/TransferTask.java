@@ -1,6 +1,7 @@
 package com.neverless.service;
 
 import com.neverless.model.Amount;
+import com.neverless.model.QueuedTransfer;
 import com.neverless.model.TransferProgress;
 import com.neverless.model.TransferResult;
 import com.neverless.model.TransferStatus;
@@ -14,14 +15,23 @@ public final class TransferTask implements MoneyTransferTask {
     private final Amount amount;
     private final TransferService transferService;
     private final TransferProgress progress;
+    private final long deadlineNanos;
 
-    public TransferTask(String fromAccountId, String toAccountId, Amount amount, TransferService transferService) {
-        this.id = UUID.randomUUID().toString();
+    public TransferTask(String fromAccountId, String toAccountId, Amount amount, TransferService transferService, long deadlineNanos) {
+        this(UUID.randomUUID().toString(), fromAccountId, toAccountId, amount, transferService, deadlineNanos);
+    }
+
+    /**
+     * @param id - the id of a transfer resumed after a restart, so its progress can still be followed by it
+     */
+    public TransferTask(String id, String fromAccountId, String toAccountId, Amount amount, TransferService transferService, long deadlineNanos) {
+        this.id = id;
         this.fromAccountId = fromAccountId;
         this.toAccountId = toAccountId;
         this.amount = amount;
         this.transferService = transferService;
         this.progress = new TransferProgress(id, TransferStatus.INITIATED);
+        this.deadlineNanos = deadlineNanos;
     }
 
     public String getId() {
@@ -32,6 +42,16 @@ public final class TransferTask implements MoneyTransferTask {
         return progress;
     }
 
+    @Override
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    @Override
+    public QueuedTransfer toQueuedTransfer() {
+        return new QueuedTransfer("INTERNAL", id, fromAccountId, toAccountId, amount);
+    }
+
     @Override
     public TransferResult call() {
         transferService.updateProgress(id, TransferStatus.PROCESSING);
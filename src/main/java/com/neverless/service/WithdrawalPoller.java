@@ -0,0 +1,232 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tracks every in-flight withdrawal on one thread and talks to the {@link WithdrawalService} in batches: new
+ * requests are sent together every {@code requestLingerNanos}, and all pending withdrawals are polled together every
+ * {@code pollIntervalNanos}, at most {@code maxBatchSize} ids per call. The number of calls therefore depends on
+ * time, not on how many withdrawals are in flight.
+ * <p>
+ * A batch request that throws may still have registered part of the batch. Its withdrawals are polled like the others,
+ * and only those the service does not know are failed; the rest go on to their real final state.
+ */
+public final class WithdrawalPoller {
+    private final WithdrawalService withdrawalService;
+    private volatile long pollIntervalNanos;
+    private final long requestLingerNanos;
+    private volatile int maxBatchSize;
+    private final ManyToOneConcurrentLinkedQueue<PendingWithdrawal> submissions;
+    private final Map<WithdrawalService.WithdrawalId, PendingWithdrawal> pending;
+    private final AtomicBoolean running;
+    private final Thread pollerThread;
+
+    public WithdrawalPoller(WithdrawalService withdrawalService, long pollIntervalNanos, long requestLingerNanos, int maxBatchSize) {
+        this.withdrawalService = withdrawalService;
+        this.pollIntervalNanos = pollIntervalNanos;
+        this.requestLingerNanos = requestLingerNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.submissions = new ManyToOneConcurrentLinkedQueue<>();
+        this.pending = new ConcurrentHashMap<>();
+        this.running = new AtomicBoolean(true);
+        this.pollerThread = new Thread(this::run, "withdrawal-poller");
+        this.pollerThread.setDaemon(true);
+        this.pollerThread.start();
+    }
+
+    /**
+     * Requests a withdrawal and returns its final state, {@code COMPLETED} or {@code FAILED}. Completing or cancelling
+     * the returned future early (e.g. on timeout) stops the withdrawal from being polled.
+     */
+    public CompletableFuture<WithdrawalService.WithdrawalState> submit(WithdrawalService.WithdrawalId id, WithdrawalService.Address address, Amount amount) {
+        PendingWithdrawal withdrawal = new PendingWithdrawal(new WithdrawalService.WithdrawalRequest(id, address, amount), new CompletableFuture<>(), null);
+        if (!running.get()) {
+            withdrawal.state().completeExceptionally(new IllegalStateException("Withdrawal poller is not running"));
+        } else {
+            submissions.offer(withdrawal);
+            if (!running.get()) {
+                // raced shutdown: the poller may already have drained the queue, so wait for it to exit and fail
+                // whatever it left there; one it already requested is not in the queue and stays unresolved
+                awaitPollerExit();
+                failQueued();
+            }
+        }
+        return withdrawal.state();
+    }
+
+    /**
+     * Polls a withdrawal requested before a restart, without requesting it again. One the service does not know was
+     * never registered, and fails.
+     */
+    public CompletableFuture<WithdrawalService.WithdrawalState> track(WithdrawalService.WithdrawalId id, WithdrawalService.Address address, Amount amount) {
+        PendingWithdrawal withdrawal = new PendingWithdrawal(new WithdrawalService.WithdrawalRequest(id, address, amount), new CompletableFuture<>(),
+                new IllegalStateException("Withdrawal " + id.value() + " is unknown to the withdrawal service"));
+        pending.put(id, withdrawal);
+        return withdrawal.state();
+    }
+
+    /**
+     * Takes effect from the next poll.
+     */
+    public void setPollIntervalNanos(long pollIntervalNanos) {
+        if (pollIntervalNanos <= 0) {
+            throw new IllegalArgumentException("Poll interval must be positive");
+        }
+        this.pollIntervalNanos = pollIntervalNanos;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops polling. Withdrawals not yet requested fail, since nothing was paid out for them. Requested ones are left
+     * unresolved: they may still pay out, so their owner keeps the funds reserved and resumes them with {@link #track}.
+     */
+    public void shutdown() {
+        running.set(false);
+        LockSupport.unpark(pollerThread);
+        try {
+            pollerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long nextPoll = System.nanoTime();
+        while (running.get()) {
+            sendRequests();
+            long now = System.nanoTime();
+            if (now - nextPoll >= 0) {
+                poll();
+                nextPoll = now + pollIntervalNanos;
+            }
+            LockSupport.parkNanos(requestLingerNanos);
+        }
+        failQueued();
+    }
+
+    private void awaitPollerExit() {
+        if (Thread.currentThread() == pollerThread) {
+            return; // submitted from a callback on the poller, whose own final drain will fail it
+        }
+        boolean interrupted = false;
+        while (pollerThread.isAlive()) {
+            try {
+                pollerThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Once the poller has exited the queue has no single consumer left, so submitters that raced shutdown drain it
+     * under its lock.
+     */
+    private void failQueued() {
+        IllegalStateException stopped = new IllegalStateException("Withdrawal poller stopped");
+        synchronized (submissions) {
+            PendingWithdrawal withdrawal;
+            while ((withdrawal = submissions.poll()) != null) {
+                withdrawal.state().completeExceptionally(stopped);
+            }
+        }
+    }
+
+    private void sendRequests() {
+        List<PendingWithdrawal> batch = new ArrayList<>();
+        PendingWithdrawal withdrawal;
+        while (batch.size() < maxBatchSize && (withdrawal = submissions.poll()) != null) {
+            batch.add(withdrawal);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<WithdrawalService.WithdrawalRequest> requests = new ArrayList<>(batch.size());
+        for (PendingWithdrawal requested : batch) {
+            requests.add(requested.request());
+        }
+        RuntimeException failure = null;
+        try {
+            withdrawalService.requestWithdrawals(requests);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (PendingWithdrawal requested : batch) {
+            pending.put(requested.request().id(), failure == null ? requested : requested.unconfirmed(failure));
+        }
+    }
+
+    private void poll() {
+        pending.values().removeIf(withdrawal -> withdrawal.state().isDone());
+        List<WithdrawalService.WithdrawalId> ids = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+        Iterator<WithdrawalService.WithdrawalId> iterator = pending.keySet().iterator();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next());
+            if (ids.size() == maxBatchSize || !iterator.hasNext()) {
+                pollBatch(ids);
+                ids.clear();
+            }
+        }
+        pending.values().removeIf(withdrawal -> withdrawal.state().isDone());
+    }
+
+    private void pollBatch(List<WithdrawalService.WithdrawalId> ids) {
+        Map<WithdrawalService.WithdrawalId, WithdrawalService.WithdrawalState> states;
+        try {
+            states = withdrawalService.getRequestStates(ids);
+        } catch (RuntimeException e) {
+            return; // transient, retried on the next poll; callers are bounded by their own timeouts
+        }
+        for (WithdrawalService.WithdrawalId id : ids) {
+            PendingWithdrawal withdrawal = pending.get(id);
+            WithdrawalService.WithdrawalState state = states.get(id);
+            if (withdrawal == null) {
+                continue;
+            }
+            if (state == null) {
+                if (withdrawal.requestFailure() != null) {
+                    // never registered by the failed batch request, so nothing can be paid out
+                    withdrawal.state().completeExceptionally(withdrawal.requestFailure());
+                }
+            } else if (state != WithdrawalService.WithdrawalState.PROCESSING) {
+                withdrawal.state().complete(state);
+            } else if (withdrawal.requestFailure() != null) {
+                pending.put(id, new PendingWithdrawal(withdrawal.request(), withdrawal.state(), null));
+            }
+        }
+    }
+
+    /**
+     * @param requestFailure - what the batch request that should have registered it threw, until the service is seen
+     *                       to know it; null once confirmed
+     */
+    private record PendingWithdrawal(WithdrawalService.WithdrawalRequest request, CompletableFuture<WithdrawalService.WithdrawalState> state,
+                                     RuntimeException requestFailure) {
+        private PendingWithdrawal unconfirmed(RuntimeException failure) {
+            return new PendingWithdrawal(request, state, failure);
+        }
+    }
+}
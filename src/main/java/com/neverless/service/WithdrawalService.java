@@ -3,6 +3,10 @@ package com.neverless.service;
 
 import com.neverless.model.Amount;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public interface WithdrawalService {
@@ -23,11 +27,39 @@ public interface WithdrawalService {
      */
     WithdrawalState getRequestState(WithdrawalId id);
 
+    /**
+     * Request many withdrawals in a single call, with the same semantics as {@link #requestWithdrawal} for each
+     * @param requests - withdrawals to request
+     * @throws IllegalArgumentException in case there's different address or amount for any given id
+     */
+    default void requestWithdrawals(List<WithdrawalRequest> requests) {
+        for (WithdrawalRequest request : requests) {
+            requestWithdrawal(request.id(), request.address(), request.amount());
+        }
+    }
+
+    /**
+     * Return current state of many withdrawals in a single call
+     * @param ids - withdrawal ids
+     * @return current state per id; ids with no withdrawal are left out
+     */
+    default Map<WithdrawalId, WithdrawalState> getRequestStates(Collection<WithdrawalId> ids) {
+        Map<WithdrawalId, WithdrawalState> states = new HashMap<>(ids.size() * 2);
+        for (WithdrawalId id : ids) {
+            try {
+                states.put(id, getRequestState(id));
+            } catch (IllegalArgumentException e) {
+                // unknown id, left out
+            }
+        }
+        return states;
+    }
+
     enum WithdrawalState {
         PROCESSING, COMPLETED, FAILED
     }
 
     record WithdrawalId(UUID value) {}
     record Address(String value) {}
+    record WithdrawalRequest(WithdrawalId id, Address address, Amount amount) {}
 }
-
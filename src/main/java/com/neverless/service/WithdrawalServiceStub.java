@@ -2,18 +2,58 @@ package com.neverless.service;
 
 import com.neverless.model.Amount;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import static com.neverless.service.WithdrawalService.WithdrawalState.*;
 
 public class WithdrawalServiceStub implements WithdrawalService {
     private final ConcurrentMap<WithdrawalId, Withdrawal> requests = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final long minCompletionMillis;
+    private final long maxCompletionMillis;
+    private final long perCallOverheadNanos;
+
+    public WithdrawalServiceStub() {
+        this(1000, 10000);
+    }
+
+    public WithdrawalServiceStub(long minCompletionMillis, long maxCompletionMillis) {
+        this(minCompletionMillis, maxCompletionMillis, 0);
+    }
+
+    /**
+     * @param perCallOverheadNanos - simulated round trip paid once per call, whatever the number of ids it carries
+     */
+    public WithdrawalServiceStub(long minCompletionMillis, long maxCompletionMillis, long perCallOverheadNanos) {
+        this.minCompletionMillis = minCompletionMillis;
+        this.maxCompletionMillis = maxCompletionMillis;
+        this.perCallOverheadNanos = perCallOverheadNanos;
+    }
 
     @Override
     public void requestWithdrawal(WithdrawalId id, Address address, Amount amount) { // Please substitute T with prefered type
+        call();
+        request(id, address, amount);
+    }
+
+    @Override
+    public void requestWithdrawals(List<WithdrawalRequest> batch) {
+        call();
+        for (WithdrawalRequest request : batch) {
+            request(request.id(), request.address(), request.amount());
+        }
+    }
+
+    private void request(WithdrawalId id, Address address, Amount amount) {
         final var existing = requests.putIfAbsent(id, new Withdrawal(finalState(), finaliseAt(), address, amount));
         if (existing != null && !Objects.equals(existing.address, address) && !Objects.equals(existing.amount, amount))
             throw new IllegalStateException("Withdrawal request with id[%s] is already present".formatted(id));
@@ -24,17 +64,40 @@ public class WithdrawalServiceStub implements WithdrawalService {
     }
 
     private long finaliseAt() {
-        return System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(1000, 10000);
+        return System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(minCompletionMillis, maxCompletionMillis);
     }
 
     @Override
     public WithdrawalState getRequestState(WithdrawalId id) {
+        call();
         final var request = requests.get(id);
         if (request == null)
             throw new IllegalArgumentException("Request %s is not found".formatted(id));
         return request.finalState();
     }
 
+    @Override
+    public Map<WithdrawalId, WithdrawalState> getRequestStates(Collection<WithdrawalId> ids) {
+        call();
+        final Map<WithdrawalId, WithdrawalState> states = new HashMap<>(ids.size() * 2);
+        for (WithdrawalId id : ids) {
+            final var request = requests.get(id);
+            if (request != null)
+                states.put(id, request.finalState());
+        }
+        return states;
+    }
+
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    private void call() {
+        calls.incrementAndGet();
+        if (perCallOverheadNanos > 0)
+            LockSupport.parkNanos(perCallOverheadNanos);
+    }
+
     record Withdrawal(WithdrawalState state, long finaliseAt, Address address, Amount amount) {
         public WithdrawalState finalState() {
             return finaliseAt <= System.currentTimeMillis() ? state : PROCESSING;
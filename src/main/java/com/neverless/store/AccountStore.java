@@ -2,10 +2,55 @@ package com.neverless.store;
 
 import com.neverless.model.Account;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 public interface AccountStore {
     Account getAccount(String accountId);
 
-    void createAccount(String accountId, String userId, double initialBalance);
+    default void createAccount(String accountId, String userId, double initialBalance) {
+        createAccount(accountId, userId, initialBalance, Account.DEFAULT_CURRENCY);
+    }
+
+    void createAccount(String accountId, String userId, double initialBalance, String currency);
+
+    default boolean createAccountIfAbsent(String accountId, String userId, double initialBalance) {
+        return createAccountIfAbsent(accountId, userId, initialBalance, Account.DEFAULT_CURRENCY);
+    }
+
+    default boolean createAccountIfAbsent(String accountId, String userId, double initialBalance, String currency) {
+        return createAccountIfAbsent(accountId, userId, new BigDecimal(initialBalance), currency);
+    }
+
+    /**
+     * Atomically creates the account unless one with the same id already exists.
+     *
+     * @return false if the id was already taken, in which case the existing account is left untouched
+     */
+    boolean createAccountIfAbsent(String accountId, String userId, BigDecimal initialBalance, String currency);
+
+    /**
+     * Creates each account as {@link #createAccountIfAbsent} would, for bulk loads, which a store may make durable in
+     * one go.
+     *
+     * @return the accounts whose id was already taken, by then or earlier in the batch, and were not created
+     */
+    default List<Account> createAccountsIfAbsent(List<Account> accounts) {
+        List<Account> taken = new ArrayList<>();
+        for (Account account : accounts) {
+            if (!createAccountIfAbsent(account.getAccountId(), account.getUserId(), account.getWorkingBalance(), account.getCurrency())) {
+                taken.add(account);
+            }
+        }
+        return taken;
+    }
 
     void updateAccount(Account account);
+
+    /**
+     * Live view of every account, safe to iterate (and split) while accounts are being created.
+     */
+    Collection<Account> getAllAccounts();
 }
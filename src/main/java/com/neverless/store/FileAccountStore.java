@@ -0,0 +1,402 @@
+package com.neverless.store;
+
+import com.neverless.model.Account;
+import com.neverless.model.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps every account in memory and persists balances write-behind to an append-only key-value file, one
+ * {@code accountId|userId|balance|currency|journalPosition} line per write, last line wins. The position is that of
+ * the last journal record the balance includes. Lines without a currency are read as {@link Account#DEFAULT_CURRENCY},
+ * and lines without a position as covering the whole journal.
+ * <p>
+ * {@link #updateAccount} only records the account's new balance in a dirty map, so repeated updates to a hot account
+ * coalesce into a single write. A background flusher appends dirty entries in batches, but only once the journal
+ * has synced past the position it had when the update was made: the transfer's own journal record is always the next
+ * one appended after its account updates, so the file never holds a balance the journal could not explain.
+ * Account creation is not journaled: a new account's line is written and forced before the account becomes visible,
+ * so an acknowledged creation survives a crash, and every journal record about the account finds its line on replay.
+ * <p>
+ * Each batch ends with a checkpoint line: the journal position before which every change is in the file. On open the
+ * journal is replayed from the last checkpoint, and each record is applied to the accounts whose line does not
+ * include it yet. A crash that left one side of a transfer unwritten, or changes unflushed, therefore loses nothing
+ * the journal holds, and both sides of every transfer come back consistent.
+ * <p>
+ * A failed flush keeps its entries dirty for the next attempt; the failure is logged and reported by
+ * {@link #getFlushFailure()} until a flush succeeds.
+ */
+public final class FileAccountStore implements AccountStore, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileAccountStore.class);
+    private static final char SEPARATOR = '|';
+    private static final String CHECKPOINT = "@checkpoint";
+    private static final int COMPACTION_FACTOR = 4;
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    private final Path path;
+    private final FileTransactionStore journal;
+    private final long flushIntervalNanos;
+    private final Map<String, Account> accounts;
+    private final Map<String, Dirty> dirty;
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final Thread flusherThread;
+    private final StringBuilder batch;
+    private FileChannel channel;
+    private long records;
+    private long checkpoint;
+    private volatile boolean running = true;
+    private volatile RuntimeException flushFailure;
+
+    public FileAccountStore(Path path, FileTransactionStore journal, long flushIntervalNanos) {
+        this.path = path;
+        this.journal = journal;
+        this.flushIntervalNanos = flushIntervalNanos;
+        this.accounts = new ConcurrentHashMap<>();
+        this.dirty = new ConcurrentHashMap<>();
+        this.batch = new StringBuilder(4096);
+        load();
+        try {
+            this.channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open account store " + path, e);
+        }
+        this.flusherThread = new Thread(this::runFlusher, "account-flusher");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        return accounts.get(accountId);
+    }
+
+    @Override
+    public synchronized void createAccount(String accountId, String userId, double initialBalance, String currency) {
+        Account account = new Account(accountId, userId, initialBalance, currency);
+        writeCreated(List.of(account));
+        accounts.put(accountId, account);
+        // a balance still dirty belongs to the account this one replaces
+        dirty.remove(accountId);
+    }
+
+    @Override
+    public boolean createAccountIfAbsent(String accountId, String userId, BigDecimal initialBalance, String currency) {
+        return createAccountsIfAbsent(List.of(new Account(accountId, userId, initialBalance, currency))).isEmpty();
+    }
+
+    // one write and one force for the whole batch
+    @Override
+    public synchronized List<Account> createAccountsIfAbsent(List<Account> newAccounts) {
+        List<Account> taken = new ArrayList<>();
+        Map<String, Account> created = new LinkedHashMap<>();
+        for (Account account : newAccounts) {
+            if (accounts.containsKey(account.getAccountId()) || created.putIfAbsent(account.getAccountId(), account) != null) {
+                taken.add(account);
+            }
+        }
+        if (!created.isEmpty()) {
+            writeCreated(created.values());
+            accounts.putAll(created);
+        }
+        return taken;
+    }
+
+    // Called by the transfer worker right after it changes the working balance; the transfer's record comes next.
+    @Override
+    public void updateAccount(Account account) {
+        accounts.put(account.getAccountId(), account);
+        markDirty(account, journal.getPosition());
+    }
+
+    @Override
+    public Collection<Account> getAllAccounts() {
+        return Collections.unmodifiableCollection(accounts.values());
+    }
+
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * The last flush's failure, or null once a flush succeeded since.
+     */
+    public RuntimeException getFlushFailure() {
+        return flushFailure;
+    }
+
+    /**
+     * Writes every dirty balance the journal already covers and forces the file to disk.
+     */
+    public synchronized void flush() {
+        long synced = journal.getSyncedPosition();
+        batch.setLength(0);
+        Map<String, Dirty> written = new LinkedHashMap<>();
+        for (Map.Entry<String, Dirty> entry : dirty.entrySet()) {
+            Dirty update = entry.getValue();
+            if (update.position() >= synced) {
+                continue;
+            }
+            appendLine(batch, entry.getKey(), update.userId(), update.balance(), update.currency(), update.position());
+            written.put(entry.getKey(), update);
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+        // a change still dirty after this batch is at or after this position, so a replay from it finds it
+        long next = synced;
+        for (Map.Entry<String, Dirty> entry : dirty.entrySet()) {
+            if (!written.containsKey(entry.getKey())) {
+                next = Math.min(next, entry.getValue().firstPosition());
+            }
+        }
+        batch.append(CHECKPOINT).append(SEPARATOR).append(Math.max(checkpoint, next)).append('\n');
+        // on failure nothing is removed from the dirty map, so the next flush writes it all again
+        write(batch);
+        for (Map.Entry<String, Dirty> entry : written.entrySet()) {
+            // a newer update that raced in stays dirty for the next round
+            dirty.remove(entry.getKey(), entry.getValue());
+        }
+        checkpoint = Math.max(checkpoint, next);
+        writes.addAndGet(written.size());
+        records += written.size() + 1;
+        if (records > Math.max(MIN_COMPACTION_RECORDS, (long) COMPACTION_FACTOR * accounts.size())) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flusherThread.interrupt();
+        journal.sync();
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close account store " + path, e);
+        }
+    }
+
+    // Caller holds the lock and makes the accounts visible only after this returns, so no transfer can have touched
+    // them yet: with no journal record of its own, a new account's balance includes everything before now.
+    private void writeCreated(Collection<Account> created) {
+        long position = journal.getPosition() - 1;
+        StringBuilder lines = new StringBuilder(64 * created.size());
+        for (Account account : created) {
+            appendLine(lines, account.getAccountId(), account.getUserId(), account.getWorkingBalance(), account.getCurrency(), position);
+        }
+        write(lines);
+        updates.addAndGet(created.size());
+        records += created.size();
+        if (records > Math.max(MIN_COMPACTION_RECORDS, (long) COMPACTION_FACTOR * (accounts.size() + created.size()))) {
+            compact();
+        }
+    }
+
+    private void write(CharSequence lines) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write account store " + path, e);
+        }
+    }
+
+    private void markDirty(Account account, long journalPosition) {
+        updates.incrementAndGet();
+        Dirty update = new Dirty(account.getUserId(), account.getWorkingBalance(), account.getCurrency(), journalPosition, journalPosition);
+        dirty.merge(account.getAccountId(), update, (previous, latest) -> latest.since(previous.firstPosition()));
+    }
+
+    private void runFlusher() {
+        while (running) {
+            LockSupport.parkNanos(flushIntervalNanos);
+            if (!running) {
+                break;
+            }
+            try {
+                flush();
+                flushFailure = null;
+            } catch (RuntimeException e) {
+                if (flushFailure == null) {
+                    LOGGER.error("Unable to flush account store {}, retrying", path, e);
+                }
+                flushFailure = e;
+            }
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Map<String, String[]> latest = readLatest();
+        Map<String, BigDecimal> balances = new HashMap<>();
+        for (String[] fields : latest.values()) {
+            balances.put(fields[0], new BigDecimal(fields[2]));
+        }
+        // what the file is missing is in the journal after the checkpoint; only complete records are replayed
+        Map<String, Dirty> replayed = new HashMap<>();
+        journal.replay(checkpoint, (transaction, position) -> {
+            if (!transaction.movesBalances()) {
+                return;
+            }
+            replay(transaction.fromAccountId(), transaction, position, latest, balances, replayed);
+            if (!transaction.toAccountId().equals(transaction.fromAccountId())) {
+                replay(transaction.toAccountId(), transaction, position, latest, balances, replayed);
+            }
+        });
+        for (String[] fields : latest.values()) {
+            accounts.put(fields[0], new Account(fields[0], fields[1], balances.get(fields[0]), currency(fields)));
+        }
+        // written back by the next flush, which moves the checkpoint past them
+        dirty.putAll(replayed);
+        records = latest.size();
+        if (!replayed.isEmpty()) {
+            LOGGER.info("Replayed journal changes to {} accounts missing from {}", replayed.size(), path);
+        }
+    }
+
+    private static void replay(String accountId, Transaction transaction, long position, Map<String, String[]> latest,
+                               Map<String, BigDecimal> balances, Map<String, Dirty> replayed) {
+        String[] fields = latest.get(accountId);
+        if (fields == null || position <= position(fields)) {
+            return; // not an account here, such as the other side of a cross-node transfer, or its line includes the record
+        }
+        BigDecimal balance = balances.merge(accountId, transaction.effectOn(accountId), BigDecimal::add);
+        Dirty first = replayed.get(accountId);
+        replayed.put(accountId, new Dirty(fields[1], balance, currency(fields), position, first == null ? position : first.firstPosition()));
+    }
+
+    // the latest line per account; the last checkpoint is kept in the checkpoint field
+    private Map<String, String[]> readLatest() {
+        Map<String, String[]> latest = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            // a torn last line from a crash mid-write is ignored; it is the only one not ending in a newline
+            boolean torn = endsTorn();
+            String line = reader.readLine();
+            while (line != null) {
+                String next = reader.readLine();
+                if (next != null || !torn) {
+                    String[] fields = line.split("\\|", -1);
+                    if (fields.length == 2 && fields[0].equals(CHECKPOINT)) {
+                        checkpoint = Long.parseLong(fields[1]);
+                    } else if (fields.length >= 3 && fields.length <= 5) {
+                        latest.put(fields[0], fields);
+                    }
+                }
+                line = next;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read account store " + path, e);
+        }
+        return latest;
+    }
+
+    private boolean endsTorn() throws IOException {
+        try (FileChannel reader = FileChannel.open(path, READ)) {
+            if (reader.size() == 0) {
+                return false;
+            }
+            ByteBuffer last = ByteBuffer.allocate(1);
+            reader.read(last, reader.size() - 1);
+            return last.get(0) != '\n';
+        }
+    }
+
+    // rewrites the file with only the latest line per account, then swaps it in atomically
+    private void compact() {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        Map<String, String[]> latest = readLatest();
+        StringBuilder line = new StringBuilder(64);
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+            for (String[] fields : latest.values()) {
+                line.setLength(0);
+                appendLine(line, fields[0], fields[1], new BigDecimal(fields[2]), currency(fields), position(fields));
+                writer.append(line);
+            }
+            writer.append(CHECKPOINT).append(SEPARATOR).append(String.valueOf(checkpoint)).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to compact account store " + path, e);
+        }
+        try (FileChannel written = FileChannel.open(compacted, WRITE)) {
+            written.force(true);
+            channel.close();
+            Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to compact account store " + path, e);
+        }
+        records = latest.size();
+    }
+
+    private static void appendLine(StringBuilder line, String accountId, String userId, BigDecimal balance, String currency, long position) {
+        line.append(accountId).append(SEPARATOR)
+                .append(userId).append(SEPARATOR)
+                .append(balance.toPlainString()).append(SEPARATOR)
+                .append(currency).append(SEPARATOR)
+                .append(position).append('\n');
+    }
+
+    private static String currency(String[] fields) {
+        return fields.length >= 4 ? fields[3] : Account.DEFAULT_CURRENCY;
+    }
+
+    // a line written before positions were kept already includes whatever the journal holds
+    private static long position(String[] fields) {
+        return fields.length == 5 ? Long.parseLong(fields[4]) : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param position - of the last journal record the balance includes
+     * @param firstPosition - of the oldest change not yet written, which a replay must start at or before
+     */
+    private record Dirty(String userId, BigDecimal balance, String currency, long position, long firstPosition) {
+
+        private Dirty since(long earlierPosition) {
+            return new Dirty(userId, balance, currency, position, Math.min(firstPosition, earlierPosition));
+        }
+    }
+}
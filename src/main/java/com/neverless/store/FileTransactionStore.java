@@ -0,0 +1,265 @@
+package com.neverless.store;
+
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Journals every transaction to an append-only file, one line per record. Appends only reach the page cache;
+ * {@link #sync()} forces them to disk and is expected to be driven by a group commit stage rather than per record.
+ * A torn last record left by a crash is cut off on open.
+ */
+public final class FileTransactionStore implements TransactionStore, AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileTransactionStore.class);
+    private static final char SEPARATOR = '|';
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long openedPosition;
+    private FileChannel reader;
+    private final TransactionLog transactions;
+    private final StringBuilder line;
+    private volatile long position;
+    private volatile long syncedPosition;
+
+    public FileTransactionStore(Path path) {
+        this(path, null, 0);
+    }
+
+    /**
+     * @param archive - optional; keeps only the most recent {@code hotTransactions} in memory and reads older ones
+     *                back from it
+     */
+    public FileTransactionStore(Path path, TransactionArchive archive, int hotTransactions) {
+        this.path = path;
+        try {
+            cutTornRecord(path);
+            this.channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+            this.position = channel.size();
+            this.syncedPosition = position;
+            this.openedPosition = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open journal " + path, e);
+        }
+        this.transactions = new TransactionLog(archive, hotTransactions);
+        this.line = new StringBuilder(128);
+    }
+
+    // A crash mid-append leaves a last record without its newline. It was never synced, so never acknowledged; it is
+    // cut off so the next append starts a line of its own instead of running on from the fragment.
+    private static void cutTornRecord(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel file = FileChannel.open(path, READ, WRITE)) {
+            long size = file.size();
+            long complete = 0;
+            ByteBuffer chunk = ByteBuffer.allocate(4096);
+            for (long end = size; end > 0 && complete == 0; ) {
+                long start = Math.max(0, end - chunk.capacity());
+                chunk.clear().limit((int) (end - start));
+                while (chunk.hasRemaining() && file.read(chunk, start + chunk.position()) > 0) {
+                    // keep reading until the chunk is in
+                }
+                for (int i = chunk.position() - 1; i >= 0; i--) {
+                    if (chunk.get(i) == '\n') {
+                        complete = start + i + 1;
+                        break;
+                    }
+                }
+                end = start;
+            }
+            if (complete < size) {
+                LOGGER.warn("Cutting a torn record of {} bytes off the end of journal {}", size - complete, path);
+                file.truncate(complete);
+                file.force(true);
+            }
+        }
+    }
+
+    @Override
+    public void logTransaction(Transaction transaction) {
+        line.setLength(0);
+        line.append(transaction.transactionId()).append(SEPARATOR)
+                .append(transaction.fromAccountId()).append(SEPARATOR)
+                .append(transaction.toAccountId()).append(SEPARATOR)
+                .append(transaction.amount().getValue().toPlainString()).append(SEPARATOR)
+                .append(transaction.status()).append(SEPARATOR)
+                .append(transaction.previousTransactionId()).append(SEPARATOR)
+                .append(transaction.timestamp());
+        if (transaction.creditedAmount() != null) {
+            line.append(SEPARATOR).append(transaction.amount().getCurrency()).append(SEPARATOR)
+                    .append(transaction.creditedAmount().getValue().toPlainString()).append(SEPARATOR)
+                    .append(transaction.creditedAmount().getCurrency());
+        }
+        line.append('\n');
+        ByteBuffer record = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to append to journal", e);
+        }
+        position += record.limit();
+        transactions.add(transaction);
+    }
+
+    @Override
+    public List<Transaction> getTransactionLog() {
+        return transactions.range(0, transactions.size());
+    }
+
+    @Override
+    public long getTransactionCount() {
+        return transactions.size();
+    }
+
+    @Override
+    public List<Transaction> getTransactions(long from, long to) {
+        return transactions.range(from, to);
+    }
+
+    @Override
+    public Transaction getTransaction(long position) {
+        return transactions.get(position);
+    }
+
+    @Override
+    public synchronized void sync() {
+        long target = position;
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to sync journal", e);
+        }
+        syncedPosition = Math.max(syncedPosition, target);
+    }
+
+    /**
+     * Reads back the records written to the file from the given position, each with the position it starts at, for a
+     * store catching up on changes it had not persisted before the last stop. A record still being appended is skipped.
+     */
+    public void replay(long from, ObjLongConsumer<Transaction> consumer) {
+        replay(from, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Like {@link #replay(long, ObjLongConsumer)}, but stops at the first record starting at or after {@code to}.
+     */
+    public void replay(long from, long to, ObjLongConsumer<Transaction> consumer) {
+        try (FileChannel reader = FileChannel.open(path, READ)) {
+            reader.position(from);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(reader), 1 << 16);
+            ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+            long start = from;
+            int b;
+            while (start < to && (b = in.read()) != -1) {
+                if (b != '\n') {
+                    record.write(b);
+                    continue;
+                }
+                consumer.accept(parse(record.toString(StandardCharsets.UTF_8)), start);
+                start += record.size() + 1;
+                record.reset();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to replay journal", e);
+        }
+    }
+
+    /**
+     * The record starting at the given offset, as handed to a {@link #replay} consumer. Safe to call from any thread.
+     */
+    public Transaction read(long offset) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+        ByteBuffer chunk = ByteBuffer.allocate(256);
+        try {
+            FileChannel reader = reader();
+            long at = offset;
+            while (true) {
+                chunk.clear();
+                int read = reader.read(chunk, at);
+                if (read <= 0) {
+                    throw new IllegalArgumentException("No journal record at " + offset);
+                }
+                for (int i = 0; i < read; i++) {
+                    if (chunk.get(i) == '\n') {
+                        record.write(chunk.array(), 0, i);
+                        return parse(record.toString(StandardCharsets.UTF_8));
+                    }
+                }
+                record.write(chunk.array(), 0, read);
+                at += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read journal", e);
+        }
+    }
+
+    private synchronized FileChannel reader() throws IOException {
+        if (reader == null) {
+            reader = FileChannel.open(path, READ);
+        }
+        return reader;
+    }
+
+    // the amount's own currency is only written for a conversion; the replayed values are what balances need
+    private static Transaction parse(String line) {
+        String[] fields = line.split("\\|", -1);
+        String previous = "null".equals(fields[5]) ? null : fields[5];
+        Amount amount = fields.length == 10 ? new Amount(new BigDecimal(fields[3]), fields[7]) : new Amount(new BigDecimal(fields[3]));
+        Amount credited = fields.length == 10 ? new Amount(new BigDecimal(fields[8]), fields[9]) : null;
+        return new Transaction(fields[0], fields[1], fields[2], amount, fields[4], previous, Long.parseLong(fields[6]), credited);
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getSyncedPosition() {
+        return syncedPosition;
+    }
+
+    /**
+     * Where the records written before this store was opened end.
+     */
+    public long getOpenedPosition() {
+        return openedPosition;
+    }
+
+    @Override
+    public void close() {
+        try {
+            synchronized (this) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close journal", e);
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.neverless.store;
 
 import com.neverless.model.Account;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -18,16 +21,26 @@ public final class InMemoryAccountStore implements AccountStore {
     }
 
     @Override
-    public void createAccount(String accountId, String userId, double initialBalance) {
-        Account account = new Account(accountId, userId, initialBalance);
+    public void createAccount(String accountId, String userId, double initialBalance, String currency) {
+        Account account = new Account(accountId, userId, initialBalance, currency);
         accounts.put(accountId, account);
     }
 
+    @Override
+    public boolean createAccountIfAbsent(String accountId, String userId, BigDecimal initialBalance, String currency) {
+        return accounts.putIfAbsent(accountId, new Account(accountId, userId, initialBalance, currency)) == null;
+    }
+
     @Override
     public void updateAccount(Account account) {
         accounts.put(account.getAccountId(), account);
     }
 
+    @Override
+    public Collection<Account> getAllAccounts() {
+        return Collections.unmodifiableCollection(accounts.values());
+    }
+
     public Map<String, Account> getAccounts() {
         return accounts;
     }
@@ -2,15 +2,21 @@ package com.neverless.store;
 
 import com.neverless.model.Transaction;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public final class InMemoryTransactionStore implements TransactionStore {
-    private final List<Transaction> transactions;
+    private final TransactionLog transactions;
     private String lastTransactionId = null;
 
     public InMemoryTransactionStore() {
-        transactions = new ArrayList<>();
+        transactions = new TransactionLog();
+    }
+
+    /**
+     * Keeps only the most recent {@code hotTransactions} in memory and reads older ones back from the archive.
+     */
+    public InMemoryTransactionStore(TransactionArchive archive, int hotTransactions) {
+        transactions = new TransactionLog(archive, hotTransactions);
     }
 
     @Override
@@ -21,7 +27,22 @@ public final class InMemoryTransactionStore implements TransactionStore {
 
     @Override
     public List<Transaction> getTransactionLog() {
-        return new ArrayList<>(transactions);
+        return transactions.range(0, transactions.size());
+    }
+
+    @Override
+    public long getTransactionCount() {
+        return transactions.size();
+    }
+
+    @Override
+    public List<Transaction> getTransactions(long from, long to) {
+        return transactions.range(from, to);
+    }
+
+    @Override
+    public Transaction getTransaction(long position) {
+        return transactions.get(position);
     }
 
     public String getLastTransactionId() {
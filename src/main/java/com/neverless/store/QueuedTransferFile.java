@@ -0,0 +1,128 @@
+package com.neverless.store;
+
+import com.neverless.model.Amount;
+import com.neverless.model.QueuedTransfer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the transfers left queued at shutdown until the next start, one line per transfer:
+ * {@code type|taskId|from|to|amount|currency|reservedAtMillis}, with an empty currency for the source account's own,
+ * after a {@code JOURNAL|position} line holding the transaction journal's position when they were saved. Files
+ * written before either was added load with no reservation time and position 0.
+ */
+public final class QueuedTransferFile {
+    private static final char SEPARATOR = '|';
+    private static final String JOURNAL = "JOURNAL";
+
+    private QueuedTransferFile() {
+    }
+
+    public static void save(Path path, List<QueuedTransfer> transfers) {
+        save(path, transfers, 0);
+    }
+
+    /**
+     * Writes the transfers to a temporary file first, forces it to disk and only then moves it into place, so a crash
+     * leaves either the old file or the whole new one.
+     */
+    public static void save(Path path, List<QueuedTransfer> transfers, long journalPosition) {
+        StringBuilder lines = new StringBuilder(transfers.size() * 128);
+        lines.append(JOURNAL).append(SEPARATOR).append(journalPosition).append('\n');
+        for (QueuedTransfer transfer : transfers) {
+            lines.append(transfer.type()).append(SEPARATOR)
+                    .append(transfer.taskId()).append(SEPARATOR)
+                    .append(transfer.fromAccountId()).append(SEPARATOR)
+                    .append(transfer.toAccountId()).append(SEPARATOR)
+                    .append(transfer.amount().getValue().toPlainString()).append(SEPARATOR)
+                    .append(transfer.amount().getCurrency() == null ? "" : transfer.amount().getCurrency()).append(SEPARATOR)
+                    .append(transfer.reservedAtMillis())
+                    .append('\n');
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(lines));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to save queued transfers to " + path, e);
+        }
+    }
+
+    /**
+     * A missing file holds no transfers.
+     */
+    public static List<QueuedTransfer> load(Path path) {
+        List<QueuedTransfer> transfers = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return transfers;
+        }
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split("\\|", -1);
+                if (fields[0].equals(JOURNAL)) {
+                    continue;
+                }
+                if (fields.length != 6 && fields.length != 7) {
+                    throw new IllegalStateException("Malformed queued transfer: " + line);
+                }
+                Amount amount = new Amount(new BigDecimal(fields[4]), fields[5].isEmpty() ? null : fields[5]);
+                long reservedAtMillis = fields.length == 7 ? Long.parseLong(fields[6]) : 0;
+                transfers.add(new QueuedTransfer(fields[0], fields[1], fields[2], fields[3], amount, reservedAtMillis));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read queued transfers from " + path, e);
+        }
+        return transfers;
+    }
+
+    /**
+     * The journal's position when the transfers were saved, 0 for a missing file or one saved without it.
+     */
+    public static long loadJournalPosition(Path path) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String first = reader.readLine();
+            if (first == null || !first.startsWith(JOURNAL + SEPARATOR)) {
+                return 0;
+            }
+            return Long.parseLong(first.substring(JOURNAL.length() + 1));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read queued transfers from " + path, e);
+        }
+    }
+
+    /**
+     * Called once the resumed transfers have all finished. Until then the file stays, so a crash resumes them again.
+     */
+    public static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to delete queued transfers " + path, e);
+        }
+    }
+}
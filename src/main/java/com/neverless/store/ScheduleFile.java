@@ -0,0 +1,158 @@
+package com.neverless.store;
+
+import com.neverless.model.Amount;
+import com.neverless.model.ScheduledTransfer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps scheduled transfers and standing orders across restarts. Every change appends the schedule's latest state,
+ * {@code S|id|from|to|amount|currency|intervalMillis|nextRunAtMillis|runs} with an empty currency for the source
+ * account's own, or {@code X|id} once it is cancelled or has run for the last time. Appends only reach the page cache,
+ * which a crash of the process does not lose. On open, and whenever the file holds {@value #COMPACTION_FACTOR} times
+ * more lines than schedules, it is rewritten with one line per schedule.
+ */
+public final class ScheduleFile implements AutoCloseable {
+    private static final char SEPARATOR = '|';
+    private static final int COMPACTION_FACTOR = 4;
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    private final Path path;
+    private final Map<String, ScheduledTransfer> schedules;
+    private final StringBuilder line;
+    private FileChannel channel;
+    private long records;
+
+    public ScheduleFile(Path path) {
+        this.path = path;
+        this.schedules = new LinkedHashMap<>();
+        this.line = new StringBuilder(128);
+        load();
+        compact();
+    }
+
+    /**
+     * Every schedule still to run, in the order they were first saved.
+     */
+    public synchronized List<ScheduledTransfer> getSchedules() {
+        return List.copyOf(schedules.values());
+    }
+
+    public synchronized void save(ScheduledTransfer schedule) {
+        schedules.put(schedule.id(), schedule);
+        line.setLength(0);
+        append(schedule);
+        write();
+    }
+
+    public synchronized void remove(String scheduleId) {
+        if (schedules.remove(scheduleId) == null) {
+            return;
+        }
+        line.setLength(0);
+        line.append('X').append(SEPARATOR).append(scheduleId).append('\n');
+        write();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close schedule file " + path, e);
+        }
+    }
+
+    private void append(ScheduledTransfer schedule) {
+        line.append('S').append(SEPARATOR)
+                .append(schedule.id()).append(SEPARATOR)
+                .append(schedule.fromAccountId()).append(SEPARATOR)
+                .append(schedule.toAccountId()).append(SEPARATOR)
+                .append(schedule.amount().getValue().toPlainString()).append(SEPARATOR)
+                .append(schedule.amount().getCurrency() == null ? "" : schedule.amount().getCurrency()).append(SEPARATOR)
+                .append(schedule.intervalMillis()).append(SEPARATOR)
+                .append(schedule.nextRunAtMillis()).append(SEPARATOR)
+                .append(schedule.runs()).append('\n');
+    }
+
+    private void write() {
+        ByteBuffer record = ByteBuffer.wrap(line.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to append to schedule file " + path, e);
+        }
+        records++;
+        if (records > Math.max(MIN_COMPACTION_RECORDS, (long) COMPACTION_FACTOR * schedules.size())) {
+            compact();
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            String content = Files.readString(path, StandardCharsets.UTF_8);
+            String[] lines = content.split("\n", -1);
+            // the last entry is empty, or a line cut short by a crash whose change never took effect
+            for (int i = 0; i < lines.length - 1; i++) {
+                String[] fields = lines[i].split("\\|", -1);
+                if (fields.length == 2 && "X".equals(fields[0])) {
+                    schedules.remove(fields[1]);
+                } else if (fields.length == 9 && "S".equals(fields[0])) {
+                    Amount amount = new Amount(new BigDecimal(fields[4]), fields[5].isEmpty() ? null : fields[5]);
+                    schedules.put(fields[1], new ScheduledTransfer(fields[1], fields[2], fields[3], amount,
+                            Long.parseLong(fields[6]), Long.parseLong(fields[7]), Integer.parseInt(fields[8])));
+                } else {
+                    throw new IllegalStateException("Malformed schedule: " + lines[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read schedule file " + path, e);
+        }
+    }
+
+    // written aside, forced and moved into place, so a crash leaves either the old file or the new one
+    private void compact() {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+                for (ScheduledTransfer schedule : schedules.values()) {
+                    line.setLength(0);
+                    append(schedule);
+                    writer.append(line);
+                }
+            }
+            try (FileChannel written = FileChannel.open(compacted, WRITE)) {
+                written.force(true);
+            }
+            if (channel != null) {
+                channel.close();
+            }
+            Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to compact schedule file " + path, e);
+        }
+        records = schedules.size();
+    }
+}
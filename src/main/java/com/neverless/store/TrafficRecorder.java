@@ -0,0 +1,171 @@
+package com.neverless.store;
+
+import org.agrona.BitUtil;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Records the requests the server handles, with when they arrived, how long they took and what they answered, so
+ * {@link TrafficReplay} can send the same traffic to another instance later. Like {@link TransferEventLog}, request
+ * threads only copy a record into a ring buffer and a background thread writes the file; a record that does not fit
+ * is dropped and counted.
+ * <p>
+ * The file is big-endian and starts with {@link #MAGIC}; each record is {@code int length}, then
+ * {@code long startEpochNanos, long latencyNanos, u16 status}, the method, path, query and form body as
+ * {@code u16 length + UTF-8}, and a u16 count of header name/value pairs in the same encoding.
+ */
+public final class TrafficRecorder implements AutoCloseable {
+    static final byte[] MAGIC = {'M', 'M', 'T', 'R'};
+    private static final int RECORD_TYPE = 1;
+    private static final int DRAIN_LIMIT = 1024;
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+
+    private final ManyToOneRingBuffer ringBuffer;
+    private final int maxRecordLength;
+    private final FileChannel channel;
+    private final ByteBuffer output;
+    private final ThreadLocal<ExpandableArrayBuffer> scratch = ThreadLocal.withInitial(() -> new ExpandableArrayBuffer(256));
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread drainThread;
+    private final MessageHandler writer = this::write;
+    private volatile boolean running = true;
+
+    /**
+     * @param bufferBytes - ring buffer capacity, a power of two
+     */
+    public TrafficRecorder(Path path, int bufferBytes) {
+        if (!BitUtil.isPowerOfTwo(bufferBytes)) {
+            throw new IllegalArgumentException("Traffic buffer size must be a power of two: " + bufferBytes);
+        }
+        this.ringBuffer = new ManyToOneRingBuffer(new UnsafeBuffer(ByteBuffer.allocateDirect(bufferBytes + RingBufferDescriptor.TRAILER_LENGTH)));
+        this.output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_BYTES);
+        this.maxRecordLength = Math.min(ringBuffer.maxMsgLength(), OUTPUT_BUFFER_BYTES - Integer.BYTES);
+        try {
+            this.channel = FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING);
+            channel.write(ByteBuffer.wrap(MAGIC));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open traffic recording " + path, e);
+        }
+        this.drainThread = new Thread(this::run, "traffic-recorder");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Safe from any thread. Returns without waiting for the record to reach the file.
+     *
+     * @param query - the raw query string, or null
+     * @param body - the form-encoded body, or null
+     */
+    public void record(long startEpochNanos, long latencyNanos, int status, String method, String path, String query, String body,
+                       Map<String, String> headers) {
+        ExpandableArrayBuffer buffer = scratch.get();
+        buffer.putLong(0, startEpochNanos, ByteOrder.BIG_ENDIAN);
+        buffer.putLong(Long.BYTES, latencyNanos, ByteOrder.BIG_ENDIAN);
+        buffer.putShort(2 * Long.BYTES, (short) status, ByteOrder.BIG_ENDIAN);
+        int index = 2 * Long.BYTES + Short.BYTES;
+        index = putField(buffer, index, method);
+        index = putField(buffer, index, path);
+        index = putField(buffer, index, query);
+        index = putField(buffer, index, body);
+        buffer.putShort(index, (short) headers.size(), ByteOrder.BIG_ENDIAN);
+        index += Short.BYTES;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            index = putField(buffer, index, header.getKey());
+            index = putField(buffer, index, header.getValue());
+        }
+        if (index > maxRecordLength || !ringBuffer.write(RECORD_TYPE, buffer, 0, index)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Drains whatever is still in the ring and closes the file.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            drainThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close traffic recording", e);
+        }
+    }
+
+    private static int putField(MutableDirectBuffer buffer, int index, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, 0xFFFF);
+        buffer.putShort(index, (short) length, ByteOrder.BIG_ENDIAN);
+        buffer.putBytes(index + Short.BYTES, bytes, 0, length);
+        return index + Short.BYTES + length;
+    }
+
+    private void run() {
+        IdleStrategy idleStrategy = new BackoffIdleStrategy(10, 10, TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(1));
+        while (running) {
+            idleStrategy.idle(drain());
+        }
+        while (drain() > 0) {
+            // records written before close
+        }
+    }
+
+    private int drain() {
+        int read = ringBuffer.read(writer, DRAIN_LIMIT);
+        if (output.position() > 0) {
+            flush();
+        }
+        return read;
+    }
+
+    private void write(int type, MutableDirectBuffer source, int index, int length) {
+        if (output.remaining() < Integer.BYTES + length) {
+            flush();
+        }
+        output.putInt(length);
+        source.getBytes(index, output, output.position(), length);
+        output.position(output.position() + length);
+    }
+
+    private void flush() {
+        output.flip();
+        try {
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to append to traffic recording", e);
+        }
+        output.clear();
+    }
+}
@@ -0,0 +1,208 @@
+package com.neverless.store;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a {@link TrafficRecorder} file to a running instance, keeping the recorded gaps between requests divided by
+ * {@code speed}, or as fast as {@code maxInFlight} allows with speed {@code max}, and compares throughput and latency
+ * with the recorded run:
+ * {@code java -cp 'lib/*' com.neverless.store.TrafficReplay traffic.bin http://localhost:8888 [speed] [maxInFlight]}
+ */
+public final class TrafficReplay {
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private TrafficReplay() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage: TrafficReplay <recording> <base url> [speed, e.g. 1, 10 or max] [max in flight]");
+            System.exit(1);
+        }
+        double speed = args.length < 3 ? 1 : "max".equals(args[2]) ? MAX_SPEED : Double.parseDouble(args[2]);
+        int maxInFlight = args.length < 4 ? DEFAULT_MAX_IN_FLIGHT : Integer.parseInt(args[3]);
+        List<RecordedRequest> requests = read(Path.of(args[0]));
+        replay(requests, args[1], speed, maxInFlight).print(System.out);
+    }
+
+    /**
+     * @return the recorded requests in the order they finished, which is the order they were recorded in; a record cut
+     * short by a crash ends the list
+     */
+    public static List<RecordedRequest> read(Path path) {
+        try (InputStream file = Files.newInputStream(path)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(file));
+            byte[] magic = new byte[TrafficRecorder.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, TrafficRecorder.MAGIC)) {
+                throw new IllegalArgumentException("Not a traffic recording: " + path);
+            }
+            List<RecordedRequest> requests = new ArrayList<>();
+            while (true) {
+                try {
+                    in.readInt();
+                    requests.add(readRecord(in));
+                } catch (EOFException e) {
+                    return requests;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read traffic recording " + path, e);
+        }
+    }
+
+    /**
+     * Sends the requests in the order they started, whatever order they are given in.
+     */
+    public static Report replay(List<RecordedRequest> recordedRequests, String baseUrl, double speed, int maxInFlight) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+        // recorded as they finished, so a slow request sits behind ones that started after it
+        List<RecordedRequest> requests = new ArrayList<>(recordedRequests);
+        requests.sort(Comparator.comparingLong(RecordedRequest::startEpochNanos));
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        Semaphore permits = new Semaphore(maxInFlight);
+        CountDownLatch done = new CountDownLatch(requests.size());
+        long[] latencies = new long[requests.size()];
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger statusChanged = new AtomicInteger();
+        long firstStart = requests.isEmpty() ? 0 : requests.get(0).startEpochNanos();
+        long replayStart = System.nanoTime();
+        for (int i = 0; i < requests.size(); i++) {
+            RecordedRequest recorded = requests.get(i);
+            if (speed != MAX_SPEED) {
+                long dueNanos = replayStart + (long) ((recorded.startEpochNanos() - firstStart) / speed);
+                for (long wait = dueNanos - System.nanoTime(); wait > 0; wait = dueNanos - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            permits.acquireUninterruptibly();
+            int index = i;
+            long sentAt = System.nanoTime();
+            client.sendAsync(recorded.toHttpRequest(baseUrl), HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                latencies[index] = System.nanoTime() - sentAt;
+                if (error != null) {
+                    failed.incrementAndGet();
+                } else if (response.statusCode() != recorded.status()) {
+                    statusChanged.incrementAndGet();
+                }
+                permits.release();
+                done.countDown();
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long replayElapsed = System.nanoTime() - replayStart;
+
+        long[] recordedLatencies = requests.stream().mapToLong(RecordedRequest::latencyNanos).toArray();
+        long recordedElapsed = requests.stream().mapToLong(r -> r.startEpochNanos() + r.latencyNanos()).max().orElse(firstStart) - firstStart;
+        return new Report(Run.of(recordedLatencies, recordedElapsed), Run.of(latencies, replayElapsed), statusChanged.get(), failed.get());
+    }
+
+    private static RecordedRequest readRecord(DataInputStream in) throws IOException {
+        long startEpochNanos = in.readLong();
+        long latencyNanos = in.readLong();
+        int status = in.readUnsignedShort();
+        String method = readField(in);
+        String path = readField(in);
+        String query = readField(in);
+        String body = readField(in);
+        int headerCount = in.readUnsignedShort();
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(readField(in), readField(in));
+        }
+        return new RecordedRequest(startEpochNanos, latencyNanos, status, method, path, query, body, headers);
+    }
+
+    private static String readField(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param query - the raw query string, empty if there was none
+     * @param body - the form-encoded body, empty if there was none
+     */
+    public record RecordedRequest(long startEpochNanos, long latencyNanos, int status, String method, String path, String query,
+                                  String body, Map<String, String> headers) {
+
+        HttpRequest toHttpRequest(String baseUrl) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path + (query.isEmpty() ? "" : "?" + query)));
+            headers.forEach(builder::header);
+            if (body.isEmpty() && !"POST".equals(method)) {
+                return builder.method(method, HttpRequest.BodyPublishers.noBody()).build();
+            }
+            return builder.header("Content-Type", "application/x-www-form-urlencoded")
+                    .method(method, HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }
+    }
+
+    public record Run(int requests, long elapsedNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+
+        static Run of(long[] latencies, long elapsedNanos) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            return new Run(sorted.length, elapsedNanos, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+        }
+
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : requests * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            return sorted.length == 0 ? 0 : sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+        }
+    }
+
+    /**
+     * @param statusChanged - requests answered with a different status than when recorded
+     * @param failed - requests that got no answer
+     */
+    public record Report(Run recorded, Run replayed, int statusChanged, int failed) {
+
+        public void print(PrintStream out) {
+            out.printf("%10s %10s %12s %12s %12s %12s%n", "", "requests", "req/s", "p50(ms)", "p99(ms)", "max(ms)");
+            print(out, "recorded", recorded);
+            print(out, "replayed", replayed);
+            out.printf("status changed: %d, failed: %d%n", statusChanged, failed);
+        }
+
+        private static void print(PrintStream out, String name, Run run) {
+            out.printf("%10s %10d %12.1f %12.3f %12.3f %12.3f%n", name, run.requests(), run.throughput(),
+                    run.p50Nanos() / 1e6, run.p99Nanos() / 1e6, run.maxNanos() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.neverless.store;
+
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Cold tier of a {@link TransactionLog}. Full segments of the log are handed over in order, deflated on a background
+ * thread and appended to one file, and an in-memory index of their offsets lets any segment be read back on demand.
+ * The most recently loaded segments are kept decoded, so scanning archived history inflates each segment once. Each
+ * segment is loaded by the first reader that needs it while later readers of the same segment wait for it, and
+ * readers of other segments go ahead in parallel.
+ * <p>
+ * Each segment is written as {@code int segment, int count, int length} and {@code length} bytes of deflated records.
+ * The file only holds the history of the running process and is truncated on open.
+ */
+public final class TransactionArchive implements AutoCloseable {
+    private static final int HEADER_LENGTH = 3 * Integer.BYTES;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final Transaction[] STOP = new Transaction[0];
+
+    private final FileChannel channel;
+    private final int cachedSegments;
+    private final BlockingQueue<Transaction[]> pending = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<Integer, CompletableFuture<Transaction[]>> cache = new ConcurrentHashMap<>();
+    private final Queue<Integer> loadOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final Thread archiverThread;
+    private volatile long[] offsets = new long[64];
+    private volatile int archivedSegments;
+
+    /**
+     * @param cachedSegments - decoded segments kept in memory for repeated reads
+     */
+    public TransactionArchive(Path path, int cachedSegments) {
+        try {
+            this.channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open transaction archive " + path, e);
+        }
+        this.cachedSegments = cachedSegments;
+        this.archiverThread = new Thread(this::run, "transaction-archiver");
+        archiverThread.setDaemon(true);
+        archiverThread.start();
+    }
+
+    /**
+     * Enough decoded segments for a parallel scan on the common pool not to evict what its other threads are still
+     * reading: one leaf per thread, each spanning up to two segments.
+     */
+    public static int defaultCachedSegments() {
+        return Math.max(4, 2 * ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Queues the next full segment for archiving. Segments must be handed over in order and not change afterwards.
+     */
+    void archive(Transaction[] segment) {
+        pending.add(segment);
+    }
+
+    /**
+     * Segments {@code [0, n)} are on disk and readable.
+     */
+    int getArchivedSegments() {
+        return archivedSegments;
+    }
+
+    public long getArchivedBytes() {
+        int archived = archivedSegments;
+        return offsets[archived];
+    }
+
+    Transaction[] read(int segment) {
+        int archived = archivedSegments;
+        if (segment >= archived) {
+            throw new IllegalStateException("Segment " + segment + " is not archived yet");
+        }
+        CompletableFuture<Transaction[]> transactions = cache.get(segment);
+        if (transactions == null) {
+            CompletableFuture<Transaction[]> loading = new CompletableFuture<>();
+            transactions = cache.putIfAbsent(segment, loading);
+            if (transactions == null) {
+                transactions = loading;
+                load(segment, loading);
+            }
+        }
+        try {
+            return transactions.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    // segments leave in the order they were loaded, which is the order a scan needs them gone
+    private void load(int segment, CompletableFuture<Transaction[]> loading) {
+        try {
+            long[] index = offsets;
+            loading.complete(decode(readFully(index[segment], (int) (index[segment + 1] - index[segment]))));
+        } catch (RuntimeException e) {
+            cache.remove(segment, loading);
+            loading.completeExceptionally(e);
+            return;
+        }
+        loadOrder.add(segment);
+        if (loaded.incrementAndGet() > cachedSegments) {
+            Integer eldest = loadOrder.poll();
+            if (eldest != null) {
+                loaded.decrementAndGet();
+                cache.remove(eldest);
+            }
+        }
+    }
+
+    /**
+     * Archives the segments already handed over, then closes the file.
+     */
+    @Override
+    public void close() {
+        pending.add(STOP);
+        try {
+            archiverThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close transaction archive", e);
+        }
+    }
+
+    // a segment that fails to archive stops archiving; it and every later one simply stay in memory
+    private void run() {
+        try {
+            for (Transaction[] segment = pending.take(); segment != STOP; segment = pending.take()) {
+                write(segment);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(Transaction[] segment) {
+        int number = archivedSegments;
+        byte[] deflated = encode(segment);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + deflated.length)
+                .putInt(number).putInt(segment.length).putInt(deflated.length).put(deflated).flip();
+        long[] index = offsets;
+        long position = index[number];
+        try {
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to archive segment " + number, e);
+        }
+        if (number + 1 == index.length) {
+            index = Arrays.copyOf(index, index.length * 2);
+        }
+        index[number + 1] = position;
+        offsets = index;
+        archivedSegments = number + 1;
+    }
+
+    private byte[] readFully(long position, int length) {
+        ByteBuffer record = ByteBuffer.allocate(length);
+        try {
+            while (record.hasRemaining()) {
+                if (channel.read(record, position + record.position()) < 0) {
+                    throw new IOException("Archive ends inside a segment");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read transaction archive", e);
+        }
+        return record.array();
+    }
+
+    private static byte[] encode(Transaction[] segment) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(segment.length * 32);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(bytes, deflater, BUFFER_BYTES), BUFFER_BYTES))) {
+            for (Transaction transaction : segment) {
+                writeNullable(out, transaction.transactionId());
+                writeNullable(out, transaction.fromAccountId());
+                writeNullable(out, transaction.toAccountId());
+                writeAmount(out, transaction.amount());
+                writeNullable(out, transaction.status());
+                writeNullable(out, transaction.previousTransactionId());
+                out.writeLong(transaction.timestamp());
+                out.writeBoolean(transaction.creditedAmount() != null);
+                if (transaction.creditedAmount() != null) {
+                    writeAmount(out, transaction.creditedAmount());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to encode segment", e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Transaction[] decode(byte[] record) {
+        ByteBuffer header = ByteBuffer.wrap(record, 0, HEADER_LENGTH);
+        header.getInt();
+        Transaction[] transactions = new Transaction[header.getInt()];
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(record, HEADER_LENGTH, header.getInt()), inflater, BUFFER_BYTES), BUFFER_BYTES))) {
+            for (int i = 0; i < transactions.length; i++) {
+                String transactionId = readNullable(in);
+                String fromAccountId = readNullable(in);
+                String toAccountId = readNullable(in);
+                Amount amount = readAmount(in);
+                String status = readNullable(in);
+                String previousTransactionId = readNullable(in);
+                long timestamp = in.readLong();
+                Amount creditedAmount = in.readBoolean() ? readAmount(in) : null;
+                transactions[i] = new Transaction(transactionId, fromAccountId, toAccountId, amount, status, previousTransactionId, timestamp, creditedAmount);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to decode archived segment", e);
+        } finally {
+            inflater.end();
+        }
+        return transactions;
+    }
+
+    private static void writeAmount(DataOutputStream out, Amount amount) throws IOException {
+        out.writeUTF(amount.getValue().toPlainString());
+        writeNullable(out, amount.getCurrency());
+    }
+
+    private static Amount readAmount(DataInputStream in) throws IOException {
+        return new Amount(new BigDecimal(in.readUTF()), readNullable(in));
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,118 @@
+package com.neverless.store;
+
+import com.neverless.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only list of transactions with a single writer, the transfer worker. Other threads may read any range below
+ * {@link #size()} while the writer keeps appending: entries are stored in fixed chunks that never move, and the size
+ * is published only after the entry it covers.
+ * <p>
+ * With an archive, every full chunk is also handed to it, and once it is on disk and older than the hot window the
+ * chunk is dropped from memory. Reads of a dropped chunk load it back from the archive, so the heap holds at most the
+ * hot window plus the chunks still being archived.
+ */
+final class TransactionLog {
+    static final int CHUNK_SHIFT = 14;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int RELEASE_CHECK_MASK = 1023;
+
+    private final TransactionArchive archive;
+    private final int hotChunks;
+    private volatile Transaction[][] chunks = new Transaction[16][];
+    private volatile long size;
+    private int releasedChunks;
+
+    TransactionLog() {
+        this(null, 0);
+    }
+
+    /**
+     * @param archive - optional; without one every transaction stays in memory
+     * @param hotTransactions - most recent transactions always kept in memory, rounded up to whole chunks
+     */
+    TransactionLog(TransactionArchive archive, int hotTransactions) {
+        this.archive = archive;
+        this.hotChunks = Math.max(1, (hotTransactions + CHUNK_MASK) >>> CHUNK_SHIFT);
+    }
+
+    void add(Transaction transaction) {
+        long index = size;
+        int chunk = (int) (index >>> CHUNK_SHIFT);
+        Transaction[][] current = chunks;
+        if (chunk == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            chunks = current;
+        }
+        if (current[chunk] == null) {
+            current[chunk] = new Transaction[CHUNK_SIZE];
+            if (archive != null && chunk > 0) {
+                archive.archive(current[chunk - 1]);
+            }
+        }
+        // the archiver catches up in the background, so it is checked for now and then rather than only per chunk
+        if (archive != null && (index & RELEASE_CHECK_MASK) == 0) {
+            release(current, chunk);
+        }
+        current[chunk][(int) (index & CHUNK_MASK)] = transaction;
+        size = index + 1;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int residentChunks() {
+        int resident = 0;
+        for (Transaction[] chunk : chunks) {
+            resident += chunk == null ? 0 : 1;
+        }
+        return resident;
+    }
+
+    Transaction get(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Position " + index + " outside [0, " + size + ")");
+        }
+        return chunk(chunks, (int) (index >>> CHUNK_SHIFT))[(int) (index & CHUNK_MASK)];
+    }
+
+    List<Transaction> range(long from, long to) {
+        if (from < 0 || from > to || to > size) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") outside [0, " + size + ")");
+        }
+        Transaction[][] current = chunks;
+        List<Transaction> transactions = new ArrayList<>((int) (to - from));
+        long index = from;
+        while (index < to) {
+            Transaction[] chunk = chunk(current, (int) (index >>> CHUNK_SHIFT));
+            int offset = (int) (index & CHUNK_MASK);
+            int count = (int) Math.min(CHUNK_SIZE - offset, to - index);
+            transactions.addAll(Arrays.asList(chunk).subList(offset, offset + count));
+            index += count;
+        }
+        return transactions;
+    }
+
+    private Transaction[] chunk(Transaction[][] current, int chunk) {
+        Transaction[] transactions = current[chunk];
+        return transactions != null ? transactions : archive.read(chunk);
+    }
+
+    // drops the archived chunks that fell out of the hot window; the new chunks array publishes the change to readers
+    private void release(Transaction[][] current, int filling) {
+        int archived = archive.getArchivedSegments();
+        int released = releasedChunks;
+        while (released < archived && released <= filling - hotChunks) {
+            current[released++] = null;
+        }
+        if (released != releasedChunks) {
+            releasedChunks = released;
+            chunks = current;
+        }
+    }
+}
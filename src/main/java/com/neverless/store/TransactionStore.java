@@ -2,7 +2,28 @@ package com.neverless.store;
 
 import com.neverless.model.Transaction;
 
+import java.util.List;
+
 public interface TransactionStore {
     void logTransaction(Transaction transaction);
     Iterable<Transaction> getTransactionLog();
+
+    long getTransactionCount();
+
+    /**
+     * Transactions at positions {@code [from, to)} in the order they were logged. Safe to call from any thread while
+     * transactions are still being logged, as long as {@code to} does not exceed {@link #getTransactionCount()}.
+     */
+    List<Transaction> getTransactions(long from, long to);
+
+    /**
+     * The transaction at the given position, below {@link #getTransactionCount()}. Safe to call from any thread.
+     */
+    Transaction getTransaction(long position);
+
+    /**
+     * Makes every transaction logged so far durable. Stores without a durable medium have nothing to do.
+     */
+    default void sync() {
+    }
 }
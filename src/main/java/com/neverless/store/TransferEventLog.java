@@ -0,0 +1,248 @@
+package com.neverless.store;
+
+import org.agrona.BitUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.EpochClock;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.SystemEpochClock;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Binary log of transfer state changes. A record is copied field by field into a {@link ManyToOneRingBuffer} and a
+ * background thread drains the ring to a file, so the transfer worker never formats text or touches the disk. Appending
+ * an amount given as an unscaled long and a scale allocates nothing; the {@link BigDecimal} overload may allocate the
+ * unscaled value first. When the ring is full, a record is larger than an eighth of it or its amount has more than 63
+ * bits of unscaled value, the record is dropped and counted instead of blocking. Records that could not be
+ * written to the file are counted the same way; the drain thread logs the failure and keeps going.
+ * <p>
+ * The file is big-endian and starts with {@link #MAGIC}; each record is {@code int length, int status}, then a payload
+ * of {@code long epochMillis, long unscaledAmount, int amountScale} and the id, from, to, kind and message fields as
+ * {@code u16 length + ASCII}, each cut to {@link #MAX_FIELD_LENGTH} characters. {@link TransferEventLogDecoder} turns
+ * it back into text.
+ */
+public final class TransferEventLog implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferEventLog.class);
+    static final byte[] MAGIC = {'M', 'M', 'E', '2'};
+    static final String[] STATUSES = {"PROCESSING", "SUCCESS", "FAILURE", "ROLLED_BACK", "NETTED", "SETTLED", "OTHER"};
+    static final int MAX_FIELD_LENGTH = 255;
+    static final int RECORD_HEADER_LENGTH = 2 * Integer.BYTES;
+    private static final int FIXED_PAYLOAD_LENGTH = 2 * Long.BYTES + Integer.BYTES;
+    private static final int DRAIN_LIMIT = 1024;
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+
+    private final ManyToOneRingBuffer ringBuffer;
+    private final UnsafeBuffer buffer;
+    private final EpochClock clock;
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer output;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread drainThread;
+    private final MessageHandler writer = this::write;
+    private int buffered;
+    private volatile IOException writeFailure;
+    private volatile boolean running = true;
+
+    public TransferEventLog(Path path, int bufferBytes) {
+        this(path, bufferBytes, SystemEpochClock.INSTANCE);
+    }
+
+    /**
+     * @param bufferBytes - ring buffer capacity, a power of two
+     */
+    public TransferEventLog(Path path, int bufferBytes, EpochClock clock) {
+        if (!BitUtil.isPowerOfTwo(bufferBytes)) {
+            throw new IllegalArgumentException("Event buffer size must be a power of two: " + bufferBytes);
+        }
+        this.buffer = new UnsafeBuffer(ByteBuffer.allocateDirect(bufferBytes + RingBufferDescriptor.TRAILER_LENGTH));
+        this.ringBuffer = new ManyToOneRingBuffer(buffer);
+        this.clock = clock;
+        this.output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_BYTES);
+        this.path = path;
+        this.channel = open(path);
+        this.drainThread = new Thread(this::run, "transfer-event-log");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Safe from any thread. Returns without waiting for the record to reach the file.
+     */
+    public void append(String status, String transferId, String fromAccountId, String toAccountId, BigDecimal amount, String kind, String message) {
+        BigInteger unscaledAmount = amount.unscaledValue();
+        if (unscaledAmount.bitLength() >= Long.SIZE) {
+            dropped.incrementAndGet();
+            return;
+        }
+        append(status, transferId, fromAccountId, toAccountId, unscaledAmount.longValue(), amount.scale(), kind, message);
+    }
+
+    /**
+     * Like {@link #append(String, String, String, String, BigDecimal, String, String)} for an amount of
+     * {@code unscaledAmount * 10^-amountScale}, without allocating.
+     */
+    public void append(String status, String transferId, String fromAccountId, String toAccountId, long unscaledAmount, int amountScale, String kind, String message) {
+        int length = FIXED_PAYLOAD_LENGTH + fieldLength(transferId) + fieldLength(fromAccountId) + fieldLength(toAccountId)
+                + fieldLength(kind) + fieldLength(message);
+        int claimed = length > ringBuffer.maxMsgLength() ? -1 : ringBuffer.tryClaim(statusId(status), length);
+        if (claimed < 0) {
+            dropped.incrementAndGet();
+            return;
+        }
+        buffer.putLong(claimed, clock.time(), ByteOrder.BIG_ENDIAN);
+        buffer.putLong(claimed + Long.BYTES, unscaledAmount, ByteOrder.BIG_ENDIAN);
+        buffer.putInt(claimed + 2 * Long.BYTES, amountScale, ByteOrder.BIG_ENDIAN);
+        int index = claimed + FIXED_PAYLOAD_LENGTH;
+        index = putField(index, transferId);
+        index = putField(index, fromAccountId);
+        index = putField(index, toAccountId);
+        index = putField(index, kind);
+        putField(index, message);
+        ringBuffer.commit(claimed);
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return why the last write to the file failed, or null if it succeeded
+     */
+    public IOException getWriteFailure() {
+        return writeFailure;
+    }
+
+    /**
+     * Drains whatever is still in the ring and closes the file.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            drainThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close event log", e);
+        }
+    }
+
+    static int statusId(String status) {
+        return switch (status) {
+            case "PROCESSING" -> 1;
+            case "SUCCESS" -> 2;
+            case "FAILURE" -> 3;
+            case "ROLLED_BACK" -> 4;
+            case "NETTED" -> 5;
+            case "SETTLED" -> 6;
+            default -> STATUSES.length;
+        };
+    }
+
+    private static int fieldLength(String value) {
+        return Short.BYTES + (value == null ? 0 : Math.min(value.length(), MAX_FIELD_LENGTH));
+    }
+
+    private int putField(int index, String value) {
+        int length = value == null ? 0 : Math.min(value.length(), MAX_FIELD_LENGTH);
+        buffer.putShort(index, (short) length, ByteOrder.BIG_ENDIAN);
+        if (length > 0) {
+            buffer.putStringWithoutLengthAscii(index + Short.BYTES, value, 0, length);
+        }
+        return index + Short.BYTES + length;
+    }
+
+    private void run() {
+        IdleStrategy idleStrategy = new BackoffIdleStrategy(10, 10, TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(1));
+        while (running) {
+            idleStrategy.idle(drain());
+        }
+        while (drain() > 0) {
+            // records committed before close
+        }
+    }
+
+    private int drain() {
+        int read = ringBuffer.read(writer, DRAIN_LIMIT);
+        if (output.position() > 0) {
+            flush();
+        }
+        return read;
+    }
+
+    private void write(int status, MutableDirectBuffer source, int index, int length) {
+        if (output.remaining() < RECORD_HEADER_LENGTH + length) {
+            flush();
+        }
+        output.putInt(length).putInt(status);
+        source.getBytes(index, output, output.position(), length);
+        output.position(output.position() + length);
+        buffered++;
+    }
+
+    // a failed write loses what was buffered, not the thread: records keep draining so the ring never fills up
+    private void flush() {
+        output.flip();
+        try {
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+            writeFailure = null;
+        } catch (IOException e) {
+            if (writeFailure == null) {
+                LOGGER.error("Unable to append to event log {}, dropping records until writes succeed", path, e);
+            }
+            writeFailure = e;
+            dropped.addAndGet(buffered);
+        }
+        output.clear();
+        buffered = 0;
+    }
+
+    private static FileChannel open(Path path) {
+        try {
+            if (Files.exists(path) && Files.size(path) > 0) {
+                byte[] magic = new byte[MAGIC.length];
+                try (InputStream in = Files.newInputStream(path)) {
+                    if (in.readNBytes(magic, 0, magic.length) != magic.length || !Arrays.equals(magic, MAGIC)) {
+                        throw new IllegalArgumentException("Not an event log: " + path);
+                    }
+                }
+            }
+            FileChannel channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+            if (channel.size() == 0) {
+                channel.write(ByteBuffer.wrap(MAGIC));
+            }
+            return channel;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open event log " + path, e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.neverless.store;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Offline reader for a {@link TransferEventLog} file, one line per record:
+ * {@code java -cp 'lib/*' com.neverless.store.TransferEventLogDecoder events.bin}
+ */
+public final class TransferEventLogDecoder {
+    private TransferEventLogDecoder() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: TransferEventLogDecoder <event log>");
+            System.exit(1);
+        }
+        decode(Path.of(args[0]), System.out);
+    }
+
+    /**
+     * @return the number of records decoded; a record cut short by a crash ends the output
+     */
+    public static long decode(Path path, PrintStream out) {
+        try (InputStream file = Files.newInputStream(path)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(file));
+            byte[] magic = new byte[TransferEventLog.MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, TransferEventLog.MAGIC)) {
+                throw new IllegalArgumentException("Not an event log: " + path);
+            }
+            long records = 0;
+            while (true) {
+                String line;
+                try {
+                    line = readRecord(in);
+                } catch (EOFException e) {
+                    return records;
+                }
+                out.println(line);
+                records++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read event log " + path, e);
+        }
+    }
+
+    private static String readRecord(DataInputStream in) throws IOException {
+        in.readInt(); // length, implied by the fields
+        int status = in.readInt();
+        long epochMillis = in.readLong();
+        BigDecimal amount = BigDecimal.valueOf(in.readLong(), in.readInt());
+        String transferId = readField(in);
+        String fromAccountId = readField(in);
+        String toAccountId = readField(in);
+        String kind = readField(in);
+        String message = readField(in);
+        return Instant.ofEpochMilli(epochMillis) + " " + statusName(status) + " " + kind
+                + " | Id: " + transferId + " | From: " + fromAccountId + " | To: " + toAccountId
+                + " | Amount: " + amount.toPlainString() + " | " + message;
+    }
+
+    private static String readField(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readUnsignedShort()];
+        in.readFully(value);
+        return new String(value, StandardCharsets.US_ASCII);
+    }
+
+    private static String statusName(int status) {
+        return status >= 1 && status <= TransferEventLog.STATUSES.length ? TransferEventLog.STATUSES[status - 1] : "UNKNOWN(" + status + ")";
+    }
+}
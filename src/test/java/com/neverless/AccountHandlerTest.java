@@ -60,5 +60,18 @@ public class AccountHandlerTest {
         assertEquals("Account already exists", response.get("message"));
         verify(resp).code(400);
     }
-}
 
+    @Test
+    void testHandleBalanceRequest_InvalidAsOf() {
+        Req req = mock(ReqImpl.class);
+        Resp resp = mock(RespImpl.class);
+
+        when(req.param("accountId")).thenReturn("account1");
+        when(req.param("asOf", null)).thenReturn("yesterday");
+
+        Map<String, Object> response = accountHandler.handleBalanceRequest(req, resp);
+
+        assertEquals("FAILURE", response.get("status"));
+        verify(resp).code(400);
+    }
+}
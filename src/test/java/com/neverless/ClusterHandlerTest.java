@@ -0,0 +1,89 @@
+package com.neverless;
+
+import com.neverless.service.ClusterSignature;
+import com.neverless.service.ClusterTransport;
+import com.neverless.service.HttpClusterTransport;
+import com.neverless.service.TransferService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.rapidoid.http.Req;
+import org.rapidoid.http.Resp;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ClusterHandlerTest {
+    private final ClusterSignature signature = new ClusterSignature("secret");
+    private TransferService transferService;
+    private ClusterHandler clusterHandler;
+
+    @BeforeEach
+    void setUp() {
+        transferService = mock(TransferService.class);
+        clusterHandler = new ClusterHandler(transferService, signature);
+    }
+
+    @Test
+    void testSignedCreditIsPassedOn() {
+        ClusterTransport.Credit credit = new ClusterTransport.Credit("transfer1", "account1", "account2", new BigDecimal("12.50"), "USD", 1_000);
+        Req req = createMockReq(Map.of("transferId", "transfer1", "fromAccountId", "account1", "toAccountId", "account2",
+                "amount", "12.50", "currency", "USD", "reservedAtMillis", "1000"), HttpClusterTransport.signCredit(signature, credit));
+        Resp resp = mock(Resp.class);
+        when(transferService.creditCrossNodeTransfer(credit)).thenReturn(CompletableFuture.completedFuture(ClusterTransport.Reply.committed()));
+
+        clusterHandler.handleCreditRequest(req, resp);
+
+        verify(transferService).creditCrossNodeTransfer(credit);
+        verify(resp).code(200);
+    }
+
+    @Test
+    void testCreditMissingAFieldIsABadRequest() {
+        Req req = createMockReq(Map.of("transferId", "transfer1", "fromAccountId", "account1", "toAccountId", "account2",
+                "currency", "USD", "reservedAtMillis", "1000"), "signature");
+        Resp resp = mock(Resp.class);
+
+        clusterHandler.handleCreditRequest(req, resp);
+
+        verify(resp).code(400);
+        verifyNoInteractions(transferService);
+    }
+
+    @Test
+    void testUnsignedMalformedCreditIsUnauthorized() {
+        Req req = createMockReq(Map.of("transferId", "transfer1", "fromAccountId", "account1", "toAccountId", "account2",
+                "amount", "lots", "currency", "USD", "reservedAtMillis", "1000"), null);
+        Resp resp = mock(Resp.class);
+
+        clusterHandler.handleCreditRequest(req, resp);
+
+        verify(resp).code(401);
+        verifyNoInteractions(transferService);
+    }
+
+    @Test
+    void testSignedMalformedAbortIsABadRequest() {
+        Req req = createMockReq(Map.of("transferId", "transfer1", "reservedAtMillis", "yesterday"),
+                HttpClusterTransport.signAbort(signature, "transfer1", "yesterday"));
+        Resp resp = mock(Resp.class);
+
+        clusterHandler.handleAbortRequest(req, resp);
+
+        verify(resp).code(400);
+        verify(transferService, never()).abortCrossNodeTransfer(any(), anyLong());
+    }
+
+    private static Req createMockReq(Map<String, String> postedData, String signature) {
+        Req req = mock(Req.class);
+        when(req.posted(anyString(), any())).thenReturn(null);
+        for (Map.Entry<String, String> entry : postedData.entrySet()) {
+            when(req.posted(entry.getKey(), null)).thenReturn(entry.getValue());
+        }
+        when(req.header(ClusterSignature.HEADER, null)).thenReturn(signature);
+        return req;
+    }
+}
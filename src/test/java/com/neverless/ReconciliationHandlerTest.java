@@ -0,0 +1,63 @@
+package com.neverless;
+
+import com.neverless.service.LedgerReconciler;
+import com.neverless.service.TransferQueue;
+import com.neverless.store.InMemoryAccountStore;
+import com.neverless.store.InMemoryTransactionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.rapidoid.http.Req;
+import org.rapidoid.http.Resp;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class ReconciliationHandlerTest {
+    private InMemoryAccountStore accountStore;
+    private TransferQueue transferQueue;
+    private ReconciliationHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        accountStore = new InMemoryAccountStore();
+        transferQueue = new TransferQueue(16);
+        handler = new ReconciliationHandler(new LedgerReconciler(accountStore, new InMemoryTransactionStore(), transferQueue));
+        accountStore.createAccount("account1", "user1", 100.0);
+        accountStore.createAccount("account2", "user2", 100.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transferQueue.shutdown();
+    }
+
+    @Test
+    void testFullReconciliationReportsDiscrepancies() {
+        accountStore.getAccount("account2").setBalance(new BigDecimal("90"));
+        Req req = mock(Req.class);
+        when(req.posted("all", null)).thenReturn("true");
+        Resp resp = mock(Resp.class);
+
+        Map<String, Object> response = handler.handleReconciliationRequest(req, resp);
+
+        assertEquals("FAILURE", response.get("status"));
+        assertEquals(2L, response.get("accountsExamined"));
+        assertEquals(1, response.get("discrepancyCount"));
+        List<?> discrepancies = (List<?>) response.get("discrepancies");
+        assertEquals("account2", ((Map<?, ?>) discrepancies.get(0)).get("accountId"));
+        verify(resp).code(200);
+    }
+
+    @Test
+    void testIncrementalReconciliationWithoutActivityExaminesNothing() {
+        Map<String, Object> response = handler.handleReconciliationRequest(mock(Req.class), mock(Resp.class));
+
+        assertEquals("SUCCESS", response.get("status"));
+        assertEquals(0L, response.get("accountsExamined"));
+    }
+}
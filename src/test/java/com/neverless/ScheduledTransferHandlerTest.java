@@ -0,0 +1,78 @@
+package com.neverless;
+
+import com.neverless.service.TransferScheduler;
+import com.neverless.service.TransferService;
+import org.agrona.concurrent.SystemEpochClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.rapidoid.http.Req;
+import org.rapidoid.http.Resp;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class ScheduledTransferHandlerTest {
+    private TransferScheduler transferScheduler;
+    private ScheduledTransferHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        transferScheduler = new TransferScheduler(mock(TransferService.class), SystemEpochClock.INSTANCE, 1_000, 100);
+        handler = new ScheduledTransferHandler(transferScheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transferScheduler.shutdown();
+    }
+
+    @Test
+    void testScheduleThenQueryThenCancel() {
+        Req req = mock(Req.class);
+        when(req.posted("fromAccountId")).thenReturn("account1");
+        when(req.posted("toAccountId")).thenReturn("account2");
+        when(req.posted("amount")).thenReturn("25.50");
+        when(req.posted("executeAt")).thenReturn(String.valueOf(System.currentTimeMillis() + 3_600_000));
+        when(req.posted("intervalMillis", "0")).thenReturn("86400000");
+        Resp resp = mock(Resp.class);
+
+        Map<String, Object> scheduled = handler.handleScheduleRequest(req, resp);
+
+        assertEquals("ACCEPTED", scheduled.get("status"));
+        verify(resp).code(202);
+
+        Req query = mock(Req.class);
+        when(query.param("scheduleId")).thenReturn((String) scheduled.get("scheduleId"));
+        Map<String, Object> status = handler.handleStatusRequest(query, mock(Resp.class));
+        assertEquals(new BigDecimal("25.50"), status.get("amount"));
+        assertEquals(86_400_000L, status.get("intervalMillis"));
+        assertEquals(0, status.get("runs"));
+
+        Resp cancelResp = mock(Resp.class);
+        assertEquals("SUCCESS", handler.handleCancelRequest(query, cancelResp).get("status"));
+        verify(cancelResp).code(200);
+        Resp missingResp = mock(Resp.class);
+        handler.handleStatusRequest(query, missingResp);
+        verify(missingResp).code(404);
+    }
+
+    @Test
+    void testNonPositiveAmountIsRejected() {
+        Req req = mock(Req.class);
+        when(req.posted("fromAccountId")).thenReturn("account1");
+        when(req.posted("toAccountId")).thenReturn("account2");
+        when(req.posted("amount")).thenReturn("-1");
+        when(req.posted("executeAt")).thenReturn("0");
+        when(req.posted("intervalMillis", "0")).thenReturn("0");
+        Resp resp = mock(Resp.class);
+
+        Map<String, Object> response = handler.handleScheduleRequest(req, resp);
+
+        assertEquals("FAILURE", response.get("status"));
+        verify(resp).code(400);
+    }
+}
@@ -1,19 +1,28 @@
 package com.neverless;
 
 import com.neverless.model.Amount;
+import com.neverless.model.TransferProgress;
 import com.neverless.model.TransferResult;
+import com.neverless.model.TransferStatus;
+import com.neverless.service.ProgressListener;
 import com.neverless.service.TransferService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.rapidoid.http.Req;
 import org.rapidoid.http.Resp;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.Mockito.*;
 
 public class TransferHandlerTest {
@@ -128,6 +137,196 @@ public class TransferHandlerTest {
         verify(resp).code(500); // 500 Internal Server Error
     }
 
+    @Test
+    void testHandleTransferRequest_WithIdempotencyKey() {
+        Req req = createMockRequest("account1", "account2", "100.0");
+        when(req.header(TransferHandler.IDEMPOTENCY_KEY_HEADER, null)).thenReturn("key1");
+        Resp resp = mock(Resp.class);
+
+        TransferResult transferResult = TransferResult.success("task1");
+        when(transferService.transfer(eq("account1"), eq("account2"), any(Amount.class), eq("key1")))
+                .thenReturn(transferResult);
+
+        Map<String, Object> response = transferHandler.handleTransferRequest(req, resp);
+
+        assertEquals("SUCCESS", response.get("status"));
+        assertEquals("task1", response.get("taskId"));
+        verify(transferService, never()).transfer(any(), any(), any(Amount.class));
+        verify(resp).code(200);
+    }
+
+    @Test
+    void testHandleTransferRequest_IdempotencyKeyReused() {
+        Req req = createMockRequest("account1", "account2", "100.0");
+        when(req.header(TransferHandler.IDEMPOTENCY_KEY_HEADER, null)).thenReturn("key1");
+        Resp resp = mock(Resp.class);
+
+        TransferResult transferResult = TransferResult.failure("Idempotency key already used for a different request", null,
+                TransferResult.ErrorCode.IDEMPOTENCY_KEY_REUSED);
+        when(transferService.transfer(eq("account1"), eq("account2"), any(Amount.class), eq("key1")))
+                .thenReturn(transferResult);
+
+        Map<String, Object> response = transferHandler.handleTransferRequest(req, resp);
+
+        assertEquals("FAILURE", response.get("status"));
+        verify(resp).code(422);
+    }
+
+    @Test
+    void testHandleTransferRequest_Overloaded() {
+        Req req = createMockRequest("account1", "account2", "100.0");
+        Resp resp = mock(Resp.class);
+
+        TransferResult transferResult = TransferResult.overloaded("Transfer queue is overloaded", "task1", 1500);
+        when(transferService.transfer(eq("account1"), eq("account2"), any(Amount.class)))
+                .thenReturn(transferResult);
+
+        Map<String, Object> response = transferHandler.handleTransferRequest(req, resp);
+
+        assertEquals("FAILURE", response.get("status"));
+        assertEquals(1500L, response.get("retryAfterMillis"));
+        verify(resp).header("Retry-After", "2");
+        verify(resp).code(429);
+    }
+
+    @Test
+    void testHandleTransferRequest_WithRequestTimeout() {
+        Req req = createMockRequest("account1", "account2", "100.0");
+        when(req.header(TransferHandler.REQUEST_TIMEOUT_HEADER, null)).thenReturn("250");
+        Resp resp = mock(Resp.class);
+
+        TransferResult transferResult = TransferResult.failure("Deadline exceeded before the transfer started", "task1",
+                TransferResult.ErrorCode.DEADLINE_EXCEEDED);
+        when(transferService.transfer(eq("account1"), eq("account2"), any(Amount.class), isNull(), eq(TimeUnit.MILLISECONDS.toNanos(250))))
+                .thenReturn(transferResult);
+
+        Map<String, Object> response = transferHandler.handleTransferRequest(req, resp);
+
+        assertEquals("FAILURE", response.get("status"));
+        assertEquals("task1", response.get("taskId"));
+        verify(resp).code(504);
+    }
+
+    @Test
+    void testHandleTransferRequest_RequestTimeoutIsCutToTheMaximum() {
+        Req req = createMockRequest("account1", "account2", "100.0");
+        when(req.header(TransferHandler.REQUEST_TIMEOUT_HEADER, null)).thenReturn(String.valueOf(Long.MAX_VALUE));
+        Resp resp = mock(Resp.class);
+
+        when(transferService.transfer(eq("account1"), eq("account2"), any(Amount.class), isNull(),
+                eq(TimeUnit.MILLISECONDS.toNanos(TransferHandler.DEFAULT_MAX_TIMEOUT_MILLIS))))
+                .thenReturn(TransferResult.success("task1"));
+
+        transferHandler.handleTransferRequest(req, resp);
+
+        verify(resp).code(200);
+    }
+
+    @Test
+    void testHandleTransferRequest_NonNumericRequestTimeout() {
+        Req req = createMockRequest("account1", "account2", "100.0");
+        when(req.header(TransferHandler.REQUEST_TIMEOUT_HEADER, null)).thenReturn("soon");
+        Resp resp = mock(Resp.class);
+
+        Map<String, Object> response = transferHandler.handleTransferRequest(req, resp);
+
+        assertEquals("FAILURE", response.get("status"));
+        verify(resp).code(400);
+        verifyNoInteractions(transferService);
+    }
+
+    @Test
+    void testHandleExternalTransferRequest_WithRequestTimeout() {
+        Req req = createMockRequest("account1", "externalAddress", "100.0", true);
+        when(req.header(TransferHandler.IDEMPOTENCY_KEY_HEADER, null)).thenReturn("key1");
+        when(req.header(TransferHandler.REQUEST_TIMEOUT_HEADER, null)).thenReturn("1000");
+        Resp resp = mock(Resp.class);
+
+        when(transferService.externalTransfer(eq("account1"), eq("externalAddress"), any(Amount.class), eq("key1"), eq(TimeUnit.SECONDS.toNanos(1))))
+                .thenReturn(TransferResult.success("task1"));
+
+        Map<String, Object> response = transferHandler.handleExternalTransferRequest(req, resp);
+
+        assertEquals("SUCCESS", response.get("status"));
+        verify(resp).code(200);
+    }
+
+    @Test
+    void testHandleExternalTransferRequest_Async() {
+        Req req = createMockRequest("account1", "externalAddress", "100.0", true);
+        when(req.posted("async", null)).thenReturn("true");
+        Resp resp = mock(Resp.class);
+
+        when(transferService.submitExternalTransfer(eq("account1"), eq("externalAddress"), any(Amount.class)))
+                .thenReturn(TransferResult.accepted("task1"));
+
+        Map<String, Object> response = transferHandler.handleExternalTransferRequest(req, resp);
+
+        assertEquals("ACCEPTED", response.get("status"));
+        assertEquals("task1", response.get("taskId"));
+        verify(resp).code(202);
+    }
+
+    @Test
+    void testHandleProgressWaitRequest_AnswersImmediatelyWhenStatusDiffers() {
+        Req req = mock(Req.class);
+        when(req.param("transferId")).thenReturn("task1");
+        when(req.param("lastStatus", null)).thenReturn("PROCESSING");
+        when(req.param("timeoutMillis", "30000")).thenReturn("30000");
+        Resp resp = mock(Resp.class);
+        when(transferService.subscribeToProgress(eq("task1"), any()))
+                .thenReturn(new TransferProgress("task1", TransferStatus.COMPLETED));
+
+        Object response = transferHandler.handleProgressWaitRequest(req, resp);
+
+        assertEquals(Map.of("transferId", "task1", "status", "COMPLETED"), response);
+        verify(transferService).unsubscribeFromProgress(eq("task1"), any());
+        verify(req, never()).async();
+    }
+
+    @Test
+    void testHandleProgressWaitRequest_PushesNextStatus() {
+        Req req = mock(Req.class);
+        when(req.param("transferId")).thenReturn("task1");
+        when(req.param("lastStatus", null)).thenReturn("PROCESSING");
+        when(req.param("timeoutMillis", "30000")).thenReturn("30000");
+        Resp resp = mock(Resp.class);
+        ArgumentCaptor<ProgressListener> listener = ArgumentCaptor.forClass(ProgressListener.class);
+        when(transferService.subscribeToProgress(eq("task1"), listener.capture()))
+                .thenReturn(new TransferProgress("task1", TransferStatus.PROCESSING));
+
+        Object response = transferHandler.handleProgressWaitRequest(req, resp);
+        assertSame(req, response);
+
+        listener.getValue().onStatus("task1", TransferStatus.COMPLETED);
+
+        verify(resp, timeout(1000)).result(Map.of("transferId", "task1", "status", "COMPLETED"));
+        verify(req, timeout(1000)).done();
+    }
+
+    @Test
+    void testProgressStreamDoesNotBlockTheWorkerOnASlowClient() throws Exception {
+        Req req = mock(Req.class);
+        when(req.param("transferId")).thenReturn("task1");
+        Resp resp = mock(Resp.class);
+        CountDownLatch clientReading = new CountDownLatch(1);
+        when(resp.chunk(any(byte[].class))).thenAnswer(invocation -> {
+            clientReading.await();
+            return resp;
+        });
+        ArgumentCaptor<ProgressListener> listener = ArgumentCaptor.forClass(ProgressListener.class);
+        when(transferService.subscribeToProgress(eq("task1"), listener.capture()))
+                .thenReturn(new TransferProgress("task1", TransferStatus.PROCESSING));
+
+        transferHandler.handleProgressStreamRequest(req, resp);
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> listener.getValue().onStatus("task1", TransferStatus.COMPLETED));
+        clientReading.countDown();
+
+        verify(resp, timeout(1000).times(2)).chunk(any(byte[].class));
+        verify(req, timeout(1000)).done();
+        verify(transferService, timeout(1000)).unsubscribeFromProgress("task1", listener.getValue());
+    }
+
     private Req createMockReq(Map<String, String> postedData) {
         Req req = mock(Req.class);
         for (Map.Entry<String, String> entry : postedData.entrySet()) {
@@ -0,0 +1,63 @@
+package com.neverless;
+
+import org.junit.jupiter.api.Test;
+import org.rapidoid.http.ReqRespHandler;
+import org.rapidoid.setup.Setup;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WarmupTest {
+
+    @Test
+    public void testWarmupRunsAllPathsAndFinishes() {
+        var report = assertTimeoutPreemptively(Duration.ofSeconds(60), () -> new Warmup(200, UnaryOperator.identity()).run());
+
+        // three shared accounts, then fourteen requests an iteration
+        assertEquals(3 + 200 * 14, report.requests());
+        assertEquals(0, report.serverErrors());
+        assertTrue(report.groupCommits() > 0);
+    }
+
+    @Test
+    public void testReadyAnswers503UntilWarmupFinishes() throws Exception {
+        var readinessHandler = new ReadinessHandler();
+        Setup listener = Setup.create("readiness").address("127.0.0.1").port(Warmup.freePort());
+        listener.get("/ready").json(readinessHandler::handleReadyRequest);
+        var warming = new CountDownLatch(1);
+        UnaryOperator<ReqRespHandler> dispatch = handler -> (req, resp) -> {
+            warming.countDown();
+            return handler.execute(req, resp);
+        };
+        // as the server starts: warm up, and only then mark ready
+        Thread startup = Thread.ofPlatform().start(() -> {
+            new Warmup(200, dispatch).run();
+            readinessHandler.markReady();
+        });
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            HttpRequest ready = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + listener.port() + "/ready")).build();
+            assertTrue(warming.await(30, TimeUnit.SECONDS));
+
+            HttpResponse<String> during = client.send(ready, HttpResponse.BodyHandlers.ofString());
+            assertEquals(503, during.statusCode());
+            assertTrue(during.body().contains("WARMING_UP"));
+
+            startup.join(TimeUnit.SECONDS.toMillis(60));
+            HttpResponse<String> after = client.send(ready, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, after.statusCode());
+            assertTrue(after.body().contains("READY"));
+        } finally {
+            listener.halt();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.neverless.benchmark;
+
+import com.neverless.service.AccountImporter;
+import com.neverless.store.InMemoryAccountStore;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates a CSV of {@code -Daccounts=10000000} accounts and times a bulk import of it. Run with
+ * {@code ./gradlew benchmark -PbenchmarkClass=com.neverless.benchmark.AccountImportBenchmark}.
+ */
+public final class AccountImportBenchmark {
+    private static final int ACCOUNTS = Integer.getInteger("accounts", 10_000_000);
+
+    public static void main(String[] args) throws Exception {
+        Path file = Files.createTempFile("account-import-benchmark", ".csv");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                writer.write("accountId,userId,initialBalance\n");
+                for (int i = 0; i < ACCOUNTS; i++) {
+                    writer.write("account" + i + ",user" + i + "," + (i % 10_000) + "\n");
+                }
+            }
+            System.out.printf("%,d accounts, %,d bytes%n", ACCOUNTS, Files.size(file));
+
+            AccountImporter.ImportReport report = new AccountImporter(new InMemoryAccountStore()).importFile(file);
+            long millis = TimeUnit.NANOSECONDS.toMillis(report.elapsedNanos());
+            System.out.printf("imported %,d in %,d ms (%,.0f accounts/s), %d duplicates, %d malformed%n",
+                    report.imported(), millis, report.imported() * 1000.0 / Math.max(1, millis),
+                    report.duplicates(), report.malformed());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
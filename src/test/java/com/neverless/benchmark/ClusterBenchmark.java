@@ -0,0 +1,124 @@
+package com.neverless.benchmark;
+
+import com.neverless.service.ClusterRing;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts 1, 2 and 3 server JVMs on localhost as one cluster, spreads {@code accounts} accounts across them and sends
+ * transfers between random accounts to the node holding the source, for {@code seconds} per cluster size. Reports
+ * completed transfers per second and how many of them crossed nodes. Scaling needs a core per node plus the client.
+ * Run with {@code ./gradlew benchmark -PbenchmarkClass=com.neverless.benchmark.ClusterBenchmark}.
+ */
+public final class ClusterBenchmark {
+    private static final int[] NODES = {1, 2, 3};
+    private static final int BASE_PORT = Integer.getInteger("basePort", 18081);
+    private static final int ACCOUNTS = Integer.getInteger("accounts", 1_000);
+    private static final int CLIENTS = Integer.getInteger("clients", 64);
+    private static final int SECONDS = Integer.getInteger("seconds", 10);
+
+    private static final String JAVA = System.getProperty("java.home") + "/bin/java";
+    private static final HttpClient CLIENT = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build();
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%8s %14s %14s %12s%n", "nodes", "transfers/s", "cross-node %", "failed");
+        for (int nodes : NODES) {
+            run(nodes);
+        }
+    }
+
+    private static void run(int nodeCount) throws Exception {
+        StringBuilder spec = new StringBuilder();
+        for (int i = 0; i < nodeCount; i++) {
+            spec.append(i == 0 ? "" : ",").append("n").append(i).append("=localhost:").append(BASE_PORT + i);
+        }
+        // the client routes with the same ring as the servers; which node it calls local does not matter
+        ClusterRing ring = new ClusterRing(ClusterRing.parseNodes(spec.toString()), "n0");
+        List<Process> servers = new ArrayList<>();
+        try {
+            for (ClusterRing.Node node : ring.getNodes()) {
+                servers.add(new ProcessBuilder(JAVA, "-cp", System.getProperty("java.class.path"),
+                        "-Dcluster.nodes=" + spec, "-Dcluster.node-id=" + node.id(), "-Dcluster.secret=benchmark", "com.neverless.Main")
+                        .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start());
+            }
+            for (ClusterRing.Node node : ring.getNodes()) {
+                awaitReady(node);
+            }
+            for (int i = 0; i < ACCOUNTS; i++) {
+                post(ring.ownerOf("account-" + i), "/create-account", "accountId=account-" + i + "&userId=user&initialBalance=1000000");
+            }
+
+            AtomicLong completed = new AtomicLong();
+            AtomicLong crossNode = new AtomicLong();
+            AtomicInteger failed = new AtomicInteger();
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+            ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+            for (int c = 0; c < CLIENTS; c++) {
+                clients.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        String from = "account-" + random.nextInt(ACCOUNTS);
+                        String to = "account-" + random.nextInt(ACCOUNTS);
+                        ClusterRing.Node owner = ring.ownerOf(from);
+                        if (post(owner, "/transfer", "fromAccountId=" + from + "&toAccountId=" + to + "&amount=1") == 200) {
+                            completed.incrementAndGet();
+                            if (ring.ownerOf(to) != owner) {
+                                crossNode.incrementAndGet();
+                            }
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            clients.shutdown();
+            clients.awaitTermination(SECONDS + 60, TimeUnit.SECONDS);
+            System.out.printf("%8d %14d %14.1f %12d%n", nodeCount, completed.get() / SECONDS,
+                    100.0 * crossNode.get() / Math.max(1, completed.get()), failed.get());
+        } finally {
+            servers.forEach(Process::destroy);
+            for (Process server : servers) {
+                server.waitFor();
+            }
+        }
+    }
+
+    private static void awaitReady(ClusterRing.Node node) throws InterruptedException {
+        for (int attempt = 0; attempt < 300; attempt++) {
+            try {
+                HttpRequest ready = HttpRequest.newBuilder(URI.create("http://" + node.address() + "/ready")).build();
+                if (CLIENT.send(ready, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (Exception e) {
+                // not listening yet
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Node " + node.id() + " did not start");
+    }
+
+    private static int post(ClusterRing.Node node, String path, String form) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + node.address() + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        try {
+            return CLIENT.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.neverless.benchmark;
+
+import com.neverless.store.TransferEventLog;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares the cost of recording a transfer state change in the binary event log, with the amount as an unscaled long
+ * and as a {@link BigDecimal}, with formatting the same line the way the debug log used to. Reports the time and the
+ * heap allocated per record on the appending thread. Run with {@code ./gradlew benchmark -PbenchmarkClass=com.neverless.benchmark.EventLogBenchmark}.
+ */
+public final class EventLogBenchmark {
+    private static final int RECORDS = Integer.getInteger("records", 2_000_000);
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        BigDecimal amount = new BigDecimal("125.40");
+        Path path = Files.createTempFile("event-log-benchmark", ".bin");
+        try (TransferEventLog eventLog = new TransferEventLog(path, 1 << 24)) {
+            System.out.printf("%8s %12s %16s %12s %16s %18s %22s %10s%n", "round", "long(ns)", "long(bytes/op)",
+                    "decimal(ns)", "decimal(bytes/op)", "String.format(ns)", "String.format(bytes/op)", "dropped");
+            long unscaledAmount = amount.unscaledValue().longValueExact();
+            int amountScale = amount.scale();
+            long sink = 0;
+            for (int round = 1; round <= ROUNDS; round++) {
+                long allocated = allocatedBytes();
+                long start = System.nanoTime();
+                for (int i = 0; i < RECORDS; i++) {
+                    eventLog.append("SUCCESS", "5f0c2a8e-1b7d-4c55-9a0e-3c2f6d1e8b90", "account1", "account2", unscaledAmount, amountScale, "INTERNAL", "Transfer successful");
+                }
+                long longNanos = System.nanoTime() - start;
+                long longBytes = allocatedBytes() - allocated;
+                allocated = allocatedBytes();
+                start = System.nanoTime();
+                for (int i = 0; i < RECORDS; i++) {
+                    eventLog.append("SUCCESS", "5f0c2a8e-1b7d-4c55-9a0e-3c2f6d1e8b90", "account1", "account2", amount, "INTERNAL", "Transfer successful");
+                }
+                long decimalNanos = System.nanoTime() - start;
+                long decimalBytes = allocatedBytes() - allocated;
+                allocated = allocatedBytes();
+                start = System.nanoTime();
+                for (int i = 0; i < RECORDS; i++) {
+                    sink += String.format("Transaction log: %s | Status: %s | From: %s | To: %s | Amount: %.2f%n",
+                            "Transfer successful", "SUCCESS", "account1", "account2", amount).length();
+                }
+                long formatNanos = System.nanoTime() - start;
+                long formatBytes = allocatedBytes() - allocated;
+                System.out.printf("%8d %12.1f %16.2f %12.1f %16.2f %18.1f %22.2f %10d%n", round,
+                        (double) longNanos / RECORDS, (double) longBytes / RECORDS,
+                        (double) decimalNanos / RECORDS, (double) decimalBytes / RECORDS,
+                        (double) formatNanos / RECORDS, (double) formatBytes / RECORDS, eventLog.getDroppedCount());
+            }
+            System.out.println("formatted " + sink + " characters");
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,80 @@
+package com.neverless.benchmark;
+
+import com.neverless.model.Amount;
+import com.neverless.model.TransferResult;
+import com.neverless.service.ExecutionMode;
+import com.neverless.service.IdempotencyCache;
+import com.neverless.service.TransferQueue;
+import com.neverless.service.TransferService;
+import com.neverless.service.WithdrawalPoller;
+import com.neverless.service.WithdrawalServiceStub;
+import com.neverless.store.InMemoryAccountStore;
+import com.neverless.store.InMemoryTransactionStore;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Offers a growing number of concurrent external transfers and reports how many resolve within the withdrawal
+ * timeout, how many were in flight at once and how many calls reached the withdrawal service, with request handling
+ * on platform versus virtual threads. Platform mode models a typical server pool ({@code requestThreads}).
+ * Run with {@code ./gradlew benchmark -PbenchmarkClass=com.neverless.benchmark.ExternalTransferLoadBenchmark}.
+ */
+public final class ExternalTransferLoadBenchmark {
+    private static final int[] CONCURRENCY = {100, 1_000, 10_000};
+    private static final int REQUEST_THREADS = Integer.getInteger("requestThreads", 200);
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%10s %12s %12s %12s %12s %12s %12s%n", "mode", "offered", "resolved", "timed out", "max inflight", "elapsed(ms)", "svc calls");
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            for (int concurrency : CONCURRENCY) {
+                run(mode, concurrency);
+            }
+        }
+    }
+
+    private static void run(ExecutionMode mode, int concurrency) throws Exception {
+        InMemoryAccountStore accountStore = new InMemoryAccountStore();
+        TransferQueue transferQueue = new TransferQueue(16_384);
+        ExecutorService requests = mode.newExecutor("request", REQUEST_THREADS);
+        // withdrawals settle well inside the 5s default timeout, so every timeout is caused by waiting for a thread
+        WithdrawalServiceStub withdrawalService = new WithdrawalServiceStub(100, 300, TimeUnit.MICROSECONDS.toNanos(200));
+        WithdrawalPoller withdrawalPoller = new WithdrawalPoller(withdrawalService, TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(1), 10_000);
+        TransferService transferService = new TransferService(accountStore, new InMemoryTransactionStore(), transferQueue,
+                new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1)), withdrawalPoller);
+        accountStore.createAccount("treasury", "bank", 1_000_000_000.0);
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger resolved = new AtomicInteger();
+        AtomicInteger timedOut = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        Amount amount = new Amount(BigDecimal.ONE);
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            String address = "address" + i;
+            requests.execute(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                TransferResult result = transferService.externalTransfer("treasury", address, amount);
+                inFlight.decrementAndGet();
+                if (result.getStatus() == TransferResult.Status.ACCEPTED) {
+                    timedOut.incrementAndGet();
+                } else {
+                    resolved.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        requests.shutdown();
+        withdrawalPoller.shutdown();
+        transferQueue.shutdown();
+
+        System.out.printf("%10s %12d %12d %12d %12d %12d %12d%n", mode, concurrency, resolved.get(), timedOut.get(), maxInFlight.get(),
+                elapsedMillis, withdrawalService.getCallCount());
+    }
+}
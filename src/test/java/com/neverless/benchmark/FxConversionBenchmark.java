@@ -0,0 +1,57 @@
+package com.neverless.benchmark;
+
+import com.neverless.service.FxRates;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Map;
+
+/**
+ * Compares converting an amount with the precomputed fixed-point table with the two {@link BigDecimal} ways of doing
+ * it: through the base currency the rates are quoted against, which divides, and with a precomputed decimal cross
+ * rate. Run with {@code ./gradlew benchmark -PbenchmarkClass=com.neverless.benchmark.FxConversionBenchmark}.
+ */
+public final class FxConversionBenchmark {
+    private static final int CONVERSIONS = Integer.getInteger("conversions", 5_000_000);
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        BigDecimal eurPerUsd = new BigDecimal("0.921347");
+        BigDecimal jpyPerUsd = new BigDecimal("151.372904");
+        FxRates fxRates = new FxRates("USD", Map.of("EUR", eurPerUsd, "JPY", jpyPerUsd));
+        BigDecimal eurToJpy = jpyPerUsd.divide(eurPerUsd, MathContext.DECIMAL64);
+        BigDecimal[] amounts = new BigDecimal[1024];
+        // results are kept, as a transfer keeps them, so no variant can have its allocations optimised away
+        BigDecimal[] results = new BigDecimal[1024];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = BigDecimal.valueOf(1_000 + i * 7919L, 2);
+        }
+
+        System.out.printf("%8s %12s %16s %16s%n", "round", "table(ns)", "via base(ns)", "cross rate(ns)");
+        long sink = 0;
+        for (int round = 1; round <= ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < CONVERSIONS; i++) {
+                results[i & 1023] = fxRates.convert(amounts[i & 1023], "EUR", "JPY");
+            }
+            long tableNanos = System.nanoTime() - start;
+            sink += results[round].longValue();
+            start = System.nanoTime();
+            for (int i = 0; i < CONVERSIONS; i++) {
+                results[i & 1023] = amounts[i & 1023].divide(eurPerUsd, MathContext.DECIMAL64).multiply(jpyPerUsd).setScale(0, RoundingMode.HALF_EVEN);
+            }
+            long viaBaseNanos = System.nanoTime() - start;
+            sink += results[round].longValue();
+            start = System.nanoTime();
+            for (int i = 0; i < CONVERSIONS; i++) {
+                results[i & 1023] = amounts[i & 1023].multiply(eurToJpy).setScale(0, RoundingMode.HALF_EVEN);
+            }
+            long crossRateNanos = System.nanoTime() - start;
+            sink += results[round].longValue();
+            System.out.printf("%8d %12.1f %16.1f %16.1f%n", round, (double) tableNanos / CONVERSIONS,
+                    (double) viaBaseNanos / CONVERSIONS, (double) crossRateNanos / CONVERSIONS);
+        }
+        System.out.println("checksum " + sink);
+    }
+}
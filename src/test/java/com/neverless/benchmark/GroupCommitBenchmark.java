@@ -0,0 +1,81 @@
+package com.neverless.benchmark;
+
+import com.neverless.model.Amount;
+import com.neverless.service.GroupCommit;
+import com.neverless.service.TransferQueue;
+import com.neverless.service.TransferService;
+import com.neverless.service.WithdrawalServiceStub;
+import com.neverless.store.FileTransactionStore;
+import com.neverless.store.InMemoryAccountStore;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures transfer throughput and client-observed latency against an fsync'ed journal for a range of
+ * group commit latency budgets. Run with {@code ./gradlew benchmark -PbenchmarkClass=com.neverless.benchmark.GroupCommitBenchmark}.
+ */
+public final class GroupCommitBenchmark {
+    private static final long[] BUDGETS_MICROS = {0, 50, 200, 1_000, 5_000};
+    private static final int ACCOUNTS = 1_000;
+    private static final int CLIENTS = Integer.getInteger("clients", 64);
+    private static final int TRANSFERS_PER_CLIENT = Integer.getInteger("transfers", 2_000);
+    private static final int MAX_BATCH = Integer.getInteger("maxBatch", 512);
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%12s %12s %10s %10s %10s %10s%n", "budget(us)", "tx/s", "p50(us)", "p99(us)", "p999(us)", "syncs");
+        for (long budget : BUDGETS_MICROS) {
+            run(budget);
+        }
+    }
+
+    private static void run(long budgetMicros) throws Exception {
+        Path journal = Files.createTempFile("group-commit-benchmark", ".log");
+        try (FileTransactionStore transactionStore = new FileTransactionStore(journal)) {
+            GroupCommit groupCommit = new GroupCommit(transactionStore, MAX_BATCH, TimeUnit.MICROSECONDS.toNanos(budgetMicros));
+            TransferQueue transferQueue = new TransferQueue(4096, groupCommit);
+            InMemoryAccountStore accountStore = new InMemoryAccountStore();
+            TransferService transferService = new TransferService(accountStore, transactionStore, transferQueue, new WithdrawalServiceStub());
+            for (int i = 0; i < ACCOUNTS; i++) {
+                accountStore.createAccount("account" + i, "user" + i, 1_000_000_000.0);
+            }
+
+            LatencyStats stats = new LatencyStats(CLIENTS * TRANSFERS_PER_CLIENT);
+            Amount amount = new Amount(BigDecimal.ONE);
+            CountDownLatch done = new CountDownLatch(CLIENTS);
+            ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+            long start = System.nanoTime();
+            for (int c = 0; c < CLIENTS; c++) {
+                clients.execute(() -> {
+                    long[] samples = new long[TRANSFERS_PER_CLIENT];
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < TRANSFERS_PER_CLIENT; i++) {
+                        String from = "account" + random.nextInt(ACCOUNTS);
+                        String to = "account" + random.nextInt(ACCOUNTS);
+                        long sent = System.nanoTime();
+                        transferService.transfer(from, to, amount);
+                        samples[i] = System.nanoTime() - sent;
+                    }
+                    stats.merge(samples, samples.length);
+                    done.countDown();
+                });
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+            clients.shutdown();
+            transferQueue.shutdown();
+
+            double throughput = stats.count() / (elapsed / 1e9);
+            System.out.printf("%12d %12.0f %10d %10d %10d %10d%n", budgetMicros, throughput,
+                    stats.percentileMicros(50), stats.percentileMicros(99), stats.percentileMicros(99.9), groupCommit.getSyncCount());
+        } finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+}
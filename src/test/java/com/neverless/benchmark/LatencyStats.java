@@ -0,0 +1,38 @@
+package com.neverless.benchmark;
+
+import java.util.Arrays;
+
+final class LatencyStats {
+    private final long[] samples;
+    private int count;
+
+    LatencyStats(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    synchronized void record(long nanos) {
+        if (count < samples.length) {
+            samples[count++] = nanos;
+        }
+    }
+
+    synchronized void merge(long[] values, int length) {
+        int copied = Math.min(length, samples.length - count);
+        System.arraycopy(values, 0, samples, count, copied);
+        count += copied;
+    }
+
+    synchronized long percentileMicros(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(count - 1, Math.ceil(percentile / 100.0 * count) - 1);
+        return sorted[Math.max(index, 0)] / 1_000;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+}
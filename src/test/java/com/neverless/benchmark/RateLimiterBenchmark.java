@@ -0,0 +1,95 @@
+package com.neverless.benchmark;
+
+import com.neverless.service.RateLimiter;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares {@link RateLimiter} with the usual token bucket, an object per key in a {@link ConcurrentHashMap} holding
+ * a fractional token count and its last refill time, over many keys hit in random order. Reports the heap each new
+ * key costs, then the time and heap allocated per check once every key exists. Run with
+ * {@code ./gradlew benchmark -PbenchmarkClass=com.neverless.benchmark.RateLimiterBenchmark}.
+ */
+public final class RateLimiterBenchmark {
+    private static final int KEYS = Integer.getInteger("keys", 1_000_000);
+    private static final int CHECKS = Integer.getInteger("checks", 10_000_000);
+    private static final int ROUNDS = 5;
+    private static final int PER_SECOND = 100;
+    private static final int BURST = 20;
+
+    public static void main(String[] args) {
+        String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "account-" + i;
+        }
+        int[] order = new int[1 << 20];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = ThreadLocalRandom.current().nextInt(KEYS);
+        }
+        long allocated = allocatedBytes();
+        RateLimiter limiter = new RateLimiter(PER_SECOND, BURST, KEYS);
+        for (String key : keys) {
+            limiter.tryAcquire(key);
+        }
+        long arraysFootprint = allocatedBytes() - allocated;
+        allocated = allocatedBytes();
+        ObjectBuckets buckets = new ObjectBuckets();
+        for (String key : keys) {
+            buckets.tryAcquire(key);
+        }
+        long objectsFootprint = allocatedBytes() - allocated;
+        System.out.printf("bytes allocated per key added: arrays %.1f, objects %.1f%n",
+                (double) arraysFootprint / KEYS, (double) objectsFootprint / KEYS);
+
+        System.out.printf("%8s %14s %14s %18s %18s%n", "round", "arrays(ns)", "objects(ns)", "arrays(bytes/op)", "objects(bytes/op)");
+        long sink = 0;
+        for (int round = 1; round <= ROUNDS; round++) {
+            allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < CHECKS; i++) {
+                sink += limiter.tryAcquire(keys[order[i & (order.length - 1)]]);
+            }
+            long arraysNanos = System.nanoTime() - start;
+            long arraysBytes = allocatedBytes() - allocated;
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < CHECKS; i++) {
+                sink += buckets.tryAcquire(keys[order[i & (order.length - 1)]]);
+            }
+            long objectsNanos = System.nanoTime() - start;
+            long objectsBytes = allocatedBytes() - allocated;
+            System.out.printf("%8d %14.1f %14.1f %18.2f %18.2f%n", round, (double) arraysNanos / CHECKS, (double) objectsNanos / CHECKS,
+                    (double) arraysBytes / CHECKS, (double) objectsBytes / CHECKS);
+        }
+        System.out.println("checksum " + sink);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private static final class ObjectBuckets {
+        private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+        long tryAcquire(String key) {
+            Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+            synchronized (bucket) {
+                long now = System.nanoTime();
+                bucket.tokens = Math.min(BURST, bucket.tokens + (now - bucket.refilledAt) * PER_SECOND / 1e9);
+                bucket.refilledAt = now;
+                if (bucket.tokens < 1) {
+                    return (long) ((1 - bucket.tokens) * 1e9 / PER_SECOND);
+                }
+                bucket.tokens--;
+                return 0;
+            }
+        }
+    }
+
+    private static final class Bucket {
+        private double tokens = BURST;
+        private long refilledAt = System.nanoTime();
+    }
+}
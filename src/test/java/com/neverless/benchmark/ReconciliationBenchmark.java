@@ -0,0 +1,50 @@
+package com.neverless.benchmark;
+
+import com.neverless.model.Amount;
+import com.neverless.service.LedgerReconciler;
+import com.neverless.service.TransferQueue;
+import com.neverless.service.TransferService;
+import com.neverless.service.WithdrawalServiceStub;
+import com.neverless.store.InMemoryAccountStore;
+import com.neverless.store.InMemoryTransactionStore;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times full and incremental reconciliation passes over a large in-memory ledger. Run with
+ * {@code ./gradlew benchmark -PbenchmarkClass=com.neverless.benchmark.ReconciliationBenchmark}; the default 10M
+ * accounts need a heap of several GB.
+ */
+public final class ReconciliationBenchmark {
+    private static final int ACCOUNTS = Integer.getInteger("accounts", 10_000_000);
+    private static final int TRANSFERS = Integer.getInteger("transfers", 100_000);
+
+    public static void main(String[] args) {
+        InMemoryAccountStore accountStore = new InMemoryAccountStore();
+        InMemoryTransactionStore transactionStore = new InMemoryTransactionStore();
+        TransferQueue transferQueue = new TransferQueue(4096);
+        TransferService transferService = new TransferService(accountStore, transactionStore, transferQueue, new WithdrawalServiceStub());
+        LedgerReconciler reconciler = new LedgerReconciler(accountStore, transactionStore, transferQueue);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountStore.createAccount("account" + i, "user" + i, 1_000);
+        }
+        Amount amount = new Amount(BigDecimal.ONE);
+        System.out.printf("%12s %12s %12s %12s %10s%n", "pass", "accounts", "log entries", "ms", "mismatch");
+        for (int round = 0; round < 3; round++) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < TRANSFERS; i++) {
+                transferService.transfer("account" + random.nextInt(ACCOUNTS), "account" + random.nextInt(ACCOUNTS), amount);
+            }
+            print("incremental", reconciler.reconcile());
+            print("full", reconciler.reconcileAll());
+        }
+        transferQueue.shutdown();
+    }
+
+    private static void print(String pass, LedgerReconciler.Report report) {
+        System.out.printf("%12s %12d %12d %12d %10d%n", pass, report.accountsExamined(), report.toPosition() - report.fromPosition(),
+                TimeUnit.NANOSECONDS.toMillis(report.elapsedNanos()), report.discrepancyCount());
+    }
+}
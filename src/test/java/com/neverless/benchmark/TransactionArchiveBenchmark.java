@@ -0,0 +1,107 @@
+package com.neverless.benchmark;
+
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+import com.neverless.store.InMemoryTransactionStore;
+import com.neverless.store.TransactionArchive;
+import com.neverless.store.TransactionStore;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.LongStream;
+
+/**
+ * Logs the same transactions into a store that keeps everything on heap and into one that archives all but a hot
+ * window, and reports the heap each retains, the size of the archive and how long a full scan takes, sequentially and
+ * split across the common fork-join pool the way reconciliation scans. Run with
+ * {@code ./gradlew benchmark -PbenchmarkClass=com.neverless.benchmark.TransactionArchiveBenchmark}.
+ */
+public final class TransactionArchiveBenchmark {
+    private static final int TRANSACTIONS = Integer.getInteger("transactions", 2_000_000);
+    private static final int HOT_WINDOW = Integer.getInteger("hotWindow", 100_000);
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path path = Files.createTempFile("transactions", ".archive");
+        long baseline = usedHeap();
+
+        TransactionStore inMemory = new InMemoryTransactionStore();
+        fill(inMemory);
+        long inMemoryHeap = usedHeap() - baseline;
+        long inMemoryScan = scan(inMemory);
+        long inMemoryParallelScan = parallelScan(inMemory);
+        inMemory = null;
+        baseline = usedHeap();
+
+        try (TransactionArchive archive = new TransactionArchive(path, TransactionArchive.defaultCachedSegments())) {
+            TransactionStore tiered = new InMemoryTransactionStore(archive, HOT_WINDOW);
+            fill(tiered);
+            // lets the archiver catch up; the next transactions then release what it archived
+            for (long archived = -1; archived != archive.getArchivedBytes(); Thread.sleep(500)) {
+                archived = archive.getArchivedBytes();
+            }
+            for (int i = 0; i < 1024; i++) {
+                tiered.logTransaction(transaction(TRANSACTIONS + i));
+            }
+            long tieredHeap = usedHeap() - baseline;
+            long tieredScan = scan(tiered);
+            long tieredParallelScan = parallelScan(tiered);
+
+            System.out.printf("%,d transactions, hot window %,d%n", TRANSACTIONS, HOT_WINDOW);
+            System.out.printf("%-10s %14s %14s %12s %20s%n", "store", "heap(MB)", "disk(MB)", "scan(ms)", "parallel scan(ms)");
+            System.out.printf("%-10s %14.1f %14s %12d %20d%n", "in memory", inMemoryHeap / 1e6, "-", inMemoryScan, inMemoryParallelScan);
+            System.out.printf("%-10s %14.1f %14.1f %12d %20d%n", "tiered", tieredHeap / 1e6, archive.getArchivedBytes() / 1e6,
+                    tieredScan, tieredParallelScan);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static void fill(TransactionStore store) {
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            store.logTransaction(transaction(i));
+        }
+    }
+
+    private static Transaction transaction(int i) {
+        return new Transaction("task-" + i, "account-" + (i % 10_000), "account-" + (i * 31 % 10_000),
+                new Amount(BigDecimal.valueOf(100 + i % 50_000, 2)), "SUCCESS", "task-" + (i - 1), 1_700_000_000_000L + i);
+    }
+
+    private static long scan(TransactionStore store) {
+        long start = System.nanoTime();
+        long count = store.getTransactionCount();
+        long sink = 0;
+        for (long from = 0; from < count; from += 10_000) {
+            for (Transaction transaction : store.getTransactions(from, Math.min(count, from + 10_000))) {
+                sink += transaction.timestamp();
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static long parallelScan(TransactionStore store) {
+        long start = System.nanoTime();
+        long count = store.getTransactionCount();
+        long sink = LongStream.range(0, (count + 16_383) / 16_384).parallel()
+                .map(range -> store.getTransactions(range * 16_384, Math.min(count, (range + 1) * 16_384)).stream()
+                        .mapToLong(Transaction::timestamp).sum())
+                .sum();
+        if (sink == 42) {
+            System.out.println();
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
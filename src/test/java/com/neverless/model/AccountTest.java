@@ -0,0 +1,98 @@
+package com.neverless.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class AccountTest {
+
+    @Test
+    public void testUpdateIsPublishedOnCommit() {
+        Account account = new Account("A", "user", 100);
+
+        account.beginUpdate();
+        account.setBalance(new BigDecimal("40"));
+        assertEquals(0, account.getBalance().compareTo(new BigDecimal("100")));
+        assertEquals(0, account.getWorkingBalance().compareTo(new BigDecimal("40")));
+
+        account.commitUpdate();
+        assertEquals(0, account.getBalance().compareTo(new BigDecimal("40")));
+        assertEquals(1, account.getVersion());
+    }
+
+    @Test
+    public void testNestedUpdatesPublishOnce() {
+        Account account = new Account("A", "user", 100);
+
+        account.beginUpdate();
+        account.beginUpdate();
+        account.setBalance(new BigDecimal("90"));
+        account.commitUpdate();
+        assertEquals(0, account.getBalance().compareTo(new BigDecimal("100")));
+
+        account.setBalance(new BigDecimal("100"));
+        account.commitUpdate();
+        assertEquals(0, account.getBalance().compareTo(new BigDecimal("100")));
+        assertEquals(1, account.getVersion());
+    }
+
+    @Test
+    public void testSetBalanceOutsideUpdateIsPublishedImmediately() {
+        Account account = new Account("A", "user", 100);
+
+        account.setBalance(new BigDecimal("75"));
+
+        assertEquals(0, account.getBalance().compareTo(new BigDecimal("75")));
+        assertEquals(1, account.getVersion());
+    }
+
+    @Test
+    public void testReadersNeverSeeRolledBackDebit() throws InterruptedException {
+        Account account = new Account("A", "user", 100);
+        BigDecimal initial = account.getBalance();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<BigDecimal> torn = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                BigDecimal balance = account.getBalance();
+                if (balance.compareTo(initial) != 0) {
+                    torn.compareAndSet(null, balance);
+                }
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < 200_000; i++) {
+            account.beginUpdate();
+            account.setBalance(account.getWorkingBalance().subtract(BigDecimal.TEN));
+            account.setBalance(account.getWorkingBalance().add(BigDecimal.TEN));
+            account.commitUpdate();
+        }
+        running.set(false);
+        reader.join();
+
+        assertNull(torn.get());
+        assertEquals(200_000, account.getVersion());
+    }
+
+    @Test
+    public void testCreditIsOnlyVisibleOnceCommitted() {
+        Account account = new Account("merchant", "user", 10);
+
+        account.beginUpdate();
+        account.credit(new BigDecimal("90"));
+        assertEquals(0, account.getBalance().compareTo(new BigDecimal("10")));
+        assertEquals(0, account.getWorkingBalance().compareTo(new BigDecimal("100")));
+        account.debit(new BigDecimal("90"));
+        account.commitUpdate();
+
+        assertEquals(0, account.getBalance().compareTo(new BigDecimal("10")));
+        assertEquals(1, account.getVersion());
+    }
+}
@@ -0,0 +1,129 @@
+package com.neverless.service;
+
+import com.neverless.store.InMemoryAccountStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AccountImporterTest {
+    @TempDir
+    Path dir;
+
+    private InMemoryAccountStore accountStore;
+
+    @BeforeEach
+    public void setUp() {
+        accountStore = new InMemoryAccountStore();
+    }
+
+    @Test
+    public void testImportCsvAcrossChunks() throws IOException {
+        StringBuilder csv = new StringBuilder("accountId,userId,initialBalance\n");
+        for (int i = 0; i < 1_000; i++) {
+            csv.append("account").append(i).append(",user").append(i).append(',').append(i).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        Path file = Files.writeString(dir.resolve("accounts.csv"), csv);
+
+        AccountImporter.ImportReport report = new AccountImporter(accountStore, 64).importFile(file);
+
+        assertEquals(1_000, report.imported());
+        assertEquals(0, report.duplicates());
+        assertEquals(0, report.malformed());
+        assertEquals(1_000, accountStore.getAccounts().size());
+        assertEquals("user999", accountStore.getAccount("account999").getUserId());
+        assertEquals(0, accountStore.getAccount("account999").getBalance().compareTo(new BigDecimal("999")));
+    }
+
+    @Test
+    public void testDuplicatesAreReportedAndNotOverwritten() throws IOException {
+        accountStore.createAccount("existing", "owner", 50);
+        Path file = Files.writeString(dir.resolve("accounts.csv"), "existing,intruder,1\nfresh,user,2\nfresh,other,3\nbroken line\n,user,4\nx,y,nan-ish");
+
+        AccountImporter.ImportReport report = new AccountImporter(accountStore).importFile(file);
+
+        assertEquals(1, report.imported());
+        assertEquals(2, report.duplicates());
+        assertEquals(List.of("existing", "fresh"), report.duplicateIds());
+        assertEquals(3, report.malformed());
+        assertEquals("owner", accountStore.getAccount("existing").getUserId());
+        assertEquals(0, accountStore.getAccount("existing").getBalance().compareTo(new BigDecimal("50")));
+    }
+
+    @Test
+    public void testImportBinaryAcrossChunks() throws IOException {
+        Path file = dir.resolve("accounts.bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.write(AccountImporter.BINARY_MAGIC);
+            for (int i = 0; i < 1_000; i++) {
+                writeBinary(out, "account" + i, "user" + i, BigDecimal.valueOf(i));
+            }
+        }
+
+        AccountImporter.ImportReport report = new AccountImporter(accountStore, 100).importFile(file);
+
+        assertEquals(1_000, report.imported());
+        assertEquals(1_000, accountStore.getAccounts().size());
+        assertEquals(0, accountStore.getAccount("account500").getBalance().compareTo(new BigDecimal("500")));
+    }
+
+    @Test
+    public void testBalancesAreImportedExactly() throws IOException {
+        Path csv = Files.writeString(dir.resolve("accounts.csv"), "csv,user,0.1\nlarge,user,12345678901234567.89\n");
+        Path binary = dir.resolve("accounts.bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(binary))) {
+            out.write(AccountImporter.BINARY_MAGIC);
+            writeBinary(out, "binary", "user", new BigDecimal("0.07"));
+        }
+
+        AccountImporter importer = new AccountImporter(accountStore);
+        importer.importFile(csv);
+        importer.importFile(binary);
+
+        assertEquals(new BigDecimal("0.1"), accountStore.getAccount("csv").getBalance());
+        assertEquals(new BigDecimal("12345678901234567.89"), accountStore.getAccount("large").getBalance());
+        assertEquals(new BigDecimal("0.07"), accountStore.getAccount("binary").getBalance());
+    }
+
+    @Test
+    public void testTruncatedBinaryFileIsRejected() throws IOException {
+        Path file = dir.resolve("accounts.bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.write(AccountImporter.BINARY_MAGIC);
+            writeBinary(out, "account", "user", BigDecimal.ONE);
+            out.writeShort(10);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new AccountImporter(accountStore).importFile(file));
+    }
+
+    @Test
+    public void testCreateAccountRejectsExistingId() {
+        AccountService accountService = new AccountService(accountStore);
+        accountService.createAccount("A", "user", 10);
+
+        assertThrows(IllegalArgumentException.class, () -> accountService.createAccount("A", "other", 20));
+        assertEquals("user", accountStore.getAccount("A").getUserId());
+    }
+
+    private static void writeBinary(DataOutputStream out, String accountId, String userId, BigDecimal balance) throws IOException {
+        byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(id.length);
+        out.write(id);
+        out.writeShort(user.length);
+        out.write(user);
+        out.writeLong(balance.unscaledValue().longValueExact());
+        out.writeInt(balance.scale());
+    }
+}
@@ -0,0 +1,133 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+import com.neverless.store.FileTransactionStore;
+import com.neverless.store.InMemoryAccountStore;
+import com.neverless.store.InMemoryTransactionStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BalanceHistoryTest {
+    @TempDir
+    Path dir;
+
+    private InMemoryAccountStore accountStore;
+    private InMemoryTransactionStore transactionStore;
+    private BalanceHistory balanceHistory;
+    private long createdAt;
+
+    @BeforeEach
+    void setUp() {
+        accountStore = new InMemoryAccountStore();
+        transactionStore = new InMemoryTransactionStore();
+        balanceHistory = new BalanceHistory(accountStore, transactionStore, 4);
+        accountStore.createAccount("account1", "user1", 1000.0);
+        accountStore.createAccount("account2", "user2", 500.0);
+        createdAt = Math.max(accountStore.getAccount("account1").getCreatedAt(), accountStore.getAccount("account2").getCreatedAt());
+    }
+
+    @Test
+    void testBalanceAtEachPointInTime() {
+        log("t1", "account1", "account2", "100", "SUCCESS", createdAt + 10);
+        log("t2", "account2", "account1", "30", "SUCCESS", createdAt + 20);
+        log("t3", "account1", "account2", "5000", "FAILURE", createdAt + 30);
+        log("t4", "account1", "address", "200", "SUCCESS", createdAt + 40);
+        log("t4", "account1", "address", "200", "ROLLED_BACK", createdAt + 50);
+
+        assertBalance("1000", "account1", createdAt);
+        assertBalance("900", "account1", createdAt + 10);
+        assertBalance("600", "account2", createdAt + 15);
+        assertBalance("930", "account1", createdAt + 30);
+        assertBalance("730", "account1", createdAt + 45);
+        assertBalance("930", "account1", createdAt + 60);
+        assertBalance("570", "account2", createdAt + 60);
+    }
+
+    @Test
+    void testCheckpointsMatchFullReplay() {
+        BigDecimal[] expected = new BigDecimal[50];
+        BigDecimal balance = new BigDecimal("1000");
+        for (int i = 0; i < expected.length; i++) {
+            log("t" + i, "account1", "account2", "1.5", "SUCCESS", createdAt + i * 10L);
+            balance = balance.subtract(new BigDecimal("1.5"));
+            expected[i] = balance;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(0, expected[i].compareTo(balanceHistory.getBalanceAt("account1", createdAt + i * 10L + 5)), "at " + i);
+        }
+        assertEquals(transactionStore.getTransactionCount(), balanceHistory.getIndexedPosition());
+    }
+
+    @Test
+    void testAccountWithoutActivityHasOpeningBalance() {
+        log("t1", "account1", "account2", "100", "SUCCESS", createdAt + 10);
+        accountStore.createAccount("account3", "user3", 42.0);
+
+        assertBalance("42", "account3", System.currentTimeMillis());
+    }
+
+    @Test
+    void testUnknownAccountAndTimeBeforeCreationAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> balanceHistory.getBalanceAt("missing", createdAt));
+        assertThrows(IllegalArgumentException.class, () -> balanceHistory.getBalanceAt("account1", createdAt - 60_000));
+    }
+
+    @Test
+    void testOnlyRetainedCheckpointsAreKept() {
+        balanceHistory = new BalanceHistory(accountStore, transactionStore, null, 4, 2, 0);
+        for (int i = 0; i < 20; i++) {
+            log("t" + i, "account1", "account2", "1", "SUCCESS", createdAt + 10 + i * 10L);
+        }
+
+        // 5 checkpoints were taken, after t3, t7, t11, t15 and t19; reaching 4 dropped the first 2
+        assertThrows(IllegalArgumentException.class, () -> balanceHistory.getBalanceAt("account1", createdAt + 5));
+        assertThrows(IllegalArgumentException.class, () -> balanceHistory.getBalanceAt("account1", createdAt + 115));
+        assertBalance("988", "account1", createdAt + 125);
+        assertBalance("985", "account1", createdAt + 155);
+        assertBalance("980", "account1", createdAt + 500);
+    }
+
+    @Test
+    void testHistoryBeforeRestartIsRebuiltFromJournal() {
+        Path path = dir.resolve("journal.log");
+        long start = createdAt - 60_000;
+        try (FileTransactionStore before = new FileTransactionStore(path)) {
+            for (int i = 0; i < 10; i++) {
+                before.logTransaction(new Transaction("t" + i, "account1", "account2", new Amount(BigDecimal.TEN), "SUCCESS", null, start + i * 10L));
+            }
+        }
+        // as loaded after the restart, balances include everything journaled before it
+        InMemoryAccountStore loaded = new InMemoryAccountStore();
+        loaded.createAccount("account1", "user1", 900.0);
+        loaded.createAccount("account2", "user2", 600.0);
+
+        try (FileTransactionStore journal = new FileTransactionStore(path)) {
+            BalanceHistory rebuilt = new BalanceHistory(loaded, journal, journal, 4, 8, 0);
+            journal.logTransaction(new Transaction("t10", "account2", "account1", new Amount(new BigDecimal("50")), "SUCCESS", null, createdAt + 10_000));
+
+            assertEquals(0, new BigDecimal("990").compareTo(rebuilt.getBalanceAt("account1", start)));
+            assertEquals(0, new BigDecimal("950").compareTo(rebuilt.getBalanceAt("account1", start + 45)));
+            assertEquals(0, new BigDecimal("550").compareTo(rebuilt.getBalanceAt("account2", start + 45)));
+            assertEquals(0, new BigDecimal("900").compareTo(rebuilt.getBalanceAt("account1", createdAt)));
+            assertEquals(0, new BigDecimal("950").compareTo(rebuilt.getBalanceAt("account1", createdAt + 10_000)));
+            assertThrows(IllegalArgumentException.class, () -> rebuilt.getBalanceAt("account1", start - 1));
+        }
+    }
+
+    private void log(String id, String from, String to, String amount, String status, long timestamp) {
+        transactionStore.logTransaction(new Transaction(id, from, to, new Amount(new BigDecimal(amount)), status, null, timestamp));
+    }
+
+    private void assertBalance(String expected, String accountId, long asOfMillis) {
+        assertEquals(0, new BigDecimal(expected).compareTo(balanceHistory.getBalanceAt(accountId, asOfMillis)));
+    }
+}
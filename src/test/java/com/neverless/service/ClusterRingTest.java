@@ -0,0 +1,51 @@
+package com.neverless.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClusterRingTest {
+    private static final List<ClusterRing.Node> THREE_NODES = ClusterRing.parseNodes("n1=localhost:8081, n2=localhost:8082,n3=localhost:8083");
+
+    @Test
+    void testEveryNodeAgreesOnTheOwnerAndLoadIsSpread() {
+        ClusterRing first = new ClusterRing(THREE_NODES, "n1");
+        ClusterRing second = new ClusterRing(THREE_NODES, "n2");
+        Map<String, Integer> owned = new HashMap<>();
+
+        for (int i = 0; i < 30_000; i++) {
+            String accountId = "account-" + i;
+            assertEquals(first.ownerOf(accountId), second.ownerOf(accountId));
+            owned.merge(first.ownerOf(accountId).id(), 1, Integer::sum);
+        }
+
+        assertEquals(3, owned.size());
+        owned.values().forEach(count -> assertTrue(count > 7_000 && count < 13_000, owned.toString()));
+        assertEquals(8082, second.getLocalNode().port());
+    }
+
+    @Test
+    void testAddingANodeOnlyMovesAccountsToIt() {
+        ClusterRing before = new ClusterRing(THREE_NODES.subList(0, 2), "n1");
+        ClusterRing after = new ClusterRing(THREE_NODES, "n1");
+
+        for (int i = 0; i < 10_000; i++) {
+            String accountId = "account-" + i;
+            String owner = after.ownerOf(accountId).id();
+            assertTrue(owner.equals("n3") || owner.equals(before.ownerOf(accountId).id()));
+        }
+    }
+
+    @Test
+    void testRejectsMalformedMembership() {
+        assertThrows(IllegalArgumentException.class, () -> ClusterRing.parseNodes("n1=localhost:8081,n2"));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterRing(THREE_NODES, "n4"));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterRing(List.of(), "n1"));
+    }
+}
@@ -0,0 +1,28 @@
+package com.neverless.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClusterSignatureTest {
+
+    @Test
+    void testOnlyTheSameSecretAndFieldsMatch() {
+        ClusterSignature signature = new ClusterSignature("secret");
+        String signed = signature.sign("credit", "t1", "alice", "bob", "30", "USD", "1");
+
+        assertEquals(signed, new ClusterSignature("secret").sign("credit", "t1", "alice", "bob", "30", "USD", "1"));
+        assertTrue(ClusterSignature.matches(signed, signed));
+        assertNotEquals(signed, new ClusterSignature("other").sign("credit", "t1", "alice", "bob", "30", "USD", "1"));
+        assertNotEquals(signed, signature.sign("credit", "t1", "alice", "bob", "3000", "USD", "1"));
+        // the same bytes split differently are different messages
+        assertNotEquals(signature.sign("ab", "c"), signature.sign("a", "bc"));
+        assertFalse(ClusterSignature.matches(signed, null));
+        assertFalse(ClusterSignature.matches(signed, "forged"));
+        assertThrows(IllegalArgumentException.class, () -> new ClusterSignature(" "));
+    }
+}
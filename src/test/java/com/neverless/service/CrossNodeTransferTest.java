@@ -0,0 +1,275 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.QueuedTransfer;
+import com.neverless.model.Transaction;
+import com.neverless.model.TransferResult;
+import com.neverless.store.AccountStore;
+import com.neverless.store.FileAccountStore;
+import com.neverless.store.FileTransactionStore;
+import com.neverless.store.InMemoryAccountStore;
+import com.neverless.store.InMemoryTransactionStore;
+import com.neverless.store.TransactionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class CrossNodeTransferTest {
+    private static final List<ClusterRing.Node> NODES = ClusterRing.parseNodes("a=localhost:8081,b=localhost:8082");
+
+    private final InProcessTransport transport = new InProcessTransport();
+    private final List<Node> started = new ArrayList<>();
+    private final Node a = new Node("a");
+    private final Node b = new Node("b");
+    private final String alice = accountOn("a", 0);
+    private final String bob = accountOn("b", 0);
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void tearDown() {
+        started.forEach(Node::stop);
+    }
+
+    @Test
+    void testTransferToAnotherNodeDebitsHereAndCreditsThere() {
+        a.accountStore.createAccount(alice, "user1", 100);
+        b.accountStore.createAccount(bob, "user2", 0);
+
+        TransferResult result = a.service.transfer(alice, bob, new Amount(new BigDecimal("30")));
+
+        assertEquals(TransferResult.Status.SUCCESS, result.getStatus());
+        assertBalance(a, alice, "70");
+        assertBalance(b, bob, "30");
+        assertEquals(TransferResult.ErrorCode.WRONG_NODE, b.service.transfer(alice, bob, new Amount(BigDecimal.ONE)).getErrorCode());
+    }
+
+    @Test
+    void testRejectedCreditIsRolledBack() {
+        a.accountStore.createAccount(alice, "user1", 100);
+
+        TransferResult result = a.service.transfer(alice, bob, new Amount(new BigDecimal("30")));
+
+        assertEquals(TransferResult.ErrorCode.INVALID_ACCOUNT, result.getErrorCode());
+        assertBalance(a, alice, "100");
+        assertEquals("ROLLED_BACK", lastTransaction(a).status());
+    }
+
+    @Test
+    void testUndeliveredCreditIsAbortedAndRolledBack() {
+        a.accountStore.createAccount(alice, "user1", 100);
+        b.accountStore.createAccount(bob, "user2", 0);
+        transport.dropCredits = true;
+        transport.failedAborts.set(2);
+
+        TransferResult result = a.service.transfer(alice, bob, new Amount(new BigDecimal("30")));
+
+        assertEquals(TransferResult.ErrorCode.TIMEOUT, result.getErrorCode());
+        assertBalance(a, alice, "100");
+        assertBalance(b, bob, "0");
+        assertEquals(3, transport.aborts.get());
+    }
+
+    @Test
+    void testLostReplyIsResolvedByTheAbort() {
+        a.accountStore.createAccount(alice, "user1", 100);
+        b.accountStore.createAccount(bob, "user2", 0);
+        transport.loseCreditReplies = true;
+
+        TransferResult result = a.service.transfer(alice, bob, new Amount(new BigDecimal("30")));
+
+        assertEquals(TransferResult.Status.SUCCESS, result.getStatus());
+        assertBalance(a, alice, "70");
+        assertBalance(b, bob, "30");
+    }
+
+    @Test
+    void testTransferWhoseOutcomeTheDestinationForgotKeepsTheFundsReserved() {
+        a.accountStore.createAccount(alice, "user1", 100);
+        b.accountStore.createAccount(bob, "user2", 0);
+        transport.forgetOutcomes = true;
+
+        TransferResult result = a.service.transfer(alice, bob, new Amount(new BigDecimal("30")));
+
+        assertEquals(TransferResult.ErrorCode.OUTCOME_UNKNOWN, result.getErrorCode());
+        assertBalance(a, alice, "70");
+        assertBalance(b, bob, "0");
+    }
+
+    @Test
+    void testMessageForAForgottenOutcomeIsAnsweredUnknown() throws Exception {
+        b.accountStore.createAccount(bob, "user2", 0);
+        long reservedAtMillis = System.currentTimeMillis();
+        ClusterTransport.Credit credit = new ClusterTransport.Credit("first", alice, bob, new BigDecimal("30"), "USD", reservedAtMillis);
+        assertEquals(ClusterTransport.Outcome.COMMITTED, b.service.creditCrossNodeTransfer(credit).get().outcome());
+        CompletableFuture<ClusterTransport.Reply> last = null;
+        for (int i = 0; i < 100_000; i++) {
+            last = b.service.abortCrossNodeTransfer("later" + i, reservedAtMillis);
+        }
+        last.get();
+
+        assertEquals(ClusterTransport.Outcome.UNKNOWN, b.service.abortCrossNodeTransfer("first", reservedAtMillis).get().outcome());
+        assertEquals(ClusterTransport.Outcome.UNKNOWN, b.service.creditCrossNodeTransfer(credit).get().outcome());
+        assertEquals(ClusterTransport.Outcome.ABORTED, b.service.abortCrossNodeTransfer("later99999", reservedAtMillis).get().outcome());
+        assertBalance(b, bob, "30");
+    }
+
+    @Test
+    void testAbortAfterTheDestinationRestartsIsAnsweredWithTheJournaledCredit() {
+        Node destination = fileNode("b");
+        a.accountStore.createAccount(alice, "user1", 100);
+        destination.accountStore.createAccount(bob, "user2", 0);
+        transport.loseCreditReplies = true;
+        // the credit lands and is journaled, then the destination restarts before the source's abort reaches it
+        transport.beforeAbort = () -> {
+            destination.stop();
+            fileNode("b");
+        };
+
+        TransferResult result = a.service.transfer(alice, bob, new Amount(new BigDecimal("30")));
+
+        assertEquals(TransferResult.Status.SUCCESS, result.getStatus());
+        assertBalance(a, alice, "70");
+        assertBalance(transport.nodes.get("b"), bob, "30");
+    }
+
+    @Test
+    void testReservationOpenAtShutdownIsResumedOnceAfterTheRestart() throws Exception {
+        Node source = fileNode("a");
+        source.accountStore.createAccount(alice, "user1", 100);
+        b.accountStore.createAccount(bob, "user2", 0);
+        transport.dropCredits = true;
+        transport.failedAborts.set(Integer.MAX_VALUE);
+        source.service.submitTransfer(alice, bob, new Amount(new BigDecimal("30")));
+        while (transport.aborts.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        List<QueuedTransfer> open = source.service.shutdown(System.nanoTime());
+        long journalPosition = ((FileTransactionStore) source.transactionStore).getPosition();
+        source.stop();
+
+        assertEquals(1, open.size());
+        assertEquals("RESERVATION", open.get(0).type());
+        Node restarted = fileNode("a");
+        assertBalance(restarted, alice, "70");
+        transport.failedAborts.set(0);
+        restarted.service.resume(open, journalPosition).get(5, TimeUnit.SECONDS);
+        assertBalance(restarted, alice, "100");
+        assertBalance(b, bob, "0");
+        // resumed again, as after a crash before the saved file was deleted: the journal shows it rolled back
+        restarted.stop();
+        int aborts = transport.aborts.get();
+        Node again = fileNode("a");
+        again.service.resume(open, journalPosition).get(5, TimeUnit.SECONDS);
+        assertBalance(again, alice, "100");
+        assertEquals(aborts, transport.aborts.get());
+    }
+
+    private Node fileNode(String id) {
+        var journal = new FileTransactionStore(dir.resolve(id + ".journal"));
+        return new Node(id, new FileAccountStore(dir.resolve(id + ".accounts"), journal, TimeUnit.MILLISECONDS.toNanos(10)), journal);
+    }
+
+    private static void assertBalance(Node node, String accountId, String expected) {
+        assertEquals(0, new BigDecimal(expected).compareTo(node.accountStore.getAccount(accountId).getBalance()));
+    }
+
+    private static Transaction lastTransaction(Node node) {
+        return node.transactionStore.getTransaction(node.transactionStore.getTransactionCount() - 1);
+    }
+
+    private static String accountOn(String nodeId, int skip) {
+        ClusterRing ring = new ClusterRing(NODES, nodeId);
+        for (int i = 0; ; i++) {
+            if (ring.isLocal("account-" + i) && skip-- == 0) {
+                return "account-" + i;
+            }
+        }
+    }
+
+    private final class Node {
+        private final AccountStore accountStore;
+        private final TransactionStore transactionStore;
+        private final TransferQueue transferQueue = new TransferQueue(16);
+        private final TransferService service;
+
+        private Node(String id) {
+            this(id, new InMemoryAccountStore(), new InMemoryTransactionStore());
+        }
+
+        private Node(String id, AccountStore accountStore, TransactionStore transactionStore) {
+            this.accountStore = accountStore;
+            this.transactionStore = transactionStore;
+            this.service = TransferService.builder(accountStore, transactionStore, transferQueue,
+                            new WithdrawalPoller(mock(WithdrawalService.class), TimeUnit.MILLISECONDS.toNanos(10), 0, 16))
+                    .idempotencyCache(new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1)))
+                    .defaultTimeoutNanos(TimeUnit.MILLISECONDS.toNanos(200))
+                    .cluster(new ClusterRing(NODES, id), transport)
+                    .build();
+            transport.nodes.put(id, this);
+            started.add(this);
+        }
+
+        // as a server stops: the queue first, then the stores it writes to
+        private void stop() {
+            transferQueue.shutdown();
+            if (accountStore instanceof FileAccountStore fileAccountStore) {
+                fileAccountStore.close();
+            }
+            if (transactionStore instanceof FileTransactionStore journal) {
+                journal.close();
+            }
+        }
+    }
+
+    private static final class InProcessTransport implements ClusterTransport {
+        private final Map<String, Node> nodes = new HashMap<>();
+        private final AtomicInteger failedAborts = new AtomicInteger();
+        private final AtomicInteger aborts = new AtomicInteger();
+        private volatile boolean dropCredits;
+        private volatile boolean loseCreditReplies;
+        private volatile boolean forgetOutcomes;
+        private volatile Runnable beforeAbort;
+
+        @Override
+        public CompletableFuture<Reply> credit(ClusterRing.Node node, Credit credit) {
+            if (forgetOutcomes) {
+                return CompletableFuture.completedFuture(Reply.unknown());
+            }
+            if (dropCredits) {
+                return new CompletableFuture<>(); // never answered, so the transfer's deadline expires
+            }
+            CompletableFuture<Reply> reply = nodes.get(node.id()).service.creditCrossNodeTransfer(credit);
+            return loseCreditReplies ? reply.thenCompose(ignored -> CompletableFuture.failedFuture(new IllegalStateException("connection reset"))) : reply;
+        }
+
+        @Override
+        public CompletableFuture<Reply> abort(ClusterRing.Node node, String transferId, long reservedAtMillis) {
+            aborts.incrementAndGet();
+            if (failedAborts.getAndDecrement() > 0) {
+                return CompletableFuture.failedFuture(new IllegalStateException("connection refused"));
+            }
+            if (beforeAbort != null) {
+                // off the destination's worker, which answered the credit and is about to be stopped
+                return CompletableFuture.runAsync(beforeAbort)
+                        .thenCompose(ignored -> nodes.get(node.id()).service.abortCrossNodeTransfer(transferId, reservedAtMillis));
+            }
+            return nodes.get(node.id()).service.abortCrossNodeTransfer(transferId, reservedAtMillis);
+        }
+    }
+}
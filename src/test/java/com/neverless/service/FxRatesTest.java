@@ -0,0 +1,83 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+import com.neverless.model.TransferResult;
+import com.neverless.store.InMemoryAccountStore;
+import com.neverless.store.InMemoryTransactionStore;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+public class FxRatesTest {
+    private final FxRates fxRates = new FxRates("USD", Map.of("EUR", new BigDecimal("0.92"), "JPY", new BigDecimal("151.37")));
+
+    @Test
+    void testConvertsThroughCrossRatesToTheTargetMinorUnit() {
+        assertEquals(new BigDecimal("92.00"), fxRates.convert(new BigDecimal("100"), "USD", "EUR"));
+        assertEquals(new BigDecimal("15137"), fxRates.convert(new BigDecimal("100.00"), "USD", "JPY"));
+        assertEquals(new BigDecimal("108.70"), fxRates.convert(new BigDecimal("100.00"), "EUR", "USD"));
+        assertEquals(new BigDecimal("0.61"), fxRates.convert(new BigDecimal("100"), "JPY", "EUR"));
+    }
+
+    @Test
+    void testRoundsHalfEven() {
+        FxRates half = new FxRates("USD", Map.of("EUR", new BigDecimal("0.5")));
+
+        assertEquals(new BigDecimal("0.02"), half.convert(new BigDecimal("0.05"), "USD", "EUR"));
+        assertEquals(new BigDecimal("0.08"), half.convert(new BigDecimal("0.15"), "USD", "EUR"));
+    }
+
+    @Test
+    void testAmountsTooLargeForTheFastPathGiveTheSameResult() {
+        BigDecimal huge = new BigDecimal("123456789012345678.91");
+        BigDecimal rate = BigDecimal.valueOf(new BigDecimal("151.37").setScale(FxRates.RATE_SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValue(), FxRates.RATE_SCALE);
+
+        assertEquals(huge.multiply(rate).setScale(0, RoundingMode.HALF_EVEN), fxRates.convert(huge, "USD", "JPY"));
+    }
+
+    @Test
+    void testUnknownCurrencyIsRejectedAndUpdateSwapsTheTable() {
+        assertThrows(IllegalArgumentException.class, () -> fxRates.convert(BigDecimal.ONE, "USD", "GBP"));
+
+        fxRates.update("USD", Map.of("GBP", new BigDecimal("0.79")));
+
+        assertEquals(new BigDecimal("7.90"), fxRates.convert(BigDecimal.TEN, "USD", "GBP"));
+        assertThrows(IllegalArgumentException.class, () -> fxRates.convert(BigDecimal.ONE, "USD", "EUR"));
+        assertThrows(IllegalArgumentException.class, () -> fxRates.update("USD", Map.of("XYZ1", BigDecimal.ONE)));
+    }
+
+    @Test
+    void testCrossCurrencyTransferCreditsTheConvertedAmount() {
+        InMemoryAccountStore accountStore = new InMemoryAccountStore();
+        InMemoryTransactionStore transactionStore = new InMemoryTransactionStore();
+        TransferQueue transferQueue = new TransferQueue(16);
+        TransferService transferService = TransferService.builder(accountStore, transactionStore, transferQueue,
+                        new WithdrawalPoller(mock(WithdrawalService.class), TimeUnit.MILLISECONDS.toNanos(10), 0, 16))
+                .idempotencyCache(new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1)))
+                .fxRates(fxRates)
+                .build();
+        accountStore.createAccount("usd", "user1", 1000, "USD");
+        accountStore.createAccount("eur", "user2", 0, "EUR");
+        try {
+            assertEquals(TransferResult.Status.SUCCESS, transferService.transfer("usd", "eur", new Amount(new BigDecimal("100"))).getStatus());
+            TransferResult wrongCurrency = transferService.transfer("usd", "eur", new Amount(BigDecimal.TEN, "EUR"));
+
+            assertEquals(TransferResult.ErrorCode.INVALID_CURRENCY, wrongCurrency.getErrorCode());
+            assertEquals(0, new BigDecimal("900").compareTo(accountStore.getAccount("usd").getBalance()));
+            assertEquals(0, new BigDecimal("92").compareTo(accountStore.getAccount("eur").getBalance()));
+            Transaction success = transactionStore.getTransaction(1);
+            assertEquals(0, new BigDecimal("92").compareTo(success.effectOn("eur")));
+            assertEquals(0, new BigDecimal("-100").compareTo(success.effectOn("usd")));
+        } finally {
+            transferQueue.shutdown();
+        }
+    }
+}
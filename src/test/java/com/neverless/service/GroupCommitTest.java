@@ -0,0 +1,140 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+import com.neverless.model.TransferResult;
+import com.neverless.store.FileTransactionStore;
+import com.neverless.store.TransactionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GroupCommitTest {
+    private GroupCommit groupCommit;
+
+    @AfterEach
+    void tearDown() {
+        if (groupCommit != null) {
+            groupCommit.shutdown();
+        }
+    }
+
+    @Test
+    void testResultsCompleteOnceBatchIsFull() throws Exception {
+        CountingTransactionStore store = new CountingTransactionStore();
+        groupCommit = new GroupCommit(store, 3, TimeUnit.SECONDS.toNanos(30));
+
+        List<CompletableFuture<TransferResult>> completions = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            CompletableFuture<TransferResult> completion = new CompletableFuture<>();
+            groupCommit.commit(TransferResult.success("task" + i), completion);
+            completions.add(completion);
+        }
+        Thread.sleep(50);
+        assertTrue(completions.stream().noneMatch(CompletableFuture::isDone));
+        assertEquals(0, store.syncs.get());
+
+        CompletableFuture<TransferResult> last = new CompletableFuture<>();
+        groupCommit.commit(TransferResult.success("task2"), last);
+        completions.add(last);
+
+        for (CompletableFuture<TransferResult> completion : completions) {
+            assertEquals(TransferResult.Status.SUCCESS, completion.get(1, TimeUnit.SECONDS).getStatus());
+        }
+        assertEquals(1, store.syncs.get());
+    }
+
+    @Test
+    void testLatencyBudgetFlushesPartialBatch() throws Exception {
+        CountingTransactionStore store = new CountingTransactionStore();
+        groupCommit = new GroupCommit(store, 1000, TimeUnit.MILLISECONDS.toNanos(5));
+
+        CompletableFuture<TransferResult> completion = new CompletableFuture<>();
+        groupCommit.commit(TransferResult.success("task1"), completion);
+
+        assertEquals("task1", completion.get(1, TimeUnit.SECONDS).getTaskId());
+        assertEquals(1, store.syncs.get());
+    }
+
+    @Test
+    void testSyncFailureMarksTheBatchAppliedButNotDurable() throws Exception {
+        TransactionStore store = new CountingTransactionStore() {
+            @Override
+            public void sync() {
+                throw new IllegalStateException("disk full");
+            }
+        };
+        groupCommit = new GroupCommit(store, 2, TimeUnit.SECONDS.toNanos(30));
+
+        CompletableFuture<TransferResult> first = new CompletableFuture<>();
+        CompletableFuture<TransferResult> second = new CompletableFuture<>();
+        groupCommit.commit(TransferResult.success("task1"), first);
+        groupCommit.commit(TransferResult.success("task2"), second);
+
+        TransferResult result = first.get(1, TimeUnit.SECONDS);
+        assertEquals(TransferResult.Status.FAILURE, result.getStatus());
+        assertEquals(TransferResult.ErrorCode.JOURNAL_SYNC_FAILED, result.getErrorCode());
+        assertEquals("Transfer applied, but journal sync failed: disk full", result.getMessage());
+        assertEquals(TransferResult.ErrorCode.JOURNAL_SYNC_FAILED, second.get(1, TimeUnit.SECONDS).getErrorCode());
+    }
+
+    @Test
+    void testFileStoreSyncAdvancesDurablePosition(@TempDir Path dir) throws Exception {
+        Path journal = dir.resolve("journal.log");
+        try (FileTransactionStore store = new FileTransactionStore(journal)) {
+            store.logTransaction(new Transaction("task1", "account1", "account2",
+                    new Amount(new BigDecimal("10.50")), "SUCCESS", null, 1_700_000_000_000L));
+            assertTrue(store.getPosition() > 0);
+            assertEquals(0, store.getSyncedPosition());
+
+            store.sync();
+
+            assertEquals(store.getPosition(), store.getSyncedPosition());
+        }
+        assertEquals(List.of("task1|account1|account2|10.50|SUCCESS|null|1700000000000"), Files.readAllLines(journal));
+    }
+
+    static class CountingTransactionStore implements TransactionStore {
+        final AtomicInteger syncs = new AtomicInteger();
+
+        @Override
+        public void logTransaction(Transaction transaction) {
+        }
+
+        @Override
+        public Iterable<Transaction> getTransactionLog() {
+            return List.of();
+        }
+
+        @Override
+        public long getTransactionCount() {
+            return 0;
+        }
+
+        @Override
+        public List<Transaction> getTransactions(long from, long to) {
+            return List.of();
+        }
+
+        @Override
+        public Transaction getTransaction(long position) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public void sync() {
+            syncs.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.neverless.service;
+
+import com.neverless.model.TransferResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyCacheTest {
+
+    @Test
+    void testCompletedDuplicateIsAnsweredFromCache() {
+        IdempotencyCache cache = new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1));
+        AtomicInteger submissions = new AtomicInteger();
+
+        TransferResult first = cache.execute("key1", "fp", () -> submit(submissions, "task1"));
+        TransferResult second = cache.execute("key1", "fp", () -> submit(submissions, "task2"));
+
+        assertEquals("task1", first.getTaskId());
+        assertEquals("task1", second.getTaskId());
+        assertEquals(1, submissions.get());
+    }
+
+    @Test
+    void testInFlightDuplicateWaitsForTheOriginal() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1));
+        CompletableFuture<TransferResult> inFlight = new CompletableFuture<>();
+        AtomicInteger submissions = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<TransferResult> original = executor.submit(() -> cache.execute("key1", "fp", () -> {
+            submissions.incrementAndGet();
+            return inFlight;
+        }));
+        while (cache.size() == 0) {
+            Thread.onSpinWait();
+        }
+        Future<TransferResult> retry = executor.submit(() -> cache.execute("key1", "fp", () -> submit(submissions, "task2")));
+
+        inFlight.complete(TransferResult.success("task1"));
+
+        assertEquals("task1", original.get(1, TimeUnit.SECONDS).getTaskId());
+        assertEquals("task1", retry.get(1, TimeUnit.SECONDS).getTaskId());
+        assertEquals(1, submissions.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void testKeyReusedForDifferentRequestIsRejected() {
+        IdempotencyCache cache = new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1));
+        AtomicInteger submissions = new AtomicInteger();
+
+        cache.execute("key1", "fp1", () -> submit(submissions, "task1"));
+        TransferResult result = cache.execute("key1", "fp2", () -> submit(submissions, "task2"));
+
+        assertEquals(TransferResult.Status.FAILURE, result.getStatus());
+        assertEquals(TransferResult.ErrorCode.IDEMPOTENCY_KEY_REUSED, result.getErrorCode());
+        assertEquals(1, submissions.get());
+    }
+
+    @Test
+    void testExpiredEntryIsExecutedAgain() throws InterruptedException {
+        IdempotencyCache cache = new IdempotencyCache(16, TimeUnit.MILLISECONDS.toNanos(1));
+        AtomicInteger submissions = new AtomicInteger();
+
+        cache.execute("key1", "fp", () -> submit(submissions, "task1"));
+        Thread.sleep(5);
+        TransferResult result = cache.execute("key1", "fp", () -> submit(submissions, "task2"));
+
+        assertEquals("task2", result.getTaskId());
+        assertEquals(2, submissions.get());
+    }
+
+    @Test
+    void testUnappliedFailureIsNotCached() {
+        IdempotencyCache cache = new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1));
+
+        cache.execute("key1", "fp", () -> CompletableFuture.completedFuture(
+                TransferResult.failure("Queue is not running", "task1", TransferResult.ErrorCode.UNKNOWN)));
+        TransferResult result = cache.execute("key1", "fp", () -> CompletableFuture.completedFuture(TransferResult.success("task2")));
+
+        assertEquals(TransferResult.Status.SUCCESS, result.getStatus());
+    }
+
+    @Test
+    void testTransferAppliedWithoutDurableJournalIsNotRunAgain() {
+        IdempotencyCache cache = new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1));
+        AtomicInteger submissions = new AtomicInteger();
+
+        cache.execute("key1", "fp", () -> {
+            submissions.incrementAndGet();
+            return CompletableFuture.completedFuture(TransferResult.failure("Transfer applied, but journal sync failed: disk full",
+                    "task1", TransferResult.ErrorCode.JOURNAL_SYNC_FAILED));
+        });
+        TransferResult result = cache.execute("key1", "fp", () -> submit(submissions, "task2"));
+
+        assertEquals(TransferResult.ErrorCode.JOURNAL_SYNC_FAILED, result.getErrorCode());
+        assertEquals("task1", result.getTaskId());
+        assertEquals(1, submissions.get());
+    }
+
+    @Test
+    void testOldestKeyIsEvictedWhenFull() {
+        IdempotencyCache cache = new IdempotencyCache(2, TimeUnit.MINUTES.toNanos(1));
+        AtomicInteger submissions = new AtomicInteger();
+
+        cache.execute("key1", "fp", () -> submit(submissions, "task1"));
+        cache.execute("key2", "fp", () -> submit(submissions, "task2"));
+        cache.execute("key3", "fp", () -> submit(submissions, "task3"));
+
+        assertEquals(2, cache.size());
+        assertEquals("task4", cache.execute("key1", "fp", () -> submit(submissions, "task4")).getTaskId());
+    }
+
+    private static CompletableFuture<TransferResult> submit(AtomicInteger submissions, String taskId) {
+        submissions.incrementAndGet();
+        return CompletableFuture.completedFuture(TransferResult.success(taskId));
+    }
+}
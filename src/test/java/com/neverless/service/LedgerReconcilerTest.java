@@ -0,0 +1,158 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.TransferResult;
+import com.neverless.store.InMemoryAccountStore;
+import com.neverless.store.InMemoryTransactionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LedgerReconcilerTest {
+    private static final int ACCOUNTS = 100;
+
+    private InMemoryAccountStore accountStore;
+    private InMemoryTransactionStore transactionStore;
+    private TransferQueue transferQueue;
+    private WithdrawalService withdrawalService;
+    private TransferService transferService;
+    private LedgerReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        accountStore = new InMemoryAccountStore();
+        transactionStore = new InMemoryTransactionStore();
+        transferQueue = new TransferQueue(1024);
+        withdrawalService = mock(WithdrawalService.class);
+        transferService = new TransferService(accountStore, transactionStore, transferQueue, withdrawalService);
+        reconciler = new LedgerReconciler(accountStore, transactionStore, transferQueue);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accountStore.createAccount("account" + i, "user" + i, 1000.0);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        transferQueue.shutdown();
+    }
+
+    @Test
+    void testBalancesMatchTransfersAndExternalOutflow() {
+        transferService.transfer("account0", "account1", amount("100"));
+        transferService.transfer("account1", "account2", amount("30.50"));
+        transferService.transfer("account3", "account4", amount("5000")); // insufficient funds
+        withdrawalStates(WithdrawalService.WithdrawalState.COMPLETED);
+        assertEquals(TransferResult.Status.SUCCESS, transferService.externalTransfer("account5", "address", amount("200")).getStatus());
+        withdrawalStates(WithdrawalService.WithdrawalState.FAILED);
+        assertEquals(TransferResult.Status.FAILURE, transferService.externalTransfer("account6", "address", amount("50")).getStatus());
+
+        LedgerReconciler.Report report = reconciler.reconcileAll();
+
+        assertEquals(0, report.discrepancyCount());
+        assertEquals(ACCOUNTS, report.accountsExamined());
+        assertEquals(transactionStore.getTransactionCount(), report.toPosition());
+        assertEquals(0, new BigDecimal("99800").compareTo(report.actualTotal()));
+        assertEquals(0, new BigDecimal("200").compareTo(report.externalOutflow()));
+    }
+
+    @Test
+    void testDiscrepancyIsReportedOnce() throws Exception {
+        transferService.transfer("account0", "account1", amount("100"));
+        onWorker(() -> accountStore.getAccount("account7").setBalance(new BigDecimal("1234")));
+
+        LedgerReconciler.Report first = reconciler.reconcileAll();
+        LedgerReconciler.Report second = reconciler.reconcileAll();
+
+        assertEquals(1, first.discrepancyCount());
+        LedgerReconciler.Discrepancy discrepancy = first.discrepancies().get(0);
+        assertEquals("account7", discrepancy.accountId());
+        assertEquals(0, new BigDecimal("1000").compareTo(discrepancy.expected()));
+        assertEquals(0, new BigDecimal("1234").compareTo(discrepancy.actual()));
+        assertEquals(0, new BigDecimal("100234").compareTo(first.actualTotal()));
+        assertEquals(0, second.discrepancyCount());
+    }
+
+    @Test
+    void testIncrementalRunOnlyExaminesNewActivity() {
+        transferService.transfer("account0", "account1", amount("100"));
+        LedgerReconciler.Report first = reconciler.reconcile();
+        transferService.transfer("account2", "account3", amount("10"));
+
+        LedgerReconciler.Report second = reconciler.reconcile();
+
+        assertEquals(2, first.accountsExamined());
+        assertEquals(first.toPosition(), second.fromPosition());
+        assertEquals(2, second.accountsExamined());
+        assertEquals(0, second.discrepancyCount());
+        assertEquals(0, new BigDecimal("2000").compareTo(second.actualTotal()));
+    }
+
+    @Test
+    void testNoFalseDiscrepanciesWhileTransfersKeepRunning() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        List<CompletableFuture<Void>> load = new ArrayList<>();
+        for (int c = 0; c < 4; c++) {
+            load.add(CompletableFuture.runAsync(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    transferService.transfer("account" + random.nextInt(ACCOUNTS), "account" + random.nextInt(ACCOUNTS), amount("1.25"));
+                }
+            }, clients));
+        }
+        try {
+            for (int run = 0; run < 20; run++) {
+                LedgerReconciler.Report report = run % 2 == 0 ? reconciler.reconcileAll() : reconciler.reconcile();
+                assertEquals(List.of(), report.discrepancies());
+            }
+        } finally {
+            running.set(false);
+            CompletableFuture.allOf(load.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+            clients.shutdown();
+        }
+
+        LedgerReconciler.Report last = reconciler.reconcileAll();
+        assertEquals(0, last.discrepancyCount());
+        assertTrue(last.toPosition() > 0);
+        assertEquals(0, new BigDecimal(ACCOUNTS * 1000).compareTo(last.actualTotal()));
+    }
+
+    private void withdrawalStates(WithdrawalService.WithdrawalState state) {
+        when(withdrawalService.getRequestStates(anyCollection())).thenAnswer(invocation -> {
+            Collection<WithdrawalService.WithdrawalId> ids = invocation.getArgument(0);
+            return ids.stream().collect(Collectors.toMap(Function.identity(), id -> state));
+        });
+    }
+
+    private void onWorker(Runnable action) throws Exception {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        transferQueue.executeOnWorker(() -> {
+            action.run();
+            done.complete(null);
+        });
+        done.get(1, TimeUnit.SECONDS);
+    }
+
+    private static Amount amount(String value) {
+        return new Amount(new BigDecimal(value));
+    }
+}
@@ -0,0 +1,162 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+import com.neverless.model.TransferResult;
+import com.neverless.model.Account;
+import com.neverless.store.AccountStore;
+import com.neverless.store.InMemoryAccountStore;
+import com.neverless.store.InMemoryTransactionStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class NettingWindowTest {
+    private CountingAccountStore accountStore;
+    private InMemoryTransactionStore transactionStore;
+    private TransferQueue transferQueue;
+    private NettingWindow nettingWindow;
+    private WithdrawalPoller withdrawalPoller;
+    private TransferService transferService;
+
+    @AfterEach
+    void tearDown() {
+        nettingWindow.shutdown();
+        withdrawalPoller.shutdown();
+        transferQueue.shutdown();
+    }
+
+    @Test
+    void testHotPairSettlesNetMovementOnce() throws InterruptedException {
+        setUp(TimeUnit.HOURS.toNanos(1));
+        for (int i = 0; i < 500; i++) {
+            assertEquals(TransferResult.Status.SUCCESS, transfer("treasury", "settlement", "3").getStatus());
+            assertEquals(TransferResult.Status.SUCCESS, transfer("settlement", "treasury", "1").getStatus());
+        }
+        assertEquals(0, accountStore.updates);
+        assertEquals(0, balance("treasury").compareTo(new BigDecimal("10000")));
+
+        settle();
+
+        assertEquals(2, accountStore.updates);
+        assertEquals(0, balance("treasury").compareTo(new BigDecimal("9000")));
+        assertEquals(0, balance("settlement").compareTo(new BigDecimal("1100")));
+        assertEquals(1000, journalCount("NETTED"));
+        assertEquals(1, journalCount("SETTLED"));
+    }
+
+    @Test
+    void testPendingDebitsCountAgainstAvailableFunds() {
+        setUp(TimeUnit.HOURS.toNanos(1));
+
+        assertEquals(TransferResult.Status.SUCCESS, transfer("settlement", "treasury", "60").getStatus());
+        TransferResult overdraw = transfer("settlement", "treasury", "60");
+
+        assertEquals(TransferResult.ErrorCode.INSUFFICIENT_FUNDS, overdraw.getErrorCode());
+    }
+
+    @Test
+    void testOtherTransfersSettleTheAccountFirst() {
+        setUp(TimeUnit.HOURS.toNanos(1));
+        transfer("settlement", "treasury", "100");
+
+        TransferResult result = transfer("settlement", "other", "1");
+
+        assertEquals(TransferResult.ErrorCode.INSUFFICIENT_FUNDS, result.getErrorCode());
+        assertEquals(0, balance("settlement").signum());
+        assertEquals(0, balance("treasury").compareTo(new BigDecimal("10100")));
+    }
+
+    @Test
+    void testWindowSettlesOnSchedule() throws InterruptedException {
+        setUp(TimeUnit.MILLISECONDS.toNanos(5));
+        transfer("treasury", "settlement", "25");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (balance("settlement").compareTo(new BigDecimal("125")) != 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(0, balance("settlement").compareTo(new BigDecimal("125")));
+    }
+
+    private void setUp(long windowNanos) {
+        accountStore = new CountingAccountStore();
+        accountStore.createAccount("treasury", "bank", 10_000);
+        accountStore.createAccount("settlement", "bank", 100);
+        accountStore.createAccount("other", "bank", 0);
+        transactionStore = new InMemoryTransactionStore();
+        transferQueue = new TransferQueue(1024);
+        nettingWindow = new NettingWindow(List.<String[]>of(new String[]{"treasury", "settlement"}), windowNanos);
+        withdrawalPoller = new WithdrawalPoller(mock(WithdrawalService.class), TimeUnit.MILLISECONDS.toNanos(10), 0, 16);
+        transferService = TransferService.builder(accountStore, transactionStore, transferQueue, withdrawalPoller)
+                .idempotencyCache(new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1)))
+                .nettingWindow(nettingWindow)
+                .build();
+    }
+
+    private TransferResult transfer(String from, String to, String amount) {
+        return transferService.transfer(from, to, new Amount(new BigDecimal(amount)));
+    }
+
+    private void settle() throws InterruptedException {
+        CountDownLatch settled = new CountDownLatch(1);
+        transferQueue.executeOnWorker(() -> {
+            transferService.settleNetting();
+            settled.countDown();
+        });
+        assertTrue(settled.await(5, TimeUnit.SECONDS));
+    }
+
+    private BigDecimal balance(String accountId) {
+        return accountStore.getAccount(accountId).getBalance();
+    }
+
+    private long journalCount(String status) {
+        return StreamSupport.stream(transactionStore.getTransactionLog().spliterator(), false)
+                .map(Transaction::status)
+                .filter(status::equals)
+                .count();
+    }
+
+    // counts ledger writes, which is what netting is meant to save
+    private static final class CountingAccountStore implements AccountStore {
+        private final InMemoryAccountStore delegate = new InMemoryAccountStore();
+        private int updates;
+
+        @Override
+        public Account getAccount(String accountId) {
+            return delegate.getAccount(accountId);
+        }
+
+        @Override
+        public void createAccount(String accountId, String userId, double initialBalance, String currency) {
+            delegate.createAccount(accountId, userId, initialBalance, currency);
+        }
+
+        @Override
+        public boolean createAccountIfAbsent(String accountId, String userId, BigDecimal initialBalance, String currency) {
+            return delegate.createAccountIfAbsent(accountId, userId, initialBalance, currency);
+        }
+
+        @Override
+        public void updateAccount(Account account) {
+            updates++;
+            delegate.updateAccount(account);
+        }
+
+        @Override
+        public Collection<Account> getAllAccounts() {
+            return delegate.getAllAccounts();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.TransferResult;
+import com.neverless.store.InMemoryAccountStore;
+import com.neverless.store.InMemoryTransactionStore;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class RateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long start = System.nanoTime();
+
+    @Test
+    void testBurstIsAllowedThenRequestsWaitForTheNextToken() {
+        RateLimiter limiter = new RateLimiter(10, 3, 16);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("a", start));
+        }
+
+        assertEquals(SECOND / 10, limiter.tryAcquire("a", start));
+        assertEquals(SECOND / 20, limiter.tryAcquire("a", start + SECOND / 20));
+    }
+
+    @Test
+    void testTokensRefillWithTimeUpToTheBurst() {
+        RateLimiter limiter = new RateLimiter(10, 3, 16);
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("a", start);
+        }
+
+        assertEquals(0, limiter.tryAcquire("a", start + SECOND / 10));
+        assertTrue(limiter.tryAcquire("a", start + SECOND / 10) > 0);
+
+        long idle = start + 10 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("a", idle));
+        }
+        assertTrue(limiter.tryAcquire("a", idle) > 0);
+    }
+
+    @Test
+    void testKeysHaveTheirOwnBuckets() {
+        RateLimiter limiter = new RateLimiter(1, 1, 16);
+
+        assertEquals(0, limiter.tryAcquire("a", start));
+        assertTrue(limiter.tryAcquire("a", start) > 0);
+
+        assertEquals(0, limiter.tryAcquire("b", start));
+    }
+
+    @Test
+    void testGrowingKeepsEveryKeysBucket() {
+        RateLimiter limiter = new RateLimiter(1, 1, 4);
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(0, limiter.tryAcquire("account-" + i, start));
+        }
+
+        assertEquals(1_000, limiter.size());
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(limiter.tryAcquire("account-" + i, start) > 0);
+        }
+    }
+
+    @Test
+    void testNewRateAppliesToExistingBuckets() {
+        RateLimiter limiter = new RateLimiter(1, 1, 16);
+        limiter.tryAcquire("a", start);
+
+        limiter.setRate(1, 2);
+
+        assertEquals(0, limiter.tryAcquire("a", start));
+        assertTrue(limiter.tryAcquire("a", start) > 0);
+    }
+
+    @Test
+    void testTransfersOverTheLimitAreRefusedBeforeQueueing() {
+        InMemoryAccountStore accountStore = new InMemoryAccountStore();
+        TransferQueue transferQueue = new TransferQueue(16);
+        TransferService service = service(accountStore, transferQueue, new RateLimiter(1, 2, 16), new RateLimiter(1, 3, 16));
+        try {
+            accountStore.createAccount("alice1", "alice", 100);
+            accountStore.createAccount("alice2", "alice", 100);
+            accountStore.createAccount("bob", "bob", 0);
+            Amount one = new Amount(BigDecimal.ONE);
+
+            assertEquals(TransferResult.Status.SUCCESS, service.transfer("alice1", "bob", one).getStatus());
+            assertEquals(TransferResult.Status.SUCCESS, service.transfer("alice1", "bob", one).getStatus());
+            TransferResult accountLimited = service.transfer("alice1", "bob", one);
+            assertEquals(TransferResult.ErrorCode.RATE_LIMITED, accountLimited.getErrorCode());
+            assertTrue(accountLimited.getRetryAfterMillis() > 0);
+
+            assertEquals(TransferResult.Status.SUCCESS, service.transfer("alice2", "bob", one).getStatus());
+            assertEquals(TransferResult.ErrorCode.RATE_LIMITED, service.transfer("alice2", "bob", one).getErrorCode());
+
+            assertEquals(0, new BigDecimal("3").compareTo(accountStore.getAccount("bob").getBalance()));
+        } finally {
+            transferQueue.shutdown();
+        }
+    }
+
+    @Test
+    void testRetryOfAnAnsweredRequestGetsItsAnswerRatherThanTheLimit() {
+        InMemoryAccountStore accountStore = new InMemoryAccountStore();
+        TransferQueue transferQueue = new TransferQueue(16);
+        TransferService service = service(accountStore, transferQueue, new RateLimiter(1, 1, 16), null);
+        try {
+            accountStore.createAccount("alice", "alice", 100);
+            accountStore.createAccount("bob", "bob", 0);
+            Amount one = new Amount(BigDecimal.ONE);
+
+            TransferResult first = service.transfer("alice", "bob", one, "key1");
+            TransferResult retry = service.transfer("alice", "bob", one, "key1");
+            TransferResult limited = service.transfer("alice", "bob", one, "key2");
+
+            assertEquals(TransferResult.Status.SUCCESS, retry.getStatus());
+            assertEquals(first.getTaskId(), retry.getTaskId());
+            assertEquals(TransferResult.ErrorCode.RATE_LIMITED, limited.getErrorCode());
+        } finally {
+            transferQueue.shutdown();
+        }
+    }
+
+    @Test
+    void testUnknownAccountsAreNotTracked() {
+        InMemoryAccountStore accountStore = new InMemoryAccountStore();
+        TransferQueue transferQueue = new TransferQueue(16);
+        RateLimiter accountLimiter = new RateLimiter(1, 1, 16);
+        RateLimiter userLimiter = new RateLimiter(1, 1, 16);
+        TransferService service = service(accountStore, transferQueue, accountLimiter, userLimiter);
+        try {
+            accountStore.createAccount("bob", "bob", 0);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(TransferResult.ErrorCode.INVALID_ACCOUNT, service.transfer("ghost" + i, "bob", new Amount(BigDecimal.ONE)).getErrorCode());
+            }
+
+            assertEquals(0, accountLimiter.size());
+            assertEquals(0, userLimiter.size());
+        } finally {
+            transferQueue.shutdown();
+        }
+    }
+
+    private static TransferService service(InMemoryAccountStore accountStore, TransferQueue transferQueue, RateLimiter accountLimiter, RateLimiter userLimiter) {
+        return TransferService.builder(accountStore, new InMemoryTransactionStore(), transferQueue,
+                        new WithdrawalPoller(mock(WithdrawalService.class), TimeUnit.MILLISECONDS.toNanos(10), 0, 16))
+                .idempotencyCache(new IdempotencyCache(16, TimeUnit.MINUTES.toNanos(1)))
+                .rateLimiters(accountLimiter, userLimiter)
+                .build();
+    }
+}
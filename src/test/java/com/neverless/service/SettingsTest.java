@@ -0,0 +1,80 @@
+package com.neverless.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SettingsTest {
+
+    @Test
+    void testPropertiesOverrideEnvironmentOverrideFileOverrideDefaults() {
+        Settings settings = new Settings(
+                Map.of("queue.capacity", "10", "withdrawal.max-batch", "20", "journal.path", "/file"),
+                Map.of("MOVEMONEY_QUEUE_CAPACITY", "30", "MOVEMONEY_WITHDRAWAL_MAX_BATCH", "40"),
+                Map.of("queue.capacity", "50"));
+
+        assertEquals(50, settings.intSetting("queue.capacity", 1).get());
+        assertEquals(40, settings.intSetting("withdrawal.max-batch", 1).get());
+        assertEquals("/file", settings.stringSetting("journal.path", null).get());
+        assertEquals(7L, settings.longSetting("netting.window-millis", 7).get());
+        assertNull(settings.stringSetting("events.path", null).get());
+        assertThrows(IllegalArgumentException.class, () -> settings.intSetting("queue.capacity", 1));
+    }
+
+    @Test
+    void testOnlyLiveSettingsChangeAndInvalidValuesAreRefused() {
+        Settings settings = new Settings(Map.of(), Map.of(), Map.of());
+        AtomicInteger applied = new AtomicInteger();
+        Settings.Setting<Integer> capacity = settings.intSetting("queue.capacity", 1024).live(value -> {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Capacity must be positive");
+            }
+            applied.set(value);
+        });
+        Settings.Setting<Boolean> virtualThreads = settings.booleanSetting("server.virtual-threads", false);
+
+        settings.update("queue.capacity", "4096");
+
+        assertEquals(4096, capacity.get());
+        assertEquals(4096, applied.get());
+        assertThrows(IllegalArgumentException.class, () -> settings.update("queue.capacity", "0"));
+        assertThrows(IllegalArgumentException.class, () -> settings.update("queue.capacity", "lots"));
+        assertEquals(4096, capacity.get());
+        assertThrows(IllegalArgumentException.class, () -> settings.update("server.virtual-threads", "true"));
+        assertFalse(virtualThreads.get());
+        assertThrows(IllegalArgumentException.class, () -> settings.update("unknown", "1"));
+        assertTrue(settings.getSettings().get("queue.capacity").isLive());
+        assertThrows(IllegalArgumentException.class, () -> new Settings(Map.of(), Map.of(), Map.of("flag", "yes")).booleanSetting("flag", false));
+    }
+
+    @Test
+    void testReadOnUseSettingsChangeWithoutAnApplier() {
+        Settings settings = new Settings(Map.of(), Map.of(), Map.of());
+        Settings.Setting<Long> drainTimeout = settings.longSetting("shutdown.drain-timeout-millis", 30_000).readOnUse();
+
+        settings.update("shutdown.drain-timeout-millis", "5000");
+
+        assertTrue(drainTimeout.isLive());
+        assertEquals(5_000L, drainTimeout.get());
+        assertThrows(IllegalArgumentException.class, () -> settings.update("shutdown.drain-timeout-millis", "soon"));
+        assertEquals(5_000L, drainTimeout.get());
+    }
+
+    @Test
+    void testSecretSettingsAreMarked() {
+        Settings settings = new Settings(Map.of(), Map.of(), Map.of("admin.token", "t0k"));
+
+        Settings.Setting<String> token = settings.stringSetting("admin.token", null).secret();
+
+        assertTrue(token.isSecret());
+        assertEquals("t0k", token.get());
+        assertFalse(settings.stringSetting("journal.path", null).isSecret());
+    }
+}
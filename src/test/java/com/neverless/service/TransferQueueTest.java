@@ -7,6 +7,9 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -86,7 +89,8 @@ public class TransferQueueTest {
         TransferResult result = transferQueue.submitTask(task);
 
         assertEquals(TransferResult.Status.FAILURE, result.getStatus());
-        assertEquals("Queue is not running", result.getMessage());
+        assertEquals("Server is shutting down", result.getMessage());
+        assertEquals(TransferResult.ErrorCode.SHUTTING_DOWN, result.getErrorCode());
     }
 
     @Test
@@ -168,6 +172,405 @@ public class TransferQueueTest {
         }
     }
 
+    @Test
+    void testSubmitTask_RejectedWhenQueueIsFull() throws Exception {
+        transferQueue.shutdown();
+        transferQueue = new TransferQueue(2, null, new AdmissionControl(Integer.MAX_VALUE, Long.MAX_VALUE));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<TransferResult> blocking = transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        while (transferQueue.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        CompletableFuture<TransferResult> queued1 = transferQueue.submitAsync(new MockMoneyTransferTask("queued1"));
+        CompletableFuture<TransferResult> queued2 = transferQueue.submitAsync(new MockMoneyTransferTask("queued2"));
+
+        TransferResult rejected = transferQueue.submitTask(new MockMoneyTransferTask("rejected"));
+
+        assertEquals(TransferResult.ErrorCode.OVERLOADED, rejected.getErrorCode());
+        assertTrue(rejected.getRetryAfterMillis() > 0);
+        assertEquals(TransferStatus.UNKNOWN, transferQueue.getTransferProgress("rejected").getStatus());
+
+        release.countDown();
+        assertEquals(TransferResult.Status.SUCCESS, blocking.get(1, TimeUnit.SECONDS).getStatus());
+        assertEquals(TransferResult.Status.SUCCESS, queued1.get(1, TimeUnit.SECONDS).getStatus());
+        assertEquals(TransferResult.Status.SUCCESS, queued2.get(1, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    void testSubmitTask_ShedWhenExpectedWaitExceedsLimit() throws Exception {
+        transferQueue.shutdown();
+        transferQueue = new TransferQueue(64, null, new AdmissionControl(64, TimeUnit.MILLISECONDS.toNanos(150)));
+        transferQueue.submitTask(new MockMoneyTransferTask("warmup")); // establishes a ~100ms service time
+
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<TransferResult> blocking = transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        while (transferQueue.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        CompletableFuture<TransferResult> first = transferQueue.submitAsync(new MockMoneyTransferTask("first"));
+        CompletableFuture<TransferResult> second = transferQueue.submitAsync(new MockMoneyTransferTask("second"));
+        CompletableFuture<TransferResult> third = transferQueue.submitAsync(new MockMoneyTransferTask("third"));
+
+        TransferResult shed = third.get(1, TimeUnit.SECONDS);
+        assertEquals(TransferResult.ErrorCode.OVERLOADED, shed.getErrorCode());
+        assertTrue(shed.getRetryAfterMillis() >= 100);
+
+        release.countDown();
+        assertEquals(TransferResult.Status.SUCCESS, blocking.get(1, TimeUnit.SECONDS).getStatus());
+        assertEquals(TransferResult.Status.SUCCESS, first.get(1, TimeUnit.SECONDS).getStatus());
+        assertEquals(TransferResult.Status.SUCCESS, second.get(1, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    void testSubscribersArePushedStatusChangesUntilFinal() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        CompletableFuture<TransferResult> queued = transferQueue.submitAsync(new MockMoneyTransferTask("task7"));
+        List<TransferStatus> pushed = new CopyOnWriteArrayList<>();
+
+        TransferStatus current = transferQueue.subscribe("task7", (id, status) -> pushed.add(status)).getStatus();
+        transferQueue.updateProgress("task7", TransferStatus.PROCESSING);
+        transferQueue.updateProgress("task7", TransferStatus.COMPLETED);
+        transferQueue.updateProgress("task7", TransferStatus.FAILED);
+
+        assertEquals(TransferStatus.INITIATED, current);
+        assertEquals(List.of(TransferStatus.PROCESSING, TransferStatus.COMPLETED), pushed);
+        release.countDown();
+        queued.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testSubscriptionToUnknownTransferIsNotKept() {
+        List<TransferStatus> pushed = new CopyOnWriteArrayList<>();
+
+        TransferProgress current = transferQueue.subscribe("unknown", (id, status) -> pushed.add(status));
+        transferQueue.submitTask(new MockMoneyTransferTask("unknown"));
+        transferQueue.updateProgress("unknown", TransferStatus.PROCESSING);
+
+        assertEquals(TransferStatus.UNKNOWN, current.getStatus());
+        assertEquals(List.of(), pushed);
+    }
+
+    @Test
+    void testSubscriberIsDroppedAfterFinalStatus() {
+        ProgressSubscriptions subscriptions = new ProgressSubscriptions();
+        List<TransferStatus> pushed = new CopyOnWriteArrayList<>();
+        subscriptions.subscribe("task8", (id, status) -> pushed.add(status));
+        ProgressListener other = (id, status) -> pushed.add(status);
+        subscriptions.subscribe("task8", other);
+        subscriptions.unsubscribe("task8", other);
+
+        subscriptions.publish("task8", TransferStatus.PROCESSING);
+        subscriptions.publish("task8", TransferStatus.COMPLETED);
+        subscriptions.publish("task8", TransferStatus.FAILED);
+
+        assertEquals(List.of(TransferStatus.PROCESSING, TransferStatus.COMPLETED), pushed);
+        assertEquals(0, subscriptions.size());
+    }
+
+    @Test
+    void testInternalTransfersAreNotQueuedBehindExternalBurst() throws Exception {
+        transferQueue.shutdown();
+        Map<Lane, Lane.Settings> lanes = Lane.defaults(128);
+        lanes.put(Lane.INTERNAL, new Lane.Settings(128, 4));
+        lanes.put(Lane.EXTERNAL, new Lane.Settings(128, 1));
+        transferQueue = new TransferQueue(lanes, null, new AdmissionControl(128, Long.MAX_VALUE));
+        CountDownLatch release = new CountDownLatch(1);
+        transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        while (transferQueue.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        List<String> executed = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<TransferResult>> external = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            external.add(transferQueue.submitAsync(new LaneMoneyTransferTask("external" + i, Lane.EXTERNAL, executed)));
+        }
+        CompletableFuture<TransferResult> internal = transferQueue.submitAsync(new LaneMoneyTransferTask("internal", Lane.INTERNAL, executed));
+        assertEquals(50, transferQueue.getQueueDepth(Lane.EXTERNAL));
+
+        release.countDown();
+        internal.get(1, TimeUnit.SECONDS);
+        CompletableFuture.allOf(external.toArray(new CompletableFuture[0])).get(1, TimeUnit.SECONDS);
+
+        assertTrue(executed.indexOf("internal") <= 1);
+        assertEquals(51, executed.size());
+    }
+
+    @Test
+    void testWorkerActionsOnlyGetTheAdminLaneWeightPerRound() throws Exception {
+        transferQueue.shutdown();
+        Map<Lane, Lane.Settings> lanes = Lane.defaults(16);
+        lanes.put(Lane.ADMIN, new Lane.Settings(16, 2));
+        lanes.put(Lane.INTERNAL, new Lane.Settings(16, 1));
+        transferQueue = new TransferQueue(lanes, null, new AdmissionControl(Integer.MAX_VALUE, Long.MAX_VALUE));
+        CountDownLatch release = new CountDownLatch(1);
+        transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        while (transferQueue.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        List<String> executed = new CopyOnWriteArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            String action = "action" + i;
+            transferQueue.executeOnWorker(() -> executed.add(action));
+        }
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            results.add(transferQueue.submitAsync(new LaneMoneyTransferTask("internal" + i, Lane.INTERNAL, executed)));
+        }
+        assertEquals(6, transferQueue.getQueueDepth(Lane.ADMIN));
+
+        release.countDown();
+        for (CompletableFuture<TransferResult> result : results) {
+            result.get(1, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of("action1", "action2", "internal1", "action3", "action4", "internal2", "action5", "action6", "internal3"), executed);
+        assertThrows(IllegalArgumentException.class, () -> transferQueue.resize(Lane.ADMIN, 4));
+        assertThrows(IllegalArgumentException.class, () -> transferQueue.submitAsync(new LaneMoneyTransferTask("admin", Lane.ADMIN, executed)));
+    }
+
+    @Test
+    void testFullLaneDoesNotRejectOtherLanes() throws Exception {
+        transferQueue.shutdown();
+        Map<Lane, Lane.Settings> lanes = Lane.defaults(16);
+        lanes.put(Lane.EXTERNAL, new Lane.Settings(2, 1));
+        transferQueue = new TransferQueue(lanes, null, new AdmissionControl(Integer.MAX_VALUE, Long.MAX_VALUE));
+        CountDownLatch release = new CountDownLatch(1);
+        transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        while (transferQueue.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        List<String> executed = new CopyOnWriteArrayList<>();
+        transferQueue.submitAsync(new LaneMoneyTransferTask("external1", Lane.EXTERNAL, executed));
+        transferQueue.submitAsync(new LaneMoneyTransferTask("external2", Lane.EXTERNAL, executed));
+
+        TransferResult rejected = transferQueue.submitAsync(new LaneMoneyTransferTask("external3", Lane.EXTERNAL, executed)).get();
+        CompletableFuture<TransferResult> internal = transferQueue.submitAsync(new LaneMoneyTransferTask("internal", Lane.INTERNAL, executed));
+
+        assertEquals(TransferResult.ErrorCode.OVERLOADED, rejected.getErrorCode());
+        release.countDown();
+        assertEquals(TransferResult.Status.SUCCESS, internal.get(1, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    void testResizedLaneKeepsQueuedTasksAndTheirOrder() throws Exception {
+        transferQueue.shutdown();
+        Map<Lane, Lane.Settings> lanes = Lane.defaults(16);
+        lanes.put(Lane.EXTERNAL, new Lane.Settings(2, 1));
+        transferQueue = new TransferQueue(lanes, null, new AdmissionControl(Integer.MAX_VALUE, Long.MAX_VALUE));
+        CountDownLatch release = new CountDownLatch(1);
+        transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        while (transferQueue.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        List<String> executed = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+        results.add(transferQueue.submitAsync(new LaneMoneyTransferTask("external1", Lane.EXTERNAL, executed)));
+        results.add(transferQueue.submitAsync(new LaneMoneyTransferTask("external2", Lane.EXTERNAL, executed)));
+        transferQueue.resize(Lane.EXTERNAL, 4);
+        CountDownLatch resized = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        transferQueue.executeOnWorker(() -> {
+            resized.countDown();
+            awaitQuietly(resume);
+        });
+
+        release.countDown();
+        assertTrue(resized.await(1, TimeUnit.SECONDS));
+        for (int i = 3; i <= 6; i++) {
+            results.add(transferQueue.submitAsync(new LaneMoneyTransferTask("external" + i, Lane.EXTERNAL, executed)));
+        }
+        assertEquals(4, transferQueue.getCapacity(Lane.EXTERNAL));
+        resume.countDown();
+        for (CompletableFuture<TransferResult> result : results) {
+            assertEquals(TransferResult.Status.SUCCESS, result.get(1, TimeUnit.SECONDS).getStatus());
+        }
+
+        assertEquals(List.of("external1", "external2", "external3", "external4", "external5", "external6"), executed);
+        assertThrows(IllegalArgumentException.class, () -> transferQueue.resize(Lane.EXTERNAL, 0));
+    }
+
+    @Test
+    void testExpiredTaskIsDroppedWithoutExecution() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        List<String> executed = new CopyOnWriteArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+        CompletableFuture<TransferResult> stale = transferQueue.submitAsync(new DeadlineMoneyTransferTask("stale", deadline, executed));
+
+        Thread.sleep(50);
+        release.countDown();
+
+        TransferResult result = stale.get(1, TimeUnit.SECONDS);
+        assertEquals(TransferResult.ErrorCode.DEADLINE_EXCEEDED, result.getErrorCode());
+        assertEquals(TransferStatus.FAILED, transferQueue.getTransferProgress("stale").getStatus());
+        assertEquals(List.of(), executed);
+        assertEquals(1, transferQueue.getExpiredCount());
+    }
+
+    @Test
+    void testSubmitTask_RejectedWhenExpectedWaitExceedsDeadline() throws Exception {
+        transferQueue.shutdown();
+        transferQueue = new TransferQueue(64, null, new AdmissionControl(64, Long.MAX_VALUE));
+        transferQueue.submitTask(new MockMoneyTransferTask("warmup")); // establishes a ~100ms service time
+
+        CountDownLatch release = new CountDownLatch(1);
+        transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        while (transferQueue.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        transferQueue.submitAsync(new MockMoneyTransferTask("queued"));
+        List<String> executed = new CopyOnWriteArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+
+        TransferResult rejected = transferQueue.submitAsync(new DeadlineMoneyTransferTask("hopeless", deadline, executed)).get(1, TimeUnit.SECONDS);
+
+        assertEquals(TransferResult.ErrorCode.DEADLINE_EXCEEDED, rejected.getErrorCode());
+        release.countDown();
+        assertEquals(List.of(), executed);
+    }
+
+    @Test
+    void testDrainRunsQueuedTasksUntilTheDeadlineAndHandsBackTheRest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        while (transferQueue.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CompletableFuture<TransferResult> left = transferQueue.submitAsync(new LaneMoneyTransferTask("left", Lane.INTERNAL, executed));
+
+        CompletableFuture<List<MoneyTransferTask>> drained = CompletableFuture.supplyAsync(() -> transferQueue.drain(TimeUnit.MILLISECONDS.toNanos(20), true));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals(List.of("left"), drained.get(1, TimeUnit.SECONDS).stream().map(MoneyTransferTask::getId).toList());
+        assertEquals(TransferResult.Status.ACCEPTED, left.get(1, TimeUnit.SECONDS).getStatus());
+        assertEquals(List.of(), executed);
+        assertEquals(TransferResult.ErrorCode.SHUTTING_DOWN, transferQueue.submitTask(new MockMoneyTransferTask("late")).getErrorCode());
+    }
+
+    @Test
+    void testDrainWithNowhereToSaveTheRestRefusesIt() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        transferQueue.submitAsync(new BlockingMoneyTransferTask("blocking", release));
+        while (transferQueue.getQueueDepth() > 0) {
+            Thread.onSpinWait();
+        }
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CompletableFuture<TransferResult> left = transferQueue.submitAsync(new LaneMoneyTransferTask("left", Lane.INTERNAL, executed));
+
+        CompletableFuture<List<MoneyTransferTask>> drained = CompletableFuture.supplyAsync(() -> transferQueue.drain(TimeUnit.MILLISECONDS.toNanos(20), false));
+        Thread.sleep(50);
+        release.countDown();
+
+        assertEquals(List.of("left"), drained.get(1, TimeUnit.SECONDS).stream().map(MoneyTransferTask::getId).toList());
+        TransferResult result = left.get(1, TimeUnit.SECONDS);
+        assertEquals(TransferResult.ErrorCode.SHUTTING_DOWN, result.getErrorCode());
+        assertEquals(TransferStatus.FAILED, transferQueue.getTransferProgress("left").getStatus());
+        assertEquals(List.of(), executed);
+    }
+
+    @Test
+    void testDrainWaitsForStartedTasksCompletingOffTheWorker() throws Exception {
+        CompletableFuture<TransferResult> withdrawal = new CompletableFuture<>();
+        CompletableFuture<TransferResult> result = transferQueue.submitAsync(new MockMoneyTransferTask("external") {
+            @Override
+            public CompletableFuture<TransferResult> execute() {
+                return withdrawal;
+            }
+        });
+        while (transferQueue.getInFlightCount() == 0) {
+            Thread.onSpinWait();
+        }
+        CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS).execute(() -> withdrawal.complete(TransferResult.success("external")));
+
+        assertEquals(List.of(), transferQueue.drain(TimeUnit.SECONDS.toNanos(1), true));
+        assertTrue(result.isDone());
+        assertEquals(TransferResult.Status.SUCCESS, result.get().getStatus());
+    }
+
+    @Test
+    void testRequeuedTaskSkipsAdmissionControl() throws Exception {
+        transferQueue.shutdown();
+        transferQueue = new TransferQueue(16, null, new AdmissionControl(0, Long.MAX_VALUE));
+
+        assertEquals(TransferResult.ErrorCode.OVERLOADED, transferQueue.submitTask(new MockMoneyTransferTask("fresh")).getErrorCode());
+        assertEquals(TransferResult.Status.SUCCESS, transferQueue.requeue(new MockMoneyTransferTask("resumed")).get(1, TimeUnit.SECONDS).getStatus());
+        assertEquals(TransferStatus.COMPLETED, transferQueue.getTransferProgress("resumed").getStatus());
+    }
+
+    static class DeadlineMoneyTransferTask extends MockMoneyTransferTask {
+        private final long deadlineNanos;
+        private final List<String> executed;
+
+        DeadlineMoneyTransferTask(String id, long deadlineNanos, List<String> executed) {
+            super(id);
+            this.deadlineNanos = deadlineNanos;
+            this.executed = executed;
+        }
+
+        @Override
+        public long getDeadlineNanos() {
+            return deadlineNanos;
+        }
+
+        @Override
+        public TransferResult call() {
+            executed.add(getId());
+            return TransferResult.success(getId());
+        }
+    }
+
+    static class LaneMoneyTransferTask extends MockMoneyTransferTask {
+        private final Lane lane;
+        private final List<String> executed;
+
+        LaneMoneyTransferTask(String id, Lane lane, List<String> executed) {
+            super(id);
+            this.lane = lane;
+            this.executed = executed;
+        }
+
+        @Override
+        public Lane lane() {
+            return lane;
+        }
+
+        @Override
+        public TransferResult call() {
+            executed.add(getId());
+            return TransferResult.success(getId());
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class BlockingMoneyTransferTask extends MockMoneyTransferTask {
+        private final CountDownLatch release;
+
+        BlockingMoneyTransferTask(String id, CountDownLatch release) {
+            super(id);
+            this.release = release;
+        }
+
+        @Override
+        public TransferResult call() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return TransferResult.success(getId());
+        }
+    }
+
     static class MockMoneyTransferTask implements MoneyTransferTask {
         private final String id;
         private final boolean shouldFail;
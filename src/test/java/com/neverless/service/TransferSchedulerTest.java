@@ -0,0 +1,223 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import com.neverless.model.TransferResult;
+import com.neverless.store.ScheduleFile;
+import org.agrona.concurrent.CachedEpochClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class TransferSchedulerTest {
+    private static final long START = 1_000_000;
+    private static final Amount AMOUNT = new Amount(BigDecimal.TEN);
+
+    @TempDir
+    Path dir;
+
+    private TransferService transferService;
+    private CachedEpochClock clock;
+    private TransferScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        transferService = mock(TransferService.class);
+        when(transferService.submitTransfer(anyString(), anyString(), any(Amount.class)))
+                .thenReturn(CompletableFuture.completedFuture(TransferResult.success("task")));
+        clock = new CachedEpochClock();
+        clock.update(START);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testTransferIsSubmittedOnceDue() {
+        scheduler = new TransferScheduler(transferService, clock, 1_000, 100);
+        String scheduleId = scheduler.schedule("A", "B", AMOUNT, START + 1_000, 0);
+
+        clock.update(START + 500);
+        assertStays(scheduler::getReleasedCount, 0);
+
+        clock.update(START + 1_000);
+        awaitCount(scheduler::getReleasedCount, 1);
+        verify(transferService).submitTransfer("A", "B", AMOUNT);
+        assertNull(scheduler.getSchedule(scheduleId));
+    }
+
+    @Test
+    void testStandingOrderRepeatsUntilCancelled() {
+        scheduler = new TransferScheduler(transferService, clock, 1_000, 100);
+        String scheduleId = scheduler.schedule("A", "B", AMOUNT, START + 100, 100);
+
+        for (int run = 1; run <= 3; run++) {
+            clock.update(START + run * 100 + 50);
+            awaitCount(scheduler::getReleasedCount, run);
+        }
+        TransferScheduler.Schedule schedule = scheduler.getSchedule(scheduleId);
+        assertEquals(3, schedule.getRuns());
+        assertEquals(START + 400, schedule.getNextRunAtMillis());
+        assertEquals(TransferResult.Status.SUCCESS, schedule.getLastResult().getStatus());
+
+        assertTrue(scheduler.cancel(scheduleId));
+        clock.update(START + 1_000);
+        assertStays(scheduler::getReleasedCount, 3);
+        assertFalse(scheduler.cancel(scheduleId));
+    }
+
+    @Test
+    void testPeakIsReleasedAsARamp() {
+        scheduler = new TransferScheduler(transferService, clock, 1_000, 10);
+        for (int i = 0; i < 100; i++) {
+            scheduler.schedule("A", "B", AMOUNT, START + 100, 0);
+        }
+
+        clock.update(START + 100);
+        awaitCount(scheduler::getReleasedCount, 10);
+        assertStays(scheduler::getReleasedCount, 10);
+
+        // refills at 1 per ms, never beyond the burst
+        clock.update(START + 110);
+        awaitCount(scheduler::getReleasedCount, 20);
+        clock.update(START + 200);
+        awaitCount(scheduler::getReleasedCount, 30);
+        assertStays(scheduler::getReleasedCount, 30);
+    }
+
+    @Test
+    void testShedReleaseIsRetried() {
+        when(transferService.submitTransfer(anyString(), anyString(), any(Amount.class)))
+                .thenReturn(CompletableFuture.completedFuture(TransferResult.overloaded("Transfer queue is overloaded", "task", 100)))
+                .thenReturn(CompletableFuture.completedFuture(TransferResult.success("task")));
+        scheduler = new TransferScheduler(transferService, clock, 1_000, 10);
+        String scheduleId = scheduler.schedule("A", "B", AMOUNT, START, 0);
+
+        clock.update(START + 10);
+        verify(transferService, timeout(5_000)).submitTransfer("A", "B", AMOUNT);
+        assertStays(scheduler::getReleasedCount, 0);
+        clock.update(START + 20);
+        awaitCount(scheduler::getReleasedCount, 1);
+
+        verify(transferService, times(2)).submitTransfer("A", "B", AMOUNT);
+        assertNull(scheduler.getSchedule(scheduleId));
+    }
+
+    @Test
+    void testRefusedReleasesAreNotRuns() {
+        when(transferService.submitTransfer(anyString(), anyString(), any(Amount.class)))
+                .thenReturn(CompletableFuture.completedFuture(TransferResult.shuttingDown(null, 1_000)))
+                .thenReturn(CompletableFuture.completedFuture(TransferResult.rateLimited("Rate limit exceeded", 100)))
+                .thenReturn(CompletableFuture.completedFuture(TransferResult.success("task")));
+        scheduler = new TransferScheduler(transferService, clock, 1_000, 10);
+        String scheduleId = scheduler.schedule("A", "B", AMOUNT, START, 1_000);
+
+        clock.update(START + 10);
+        verify(transferService, timeout(5_000)).submitTransfer("A", "B", AMOUNT);
+        clock.update(START + 20);
+        verify(transferService, timeout(5_000).times(2)).submitTransfer("A", "B", AMOUNT);
+        // rate limited: armed again once the limit allows it
+        clock.update(START + 50);
+        assertStays(scheduler::getReleasedCount, 0);
+        clock.update(START + 130);
+        awaitCount(scheduler::getReleasedCount, 1);
+
+        assertEquals(1, scheduler.getSchedule(scheduleId).getRuns());
+        assertEquals(START + 1_000, scheduler.getSchedule(scheduleId).getNextRunAtMillis());
+    }
+
+    @Test
+    void testRunsMissedWhileDownAreSkipped() {
+        scheduler = new TransferScheduler(transferService, clock, 1_000, 100);
+        String scheduleId = scheduler.schedule("A", "B", AMOUNT, START + 100, 100);
+
+        clock.update(START + 1_050);
+        awaitCount(scheduler::getReleasedCount, 1);
+        assertStays(scheduler::getReleasedCount, 1);
+
+        TransferScheduler.Schedule schedule = scheduler.getSchedule(scheduleId);
+        assertEquals(1, schedule.getRuns());
+        assertEquals(START + 1_100, schedule.getNextRunAtMillis());
+        clock.update(START + 1_100);
+        awaitCount(scheduler::getReleasedCount, 2);
+    }
+
+    @Test
+    void testSchedulesSurviveARestart() {
+        Path path = dir.resolve("schedules");
+        ScheduleFile file = new ScheduleFile(path);
+        scheduler = new TransferScheduler(transferService, clock, 1_000, 100, file);
+        String standingOrder = scheduler.schedule("A", "B", AMOUNT, START + 100, 100);
+        String cancelled = scheduler.schedule("A", "C", AMOUNT, START + 5_000, 0);
+        String oneOff = scheduler.schedule("B", "A", new Amount(new BigDecimal("2.50"), "EUR"), START + 10_000, 0);
+        clock.update(START + 150);
+        awaitCount(scheduler::getReleasedCount, 1);
+        clock.update(START + 250);
+        awaitCount(scheduler::getReleasedCount, 2);
+        assertTrue(scheduler.cancel(cancelled));
+        scheduler.shutdown();
+        file.close();
+
+        file = new ScheduleFile(path);
+        scheduler = new TransferScheduler(transferService, clock, 1_000, 100, file);
+
+        assertEquals(2, scheduler.getScheduledCount());
+        assertNull(scheduler.getSchedule(cancelled));
+        assertEquals(new BigDecimal("2.50"), scheduler.getSchedule(oneOff).getAmount().getValue());
+        assertEquals("EUR", scheduler.getSchedule(oneOff).getAmount().getCurrency());
+        TransferScheduler.Schedule restored = scheduler.getSchedule(standingOrder);
+        assertEquals(2, restored.getRuns());
+        assertEquals(START + 300, restored.getNextRunAtMillis());
+        clock.update(START + 300);
+        awaitCount(scheduler::getReleasedCount, 1);
+        assertEquals(3, restored.getRuns());
+        file.close();
+    }
+
+    @Test
+    void testFailedSubmissionDoesNotStopReleases() {
+        when(transferService.submitTransfer(anyString(), anyString(), any(Amount.class)))
+                .thenThrow(new IllegalStateException("boom"))
+                .thenReturn(CompletableFuture.completedFuture(TransferResult.success("task")));
+        scheduler = new TransferScheduler(transferService, clock, 1_000, 100);
+        String failed = scheduler.schedule("A", "B", AMOUNT, START + 100, 100);
+        scheduler.schedule("A", "C", AMOUNT, START + 150, 0);
+
+        clock.update(START + 150);
+        awaitCount(scheduler::getReleasedCount, 2);
+        assertEquals(TransferResult.ErrorCode.UNKNOWN, scheduler.getSchedule(failed).getLastResult().getErrorCode());
+
+        clock.update(START + 200);
+        awaitCount(scheduler::getReleasedCount, 3);
+    }
+
+    private static void awaitCount(LongSupplier count, long expected) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count.getAsLong() < expected && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(expected, count.getAsLong());
+    }
+
+    private static void assertStays(LongSupplier count, long expected) {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        assertEquals(expected, count.getAsLong());
+    }
+}
@@ -9,9 +9,13 @@ import com.neverless.store.InMemoryTransactionStore;
 import org.junit.jupiter.api.*;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -111,7 +115,7 @@ public class TransferServiceIntegrationTest {
         Amount amount = new Amount(new BigDecimal("100.0"));
         String externalAddress = "externalAddress";
 
-        when(withdrawalService.getRequestState(any())).thenReturn(WithdrawalService.WithdrawalState.COMPLETED);
+        stubWithdrawalState(WithdrawalService.WithdrawalState.COMPLETED);
 
         TransferResult result = transferService.externalTransfer(account1, externalAddress, amount);
 
@@ -210,4 +214,51 @@ public class TransferServiceIntegrationTest {
         TransferProgress finalProgress = transferService.getTransferProgress(result.getTaskId());
         assertEquals(TransferStatus.FAILED, finalProgress.getStatus());
     }
+
+    @Test
+    @Order(10)
+    void testFailedWithdrawalIsRolledBack() {
+        Amount amount = new Amount(new BigDecimal("100.0"));
+
+        stubWithdrawalState(WithdrawalService.WithdrawalState.FAILED);
+
+        TransferResult result = transferService.externalTransfer(account1, "externalAddress", amount);
+
+        assertEquals(TransferResult.Status.FAILURE, result.getStatus());
+        assertEquals(TransferResult.ErrorCode.EXTERNAL_TRANSFER_FAILED, result.getErrorCode());
+        assertEquals(1000.0, transferService.getAccountBalance(account1));
+        assertEquals("ROLLED_BACK", transactionStore.getTransactionLog().get(transactionStore.getTransactionLog().size() - 1).status());
+
+        TransferProgress progress = transferService.getTransferProgress(result.getTaskId());
+        assertEquals(TransferStatus.FAILED, progress.getStatus());
+    }
+
+    @Test
+    @Order(11)
+    void testWithdrawalStillRunningAtTheDeadlineKeepsTheFundsReserved() throws InterruptedException {
+        Amount amount = new Amount(new BigDecimal("100.0"));
+        stubWithdrawalState(WithdrawalService.WithdrawalState.PROCESSING);
+
+        TransferResult result = transferService.externalTransfer(account1, "externalAddress", amount, null, TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(TransferResult.Status.ACCEPTED, result.getStatus());
+        assertEquals(900.0, transferService.getAccountBalance(account1));
+        assertEquals(TransferStatus.PROCESSING, transferService.getTransferProgress(result.getTaskId()).getStatus());
+
+        stubWithdrawalState(WithdrawalService.WithdrawalState.FAILED);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (transferService.getTransferProgress(result.getTaskId()).getStatus() != TransferStatus.FAILED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(TransferStatus.FAILED, transferService.getTransferProgress(result.getTaskId()).getStatus());
+        assertEquals(1000.0, transferService.getAccountBalance(account1));
+    }
+
+    private static void stubWithdrawalState(WithdrawalService.WithdrawalState state) {
+        when(withdrawalService.getRequestStates(anyCollection())).thenAnswer(invocation -> {
+            Collection<WithdrawalService.WithdrawalId> ids = invocation.getArgument(0);
+            return ids.stream().collect(Collectors.toMap(Function.identity(), id -> state));
+        });
+    }
 }
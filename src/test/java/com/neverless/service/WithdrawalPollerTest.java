@@ -0,0 +1,157 @@
+package com.neverless.service;
+
+import com.neverless.model.Amount;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WithdrawalPollerTest {
+    private WithdrawalPoller withdrawalPoller;
+
+    @AfterEach
+    void tearDown() {
+        withdrawalPoller.shutdown();
+    }
+
+    @Test
+    void testManyWithdrawalsAreRequestedAndPolledInBatches() throws Exception {
+        WithdrawalServiceStub withdrawalService = new WithdrawalServiceStub(1, 2);
+        withdrawalPoller = new WithdrawalPoller(withdrawalService, TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.MILLISECONDS.toNanos(20), 10_000);
+
+        List<CompletableFuture<WithdrawalService.WithdrawalState>> states = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            states.add(withdrawalPoller.submit(newId(), new WithdrawalService.Address("address" + i), new Amount(BigDecimal.ONE)));
+        }
+
+        for (CompletableFuture<WithdrawalService.WithdrawalState> state : states) {
+            assertNotEquals(WithdrawalService.WithdrawalState.PROCESSING, state.get(5, TimeUnit.SECONDS));
+        }
+        assertTrue(withdrawalService.getCallCount() < 50, "calls: " + withdrawalService.getCallCount());
+    }
+
+    @Test
+    void testPollsAreSplitByMaxBatchSize() throws Exception {
+        WithdrawalServiceStub withdrawalService = new WithdrawalServiceStub(200, 201);
+        withdrawalPoller = new WithdrawalPoller(withdrawalService, TimeUnit.MILLISECONDS.toNanos(1_000), TimeUnit.MILLISECONDS.toNanos(50), 10);
+
+        List<CompletableFuture<WithdrawalService.WithdrawalState>> states = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            states.add(withdrawalPoller.submit(newId(), new WithdrawalService.Address("address" + i), new Amount(BigDecimal.ONE)));
+        }
+        Thread.sleep(400);
+        long callsBeforePoll = withdrawalService.getCallCount();
+        for (CompletableFuture<WithdrawalService.WithdrawalState> state : states) {
+            state.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(3, withdrawalService.getCallCount() - callsBeforePoll);
+    }
+
+    @Test
+    void testAbandonedWithdrawalIsNoLongerPolled() throws Exception {
+        WithdrawalServiceStub withdrawalService = new WithdrawalServiceStub(60_000, 60_001);
+        withdrawalPoller = new WithdrawalPoller(withdrawalService, TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(1), 100);
+
+        CompletableFuture<WithdrawalService.WithdrawalState> state =
+                withdrawalPoller.submit(newId(), new WithdrawalService.Address("address"), new Amount(BigDecimal.ONE));
+        while (withdrawalPoller.getPendingCount() == 0) {
+            Thread.onSpinWait();
+        }
+        state.cancel(false);
+        Thread.sleep(100);
+
+        assertEquals(0, withdrawalPoller.getPendingCount());
+    }
+
+    @Test
+    void testOnlyWithdrawalsAFailedBatchDidNotRegisterAreFailed() throws Exception {
+        WithdrawalServiceStub withdrawalService = new WithdrawalServiceStub(50, 51) {
+            @Override
+            public void requestWithdrawals(List<WithdrawalService.WithdrawalRequest> batch) {
+                super.requestWithdrawals(batch.stream().filter(request -> request.address().value().equals("address1")).toList());
+                throw new IllegalStateException("connection reset");
+            }
+        };
+        withdrawalPoller = new WithdrawalPoller(withdrawalService, TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(20), 100);
+
+        CompletableFuture<WithdrawalService.WithdrawalState> registered =
+                withdrawalPoller.submit(newId(), new WithdrawalService.Address("address1"), new Amount(BigDecimal.ONE));
+        CompletableFuture<WithdrawalService.WithdrawalState> lost =
+                withdrawalPoller.submit(newId(), new WithdrawalService.Address("address2"), new Amount(BigDecimal.ONE));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> lost.get(5, TimeUnit.SECONDS));
+        assertEquals("connection reset", error.getCause().getMessage());
+        assertNotEquals(WithdrawalService.WithdrawalState.PROCESSING, registered.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testWithdrawalRunningAtShutdownIsLeftOpenForTheNextPollerToTrack() throws Exception {
+        WithdrawalServiceStub withdrawalService = new WithdrawalServiceStub(200, 201);
+        WithdrawalPoller stopped = new WithdrawalPoller(withdrawalService, TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(1), 100);
+        WithdrawalService.WithdrawalId id = newId();
+        CompletableFuture<WithdrawalService.WithdrawalState> running =
+                stopped.submit(id, new WithdrawalService.Address("address"), new Amount(BigDecimal.ONE));
+        while (stopped.getPendingCount() == 0) {
+            Thread.onSpinWait();
+        }
+        stopped.shutdown();
+        Thread.sleep(50);
+
+        assertFalse(running.isDone());
+
+        withdrawalPoller = new WithdrawalPoller(withdrawalService, TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(1), 100);
+        CompletableFuture<WithdrawalService.WithdrawalState> resumed =
+                withdrawalPoller.track(id, new WithdrawalService.Address("address"), new Amount(BigDecimal.ONE));
+        CompletableFuture<WithdrawalService.WithdrawalState> unknown =
+                withdrawalPoller.track(newId(), new WithdrawalService.Address("address"), new Amount(BigDecimal.ONE));
+
+        assertNotEquals(WithdrawalService.WithdrawalState.PROCESSING, resumed.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> unknown.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testSubmitRacingShutdownIsEitherRequestedOrFailed() throws Exception {
+        WithdrawalServiceStub withdrawalService = new WithdrawalServiceStub(60_000, 60_001);
+        withdrawalPoller = new WithdrawalPoller(withdrawalService, TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(1), 100);
+        Map<WithdrawalService.WithdrawalId, CompletableFuture<WithdrawalService.WithdrawalState>> states = new ConcurrentHashMap<>();
+        CountDownLatch submitting = new CountDownLatch(4);
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread submitter = new Thread(() -> {
+                submitting.countDown();
+                for (int j = 0; j < 20_000; j++) {
+                    WithdrawalService.WithdrawalId id = newId();
+                    states.put(id, withdrawalPoller.submit(id, new WithdrawalService.Address("address"), new Amount(BigDecimal.ONE)));
+                }
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+        submitting.await();
+        withdrawalPoller.shutdown();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        for (Map.Entry<WithdrawalService.WithdrawalId, CompletableFuture<WithdrawalService.WithdrawalState>> state : states.entrySet()) {
+            boolean requested = withdrawalService.getRequestStates(List.of(state.getKey())).containsKey(state.getKey());
+            assertTrue(requested != state.getValue().isDone(), "requested: " + requested);
+        }
+    }
+
+    private static WithdrawalService.WithdrawalId newId() {
+        return new WithdrawalService.WithdrawalId(UUID.randomUUID());
+    }
+}
@@ -0,0 +1,195 @@
+package com.neverless.store;
+
+import com.neverless.model.Account;
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileAccountStoreTest {
+    @TempDir
+    Path dir;
+
+    private FileTransactionStore journal;
+    private FileAccountStore accountStore;
+
+    @BeforeEach
+    public void setUp() {
+        journal = new FileTransactionStore(dir.resolve("journal.log"));
+        accountStore = open();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        accountStore.close();
+        journal.close();
+    }
+
+    @Test
+    public void testUpdateIsWrittenOnlyOnceJournalCoversIt() {
+        accountStore.createAccount("A", "user", 100);
+        accountStore.flush();
+        assertEquals(0, accountStore.getWriteCount());
+
+        apply("A", new BigDecimal("90"));
+        accountStore.flush();
+        assertEquals(0, accountStore.getWriteCount());
+        assertEquals(1, accountStore.getDirtyCount());
+
+        journal.sync();
+        accountStore.flush();
+        assertEquals(1, accountStore.getWriteCount());
+        assertEquals(0, accountStore.getDirtyCount());
+    }
+
+    @Test
+    public void testRepeatedUpdatesCoalesceIntoOneWrite() {
+        accountStore.createAccount("A", "user", 1000);
+        accountStore.createAccount("B", "user", 0);
+        for (int i = 1; i <= 100; i++) {
+            apply("A", new BigDecimal(1000 - i));
+            apply("B", new BigDecimal(i));
+        }
+        journal.sync();
+        accountStore.flush();
+
+        assertEquals(202, accountStore.getUpdateCount());
+        assertEquals(2, accountStore.getWriteCount());
+    }
+
+    @Test
+    public void testBalancesAreReloadedExactly() {
+        accountStore.createAccount("A", "user", 100);
+        apply("A", new BigDecimal("99.99"));
+        journal.sync();
+        accountStore.close();
+
+        accountStore = open();
+
+        Account account = accountStore.getAccount("A");
+        assertEquals("user", account.getUserId());
+        assertEquals(new BigDecimal("99.99"), account.getBalance());
+    }
+
+    @Test
+    public void testFileIsCompacted() throws IOException {
+        accountStore.createAccount("A", "user", 0);
+        for (int i = 1; i <= 2_000; i++) {
+            apply("A", new BigDecimal(i));
+            journal.sync();
+            accountStore.flush();
+        }
+
+        assertEquals(2_000, accountStore.getWriteCount());
+        assertTrue(Files.readAllLines(dir.resolve("accounts.db")).size() < 1_100);
+        accountStore.close();
+        accountStore = open();
+        assertEquals(new BigDecimal("2000"), accountStore.getAccount("A").getBalance());
+    }
+
+    @Test
+    public void testUnflushedTransferIsReplayedFromTheJournal() {
+        accountStore.createAccount("A", "user", 100);
+        accountStore.createAccount("B", "user", 0);
+        accountStore.flush();
+        transfer("A", "B", new BigDecimal("30"));
+        journal.sync();
+        FileAccountStore crashed = accountStore;
+
+        accountStore = open();
+
+        assertEquals(new BigDecimal("70"), accountStore.getAccount("A").getBalance());
+        assertEquals(new BigDecimal("30"), accountStore.getAccount("B").getBalance());
+        accountStore.flush();
+        accountStore.close();
+        accountStore = open();
+        assertEquals(new BigDecimal("70"), accountStore.getAccount("A").getBalance());
+        assertEquals(new BigDecimal("30"), accountStore.getAccount("B").getBalance());
+        crashed.close();
+    }
+
+    @Test
+    public void testTransferWithOnlyOneSideWrittenIsCompletedFromTheJournal() throws IOException {
+        accountStore.createAccount("A", "user", 100);
+        accountStore.createAccount("B", "user", 0);
+        accountStore.flush();
+        long position = journal.getPosition();
+        transfer("A", "B", new BigDecimal("30"));
+        journal.sync();
+        FileAccountStore crashed = accountStore;
+        // the batch tore after the source's line, and before the destination's and the checkpoint
+        Files.writeString(dir.resolve("accounts.db"), "A|user|70|USD|" + position + "\nB|user|3", StandardOpenOption.APPEND);
+
+        accountStore = open();
+
+        assertEquals(new BigDecimal("70"), accountStore.getAccount("A").getBalance());
+        assertEquals(new BigDecimal("30"), accountStore.getAccount("B").getBalance());
+        crashed.close();
+    }
+
+    @Test
+    public void testCreatedAccountSurvivesACrashBeforeAnyFlush() {
+        accountStore.createAccount("A", "user", 100);
+        assertTrue(accountStore.createAccountIfAbsent("B", "user", new BigDecimal("0"), "EUR"));
+        transfer("A", "B", new BigDecimal("30"));
+        journal.sync();
+        FileAccountStore crashed = accountStore;
+
+        accountStore = open();
+
+        assertEquals(new BigDecimal("70"), accountStore.getAccount("A").getBalance());
+        assertEquals(new BigDecimal("30"), accountStore.getAccount("B").getBalance());
+        assertEquals("EUR", accountStore.getAccount("B").getCurrency());
+        crashed.close();
+    }
+
+    @Test
+    public void testBatchCreatesOnlyNewIds() {
+        accountStore.createAccount("A", "user", 100);
+
+        var taken = accountStore.createAccountsIfAbsent(List.of(new Account("A", "other", BigDecimal.ONE),
+                new Account("B", "user", BigDecimal.TEN), new Account("B", "other", BigDecimal.ONE)));
+        accountStore.close();
+        accountStore = open();
+
+        assertEquals(List.of("A", "B"), taken.stream().map(Account::getAccountId).toList());
+        assertEquals(new BigDecimal("100"), accountStore.getAccount("A").getBalance());
+        assertEquals(BigDecimal.TEN, accountStore.getAccount("B").getBalance());
+        assertEquals("user", accountStore.getAccount("B").getUserId());
+    }
+
+    private FileAccountStore open() {
+        return new FileAccountStore(dir.resolve("accounts.db"), journal, TimeUnit.HOURS.toNanos(1));
+    }
+
+    private void transfer(String fromAccountId, String toAccountId, BigDecimal amount) {
+        Account from = accountStore.getAccount(fromAccountId);
+        Account to = accountStore.getAccount(toAccountId);
+        from.setBalance(from.getWorkingBalance().subtract(amount));
+        accountStore.updateAccount(from);
+        to.setBalance(to.getWorkingBalance().add(amount));
+        accountStore.updateAccount(to);
+        journal.logTransaction(new Transaction("tx", fromAccountId, toAccountId, new Amount(amount), "SUCCESS", null));
+    }
+
+    // what the transfer worker does: change the balance, record the update, then journal the transaction
+    private void apply(String accountId, BigDecimal balance) {
+        Account account = accountStore.getAccount(accountId);
+        account.setBalance(balance);
+        accountStore.updateAccount(account);
+        journal.logTransaction(new Transaction("tx", accountId, "B", new Amount(BigDecimal.ONE), "SUCCESS", null));
+    }
+}
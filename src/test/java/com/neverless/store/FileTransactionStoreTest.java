@@ -0,0 +1,58 @@
+package com.neverless.store;
+
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FileTransactionStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testTornRecordIsCutOffBeforeTheNextAppend() throws IOException {
+        Path path = dir.resolve("journal.log");
+        try (FileTransactionStore journal = new FileTransactionStore(path)) {
+            journal.logTransaction(transaction("first"));
+        }
+        // a crash mid-append left half a record
+        Files.writeString(path, "second|A|B|1", StandardOpenOption.APPEND);
+
+        try (FileTransactionStore journal = new FileTransactionStore(path)) {
+            journal.logTransaction(transaction("third"));
+        }
+
+        try (FileTransactionStore journal = new FileTransactionStore(path)) {
+            List<String> ids = new ArrayList<>();
+            journal.replay(0, (transaction, position) -> ids.add(transaction.transactionId()));
+            assertEquals(List.of("first", "third"), ids);
+            assertEquals(Files.size(path), journal.getOpenedPosition());
+        }
+    }
+
+    @Test
+    public void testJournalHoldingOnlyATornRecordStartsEmpty() throws IOException {
+        Path path = dir.resolve("journal.log");
+        Files.writeString(path, "first|A|B");
+
+        try (FileTransactionStore journal = new FileTransactionStore(path)) {
+            assertEquals(0, journal.getOpenedPosition());
+            journal.logTransaction(transaction("second"));
+            assertEquals("second", journal.read(0).transactionId());
+        }
+    }
+
+    private static Transaction transaction(String id) {
+        return new Transaction(id, "A", "B", new Amount(new BigDecimal("12.50")), "SUCCESS", null);
+    }
+}
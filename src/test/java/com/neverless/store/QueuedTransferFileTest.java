@@ -0,0 +1,67 @@
+package com.neverless.store;
+
+import com.neverless.model.Amount;
+import com.neverless.model.QueuedTransfer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class QueuedTransferFileTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSavedTransfersAreLoadedBack() {
+        Path path = dir.resolve("queued.txt");
+        QueuedTransferFile.save(path, List.of(
+                new QueuedTransfer("INTERNAL", "task1", "account1", "account2", new Amount(new BigDecimal("12.50"))),
+                new QueuedTransfer("EXTERNAL", "task2", "account1", "address", new Amount(BigDecimal.TEN, "EUR"))));
+
+        List<QueuedTransfer> loaded = QueuedTransferFile.load(path);
+
+        assertEquals(2, loaded.size());
+        assertEquals("INTERNAL", loaded.get(0).type());
+        assertEquals("task1", loaded.get(0).taskId());
+        assertEquals("account1", loaded.get(0).fromAccountId());
+        assertEquals("account2", loaded.get(0).toAccountId());
+        assertEquals(new BigDecimal("12.50"), loaded.get(0).amount().getValue());
+        assertNull(loaded.get(0).amount().getCurrency());
+        assertEquals("address", loaded.get(1).toAccountId());
+        assertEquals("EUR", loaded.get(1).amount().getCurrency());
+        assertFalse(Files.exists(dir.resolve("queued.txt.tmp")));
+    }
+
+    @Test
+    public void testReservationTimeAndJournalPositionAreLoadedBack() throws Exception {
+        Path path = dir.resolve("queued.txt");
+        QueuedTransferFile.save(path, List.of(
+                new QueuedTransfer("RESERVATION", "task1", "account1", "account2", new Amount(BigDecimal.ONE), 1_700_000_000_000L)), 4096);
+
+        assertEquals(1_700_000_000_000L, QueuedTransferFile.load(path).get(0).reservedAtMillis());
+        assertEquals(4096, QueuedTransferFile.loadJournalPosition(path));
+
+        // as written before either was saved
+        Files.writeString(path, "INTERNAL|task1|account1|account2|1|\n");
+        assertEquals(0, QueuedTransferFile.load(path).get(0).reservedAtMillis());
+        assertEquals(0, QueuedTransferFile.loadJournalPosition(path));
+    }
+
+    @Test
+    public void testMissingFileHoldsNoTransfers() {
+        Path path = dir.resolve("queued.txt");
+        QueuedTransferFile.save(path, List.of());
+
+        QueuedTransferFile.delete(path);
+
+        assertEquals(List.of(), QueuedTransferFile.load(path));
+        assertEquals(0, QueuedTransferFile.loadJournalPosition(path));
+    }
+}
@@ -0,0 +1,99 @@
+package com.neverless.store;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrafficRecorderTest {
+    private static final long START = TimeUnit.SECONDS.toNanos(1_700_000_000L);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRecordedRequestsAreReadBack() {
+        Path path = dir.resolve("traffic.bin");
+        try (TrafficRecorder recorder = new TrafficRecorder(path, 4096)) {
+            recorder.record(START, 1_500_000, 200, "POST", "/transfer", "", "fromAccountId=a&toAccountId=b&amount=10",
+                    Map.of("Idempotency-Key", "key1"));
+            recorder.record(START + 2_000_000, 300_000, 404, "GET", "/balance", "accountId=c", "", Map.of());
+        }
+
+        List<TrafficReplay.RecordedRequest> requests = TrafficReplay.read(path);
+
+        assertEquals(2, requests.size());
+        assertEquals(new TrafficReplay.RecordedRequest(START, 1_500_000, 200, "POST", "/transfer", "",
+                "fromAccountId=a&toAccountId=b&amount=10", Map.of("Idempotency-Key", "key1")), requests.get(0));
+        assertEquals(new TrafficReplay.RecordedRequest(START + 2_000_000, 300_000, 404, "GET", "/balance", "accountId=c", "", Map.of()),
+                requests.get(1));
+    }
+
+    @Test
+    public void testReplayKeepsTheRecordedGapsDividedBySpeed() throws IOException {
+        ConcurrentLinkedQueue<String> received = new ConcurrentLinkedQueue<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            received.add(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + body + " "
+                    + exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+            exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/balance") ? 200 : 500, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            List<TrafficReplay.RecordedRequest> requests = List.of(
+                    new TrafficReplay.RecordedRequest(START, 1_000_000, 200, "POST", "/transfer", "", "amount=10", Map.of("Idempotency-Key", "key1")),
+                    new TrafficReplay.RecordedRequest(START + TimeUnit.MILLISECONDS.toNanos(400), 1_000_000, 200, "GET", "/balance", "accountId=a", "", Map.of()));
+
+            TrafficReplay.Report report = TrafficReplay.replay(requests, "http://localhost:" + server.getAddress().getPort(), 2, 4);
+
+            // sent 200 ms apart, but opening the first connection can take longer than that
+            assertEquals(Set.of("POST /transfer amount=10 key1", "GET /balance?accountId=a  null"), Set.copyOf(received));
+            assertEquals(1, report.statusChanged());
+            assertEquals(0, report.failed());
+            assertEquals(2, report.replayed().requests());
+            assertTrue(report.replayed().elapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(200), report.toString());
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(401), report.recorded().elapsedNanos());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testReplaySendsRequestsInTheOrderTheyStarted() throws IOException {
+        ConcurrentLinkedQueue<String> received = new ConcurrentLinkedQueue<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            received.add(exchange.getRequestURI().getQuery());
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            // as recorded: the first request to start was the last to finish
+            List<TrafficReplay.RecordedRequest> requests = List.of(
+                    new TrafficReplay.RecordedRequest(START + 1_000_000, 1_000_000, 200, "GET", "/balance", "accountId=b", "", Map.of()),
+                    new TrafficReplay.RecordedRequest(START, 5_000_000, 200, "GET", "/balance", "accountId=a", "", Map.of()));
+
+            TrafficReplay.Report report = TrafficReplay.replay(requests, "http://localhost:" + server.getAddress().getPort(), TrafficReplay.MAX_SPEED, 1);
+
+            assertEquals(List.of("accountId=a", "accountId=b"), List.copyOf(received));
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(5), report.recorded().elapsedNanos());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
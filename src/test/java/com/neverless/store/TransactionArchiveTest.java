@@ -0,0 +1,128 @@
+package com.neverless.store;
+
+import com.neverless.model.Amount;
+import com.neverless.model.Transaction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransactionArchiveTest {
+    private static final int CHUNK = TransactionLog.CHUNK_SIZE;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testColdChunksLeaveTheHeapAndAreReadBackFromTheArchive() throws InterruptedException {
+        try (TransactionArchive archive = new TransactionArchive(dir.resolve("transactions.archive"), 2)) {
+            TransactionLog log = new TransactionLog(archive, CHUNK);
+            for (int i = 0; i <= 2 * CHUNK; i++) {
+                log.add(transaction(i));
+            }
+            awaitArchived(archive, 2);
+            for (int i = 2 * CHUNK + 1; i <= 3 * CHUNK; i++) {
+                log.add(transaction(i));
+            }
+
+            assertTrue(log.residentChunks() <= 2, "resident chunks " + log.residentChunks());
+            assertTrue(archive.getArchivedBytes() > 0);
+            for (int i = 0; i <= 3 * CHUNK; i += 997) {
+                assertTransaction(i, log.get(i));
+            }
+            List<Transaction> range = log.range(CHUNK - 5, 3 * CHUNK + 1);
+            assertEquals(2 * CHUNK + 6, range.size());
+            for (int i = 0; i < range.size(); i++) {
+                assertTransaction(CHUNK - 5 + i, range.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testEveryFieldSurvivesArchiving() throws InterruptedException {
+        try (TransactionArchive archive = new TransactionArchive(dir.resolve("transactions.archive"), 1)) {
+            TransactionLog log = new TransactionLog(archive, 1);
+            log.add(new Transaction("t0", "account1", "account2", new Amount(new BigDecimal("12.50"), "EUR"), "SUCCESS", null,
+                    1_700_000_000_000L, new Amount(new BigDecimal("1890"), "JPY")));
+            for (int i = 1; i <= CHUNK; i++) {
+                log.add(transaction(i));
+            }
+            awaitArchived(archive, 1);
+
+            Transaction archived = archive.read(0)[0];
+
+            assertEquals("t0", archived.transactionId());
+            assertEquals("account1", archived.fromAccountId());
+            assertEquals("account2", archived.toAccountId());
+            assertEquals(new BigDecimal("12.50"), archived.amount().getValue());
+            assertEquals("EUR", archived.amount().getCurrency());
+            assertEquals("SUCCESS", archived.status());
+            assertNull(archived.previousTransactionId());
+            assertEquals(1_700_000_000_000L, archived.timestamp());
+            assertEquals(new BigDecimal("1890"), archived.creditedAmount().getValue());
+            assertEquals("JPY", archived.creditedAmount().getCurrency());
+            assertNull(archive.read(0)[1].amount().getCurrency());
+        }
+    }
+
+    @Test
+    public void testConcurrentReadersOfArchivedSegmentsSeeTheirOwnTransactions() throws Exception {
+        try (TransactionArchive archive = new TransactionArchive(dir.resolve("transactions.archive"), 2)) {
+            TransactionLog log = new TransactionLog(archive, CHUNK);
+            for (int i = 0; i <= 5 * CHUNK; i++) {
+                log.add(transaction(i));
+            }
+            awaitArchived(archive, 5);
+
+            ExecutorService readers = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> reads = new ArrayList<>();
+                for (int reader = 0; reader < 8; reader++) {
+                    int offset = reader;
+                    reads.add(readers.submit(() -> {
+                        for (int round = 0; round < 20; round++) {
+                            int segment = (offset + round) % 5;
+                            Transaction[] transactions = archive.read(segment);
+                            assertTransaction(segment * CHUNK + round, transactions[round]);
+                        }
+                    }));
+                }
+                for (Future<?> read : reads) {
+                    read.get(30, TimeUnit.SECONDS);
+                }
+            } finally {
+                readers.shutdown();
+            }
+        }
+    }
+
+    private static Transaction transaction(int i) {
+        return new Transaction("t" + i, "account" + (i % 7), "account" + (i % 11), new Amount(BigDecimal.valueOf(i, 2)),
+                "SUCCESS", "t" + (i - 1), 1_700_000_000_000L + i);
+    }
+
+    private static void assertTransaction(int i, Transaction transaction) {
+        assertEquals("t" + i, transaction.transactionId());
+        assertEquals(BigDecimal.valueOf(i, 2), transaction.amount().getValue());
+        assertEquals(1_700_000_000_000L + i, transaction.timestamp());
+    }
+
+    private static void awaitArchived(TransactionArchive archive, int segments) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (archive.getArchivedSegments() < segments && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(segments, archive.getArchivedSegments());
+    }
+}
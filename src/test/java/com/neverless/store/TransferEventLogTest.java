@@ -0,0 +1,100 @@
+package com.neverless.store;
+
+import org.agrona.concurrent.CachedEpochClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransferEventLogTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testRecordsAreDecodedBackToText() {
+        Path path = dir.resolve("events.bin");
+        CachedEpochClock clock = new CachedEpochClock();
+        clock.update(1_700_000_000_000L);
+        try (TransferEventLog eventLog = new TransferEventLog(path, 4096, clock)) {
+            eventLog.append("PROCESSING", "task1", "account1", "account2", new BigDecimal("12.50"), "INTERNAL", "Transfer started");
+            eventLog.append("FAILURE", "task2", "account1", "address", BigDecimal.TEN, "EXTERNAL", "Insufficient funds");
+            eventLog.append("UNEXPECTED", "task3", "account1", "account2", BigDecimal.ONE, "INTERNAL", null);
+        }
+
+        String[] lines = decode(path, 3).split(System.lineSeparator());
+
+        assertEquals("2023-11-14T22:13:20Z PROCESSING INTERNAL | Id: task1 | From: account1 | To: account2 | Amount: 12.50 | Transfer started", lines[0]);
+        assertEquals("2023-11-14T22:13:20Z FAILURE EXTERNAL | Id: task2 | From: account1 | To: address | Amount: 10 | Insufficient funds", lines[1]);
+        assertEquals("2023-11-14T22:13:20Z OTHER INTERNAL | Id: task3 | From: account1 | To: account2 | Amount: 1 | ", lines[2]);
+    }
+
+    @Test
+    public void testReopenedLogIsAppendedTo() {
+        Path path = dir.resolve("events.bin");
+        try (TransferEventLog eventLog = new TransferEventLog(path, 4096)) {
+            eventLog.append("SUCCESS", "task1", "account1", "account2", BigDecimal.ONE, "INTERNAL", "Transfer successful");
+        }
+        try (TransferEventLog eventLog = new TransferEventLog(path, 4096)) {
+            eventLog.append("SUCCESS", "task2", "account1", "account2", BigDecimal.ONE, "INTERNAL", "Transfer successful");
+        }
+
+        decode(path, 2);
+    }
+
+    @Test
+    public void testOversizedRecordIsDroppedAndCounted() {
+        Path path = dir.resolve("events.bin");
+        try (TransferEventLog eventLog = new TransferEventLog(path, 1024)) {
+            eventLog.append("SUCCESS", "task1", "account1", "account2", BigDecimal.ONE, "INTERNAL", "x".repeat(200));
+            eventLog.append("SUCCESS", "task2", "account1", "account2", BigDecimal.ONE, "INTERNAL", "ok");
+
+            assertEquals(1, eventLog.getDroppedCount());
+        }
+
+        decode(path, 1);
+    }
+
+    @Test
+    public void testAmountsAreLoggedExactly() {
+        Path path = dir.resolve("events.bin");
+        try (TransferEventLog eventLog = new TransferEventLog(path, 4096)) {
+            eventLog.append("SUCCESS", "task1", "account1", "account2", new BigDecimal("12345678901234567.89"), "INTERNAL", "ok");
+            eventLog.append("SUCCESS", "task2", "account1", "account2", new BigDecimal("0.1"), "INTERNAL", "ok");
+            eventLog.append("SUCCESS", "task3", "account1", "account2", new BigDecimal("1e30").add(new BigDecimal("0.1")), "INTERNAL", "ok");
+            eventLog.append("SUCCESS", "task4", "account1", "account2", 12550, 2, "INTERNAL", "ok");
+
+            assertEquals(1, eventLog.getDroppedCount());
+        }
+
+        String[] lines = decode(path, 3).split(System.lineSeparator());
+
+        assertTrue(lines[0].contains("| Amount: 12345678901234567.89 |"), lines[0]);
+        assertTrue(lines[1].contains("| Amount: 0.1 |"), lines[1]);
+        assertTrue(lines[2].contains("| Amount: 125.50 |"), lines[2]);
+    }
+
+    @Test
+    public void testFileThatIsNotAnEventLogIsRejected() throws IOException {
+        Path path = dir.resolve("journal.log");
+        Files.writeString(path, "task1|account1|account2|1|SUCCESS|null\n");
+
+        assertThrows(IllegalArgumentException.class, () -> new TransferEventLog(path, 4096));
+        assertThrows(IllegalArgumentException.class, () -> TransferEventLogDecoder.decode(path, System.out));
+    }
+
+    private static String decode(Path path, long expectedRecords) {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        assertEquals(expectedRecords, TransferEventLogDecoder.decode(path, new PrintStream(text, true, StandardCharsets.UTF_8)));
+        return text.toString(StandardCharsets.UTF_8);
+    }
+}